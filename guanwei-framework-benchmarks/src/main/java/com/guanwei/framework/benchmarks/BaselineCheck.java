@@ -0,0 +1,77 @@
+package com.guanwei.framework.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 对比 JMH JSON 结果与基线文件，任一基准退化超过容差时以非零状态退出
+ * <p>
+ * 用法：java -cp target/benchmarks.jar com.guanwei.framework.benchmarks.BaselineCheck
+ * target/jmh-result.json baseline/jmh-baseline.json [容差，默认0.10]
+ */
+public final class BaselineCheck {
+
+    private BaselineCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineCheck <result.json> <baseline.json> [tolerance]");
+            System.exit(2);
+        }
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.10;
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, Score> results = readScores(objectMapper.readTree(new File(args[0])));
+        Map<String, Score> baseline = readScores(objectMapper.readTree(new File(args[1])));
+
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry : baseline.entrySet()) {
+            Score expected = entry.getValue();
+            Score actual = results.get(entry.getKey());
+            if (actual == null) {
+                System.out.printf("MISSING    %s%n", entry.getKey());
+                continue;
+            }
+
+            // 吞吐量越大越好，耗时越小越好，统一换算为“相对基线的变差比例”
+            double change = expected.higherIsBetter()
+                    ? (expected.value - actual.value) / expected.value
+                    : (actual.value - expected.value) / expected.value;
+            boolean regressed = change > tolerance;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-10s %s: %.3f -> %.3f %s (%+.1f%%)%n", regressed ? "REGRESSED" : "OK",
+                    entry.getKey(), expected.value, actual.value, actual.unit, -change * 100);
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%d benchmark(s) regressed more than %.0f%%%n", regressions, tolerance * 100);
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Score> readScores(JsonNode root) {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode node : root) {
+            JsonNode metric = node.path("primaryMetric");
+            // 同一基准方法的不同 @Param 组合是不同的基准，按参数名排序后并入键
+            Map<String, String> params = new TreeMap<>();
+            node.path("params").fields().forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+            String key = node.path("benchmark").asText() + " [" + node.path("mode").asText() + ", threads="
+                    + node.path("threads").asInt() + (params.isEmpty() ? "" : ", " + params) + "]";
+            scores.put(key, new Score(metric.path("score").asDouble(), metric.path("scoreUnit").asText(),
+                    "thrpt".equals(node.path("mode").asText())));
+        }
+        return scores;
+    }
+
+    private record Score(double value, String unit, boolean higherIsBetter) {
+    }
+}
@@ -0,0 +1,69 @@
+package com.guanwei.framework.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.CapMessageStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CapMessage JSON 序列化/反序列化往返（与队列传输使用的 ObjectMapper 配置一致）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CapMessageJsonBenchmark {
+
+    private ObjectMapper objectMapper;
+    private CapMessage message;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws Exception {
+        objectMapper = new ObjectMapper();
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        objectMapper.registerModule(new JavaTimeModule());
+
+        message = new CapMessage("case.transfer", "demo",
+                "{\"caseId\":\"AJ20240001\",\"caseName\":\"测试案件\",\"status\":1,\"amount\":1024.5}");
+        message.setDbId(1234567890123L);
+        message.setStatus(CapMessageStatus.SCHEDULED);
+        message.setAdded(LocalDateTime.now());
+        message.setVersion("v1");
+        message.initializeHeaders();
+        json = objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public CapMessage deserialize() throws Exception {
+        return objectMapper.readValue(json, CapMessage.class);
+    }
+
+    @Benchmark
+    public CapMessage roundTrip() throws Exception {
+        return objectMapper.readValue(objectMapper.writeValueAsBytes(message), CapMessage.class);
+    }
+}
@@ -0,0 +1,86 @@
+package com.guanwei.framework.benchmarks;
+
+import com.guanwei.framework.cap.CapProperties;
+import com.guanwei.framework.cap.impl.CapPublisherImpl;
+import com.guanwei.framework.cap.impl.CapTransactionManagerImpl;
+import com.guanwei.framework.cap.processor.DefaultMessageDispatcher;
+import com.guanwei.framework.cap.processor.DefaultMessageSender;
+import com.guanwei.framework.cap.queue.MemoryMessageQueue;
+import com.guanwei.framework.cap.storage.MemoryMessageStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内存存储 + 内存队列下的发布路径：存储 -> 分发器 -> 发送到队列
+ * 每轮迭代重建组件，并由后台线程持续消费队列，避免内存无限增长
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CapPublisherBenchmark {
+
+    private static final String TOPIC = "benchmark.topic";
+
+    private MemoryMessageQueue messageQueue;
+    private DefaultMessageDispatcher dispatcher;
+    private CapPublisherImpl publisher;
+    private Thread drainer;
+    private volatile boolean draining;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        CapProperties properties = new CapProperties();
+        properties.setDefaultGroupName("benchmark");
+
+        MemoryMessageStorage messageStorage = new MemoryMessageStorage();
+        messageQueue = new MemoryMessageQueue();
+        DefaultMessageSender sender = new DefaultMessageSender(properties, messageQueue, messageStorage);
+        dispatcher = new DefaultMessageDispatcher(properties, messageStorage, messageQueue, null, sender);
+        dispatcher.start();
+        publisher = new CapPublisherImpl(messageQueue, messageStorage, properties,
+                new CapTransactionManagerImpl(), dispatcher);
+
+        draining = true;
+        drainer = new Thread(() -> {
+            while (draining) {
+                messageQueue.receiveBatch(TOPIC, 1000, 100);
+            }
+        }, "benchmark-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        dispatcher.stop();
+        draining = false;
+        drainer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    @Benchmark
+    public Long publish() {
+        return publisher.publish(TOPIC, "{\"caseId\":\"AJ20240001\",\"status\":1}");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Long publishConcurrent() {
+        return publisher.publish(TOPIC, "{\"caseId\":\"AJ20240001\",\"status\":1}");
+    }
+}
@@ -0,0 +1,91 @@
+package com.guanwei.framework.benchmarks;
+
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.CapMessageStatus;
+import com.guanwei.framework.cap.storage.AbstractMessageStorage;
+import com.guanwei.framework.cap.storage.JournalMessageStorage;
+import com.guanwei.framework.cap.storage.OracleMessageStorage;
+import com.guanwei.framework.cap.storage.StorageExecutor;
+import com.guanwei.framework.cap.util.CapExecutors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 日志存储与 Oracle 存储（H2 文件库、Oracle 兼容模式）的发布存储路径对比：
+ * 写入一条消息并将其状态改为成功，两次调用都等待存储确认，8 个线程并发以体现日志的组提交刷盘
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class JournalStorageBenchmark {
+
+    @Param({"journal", "oracle-h2"})
+    public String storage;
+
+    private Path directory;
+    private StorageExecutor executor;
+    private AbstractMessageStorage messageStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("cap-storage-benchmark");
+        executor = new StorageExecutor(16, 10_000, CapExecutors.MODE_PLATFORM);
+        if ("journal".equals(storage)) {
+            messageStorage = new JournalMessageStorage(directory, 64 * 1024 * 1024, 0.5);
+        } else {
+            OracleMessageStorage oracle = new OracleMessageStorage();
+            Field jdbcTemplate = OracleMessageStorage.class.getDeclaredField("jdbcTemplate");
+            jdbcTemplate.setAccessible(true);
+            jdbcTemplate.set(oracle, new JdbcTemplate(new DriverManagerDataSource(
+                    "jdbc:h2:file:" + directory.resolve("cap") + ";MODE=Oracle", "sa", "")));
+            oracle.initializeTables();
+            messageStorage = oracle;
+        }
+        messageStorage.setStorageExecutor(executor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (messageStorage instanceof JournalMessageStorage journal) {
+            journal.close();
+        }
+        executor.shutdown();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public CapMessage storeAndSucceed() throws Exception {
+        CapMessage message = messageStorage.storeMessageAsync("tles.case.filing",
+                "{\"caseId\":\"3301002025070200001\",\"state\":1}", null).get();
+        messageStorage.changePublishStateAsync(message, CapMessageStatus.SUCCEEDED, null).get();
+        return message;
+    }
+}
@@ -0,0 +1,55 @@
+package com.guanwei.framework.benchmarks;
+
+import com.guanwei.framework.security.JwtProperties;
+import com.guanwei.framework.security.JwtTokenUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT 令牌校验（每个请求经过认证过滤器时都会执行）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtTokenUtilBenchmark {
+
+    private JwtTokenUtil jwtTokenUtil;
+    private String validToken;
+    private String tamperedToken;
+
+    @Setup
+    public void setUp() throws Exception {
+        jwtTokenUtil = new JwtTokenUtil();
+        // JwtProperties 由容器注入，这里直接赋值
+        Field field = JwtTokenUtil.class.getDeclaredField("jwtProperties");
+        field.setAccessible(true);
+        field.set(jwtTokenUtil, new JwtProperties());
+
+        validToken = jwtTokenUtil.generateToken(10001L, "admin");
+        tamperedToken = validToken.substring(0, validToken.length() - 2) + "xx";
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return jwtTokenUtil.validateToken(validToken);
+    }
+
+    @Benchmark
+    public boolean validateTamperedToken() {
+        return jwtTokenUtil.validateToken(tamperedToken);
+    }
+}
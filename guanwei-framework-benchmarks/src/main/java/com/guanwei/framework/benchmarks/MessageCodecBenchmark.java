@@ -0,0 +1,181 @@
+package com.guanwei.framework.benchmarks;
+
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.codec.MessageCodec;
+import com.guanwei.framework.cap.codec.MessageCodecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 案件移交六个主题的 CaseInfoEntity 消息在 json/smile/cbor 编解码下的编码、解码耗时与消息体大小
+ * 编码为发布方写入内容并序列化整条消息（与队列发送一致），解码为消费方解析消息并绑定为实体
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    @Param({"json", "smile", "cbor"})
+    public String codec;
+
+    @Param({"filing", "final-review", "illegal", "penalty-decision", "closed", "cancel"})
+    public String shape;
+
+    private MessageCodec messageCodec;
+    private MessageCodec envelopeCodec;
+    private CaseInfo caseInfo;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws Exception {
+        messageCodec = MessageCodecs.get(codec);
+        envelopeCodec = messageCodec.isBinary() ? messageCodec : MessageCodecs.json();
+        caseInfo = caseInfo(shape);
+        body = encode();
+        System.out.printf("%n%s/%s: message body %d bytes%n", codec, shape, body.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        CapMessage message = new CapMessage();
+        message.setDbId(1234567890123L);
+        message.setName("tles.case.filing");
+        message.setGroup("case-transfer-group");
+        message.setVersion("v1");
+        message.initializeHeaders();
+        MessageCodecs.writeContent(message, caseInfo, messageCodec);
+        return envelopeCodec.getObjectMapper().writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public CaseInfo decode() throws Exception {
+        CapMessage message = envelopeCodec.decode(body, CapMessage.class);
+        return MessageCodecs.readContent(message, CaseInfo.class);
+    }
+
+    /**
+     * 各主题实际携带的字段：立案最全，终审、违法认定、处罚决定、结案、撤销依次只更新流程字段
+     */
+    private static CaseInfo caseInfo(String shape) {
+        CaseInfo info = new CaseInfo();
+        info.caseId = "3301002025070200001";
+        info.caseNo = "浙杭交罚〔2025〕1024号";
+        info.state = 1;
+        info.orgId = "330100000000";
+        info.areaCode = "330100";
+        info.processStatus = 10;
+        switch (shape) {
+            case "filing" -> {
+                info.vehicleShipName = "浙A12345";
+                info.illegalObjects = 1;
+                info.companyName = "杭州某某道路运输有限公司";
+                info.partyName = "张三";
+                info.idCardNum = "330102198001011234";
+                info.caseFilingTime = LocalDateTime.of(2025, 7, 2, 10, 49);
+                info.illegalLocation = "杭州市西湖区文三路与学院路交叉口";
+                info.source = 2;
+                info.illegalBehavior = "未取得道路运输经营许可，擅自从事道路普通货物运输经营";
+                info.caseReason = "涉嫌未取得道路运输经营许可擅自从事道路运输经营案";
+                info.illegalContent = "当事人驾驶浙A12345重型厢式货车，未取得道路运输经营许可，擅自从事道路普通货物运输经营。";
+                info.caseBasis = "《中华人民共和国道路运输条例》第六十三条";
+                info.caseType = 1;
+                info.illegalTime = LocalDateTime.of(2025, 7, 1, 15, 20);
+                info.officers = "李四,王五";
+                info.handleOrgId = "330100000001";
+                info.longitude = new BigDecimal("120.1301230");
+                info.latitude = new BigDecimal("30.2789120");
+                info.lawEnforCategory = 1;
+                info.industryType = 2;
+                info.depId = "330100000101";
+                info.depName = "杭州市交通运输行政执法队一大队";
+                info.socialCreditCode = "91330100MA2AXXXX1X";
+                info.orgName = "杭州市交通运输行政执法队";
+                info.regionCode = "330106";
+            }
+            case "final-review" -> {
+                info.finalDecision = "同意承办人意见，拟处罚款人民币贰万元整";
+                info.remarks = "法制审核通过";
+            }
+            case "illegal" -> {
+                info.illegalBehavior = "未取得道路运输经营许可，擅自从事道路普通货物运输经营";
+                info.illegalContent = "经查，当事人违法事实清楚，证据确凿。";
+                info.caseBasis = "《中华人民共和国道路运输条例》第六十三条";
+                info.illegalTime = LocalDateTime.of(2025, 7, 1, 15, 20);
+            }
+            case "penalty-decision" -> {
+                info.punishState = 1;
+                info.penaltyDecisionTime = LocalDateTime.of(2025, 7, 10, 9, 0);
+                info.finalDecision = "罚款人民币贰万元整";
+                info.notPunish = 0;
+            }
+            case "closed" -> {
+                info.closeTime = LocalDateTime.of(2025, 7, 20, 16, 30);
+                info.closer = "李四";
+                info.punishState = 2;
+            }
+            case "cancel" -> info.remarks = "当事人违法事实不成立，撤销立案";
+            default -> throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        return info;
+    }
+
+    /**
+     * 与案件移交服务 CaseInfoEntity 字段一致的消息体（基准模块不依赖业务模块）
+     */
+    public static class CaseInfo {
+        public String caseId;
+        public String vehicleShipName;
+        public Integer illegalObjects;
+        public String companyName;
+        public String partyName;
+        public String idCardNum;
+        public Integer state;
+        public LocalDateTime caseFilingTime;
+        public String illegalLocation;
+        public String caseNo;
+        public Integer source;
+        public String illegalBehavior;
+        public String caseReason;
+        public String illegalContent;
+        public String caseBasis;
+        public String remarks;
+        public Integer caseType;
+        public LocalDateTime illegalTime;
+        public String officers;
+        public String areaCode;
+        public String orgId;
+        public String handleOrgId;
+        public LocalDateTime closeTime;
+        public Integer punishState;
+        public BigDecimal longitude;
+        public BigDecimal latitude;
+        public Integer lawEnforCategory;
+        public Integer industryType;
+        public String depId;
+        public String depName;
+        public String socialCreditCode;
+        public Integer processStatus;
+        public String orgName;
+        public String finalDecision;
+        public LocalDateTime penaltyDecisionTime;
+        public Integer notPunish;
+        public String closer;
+        public String regionCode;
+    }
+}
@@ -0,0 +1,46 @@
+package com.guanwei.framework.benchmarks;
+
+import com.guanwei.framework.cap.util.MessageIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息ID生成吞吐量：单线程与多线程竞争
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageIdGeneratorBenchmark {
+
+    private final MessageIdGenerator generator = new MessageIdGenerator(1, 1);
+
+    @Benchmark
+    public Long nextId() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Long nextIdContended() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public Long nextIdThirtyTwoThreads() {
+        return generator.nextId();
+    }
+}
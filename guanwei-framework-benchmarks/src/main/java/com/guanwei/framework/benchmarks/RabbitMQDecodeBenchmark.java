@@ -0,0 +1,91 @@
+package com.guanwei.framework.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.queue.RabbitMQMessageQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RabbitMQ 接收解码：原实现（逐个编码 readTree 校验后再 readValue）对比按 contentEncoding 单次解析
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RabbitMQDecodeBenchmark {
+
+    private static final String QUEUE = "case.transfer.v1";
+
+    private RabbitMQMessageQueue queue;
+    private ObjectMapper legacyMapper;
+    private Message utf8Message;
+    private Message legacyGbkMessage;
+
+    @Setup
+    public void setUp() {
+        queue = new RabbitMQMessageQueue(null, null, null, null, "cap.exchange", "", 10, 1);
+        legacyMapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .registerModule(new JavaTimeModule());
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            content.append("案件移交-").append(i).append(';');
+        }
+        String json = "{\"dbId\":1,\"name\":\"case.transfer\",\"group\":\"group\",\"content\":\"" + content
+                + "\",\"retries\":0,\"createdAt\":\"2025-07-02T10:49:00.000\"}";
+        utf8Message = message(json.getBytes(StandardCharsets.UTF_8), "UTF-8");
+        legacyGbkMessage = message(json.getBytes(Charset.forName("GBK")), null);
+    }
+
+    @Benchmark
+    public CapMessage legacyMultiPass() throws Exception {
+        // 原实现：每种编码都完整解析一次 JSON 做校验，成功后再解析一次为 CapMessage
+        String messageJson = null;
+        for (String encoding : new String[]{"UTF-8", "ISO-8859-1", "GBK"}) {
+            try {
+                messageJson = new String(utf8Message.getBody(), encoding);
+                legacyMapper.readTree(messageJson);
+                break;
+            } catch (Exception e) {
+                // 尝试下一种编码
+            }
+        }
+        return legacyMapper.readValue(messageJson, CapMessage.class);
+    }
+
+    @Benchmark
+    public CapMessage singlePassWithContentEncoding() {
+        return queue.decode(QUEUE, utf8Message);
+    }
+
+    @Benchmark
+    public CapMessage sniffedLegacyGbk() {
+        return queue.decode(QUEUE, legacyGbkMessage);
+    }
+
+    private static Message message(byte[] body, String contentEncoding) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentEncoding(contentEncoding);
+        return new Message(body, properties);
+    }
+}
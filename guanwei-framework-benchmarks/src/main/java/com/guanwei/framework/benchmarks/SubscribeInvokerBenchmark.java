@@ -0,0 +1,127 @@
+package com.guanwei.framework.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.annotation.CapSubscribe;
+import com.guanwei.framework.cap.processor.ConsumerExecutorDescriptor;
+import com.guanwei.framework.cap.processor.DefaultSubscribeInvoker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订阅方法调用开销：String 参数、CapMessage 参数与 POJO 反序列化参数
+ * reflective* 为每条消息 Method.invoke + ObjectMapper.readValue 的基线，
+ * invokeWith* 走描述符上预编译的 LambdaMetafactory 调用
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubscribeInvokerBenchmark {
+
+    private DefaultSubscribeInvoker invoker;
+    private CapMessage message;
+    private ConsumerExecutorDescriptor stringDescriptor;
+    private ConsumerExecutorDescriptor messageDescriptor;
+    private ConsumerExecutorDescriptor pojoDescriptor;
+    private CaseSubscriber subscriber;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() throws Exception {
+        invoker = new DefaultSubscribeInvoker();
+        message = new CapMessage("case.created", "{\"caseId\":\"AJ20240001\",\"status\":1}");
+        message.setDbId(1L);
+
+        stringDescriptor = descriptor("onString", String.class);
+        messageDescriptor = descriptor("onMessage", CapMessage.class);
+        pojoDescriptor = descriptor("onCase", CaseEvent.class);
+
+        subscriber = new CaseSubscriber();
+        objectMapper = new ObjectMapper();
+    }
+
+    @Benchmark
+    public Object reflectiveWithString() throws Exception {
+        return stringDescriptor.getMethodInfo().invoke(subscriber, message.getContent());
+    }
+
+    @Benchmark
+    public Object reflectiveWithPojo() throws Exception {
+        return pojoDescriptor.getMethodInfo().invoke(subscriber,
+                objectMapper.readValue(message.getContent(), CaseEvent.class));
+    }
+
+    @Benchmark
+    public Object invokeWithString() {
+        return invoker.invokeAsync(message, stringDescriptor);
+    }
+
+    @Benchmark
+    public Object invokeWithCapMessage() {
+        return invoker.invokeAsync(message, messageDescriptor);
+    }
+
+    @Benchmark
+    public Object invokeWithPojo() {
+        return invoker.invokeAsync(message, pojoDescriptor);
+    }
+
+    private ConsumerExecutorDescriptor descriptor(String methodName, Class<?> parameterType) throws Exception {
+        Method method = CaseSubscriber.class.getMethod(methodName, parameterType);
+        return new ConsumerExecutorDescriptor(CaseSubscriber.class, method, method.getAnnotation(CapSubscribe.class));
+    }
+
+    public static class CaseSubscriber {
+
+        @CapSubscribe("case.created")
+        public String onString(String content) {
+            return content;
+        }
+
+        @CapSubscribe("case.created")
+        public Long onMessage(CapMessage message) {
+            return message.getId();
+        }
+
+        @CapSubscribe("case.created")
+        public String onCase(CaseEvent event) {
+            return event.getCaseId();
+        }
+    }
+
+    public static class CaseEvent {
+
+        private String caseId;
+        private int status;
+
+        public String getCaseId() {
+            return caseId;
+        }
+
+        public void setCaseId(String caseId) {
+            this.caseId = caseId;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public void setStatus(int status) {
+            this.status = status;
+        }
+    }
+}
@@ -7,13 +7,18 @@ import com.guanwei.framework.cap.processor.*;
 import com.guanwei.framework.cap.queue.CapQueueManager;
 import com.guanwei.framework.cap.queue.MessageQueue;
 import com.guanwei.framework.cap.storage.MessageStorage;
+import com.guanwei.framework.cap.util.MessageIdGenerator;
+import com.guanwei.framework.cap.util.WorkerIdLease;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 
 import jakarta.annotation.PreDestroy;
+import java.time.Duration;
 import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
@@ -32,6 +37,8 @@ public class CapAutoConfiguration {
     private MessageRetryProcessor messageRetryProcessor;
     private MessageCollectorProcessor messageCollectorProcessor;
     private DefaultMessageDispatcher messageDispatcher;
+    private WorkerIdLease workerIdLease;
+    private com.guanwei.framework.cap.storage.DedupStorage dedupStorage;
     @org.springframework.beans.factory.annotation.Autowired
     private org.springframework.context.ApplicationContext applicationContext;
 
@@ -39,20 +46,49 @@ public class CapAutoConfiguration {
      * 配置消息存储
      */
     @Bean
-    public MessageStorage messageStorage(CapProperties properties) {
+    public MessageStorage messageStorage(CapProperties properties,
+            com.guanwei.framework.cap.storage.StorageExecutor capStorageExecutor) {
         // 根据配置选择存储类型
         String storageType = properties.getStorage().getType();
+        com.guanwei.framework.cap.storage.AbstractMessageStorage storage;
         switch (storageType.toLowerCase()) {
             case "memory":
-                return new com.guanwei.framework.cap.storage.MemoryMessageStorage();
+                storage = new com.guanwei.framework.cap.storage.MemoryMessageStorage();
+                break;
             case "redis":
-                return new com.guanwei.framework.cap.storage.RedisMessageStorage();
+                storage = new com.guanwei.framework.cap.storage.RedisMessageStorage();
+                break;
             case "oracle":
-                return new com.guanwei.framework.cap.storage.OracleMessageStorage();
+                storage = new com.guanwei.framework.cap.storage.OracleMessageStorage();
+                break;
+            case "journal":
+                CapProperties.Journal journal = properties.getStorage().getJournal();
+                try {
+                    storage = new com.guanwei.framework.cap.storage.JournalMessageStorage(
+                            java.nio.file.Paths.get(journal.getDirectory()),
+                            journal.getSegmentSizeMb() * 1024 * 1024, journal.getCompactLiveRatio());
+                } catch (java.io.IOException e) {
+                    throw new RuntimeException("Failed to open CAP journal: " + journal.getDirectory(), e);
+                }
+                break;
             default:
                 log.warn("Unknown storage type: {}, using memory storage", storageType);
-                return new com.guanwei.framework.cap.storage.MemoryMessageStorage();
+                storage = new com.guanwei.framework.cap.storage.MemoryMessageStorage();
+                break;
         }
+        storage.setStorageExecutor(capStorageExecutor);
+        return storage;
+    }
+
+    /**
+     * 配置存储专用执行器，存储的阻塞调用不再占用 ForkJoinPool.commonPool
+     */
+    @Bean(destroyMethod = "shutdown")
+    public com.guanwei.framework.cap.storage.StorageExecutor capStorageExecutor(CapProperties properties) {
+        return new com.guanwei.framework.cap.storage.StorageExecutor(
+                properties.getStorage().getExecutorThreads(),
+                properties.getStorage().getExecutorQueueCapacity(),
+                properties.getExecutorMode());
     }
 
     /**
@@ -72,6 +108,7 @@ public class CapAutoConfiguration {
      * 配置消息队列
      */
     @Bean
+    @DependsOn("messageIdGenerator")
     public MessageQueue messageQueue(CapProperties properties,
             AmqpAdmin amqpAdmin,
             RabbitTemplate rabbitTemplate,
@@ -81,7 +118,10 @@ public class CapAutoConfiguration {
         String queueType = properties.getMessageQueue().getType();
         switch (queueType.toLowerCase()) {
             case "memory":
-                return new com.guanwei.framework.cap.queue.MemoryMessageQueue();
+                return new com.guanwei.framework.cap.queue.MemoryMessageQueue(
+                        properties.getMessageQueue().getMemoryDelayTickMillis(),
+                        properties.getMessageQueue().getMemoryQueueCapacity(),
+                        properties.getMessageQueue().getMemorySendTimeoutMillis());
             case "rabbitmq":
                 return new com.guanwei.framework.cap.queue.RabbitMQMessageQueue(
                         amqpAdmin,
@@ -89,10 +129,20 @@ public class CapAutoConfiguration {
                         connectionFactory,
                         capQueueManager,
                         properties.getMessageQueue().getRabbitmq().getExchangeName(),
-                        properties.getMessageQueue().getRabbitmq().getQueuePrefix());
+                        properties.getMessageQueue().getRabbitmq().getQueuePrefix(),
+                        properties.getMessageQueue().getRabbitmq().getPrefetchCount(),
+                        properties.getConsumerThreadCount(),
+                        properties.getMessageQueue().getRabbitmq().getConfirmBatchSize(),
+                        properties.getMessageQueue().getRabbitmq().getConfirmTimeoutMillis());
+            case "kafka":
+                return new com.guanwei.framework.cap.queue.KafkaMessageQueue(
+                        properties.getMessageQueue().getKafka());
             default:
                 log.warn("Unknown queue type: {}, using memory queue", queueType);
-                return new com.guanwei.framework.cap.queue.MemoryMessageQueue();
+                return new com.guanwei.framework.cap.queue.MemoryMessageQueue(
+                        properties.getMessageQueue().getMemoryDelayTickMillis(),
+                        properties.getMessageQueue().getMemoryQueueCapacity(),
+                        properties.getMessageQueue().getMemorySendTimeoutMillis());
         }
     }
 
@@ -116,8 +166,10 @@ public class CapAutoConfiguration {
      * 配置订阅执行器
      */
     @Bean
-    public SubscribeExecutor subscribeExecutor(CapProperties properties, MessageStorage messageStorage) {
-        return new DefaultSubscribeExecutor(properties, messageStorage);
+    public SubscribeExecutor subscribeExecutor(CapProperties properties, MessageStorage messageStorage,
+            org.springframework.beans.factory.ObjectProvider<com.fasterxml.jackson.databind.ObjectMapper> objectMapper) {
+        return new DefaultSubscribeExecutor(properties, messageStorage,
+                new DefaultSubscribeInvoker(applicationContext, objectMapper.getIfAvailable()));
     }
 
     /**
@@ -160,13 +212,29 @@ public class CapAutoConfiguration {
     public MessageCollectorProcessor messageCollectorProcessor(CapProperties properties,
             MessageStorage messageStorage) {
         this.messageCollectorProcessor = new MessageCollectorProcessor(properties, messageStorage);
+        this.messageCollectorProcessor.setDedupStorage(dedupStorage(properties));
         return this.messageCollectorProcessor;
     }
 
+    /**
+     * 配置消息ID生成器
+     * 优先使用配置的 workerId/datacenterId，未配置时从消息存储租用节点槽位
+     */
+    @Bean
+    public MessageIdGenerator messageIdGenerator(CapProperties properties, MessageStorage messageStorage) {
+        if (properties.getWorkerId() >= 0 && properties.getDatacenterId() >= 0) {
+            return MessageIdGenerator.configure(properties.getWorkerId(), properties.getDatacenterId());
+        }
+        this.workerIdLease = WorkerIdLease.acquire(messageStorage,
+                Duration.ofSeconds(properties.getWorkerIdLeaseSeconds()));
+        return MessageIdGenerator.configure(workerIdLease);
+    }
+
     /**
      * 配置CAP发布器
      */
     @Bean
+    @DependsOn("messageIdGenerator")
     public CapPublisher capPublisher(CapProperties properties,
             MessageStorage messageStorage,
             MessageQueue messageQueue,
@@ -179,22 +247,41 @@ public class CapAutoConfiguration {
      * 配置CAP订阅器
      */
     @Bean
+    @DependsOn("messageIdGenerator")
     public CapSubscriber capSubscriber(CapProperties properties,
             MessageStorage messageStorage,
             MessageQueue messageQueue,
             CapQueueManager capQueueManager) {
         CapSubscriberImpl sub = new CapSubscriberImpl(messageStorage, messageQueue, properties, capQueueManager);
-        // 优先使用 Oracle 去重存储
-        try {
-            org.springframework.jdbc.core.JdbcTemplate jdbcTemplate = applicationContext.getBean(org.springframework.jdbc.core.JdbcTemplate.class);
-            sub.setDedupStorage(new com.guanwei.framework.cap.storage.OracleDedupStorage(jdbcTemplate));
-            return sub;
-        } catch (Exception ignored) {
-        }
-        // 回退（无去重存储）
+        sub.setDedupStorage(dedupStorage(properties));
         return sub;
     }
 
+    /**
+     * 去重存储：按 cap.storage.type 选择，redis 使用 Redis 去重存储，其他类型使用 Oracle 去重存储，
+     * 不可用时为 null（不去重）。订阅器与清理处理器共用同一实例
+     */
+    private synchronized com.guanwei.framework.cap.storage.DedupStorage dedupStorage(CapProperties properties) {
+        if (dedupStorage == null) {
+            String storageType = properties.getStorage().getType();
+            try {
+                if ("redis".equalsIgnoreCase(storageType)) {
+                    org.springframework.data.redis.connection.RedisConnectionFactory connectionFactory =
+                            applicationContext.getBean(org.springframework.data.redis.connection.RedisConnectionFactory.class);
+                    dedupStorage = new com.guanwei.framework.cap.storage.RedisDedupStorage(
+                            new org.springframework.data.redis.core.StringRedisTemplate(connectionFactory));
+                } else {
+                    org.springframework.jdbc.core.JdbcTemplate jdbcTemplate = applicationContext.getBean(org.springframework.jdbc.core.JdbcTemplate.class);
+                    dedupStorage = new com.guanwei.framework.cap.storage.OracleDedupStorage(jdbcTemplate);
+                }
+            } catch (Exception e) {
+                log.info("Dedup storage for storage type {} is not available, duplicate messages will not be filtered: {}",
+                        storageType, e.getMessage());
+            }
+        }
+        return dedupStorage;
+    }
+
     /**
      * 配置CAP事务管理器
      */
@@ -203,6 +290,23 @@ public class CapAutoConfiguration {
         return new CapTransactionManagerImpl();
     }
 
+    /**
+     * 队列指标（classpath 中存在 Micrometer 时注册）
+     */
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+    static class CapMetricsConfiguration {
+
+        @Bean
+        public com.guanwei.framework.cap.metrics.CapQueueMetrics capQueueMetrics(MessageDispatcher messageDispatcher,
+                CapSubscriber capSubscriber,
+                MessageQueue messageQueue,
+                com.guanwei.framework.cap.storage.StorageExecutor capStorageExecutor) {
+            return new com.guanwei.framework.cap.metrics.CapQueueMetrics(messageDispatcher, capSubscriber, messageQueue,
+                    capStorageExecutor);
+        }
+    }
+
     /**
      * 应用关闭时清理资源
      */
@@ -222,6 +326,10 @@ public class CapAutoConfiguration {
             messageDispatcher.stop();
         }
 
+        if (workerIdLease != null) {
+            workerIdLease.close();
+        }
+
         log.info("CAP components shutdown completed");
     }
 }
\ No newline at end of file
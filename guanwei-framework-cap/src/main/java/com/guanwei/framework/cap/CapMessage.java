@@ -1,7 +1,9 @@
 package com.guanwei.framework.cap;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -14,6 +16,16 @@ import java.util.Map;
 @Data
 public class CapMessage {
 
+    /**
+     * 顺序键消息头，顺序键相同的消息按发布顺序依次处理
+     */
+    public static final String ORDERING_KEY_HEADER = "cap-ordering-key";
+
+    /**
+     * 内容编码消息头，值为编解码的 content-type，缺失表示 JSON 字符串内容
+     */
+    public static final String CONTENT_TYPE_HEADER = "cap-content-type";
+
     /**
      * 消息类型枚举
      */
@@ -84,6 +96,13 @@ public class CapMessage {
      */
     private String content;
 
+    /**
+     * 二进制编码的消息内容（smile、cbor 等），使用二进制编解码时代替 content
+     */
+    @ToString.Exclude
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private byte[] payload;
+
     /**
      * 消息状态
      */
@@ -104,6 +123,11 @@ public class CapMessage {
      */
     private LocalDateTime added;
 
+    /**
+     * 下次重试时间，为空表示不再自动重试
+     */
+    private LocalDateTime nextRetryAt;
+
     /**
      * 版本
      */
@@ -192,6 +216,11 @@ public class CapMessage {
             return this;
         }
 
+        public Builder nextRetryAt(LocalDateTime nextRetryAt) {
+            message.setNextRetryAt(nextRetryAt);
+            return this;
+        }
+
         public Builder messageType(MessageType messageType) {
             message.setMessageType(messageType);
             return this;
@@ -298,6 +327,26 @@ public class CapMessage {
         headers.put(key, value);
     }
 
+    /**
+     * 获取内容编码
+     *
+     * @return 编解码的 content-type，未设置时为 null（JSON 字符串内容）
+     */
+    @JsonIgnore
+    public String getContentType() {
+        return headers != null ? headers.get(CONTENT_TYPE_HEADER) : null;
+    }
+
+    /**
+     * 获取顺序键
+     *
+     * @return 顺序键，未设置时为 null
+     */
+    @JsonIgnore
+    public String getOrderingKey() {
+        return headers != null ? headers.get(ORDERING_KEY_HEADER) : null;
+    }
+
     /**
      * 获取消息头映射
      *
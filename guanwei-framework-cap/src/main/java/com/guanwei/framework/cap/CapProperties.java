@@ -56,11 +56,41 @@ public class CapProperties {
      */
     private int failedRetryCount = 50;
 
+    /**
+     * 失败重试的退避间隔上限（秒），第 n 次失败后等待 min(上限, 间隔 * 2^(n-1))，默认1小时
+     */
+    private int failedRetryMaxInterval = 3600;
+
+    /**
+     * 失败重试退避间隔的随机抖动比例（0-1），默认0.2即 ±20%
+     */
+    private double failedRetryJitter = 0.2;
+
+    /**
+     * 扫描到期重试消息的间隔（秒），默认5秒
+     */
+    private int failedRetryPollInterval = 5;
+
     /**
      * 消费者线程数量，默认1
      */
     private int consumerThreadCount = 1;
 
+    /**
+     * 订阅者本地等待执行的消息上限，达到上限后暂停从消息队列拉取，默认1000
+     */
+    private int consumerQueueCapacity = 1000;
+
+    /**
+     * 每个订阅（消息名称 + 消息组）的拉取循环等待消息的超时时间（毫秒），默认100
+     */
+    private long consumerPollTimeout = 100;
+
+    /**
+     * 每个订阅同时处理中的消息上限，避免单个繁忙订阅占满全部拉取额度，<=0 表示不单独限制，默认0
+     */
+    private int consumerConcurrency = 0;
+
     /**
      * 是否启用订阅者并行执行，默认false
      */
@@ -81,6 +111,28 @@ public class CapProperties {
      */
     private boolean enablePublishParallelSend = false;
 
+    /**
+     * 分发器发布队列容量，队列满时发布方阻塞等待，默认CPU核心数*500
+     */
+    private int publishQueueCapacity = Runtime.getRuntime().availableProcessors() * 500;
+
+    /**
+     * 执行模式：platform（固定大小的平台线程池）或 virtual（每次发送/订阅调用一个虚拟线程），默认 platform
+     * 运行时低于 Java 21 时 virtual 模式退化为每任务一个平台线程
+     */
+    private String executorMode = "platform";
+
+    /**
+     * virtual 模式下同时执行的发送/订阅调用上限，默认1000
+     */
+    private int virtualMaxConcurrency = 1000;
+
+    /**
+     * 消息内容编解码：json（默认）、smile、cbor，或通过 SPI 注册的自定义编解码名称
+     * 二进制编解码只作用于对象内容，字符串内容视为已编码的 JSON 原样发送
+     */
+    private String messageCodec = "json";
+
     /**
      * 回退窗口回溯时间（秒），默认240秒
      */
@@ -96,16 +148,51 @@ public class CapProperties {
      */
     private int schedulerBatchSize = 1000;
 
+    /**
+     * 分发器恢复扫描间隔（秒），补发存储中遗留的待发送和已到期延迟消息，默认60秒
+     */
+    private int dispatcherRecoveryInterval = 60;
+
     /**
      * 发布超时时间（秒），默认30秒
      */
     private int publishTimeout = 30;
 
+    /**
+     * 发布组提交的最大消息数，大于1时并发的单条发布会合并为一次批量存储，默认0（关闭）
+     */
+    private int publishGroupCommitSize = 0;
+
+    /**
+     * 发布组提交的等待窗口（微秒），默认200微秒
+     */
+    private long publishGroupCommitWindowMicros = 200;
+
     /**
      * 是否使用存储锁，默认false
      */
     private boolean useStorageLock = false;
 
+    /**
+     * 存储锁租约时长（秒），默认30秒，持有期间每隔 1/3 租约续期一次
+     */
+    private int storageLockTtl = 30;
+
+    /**
+     * 消息ID生成器的工作节点ID（0-31），与 datacenterId 同时配置时生效，默认-1（从存储租用）
+     */
+    private long workerId = -1;
+
+    /**
+     * 消息ID生成器的数据中心ID（0-31），与 workerId 同时配置时生效，默认-1（从存储租用）
+     */
+    private long datacenterId = -1;
+
+    /**
+     * 从存储租用节点槽位的租约时长（秒），默认60秒，每1/3时长续期一次
+     */
+    private int workerIdLeaseSeconds = 60;
+
     /**
      * 消息存储配置
      */
@@ -122,7 +209,7 @@ public class CapProperties {
     @Data
     public static class Storage {
         /**
-         * 存储类型：memory, redis, database
+         * 存储类型：memory, redis, oracle, journal
          */
         private String type = "memory";
 
@@ -140,6 +227,42 @@ public class CapProperties {
          * Redis连接配置
          */
         private Redis redis = new Redis();
+
+        /**
+         * 存储异步操作专用执行器的线程数（virtual 模式下为并发上限），默认16
+         */
+        private int executorThreads = 16;
+
+        /**
+         * 存储执行器的等待队列容量，队列满时由调用方线程执行，默认10000
+         */
+        private int executorQueueCapacity = 10000;
+
+        /**
+         * 嵌入式日志存储配置（type=journal）
+         */
+        private Journal journal = new Journal();
+    }
+
+    /**
+     * 嵌入式日志存储配置
+     */
+    @Data
+    public static class Journal {
+        /**
+         * 日志目录
+         */
+        private String directory = "cap-journal";
+
+        /**
+         * 单个日志段大小（MB），默认64
+         */
+        private int segmentSizeMb = 64;
+
+        /**
+         * 最早的日志段中存活记录比例不高于该值时压缩，默认0.5
+         */
+        private double compactLiveRatio = 0.5;
     }
 
     /**
@@ -214,6 +337,21 @@ public class CapProperties {
          */
         private String type = "memory";
 
+        /**
+         * 内存队列延迟消息时间轮刻度（毫秒）
+         */
+        private long memoryDelayTickMillis = 10;
+
+        /**
+         * 内存队列每个队列的容量，默认100000
+         */
+        private int memoryQueueCapacity = 100000;
+
+        /**
+         * 内存队列已满时发送方的最长等待时间（毫秒），超时则发送失败，默认5000
+         */
+        private long memorySendTimeoutMillis = 5000;
+
         /**
          * RabbitMQ配置
          */
@@ -269,6 +407,21 @@ public class CapProperties {
          * 虚拟主机
          */
         private String virtualHost = "/";
+
+        /**
+         * 每个消费者未确认消息的预取数量
+         */
+        private int prefetchCount = 10;
+
+        /**
+         * 异步发送每批发布确认的最大消息数
+         */
+        private int confirmBatchSize = 100;
+
+        /**
+         * 等待一批发布确认的超时时间（毫秒）
+         */
+        private long confirmTimeoutMillis = 5000;
     }
 
     /**
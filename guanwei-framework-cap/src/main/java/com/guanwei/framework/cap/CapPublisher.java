@@ -1,5 +1,6 @@
 package com.guanwei.framework.cap;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -62,6 +63,28 @@ public interface CapPublisher {
         Long publish(String name, Object content, Map<String, String> headers, String group);
 
         /**
+         * 发布顺序消息
+         * 顺序键相同的消息按发布顺序依次处理，不同顺序键的消息可以并行处理
+         * 
+         * @param name        消息名称/主题
+         * @param orderingKey 顺序键（如案件编号）
+         * @param content     消息内容
+         * @return 消息ID
+         */
+        Long publishOrdered(String name, String orderingKey, Object content);
+
+        /**
+         * 发布顺序消息到指定组
+         * 
+         * @param name        消息名称/主题
+         * @param orderingKey 顺序键（如案件编号）
+         * @param content     消息内容
+         * @param group       消息组
+         * @return 消息ID
+         */
+        Long publishOrdered(String name, String orderingKey, Object content, String group);
+
+                /**
          * 异步发布消息
          * 
          * @param name    消息名称/主题
@@ -112,6 +135,55 @@ public interface CapPublisher {
          */
         CompletableFuture<Long> publishAsync(String name, Object content, Map<String, String> headers, String group);
 
+        /**
+         * 异步发布顺序消息
+         * 
+         * @param name        消息名称/主题
+         * @param orderingKey 顺序键（如案件编号）
+         * @param content     消息内容
+         * @return 消息ID的Future
+         */
+        CompletableFuture<Long> publishOrderedAsync(String name, String orderingKey, Object content);
+
+        /**
+         * 批量发布消息
+         * 整批一次写入存储后再逐条分发，适用于批量导出等场景
+         * 
+         * @param name     消息名称/主题
+         * @param payloads 消息内容列表
+         * @return 消息ID列表（与内容顺序一致）
+         */
+        List<Long> publishBatch(String name, List<?> payloads);
+
+        /**
+         * 批量发布消息到指定组
+         * 
+         * @param name     消息名称/主题
+         * @param payloads 消息内容列表
+         * @param group    消息组
+         * @return 消息ID列表（与内容顺序一致）
+         */
+        List<Long> publishBatch(String name, List<?> payloads, String group);
+
+        /**
+         * 异步批量发布消息
+         * 
+         * @param name     消息名称/主题
+         * @param payloads 消息内容列表
+         * @return 消息ID列表的Future
+         */
+        CompletableFuture<List<Long>> publishBatchAsync(String name, List<?> payloads);
+
+        /**
+         * 异步批量发布消息到指定组
+         * 
+         * @param name     消息名称/主题
+         * @param payloads 消息内容列表
+         * @param group    消息组
+         * @return 消息ID列表的Future
+         */
+        CompletableFuture<List<Long>> publishBatchAsync(String name, List<?> payloads, String group);
+
         /**
          * 发布延迟消息
          * 
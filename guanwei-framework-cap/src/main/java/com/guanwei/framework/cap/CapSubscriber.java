@@ -1,5 +1,6 @@
 package com.guanwei.framework.cap;
 
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -44,6 +45,29 @@ public interface CapSubscriber {
      */
     <T> void subscribe(String name, String group, MessageHandler<T> handler);
 
+    /**
+     * 批量订阅消息到指定组
+     * 消息按批交付，单批最多 maxBatchSize 条，收到首条后最多再等待 maxWaitMillis 凑批；
+     * 整批共用一次去重标记和一次状态更新
+     * 
+     * @param name          消息名称/主题
+     * @param group         消息组
+     * @param maxBatchSize  单批最大消息数
+     * @param maxWaitMillis 凑批最长等待时间（毫秒）
+     * @param handler       批量消息处理器
+     */
+    void subscribeBatch(String name, String group, int maxBatchSize, long maxWaitMillis, BatchMessageHandler handler);
+
+    /**
+     * 设置单个订阅的拉取参数，需在订阅前调用；取消订阅后恢复全局配置
+     * 
+     * @param name              消息名称/主题
+     * @param group             消息组
+     * @param pollTimeoutMillis 拉取等待超时（毫秒），不大于 0 时使用全局配置
+     * @param concurrency       同时处理中的消息上限，小于 0 时使用全局配置，0 表示不单独限制
+     */
+    void configure(String name, String group, long pollTimeoutMillis, int concurrency);
+
     /**
      * 取消订阅
      * 
@@ -74,4 +98,17 @@ public interface CapSubscriber {
          */
         T handle(CapMessage message);
     }
+
+    /**
+     * 批量消息处理器接口
+     */
+    @FunctionalInterface
+    interface BatchMessageHandler {
+        /**
+         * 处理一批消息，抛出异常时整批按失败处理
+         * 
+         * @param messages 消息列表
+         */
+        void handle(List<CapMessage> messages);
+    }
 }
\ No newline at end of file
@@ -51,6 +51,27 @@ public @interface CapSubscribe {
      */
     MessageType messageType() default MessageType.NORMAL;
 
+    /**
+     * 单批最大消息数
+     * 大于 1 且方法唯一参数为 List&lt;T&gt; / List&lt;CapMessage&gt; 时按批交付，否则逐条交付
+     */
+    int maxBatchSize() default 1;
+
+    /**
+     * 凑批最长等待时间（毫秒），从收到本批首条消息开始计算
+     */
+    long maxWaitMillis() default 100;
+
+    /**
+     * 拉取循环等待消息的超时时间（毫秒），不大于 0 时使用 cap.consumer-poll-timeout
+     */
+    long pollTimeoutMillis() default -1;
+
+    /**
+     * 本订阅同时处理中的消息上限，小于 0 时使用 cap.consumer-concurrency，0 表示不单独限制
+     */
+    int concurrency() default -1;
+
     /**
      * 消息类型枚举
      */
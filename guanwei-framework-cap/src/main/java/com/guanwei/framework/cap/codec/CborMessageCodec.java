@@ -0,0 +1,21 @@
+package com.guanwei.framework.cap.codec;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * CBOR 二进制编解码（RFC 8949），便于与其他语言的消费方互通
+ */
+public class CborMessageCodec extends JacksonMessageCodec {
+
+    public static final String NAME = "cbor";
+    public static final String CONTENT_TYPE = "application/cbor";
+
+    public CborMessageCodec() {
+        super(NAME, CONTENT_TYPE, new CBORFactory());
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+}
@@ -0,0 +1,60 @@
+package com.guanwei.framework.cap.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于 Jackson 数据格式的编解码基类，按目标类型缓存 ObjectReader
+ */
+public abstract class JacksonMessageCodec implements MessageCodec {
+
+    private final String name;
+    private final String contentType;
+    private final ObjectMapper objectMapper;
+    private final Map<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    protected JacksonMessageCodec(String name, String contentType, JsonFactory factory) {
+        this.name = name;
+        this.contentType = contentType;
+        this.objectMapper = new ObjectMapper(factory);
+        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.objectMapper.registerModule(new JavaTimeModule());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        return objectMapper.writeValueAsBytes(value);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, Type type) throws IOException {
+        ObjectReader reader = readers.computeIfAbsent(type,
+                t -> objectMapper.readerFor(objectMapper.getTypeFactory().constructType(t)));
+        return reader.readValue(data);
+    }
+}
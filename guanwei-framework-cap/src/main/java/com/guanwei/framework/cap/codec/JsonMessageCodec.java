@@ -0,0 +1,21 @@
+package com.guanwei.framework.cap.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+/**
+ * JSON 编解码（默认），内容以字符串存放在 CapMessage.content 中，与原有格式兼容
+ */
+public class JsonMessageCodec extends JacksonMessageCodec {
+
+    public static final String NAME = "json";
+    public static final String CONTENT_TYPE = "application/json";
+
+    public JsonMessageCodec() {
+        super(NAME, CONTENT_TYPE, new JsonFactory());
+    }
+
+    @Override
+    public boolean isBinary() {
+        return false;
+    }
+}
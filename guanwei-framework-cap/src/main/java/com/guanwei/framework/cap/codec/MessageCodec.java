@@ -0,0 +1,47 @@
+package com.guanwei.framework.cap.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * 消息内容编解码 SPI
+ * 内置 json、smile、cbor 三种实现；自定义实现通过 META-INF/services/com.guanwei.framework.cap.codec.MessageCodec 注册，
+ * 由 {@link MessageCodecs} 按名称或 content-type 查找
+ */
+public interface MessageCodec {
+
+    /**
+     * 编解码名称，对应配置项 cap.message-codec
+     */
+    String getName();
+
+    /**
+     * 编码结果的 content-type，随消息头 {@code cap-content-type} 传递给消费方
+     */
+    String getContentType();
+
+    /**
+     * 是否为二进制编码；二进制内容以 byte[] 存放在 CapMessage.payload 中，存储为 BLOB
+     */
+    boolean isBinary();
+
+    /**
+     * 同一格式的 ObjectMapper，队列用它编码整个 CapMessage，使内容无需再次转义
+     */
+    ObjectMapper getObjectMapper();
+
+    /**
+     * 编码消息内容
+     */
+    byte[] encode(Object value) throws IOException;
+
+    /**
+     * 解码消息内容
+     *
+     * @param data 编码后的内容
+     * @param type 目标类型
+     */
+    <T> T decode(byte[] data, Type type) throws IOException;
+}
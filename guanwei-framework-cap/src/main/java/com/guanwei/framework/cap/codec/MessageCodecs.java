@@ -0,0 +1,150 @@
+package com.guanwei.framework.cap.codec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.guanwei.framework.cap.CapMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 编解码注册表
+ * 内置 json、smile、cbor，并通过 ServiceLoader 加载自定义 {@link MessageCodec}；
+ * 发布方按名称选择编解码，消费方按消息头 cap-content-type 选择，缺失时视为 JSON
+ */
+@Slf4j
+public final class MessageCodecs {
+
+    private static final MessageCodec JSON = new JsonMessageCodec();
+    private static final Map<String, MessageCodec> BY_NAME = new ConcurrentHashMap<>();
+    private static final Map<String, MessageCodec> BY_CONTENT_TYPE = new ConcurrentHashMap<>();
+
+    static {
+        register(JSON);
+        register(new SmileMessageCodec());
+        register(new CborMessageCodec());
+        try {
+            for (MessageCodec codec : ServiceLoader.load(MessageCodec.class)) {
+                register(codec);
+            }
+        } catch (Throwable e) {
+            log.warn("Failed to load custom message codecs: {}", e.toString());
+        }
+    }
+
+    private MessageCodecs() {
+    }
+
+    /**
+     * 注册编解码，同名或同 content-type 的后注册者覆盖先注册者
+     */
+    public static void register(MessageCodec codec) {
+        BY_NAME.put(codec.getName().toLowerCase(), codec);
+        BY_CONTENT_TYPE.put(codec.getContentType().toLowerCase(), codec);
+    }
+
+    /**
+     * 默认的 JSON 编解码
+     */
+    public static MessageCodec json() {
+        return JSON;
+    }
+
+    /**
+     * 按名称查找，未知名称退回 JSON
+     */
+    public static MessageCodec get(String name) {
+        if (name == null || name.isEmpty()) {
+            return JSON;
+        }
+        MessageCodec codec = BY_NAME.get(name.toLowerCase());
+        if (codec == null) {
+            log.warn("Unknown message codec: {}, using json", name);
+            return JSON;
+        }
+        return codec;
+    }
+
+    /**
+     * 按 content-type 查找（忽略 ;charset 等参数），缺失时为 JSON，未知时返回 null
+     */
+    public static MessageCodec forContentType(String contentType) {
+        if (contentType == null || contentType.isEmpty()) {
+            return JSON;
+        }
+        int separator = contentType.indexOf(';');
+        String mediaType = (separator >= 0 ? contentType.substring(0, separator) : contentType).trim().toLowerCase();
+        return BY_CONTENT_TYPE.get(mediaType);
+    }
+
+    /**
+     * 按消息头选择消息的编解码
+     */
+    public static MessageCodec of(CapMessage message) {
+        MessageCodec codec = forContentType(message.getContentType());
+        return codec != null ? codec : JSON;
+    }
+
+    /**
+     * 按编解码写入消息内容：字符串视为调用方已编码好的 JSON 原样保存；
+     * 其他对象由 JSON 编解码写入 content，二进制编解码写入 payload 并设置 cap-content-type
+     */
+    public static void writeContent(CapMessage message, Object content, MessageCodec codec) throws IOException {
+        if (content == null || content instanceof String) {
+            message.setContent((String) content);
+            message.setPayload(null);
+            return;
+        }
+        if (codec.isBinary()) {
+            message.setPayload(codec.encode(content));
+            message.setContent(null);
+            message.setHeader(CapMessage.CONTENT_TYPE_HEADER, codec.getContentType());
+        } else {
+            message.setContent(new String(codec.encode(content), StandardCharsets.UTF_8));
+            message.setPayload(null);
+        }
+    }
+
+    /**
+     * 将消息内容解码为指定类型，内容为空时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T readContent(CapMessage message, Type type) throws IOException {
+        byte[] payload = message.getPayload();
+        if (payload != null && payload.length > 0) {
+            MessageCodec codec = of(message);
+            if (type == String.class && codec.isBinary()) {
+                return (T) contentAsString(message);
+            }
+            return codec.decode(payload, type);
+        }
+        String content = message.getContent();
+        if (content == null || content.isEmpty()) {
+            return null;
+        }
+        if (type == String.class) {
+            return (T) content;
+        }
+        return JSON.decode(content.getBytes(StandardCharsets.UTF_8), type);
+    }
+
+    /**
+     * 以 JSON 文本返回消息内容：JSON 内容直接返回，二进制内容转为等价的 JSON 文本
+     */
+    public static String contentAsString(CapMessage message) throws IOException {
+        byte[] payload = message.getPayload();
+        if (payload == null || payload.length == 0) {
+            return message.getContent();
+        }
+        MessageCodec codec = of(message);
+        if (!codec.isBinary()) {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+        JsonNode tree = codec.decode(payload, JsonNode.class);
+        return JSON.getObjectMapper().writeValueAsString(tree);
+    }
+}
@@ -0,0 +1,21 @@
+package com.guanwei.framework.cap.codec;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Smile 二进制编解码（Jackson 的二进制 JSON），字段名和短字符串会共享引用，适合字段较多的实体
+ */
+public class SmileMessageCodec extends JacksonMessageCodec {
+
+    public static final String NAME = "smile";
+    public static final String CONTENT_TYPE = "application/x-jackson-smile";
+
+    public SmileMessageCodec() {
+        super(NAME, CONTENT_TYPE, new SmileFactory());
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+}
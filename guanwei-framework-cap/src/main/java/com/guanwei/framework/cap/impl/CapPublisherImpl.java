@@ -7,13 +7,23 @@ import com.guanwei.framework.cap.CapTransactionManager;
 import com.guanwei.framework.cap.queue.MessageQueue;
 import com.guanwei.framework.cap.processor.MessageDispatcher;
 import com.guanwei.framework.cap.CapTransaction;
+import com.guanwei.framework.cap.codec.MessageCodec;
+import com.guanwei.framework.cap.codec.MessageCodecs;
 import com.guanwei.framework.cap.storage.MessageStorage;
 import lombok.extern.slf4j.Slf4j;
 
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.guanwei.framework.cap.util.CapExecutors;
 import com.guanwei.framework.cap.util.MessageIdGenerator;
 
 /**
@@ -29,7 +39,13 @@ public class CapPublisherImpl implements CapPublisher {
     private final MessageStorage messageStorage;
     private final CapProperties capProperties;
     private final CapTransactionManager transactionManager;
-    // no-op
+    private final PublishGroupCommitter groupCommitter;
+    private final MessageCodec messageCodec;
+
+    /**
+     * 异步发布专用执行器：发布会阻塞等待存储与组提交，不能占用公共 ForkJoinPool
+     */
+    private final ExecutorService asyncExecutor;
 
     public CapPublisherImpl(MessageQueue messageQueue, MessageStorage messageStorage, 
                            CapProperties capProperties, CapTransactionManager transactionManager,
@@ -39,6 +55,32 @@ public class CapPublisherImpl implements CapPublisher {
         this.capProperties = capProperties;
         this.transactionManager = transactionManager;
         this.messageDispatcher = messageDispatcher;
+        this.groupCommitter = capProperties != null && capProperties.getPublishGroupCommitSize() > 1
+                ? new PublishGroupCommitter(messageStorage, capProperties.getPublishGroupCommitSize(),
+                        capProperties.getPublishGroupCommitWindowMicros())
+                : null;
+        this.messageCodec = MessageCodecs.get(capProperties != null ? capProperties.getMessageCodec() : null);
+        this.asyncExecutor = createAsyncExecutor(capProperties);
+    }
+
+    private static ExecutorService createAsyncExecutor(CapProperties capProperties) {
+        if (capProperties != null && CapExecutors.isVirtual(capProperties.getExecutorMode())) {
+            return CapExecutors.newVirtualTaskExecutor("cap-publish-async", capProperties.getVirtualMaxConcurrency());
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2), runnable -> {
+            Thread thread = new Thread(runnable, "cap-publish-async-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (groupCommitter != null) {
+            groupCommitter.stop();
+        }
+        asyncExecutor.shutdown();
     }
 
     @Override
@@ -67,30 +109,96 @@ public class CapPublisherImpl implements CapPublisher {
         return publishInternal(name, content, null, group, headers, false);
     }
 
+    @Override
+    public Long publishOrdered(String name, String orderingKey, Object content) {
+        return publishOrdered(name, orderingKey, content,
+                capProperties != null ? capProperties.getDefaultGroupName() : "default");
+    }
+
+    @Override
+    public Long publishOrdered(String name, String orderingKey, Object content, String group) {
+        if (orderingKey == null || orderingKey.isEmpty()) {
+            throw new IllegalArgumentException("Ordering key must not be empty");
+        }
+        Map<String, String> headers = new HashMap<>();
+        headers.put(CapMessage.ORDERING_KEY_HEADER, orderingKey);
+        return publishInternal(name, content, null, group, headers, false);
+    }
+
     @Override
     public CompletableFuture<Long> publishAsync(String name, Object content) {
-        return CompletableFuture.supplyAsync(() -> publish(name, content));
+        return CompletableFuture.supplyAsync(() -> publish(name, content), asyncExecutor);
     }
 
     @Override
     public CompletableFuture<Long> publishAsync(String name, Object content, String group) {
-        return CompletableFuture.supplyAsync(() -> publish(name, content, group));
+        return CompletableFuture.supplyAsync(() -> publish(name, content, group), asyncExecutor);
     }
 
     @Override
     public CompletableFuture<Long> publishAsync(String name, Object content, String callbackName, String group) {
-        return CompletableFuture.supplyAsync(() -> publish(name, content, callbackName, group));
+        return CompletableFuture.supplyAsync(() -> publish(name, content, callbackName, group), asyncExecutor);
     }
 
     @Override
     public CompletableFuture<Long> publishAsync(String name, Object content, Map<String, String> headers) {
-        return CompletableFuture.supplyAsync(() -> publish(name, content, headers));
+        return CompletableFuture.supplyAsync(() -> publish(name, content, headers), asyncExecutor);
     }
 
     @Override
     public CompletableFuture<Long> publishAsync(String name, Object content, Map<String, String> headers,
             String group) {
-        return CompletableFuture.supplyAsync(() -> publish(name, content, headers, group));
+        return CompletableFuture.supplyAsync(() -> publish(name, content, headers, group), asyncExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Long> publishOrderedAsync(String name, String orderingKey, Object content) {
+        return CompletableFuture.supplyAsync(() -> publishOrdered(name, orderingKey, content), asyncExecutor);
+    }
+
+    @Override
+    public List<Long> publishBatch(String name, List<?> payloads) {
+        return publishBatch(name, payloads, capProperties != null ? capProperties.getDefaultGroupName() : "default");
+    }
+
+    @Override
+    public List<Long> publishBatch(String name, List<?> payloads, String group) {
+        List<Long> ids = new ArrayList<>(payloads.size());
+        if (payloads.isEmpty()) {
+            return ids;
+        }
+        try {
+            List<CapMessage> messages = new ArrayList<>(payloads.size());
+            for (Object payload : payloads) {
+                CapMessage capMessage = createMessage(name, payload, group, null, null);
+                messages.add(capMessage);
+                ids.add(capMessage.getId());
+            }
+
+            // 整批一次写入存储，再逐条交给分发器
+            List<CapMessage> storedMessages = messageStorage.storeMessagesAsync(messages).get();
+            if (storedMessages == null || storedMessages.size() != messages.size()) {
+                throw new RuntimeException("Failed to store message batch");
+            }
+            for (CapMessage capMessage : messages) {
+                messageDispatcher.enqueueToPublish(capMessage);
+            }
+            log.info("Enqueued batch of {} messages for publish: {}", messages.size(), name);
+            return ids;
+        } catch (Exception e) {
+            log.error("Error publishing batch of {} messages: {} to group: {}", payloads.size(), name, group, e);
+            throw new RuntimeException("Failed to publish message batch", e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<Long>> publishBatchAsync(String name, List<?> payloads) {
+        return CompletableFuture.supplyAsync(() -> publishBatch(name, payloads), asyncExecutor);
+    }
+
+    @Override
+    public CompletableFuture<List<Long>> publishBatchAsync(String name, List<?> payloads, String group) {
+        return CompletableFuture.supplyAsync(() -> publishBatch(name, payloads, group), asyncExecutor);
     }
 
     @Override
@@ -123,30 +231,30 @@ public class CapPublisherImpl implements CapPublisher {
 
     @Override
     public CompletableFuture<Long> publishDelayAsync(String name, Object content, long delaySeconds) {
-        return CompletableFuture.supplyAsync(() -> publishDelay(name, content, delaySeconds));
+        return CompletableFuture.supplyAsync(() -> publishDelay(name, content, delaySeconds), asyncExecutor);
     }
 
     @Override
     public CompletableFuture<Long> publishDelayAsync(String name, Object content, String group, long delaySeconds) {
-        return CompletableFuture.supplyAsync(() -> publishDelay(name, content, group, delaySeconds));
+        return CompletableFuture.supplyAsync(() -> publishDelay(name, content, group, delaySeconds), asyncExecutor);
     }
 
     @Override
     public CompletableFuture<Long> publishDelayAsync(String name, Object content, String callbackName, String group,
             long delaySeconds) {
-        return CompletableFuture.supplyAsync(() -> publishDelay(name, content, callbackName, group, delaySeconds));
+        return CompletableFuture.supplyAsync(() -> publishDelay(name, content, callbackName, group, delaySeconds), asyncExecutor);
     }
 
     @Override
     public CompletableFuture<Long> publishDelayAsync(String name, Object content, Map<String, String> headers,
             long delaySeconds) {
-        return CompletableFuture.supplyAsync(() -> publishDelay(name, content, headers, delaySeconds));
+        return CompletableFuture.supplyAsync(() -> publishDelay(name, content, headers, delaySeconds), asyncExecutor);
     }
 
     @Override
     public CompletableFuture<Long> publishDelayAsync(String name, Object content, Map<String, String> headers,
             String group, long delaySeconds) {
-        return CompletableFuture.supplyAsync(() -> publishDelay(name, content, headers, group, delaySeconds));
+        return CompletableFuture.supplyAsync(() -> publishDelay(name, content, headers, group, delaySeconds), asyncExecutor);
     }
 
     @Override
@@ -177,30 +285,30 @@ public class CapPublisherImpl implements CapPublisher {
 
     @Override
     public CompletableFuture<Long> publishTransactionalAsync(String name, Object content) {
-        return CompletableFuture.supplyAsync(() -> publishTransactional(name, content));
+        return CompletableFuture.supplyAsync(() -> publishTransactional(name, content), asyncExecutor);
     }
 
     @Override
     public CompletableFuture<Long> publishTransactionalAsync(String name, Object content, String group) {
-        return CompletableFuture.supplyAsync(() -> publishTransactional(name, content, group));
+        return CompletableFuture.supplyAsync(() -> publishTransactional(name, content, group), asyncExecutor);
     }
 
     @Override
     public CompletableFuture<Long> publishTransactionalAsync(String name, Object content, String callbackName,
             String group) {
-        return CompletableFuture.supplyAsync(() -> publishTransactional(name, content, callbackName, group));
+        return CompletableFuture.supplyAsync(() -> publishTransactional(name, content, callbackName, group), asyncExecutor);
     }
 
     @Override
     public CompletableFuture<Long> publishTransactionalAsync(String name, Object content,
             Map<String, String> headers) {
-        return CompletableFuture.supplyAsync(() -> publishTransactional(name, content, headers));
+        return CompletableFuture.supplyAsync(() -> publishTransactional(name, content, headers), asyncExecutor);
     }
 
     @Override
     public CompletableFuture<Long> publishTransactionalAsync(String name, Object content, Map<String, String> headers,
             String group) {
-        return CompletableFuture.supplyAsync(() -> publishTransactional(name, content, headers, group));
+        return CompletableFuture.supplyAsync(() -> publishTransactional(name, content, headers, group), asyncExecutor);
     }
 
     /**
@@ -217,27 +325,8 @@ public class CapPublisherImpl implements CapPublisher {
     private Long publishInternal(String name, Object content, String callbackName, String group,
             Map<String, String> headers, boolean transactional, Long delaySeconds) {
         try {
-            // 生成消息ID（使用雪花算法避免重复）
-            Long messageId = MessageIdGenerator.getInstance().nextId();
-
-            // 创建CAP消息并统一使用 messageId 作为对外可见的消息ID
-            CapMessage capMessage = new CapMessage(name, content);
-            capMessage.setDbId(messageId);
-            capMessage.setGroup(group);
-            capMessage.setStatus(CapMessageStatus.SCHEDULED);
-            capMessage.setRetries(0);
-            capMessage.setAdded(LocalDateTime.now());
-            capMessage.setVersion("v1");
-
-            // 设置延迟时间
-            if (delaySeconds != null) {
-                capMessage.setExpiresAt(LocalDateTime.now().plusSeconds(delaySeconds));
-            }
-
-            // 设置消息头
-            if (headers != null) {
-                capMessage.setHeaders(new HashMap<>(headers));
-            }
+            CapMessage capMessage = createMessage(name, content, group, headers, delaySeconds);
+            Long messageId = capMessage.getId();
 
             // 构建队列名称（用于直接队列路径时）
             String queueName = buildQueueName(name, group); // 保留计算结果以便日志或扩展使用
@@ -287,7 +376,10 @@ public class CapPublisherImpl implements CapPublisher {
             } else {
                 // 存储消息
                 try {
-                    CapMessage storedMessage = messageStorage.storeMessageAsync(name, capMessage, null).get();
+                    // 开启组提交时与并发的其他发布合并为一次批量写入
+                    CapMessage storedMessage = groupCommitter != null
+                            ? groupCommitter.submit(capMessage).get()
+                            : messageStorage.storeMessageAsync(name, capMessage, null).get();
                     if (storedMessage == null) {
                         throw new RuntimeException("Failed to store message");
                     }
@@ -312,6 +404,38 @@ public class CapPublisherImpl implements CapPublisher {
         }
     }
 
+    /**
+     * 创建待发布的CAP消息，统一使用雪花算法生成的 messageId 作为对外可见的消息ID
+     */
+    private CapMessage createMessage(String name, Object content, String group,
+            Map<String, String> headers, Long delaySeconds) {
+        CapMessage capMessage = new CapMessage(name, content);
+        capMessage.setDbId(MessageIdGenerator.getInstance().nextId());
+        capMessage.setGroup(group);
+        capMessage.setStatus(CapMessageStatus.SCHEDULED);
+        capMessage.setRetries(0);
+        capMessage.setAdded(LocalDateTime.now());
+        capMessage.setVersion("v1");
+
+        // 设置延迟时间
+        if (delaySeconds != null) {
+            capMessage.setExpiresAt(LocalDateTime.now().plusSeconds(delaySeconds));
+        }
+
+        // 设置消息头
+        if (headers != null) {
+            capMessage.setHeaders(new HashMap<>(headers));
+        }
+
+        // 按配置的编解码写入内容，二进制编码同时设置 cap-content-type 消息头
+        try {
+            MessageCodecs.writeContent(capMessage, content, messageCodec);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to encode message content with codec: " + messageCodec.getName(), e);
+        }
+        return capMessage;
+    }
+
     /**
      * 构建队列名称
      * 参考 GitHub CAP 源码：routeKey + "." + groupName
@@ -6,15 +6,20 @@ import com.guanwei.framework.cap.CapSubscriber;
 import com.guanwei.framework.cap.queue.CapQueueManager;
 import com.guanwei.framework.cap.queue.MessageQueue;
 import com.guanwei.framework.cap.storage.MessageStorage;
+import com.guanwei.framework.cap.util.CapExecutors;
 import lombok.extern.slf4j.Slf4j;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import com.guanwei.framework.cap.CapMessageStatus;
 
 /**
@@ -31,11 +36,49 @@ public class CapSubscriberImpl implements CapSubscriber {
     private final CapQueueManager capQueueManager;
     private com.guanwei.framework.cap.storage.DedupStorage dedupStorage;
 
+    /**
+     * 未配置时拉取等待首条消息的超时时间（毫秒），队列空闲时在此阻塞而不是空转
+     */
+    private static final long RECEIVE_TIMEOUT_MILLIS = 100;
+
+    /**
+     * 拉取额度用尽时的重试间隔（毫秒）
+     */
+    private static final long POLL_INTERVAL_MILLIS = 10;
+
+    /**
+     * 未配置时的默认线程数与本地队列容量
+     */
+    private static final int DEFAULT_CONSUMER_THREADS = 4;
+    private static final int DEFAULT_CONSUMER_QUEUE_CAPACITY = 1000;
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
     private final Map<String, Consumer<CapMessage>> handlers = new ConcurrentHashMap<>();
     private final Map<String, CapSubscriber.MessageHandler<?>> typedHandlers = new ConcurrentHashMap<>();
+    private final Map<String, BatchSubscription> batchHandlers = new ConcurrentHashMap<>();
+
+    /**
+     * 处理器键 -> 订阅（消息名称、消息组及其拉取参数）
+     */
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
     private ExecutorService consumerExecutor;
     private ScheduledExecutorService scheduler;
     private volatile boolean running = true;
+    private volatile boolean started = false;
+
+    /**
+     * 每个订阅（消息名称 + 消息组）一个拉取循环，空闲队列的等待不会拖慢其他订阅
+     */
+    private final Map<String, ConsumerLoop> consumerLoops = new ConcurrentHashMap<>();
+
+    /**
+     * 拉取额度：每条已拉取但未处理完成的消息占用一个额度，额度用尽时暂停拉取
+     */
+    private volatile Semaphore credits;
+    private volatile int creditLimit;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
 
     public CapSubscriberImpl(MessageStorage messageStorage, MessageQueue messageQueue,
             CapProperties capProperties, CapQueueManager capQueueManager) {
@@ -45,7 +88,8 @@ public class CapSubscriberImpl implements CapSubscriber {
         this.capQueueManager = capQueueManager;
 
         // 初始化默认线程池，在@PostConstruct中重新配置
-        this.consumerExecutor = Executors.newFixedThreadPool(4);
+        this.consumerExecutor = newConsumerPool(DEFAULT_CONSUMER_THREADS, DEFAULT_CONSUMER_QUEUE_CAPACITY);
+        resetCredits(DEFAULT_CONSUMER_THREADS + DEFAULT_CONSUMER_QUEUE_CAPACITY);
         this.scheduler = Executors.newScheduledThreadPool(1);
     }
 
@@ -73,23 +117,18 @@ public class CapSubscriberImpl implements CapSubscriber {
                     }
                 }
 
-                // 创建新的线程池
+                // 创建新的线程池，virtual 模式下每条消息一个虚拟线程，并发数由信号量限制；
+                // 拉取额度与线程池容量一致，保证提交不会被拒绝
                 int consumerThreads = capProperties.getConsumerThreadCount();
-                consumerExecutor = new ThreadPoolExecutor(
-                        consumerThreads,
-                        consumerThreads,
-                        0L, TimeUnit.MILLISECONDS,
-                        new LinkedBlockingQueue<>(),
-                        Executors.defaultThreadFactory(),
-                        new ThreadPoolExecutor.CallerRunsPolicy());
-
-                // 启动消息消费调度器
-                long pollInterval = 1000; // 可根据需要改为capProperties.getCollectorCleaningInterval()或自定义字段
-                scheduler.scheduleWithFixedDelay(
-                        this::consumeMessages,
-                        0,
-                        pollInterval,
-                        TimeUnit.MILLISECONDS);
+                if (CapExecutors.isVirtual(capProperties.getExecutorMode())) {
+                    consumerThreads = capProperties.getVirtualMaxConcurrency();
+                    consumerExecutor = CapExecutors.newVirtualTaskExecutor("cap-consumer", consumerThreads);
+                    resetCredits(consumerThreads);
+                } else {
+                    int queueCapacity = Math.max(1, capProperties.getConsumerQueueCapacity());
+                    consumerExecutor = newConsumerPool(consumerThreads, queueCapacity);
+                    resetCredits(consumerThreads + queueCapacity);
+                }
 
                 // 启动清理过期消息的调度器
                 long cleanupInterval = capProperties.getCollectorCleaningInterval();
@@ -99,29 +138,75 @@ public class CapSubscriberImpl implements CapSubscriber {
                         cleanupInterval,
                         TimeUnit.SECONDS);
 
-                log.info("CAP Subscriber started with {} consumer threads, poll interval: {}ms",
-                        consumerThreads, pollInterval);
+                log.info("CAP Subscriber started with {} consumer threads, poll timeout: {}ms",
+                        consumerThreads, pollTimeout());
             } else {
                 log.warn("CAP Properties not available, using default configuration");
-
-                // 使用默认配置
-                scheduler.scheduleWithFixedDelay(
-                        this::consumeMessages,
-                        0,
-                        1000, // 1秒轮询间隔
-                        TimeUnit.MILLISECONDS);
             }
+
+            // 为已注册的订阅启动拉取循环，之后的订阅在注册时启动
+            started = true;
+            startConsumerLoops();
         } catch (Exception e) {
             log.error("Failed to start CAP Subscriber", e);
             throw new RuntimeException("Failed to start CAP Subscriber", e);
         }
     }
 
+    /**
+     * 有界的消费线程池，队列满时拒绝（由拉取额度保证正常情况下不会发生）
+     */
+    private static ExecutorService newConsumerPool(int threads, int queueCapacity) {
+        return new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                Executors.defaultThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private void resetCredits(int limit) {
+        this.creditLimit = limit;
+        this.credits = new Semaphore(limit);
+    }
+
+    /**
+     * 已拉取但尚未处理完成的消息数（含正在执行的）
+     */
+    public int getBufferedMessageCount() {
+        return creditLimit - credits.availablePermits();
+    }
+
+    /**
+     * 剩余拉取额度
+     */
+    public int getAvailableCredits() {
+        return credits.availablePermits();
+    }
+
+    /**
+     * 被消费线程池拒绝并退回消息队列的消息数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 因额度用尽而跳过拉取的次数
+     */
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
     @PreDestroy
     public void stop() {
         log.info("Stopping CAP Subscriber...");
         running = false;
 
+        // 先停止拉取，拉取循环在一个拉取超时内自行退出
+        stopConsumerLoops();
+
         if (consumerExecutor != null) {
             consumerExecutor.shutdown();
         }
@@ -161,6 +246,7 @@ public class CapSubscriberImpl implements CapSubscriber {
 
         // 确保队列存在并正确绑定
         ensureQueueExists(name, group);
+        startConsumerLoop(register(name, group));
 
         log.info("Subscribed to message: {} (group: {})", name, group);
     }
@@ -177,10 +263,37 @@ public class CapSubscriberImpl implements CapSubscriber {
 
         // 确保队列存在并正确绑定
         ensureQueueExists(name, group);
+        startConsumerLoop(register(name, group));
 
         log.info("Subscribed to typed message: {} (group: {})", name, group);
     }
 
+    @Override
+    public void subscribeBatch(String name, String group, int maxBatchSize, long maxWaitMillis,
+            CapSubscriber.BatchMessageHandler handler) {
+        String key = buildHandlerKey(name, group);
+        batchHandlers.put(key, new BatchSubscription(handler, Math.max(1, maxBatchSize), Math.max(0, maxWaitMillis)));
+
+        // 确保队列存在并正确绑定
+        ensureQueueExists(name, group);
+        startConsumerLoop(register(name, group));
+
+        log.info("Subscribed to message batches: {} (group: {}, maxBatchSize: {}, maxWaitMillis: {})",
+                name, group, maxBatchSize, maxWaitMillis);
+    }
+
+    @Override
+    public void configure(String name, String group, long pollTimeoutMillis, int concurrency) {
+        subscriptions.put(buildHandlerKey(name, group), new Subscription(name, group, pollTimeoutMillis, concurrency));
+    }
+
+    /**
+     * 登记订阅，已通过 configure 设置拉取参数时保留
+     */
+    private Subscription register(String name, String group) {
+        return subscriptions.computeIfAbsent(buildHandlerKey(name, group), key -> new Subscription(name, group, -1, -1));
+    }
+
     @Override
     public void unsubscribe(String name) {
         unsubscribe(name, capProperties != null ? capProperties.getDefaultGroupName() : "default");
@@ -191,6 +304,9 @@ public class CapSubscriberImpl implements CapSubscriber {
         String key = buildHandlerKey(name, group);
         handlers.remove(key);
         typedHandlers.remove(key);
+        batchHandlers.remove(key);
+        subscriptions.remove(key);
+        stopConsumerLoop(key);
         log.info("Unsubscribed from message: {} (group: {})", name, group);
     }
 
@@ -211,88 +327,208 @@ public class CapSubscriberImpl implements CapSubscriber {
         } catch (Exception e) {
             log.error("Failed to ensure queue exists for message: {} (group: {})", messageName, group, e);
         }
+
+        messageQueue.bind(buildQueueName(messageName, group), messageName);
+    }
+
+    /**
+     * 为已注册的全部订阅启动拉取循环
+     */
+    private void startConsumerLoops() {
+        for (Subscription subscription : subscriptions.values()) {
+            String key = buildHandlerKey(subscription.name, subscription.group);
+            if (handlers.containsKey(key) || typedHandlers.containsKey(key) || batchHandlers.containsKey(key)) {
+                startConsumerLoop(subscription);
+            }
+        }
     }
 
     /**
-     * 消费消息
+     * 启动订阅的拉取循环（已存在时忽略），订阅者未启动时等待 start() 统一启动
      */
-    private void consumeMessages() {
-        if (!running) {
+    private void startConsumerLoop(Subscription subscription) {
+        if (!started || !running) {
             return;
         }
+        String name = subscription.name;
+        String group = subscription.group;
+        consumerLoops.computeIfAbsent(buildHandlerKey(name, group), key -> {
+            int concurrency = subscription.concurrency >= 0 ? subscription.concurrency
+                    : capProperties != null ? capProperties.getConsumerConcurrency() : 0;
+            long pollTimeout = subscription.pollTimeoutMillis > 0 ? subscription.pollTimeoutMillis : pollTimeout();
+            ConsumerLoop loop = new ConsumerLoop(key, name, group, buildQueueName(name, group), pollTimeout,
+                    concurrency > 0 ? new Semaphore(concurrency) : null);
+            Thread thread = new Thread(loop, "cap-consumer-" + loop.queueName);
+            thread.setDaemon(true);
+            loop.thread = thread;
+            thread.start();
+            log.info("Started consumer loop for {} (group: {}, queue: {}, poll timeout: {}ms, concurrency: {})",
+                    name, group, loop.queueName, pollTimeout, concurrency);
+            return loop;
+        });
+    }
 
-        try {
-            // 处理所有注册的处理器
-            handlers.forEach((key, handler) -> {
-                String[] parts = key.split(":");
-                String name = parts[0];
-                String group = parts[1];
+    private void stopConsumerLoop(String key) {
+        ConsumerLoop loop = consumerLoops.remove(key);
+        if (loop != null) {
+            loop.active = false;
+        }
+    }
 
-                consumeMessagesForHandler(name, group, handler);
-            });
+    private void stopConsumerLoops() {
+        List<ConsumerLoop> loops = new ArrayList<>(consumerLoops.values());
+        consumerLoops.clear();
+        for (ConsumerLoop loop : loops) {
+            loop.active = false;
+        }
+        for (ConsumerLoop loop : loops) {
+            try {
+                loop.thread.join(loop.pollTimeout + TimeUnit.SECONDS.toMillis(5));
+                if (loop.thread.isAlive()) {
+                    log.warn("Consumer loop for queue {} did not stop in time, interrupting", loop.queueName);
+                    loop.thread.interrupt();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                loop.thread.interrupt();
+            }
+        }
+    }
 
-            // 处理带类型的处理器
-            typedHandlers.forEach((key, handler) -> {
-                String[] parts = key.split(":");
-                String name = parts[0];
-                String group = parts[1];
+    /**
+     * 拉取一轮消息，返回是否因额度用尽而未拉取
+     */
+    private boolean consumeMessages(ConsumerLoop loop) {
+        boolean throttled = false;
 
-                consumeMessagesForTypedHandler(name, group, handler);
-            });
-        } catch (Exception e) {
-            log.error("Error in consumeMessages", e);
+        Consumer<CapMessage> handler = handlers.get(loop.key);
+        if (handler != null) {
+            throttled |= !consumeMessagesForHandler(loop, handler);
         }
+
+        // 处理带类型的处理器
+        CapSubscriber.MessageHandler<?> typedHandler = typedHandlers.get(loop.key);
+        if (typedHandler != null) {
+            throttled |= !consumeMessagesForTypedHandler(loop, typedHandler);
+        }
+
+        // 处理批量处理器
+        BatchSubscription subscription = batchHandlers.get(loop.key);
+        if (subscription != null) {
+            throttled |= !consumeMessagesForBatchHandler(loop, subscription);
+        }
+        return throttled;
     }
 
     /**
-     * 为指定处理器消费消息
+     * 本轮可拉取的消息数：不超过批大小、剩余拉取额度和本订阅的剩余并发额度
      */
-    private void consumeMessagesForHandler(String name, String group, Consumer<CapMessage> handler) {
-        String queueName = buildQueueName(name, group);
+    private int availableCredits(ConsumerLoop loop, int batchSize) {
+        int available = Math.min(batchSize, credits.availablePermits());
+        if (loop.permits != null) {
+            available = Math.min(available, loop.permits.availablePermits());
+        }
+        return available;
+    }
 
-        try {
-            int batchSize = capProperties.getSchedulerBatchSize();
-            List<CapMessage> messages = messageQueue.receiveBatch(
-                    queueName,
-                    batchSize,
-                    1000 // 1秒超时
-            );
-
-            for (CapMessage message : messages) {
-                processMessage(message, handler, queueName);
-            }
-        } catch (Exception e) {
-            log.error("Error consuming messages for {}:{}", name, group, e);
+    private int schedulerBatchSize() {
+        return capProperties != null ? capProperties.getSchedulerBatchSize() : DEFAULT_CONSUMER_QUEUE_CAPACITY;
+    }
+
+    private long pollTimeout() {
+        long timeout = capProperties != null ? capProperties.getConsumerPollTimeout() : 0;
+        return timeout > 0 ? timeout : RECEIVE_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * 为指定处理器消费消息
+     *
+     * @return 额度用尽未拉取时返回 false
+     */
+    private boolean consumeMessagesForHandler(ConsumerLoop loop, Consumer<CapMessage> handler) {
+        // 只拉取剩余额度内的消息，额度用尽时消息留在消息队列中
+        int batchSize = availableCredits(loop, schedulerBatchSize());
+        if (batchSize <= 0) {
+            return false;
+        }
+        List<CapMessage> messages = messageQueue.receiveBatch(
+                loop.queueName,
+                batchSize,
+                loop.pollTimeout
+        );
+
+        for (CapMessage message : messages) {
+            processMessage(loop, message, handler);
         }
+        return true;
     }
 
     /**
      * 为指定类型处理器消费消息
+     *
+     * @return 额度用尽未拉取时返回 false
      */
     @SuppressWarnings("unchecked")
-    private void consumeMessagesForTypedHandler(String name, String group, CapSubscriber.MessageHandler<?> handler) {
-        String queueName = buildQueueName(name, group);
+    private boolean consumeMessagesForTypedHandler(ConsumerLoop loop, CapSubscriber.MessageHandler<?> handler) {
+        // 只拉取剩余额度内的消息，额度用尽时消息留在消息队列中
+        int batchSize = availableCredits(loop, schedulerBatchSize());
+        if (batchSize <= 0) {
+            return false;
+        }
+        List<CapMessage> messages = messageQueue.receiveBatch(
+                loop.queueName,
+                batchSize,
+                loop.pollTimeout
+        );
+
+        for (CapMessage message : messages) {
+            processTypedMessage(loop, message, (CapSubscriber.MessageHandler<Object>) handler);
+        }
+        return true;
+    }
 
-        try {
-            int batchSize = capProperties.getSchedulerBatchSize();
-            List<CapMessage> messages = messageQueue.receiveBatch(
-                    queueName,
-                    batchSize,
-                    1000 // 1秒超时
-            );
-
-            for (CapMessage message : messages) {
-                processTypedMessage(message, (CapSubscriber.MessageHandler<Object>) handler, queueName);
+    /**
+     * 为指定批量处理器消费消息，收到首条消息后在 maxWaitMillis 内继续凑批
+     *
+     * @return 额度用尽未拉取时返回 false
+     */
+    private boolean consumeMessagesForBatchHandler(ConsumerLoop loop, BatchSubscription subscription) {
+        // 只拉取剩余额度内的消息，额度用尽时消息留在消息队列中
+        int batchSize = availableCredits(loop, subscription.maxBatchSize);
+        if (batchSize <= 0) {
+            return false;
+        }
+        List<CapMessage> messages = new ArrayList<>(messageQueue.receiveBatch(
+                loop.queueName,
+                batchSize,
+                loop.pollTimeout
+        ));
+        if (messages.isEmpty()) {
+            return true;
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(subscription.maxWaitMillis);
+        while (messages.size() < batchSize) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                break;
             }
-        } catch (Exception e) {
-            log.error("Error consuming typed messages for {}:{}", name, group, e);
+            List<CapMessage> more = messageQueue.receiveBatch(loop.queueName, batchSize - messages.size(), remaining);
+            if (more.isEmpty()) {
+                break;
+            }
+            messages.addAll(more);
         }
+
+        processBatch(loop, messages, subscription.handler);
+        return true;
     }
 
     /**
      * 处理消息
      */
-    private void processMessage(CapMessage message, Consumer<CapMessage> handler, String queueName) {
+    private void processMessage(ConsumerLoop loop, CapMessage message, Consumer<CapMessage> handler) {
+        String queueName = loop.queueName;
         if (consumerExecutor == null || consumerExecutor.isShutdown()) {
             log.warn("Consumer executor is not available, processing message synchronously");
             try {
@@ -305,7 +541,9 @@ public class CapSubscriberImpl implements CapSubscriber {
             return;
         }
 
-        consumerExecutor.submit(() -> {
+        submitWithCredit(loop, List.of(message), () -> {
+            boolean marked = false;
+            CompletableFuture<Void> retrying = DONE;
             try {
                 // 幂等去重：默认使用消息ID作为去重键
                 if (dedupStorage != null) {
@@ -316,20 +554,24 @@ public class CapSubscriberImpl implements CapSubscriber {
                         messageQueue.acknowledge(queueName, message.getId());
                         return;
                     }
+                    marked = true;
                 }
                 // 更新消息状态为重试中
-                messageStorage.updateStatusAsync(message.getId(), CapMessageStatus.RETRYING);
+                retrying = messageStorage.updateStatusAsync(message.getId(), CapMessageStatus.RETRYING);
 
                 // 执行处理器
                 handler.accept(message);
 
-                // 更新消息状态为成功
-                messageStorage.updateStatusAsync(message.getId(), CapMessageStatus.SUCCEEDED);
+                // 更新消息状态为成功，须在重试中状态写入之后
+                after(retrying, () -> messageStorage.updateStatusAsync(message.getId(), CapMessageStatus.SUCCEEDED));
                 messageQueue.acknowledge(queueName, message.getId());
 
             } catch (Exception e) {
                 log.error("Failed to process message: {}", message.getId(), e);
-                handleMessageError(message, queueName);
+                if (marked) {
+                    unmarkProcessed(List.of(message));
+                }
+                handleMessageError(message, queueName, retrying);
             }
         });
     }
@@ -337,8 +579,9 @@ public class CapSubscriberImpl implements CapSubscriber {
     /**
      * 处理类型消息
      */
-    private void processTypedMessage(CapMessage message, CapSubscriber.MessageHandler<Object> handler,
-            String queueName) {
+    private void processTypedMessage(ConsumerLoop loop, CapMessage message,
+            CapSubscriber.MessageHandler<Object> handler) {
+        String queueName = loop.queueName;
         if (consumerExecutor == null || consumerExecutor.isShutdown()) {
             log.warn("Consumer executor is not available, processing typed message synchronously");
             try {
@@ -352,7 +595,9 @@ public class CapSubscriberImpl implements CapSubscriber {
             return;
         }
 
-        consumerExecutor.submit(() -> {
+        submitWithCredit(loop, List.of(message), () -> {
+            boolean marked = false;
+            CompletableFuture<Void> retrying = DONE;
             try {
                 if (dedupStorage != null) {
                     String dedupKey = String.valueOf(message.getId());
@@ -362,9 +607,10 @@ public class CapSubscriberImpl implements CapSubscriber {
                         messageQueue.acknowledge(queueName, message.getId());
                         return;
                     }
+                    marked = true;
                 }
                 // 更新消息状态为重试中
-                messageStorage.updateStatusAsync(message.getId(), CapMessageStatus.RETRYING);
+                retrying = messageStorage.updateStatusAsync(message.getId(), CapMessageStatus.RETRYING);
 
                 // 执行处理器
                 Object result = handler.handle(message);
@@ -372,21 +618,197 @@ public class CapSubscriberImpl implements CapSubscriber {
                     log.debug("Typed handler result: {}", result);
                 }
 
-                // 更新消息状态为成功
-                messageStorage.updateStatusAsync(message.getId(), CapMessageStatus.SUCCEEDED);
+                // 更新消息状态为成功，须在重试中状态写入之后
+                after(retrying, () -> messageStorage.updateStatusAsync(message.getId(), CapMessageStatus.SUCCEEDED));
                 messageQueue.acknowledge(queueName, message.getId());
 
             } catch (Exception e) {
                 log.error("Failed to process typed message: {}", message.getId(), e);
-                handleMessageError(message, queueName);
+                if (marked) {
+                    unmarkProcessed(List.of(message));
+                }
+                handleMessageError(message, queueName, retrying);
+            }
+        });
+    }
+
+    /**
+     * 处理一批消息：整批一次去重标记、一次状态更新、一次处理器调用
+     */
+    private void processBatch(ConsumerLoop loop, List<CapMessage> messages,
+            CapSubscriber.BatchMessageHandler handler) {
+        String queueName = loop.queueName;
+        if (consumerExecutor == null || consumerExecutor.isShutdown()) {
+            log.warn("Consumer executor is not available, processing message batch synchronously");
+            try {
+                handler.handle(messages);
+                for (CapMessage message : messages) {
+                    messageQueue.acknowledge(queueName, message.getId());
+                }
+            } catch (Exception e) {
+                log.error("Failed to process batch of {} messages", messages.size(), e);
+                for (CapMessage message : messages) {
+                    handleMessageError(message, queueName);
+                }
+            }
+            return;
+        }
+
+        submitWithCredit(loop, messages, () -> {
+            List<CapMessage> batch = messages;
+            List<CapMessage> marked = List.of();
+            CompletableFuture<Void> retrying = DONE;
+            try {
+                // 幂等去重：整批一次标记，重复消息直接确认
+                if (dedupStorage != null) {
+                    List<String> dedupKeys = new ArrayList<>(messages.size());
+                    for (CapMessage message : messages) {
+                        dedupKeys.add(String.valueOf(message.getId()));
+                    }
+                    Set<String> first = dedupStorage.tryMarkProcessedBatch(dedupKeys, 24 * 3600);
+                    batch = new ArrayList<>(first.size());
+                    for (CapMessage message : messages) {
+                        if (first.contains(String.valueOf(message.getId()))) {
+                            batch.add(message);
+                        } else {
+                            log.info("Skip duplicated message: {}", message.getId());
+                            messageQueue.acknowledge(queueName, message.getId());
+                        }
+                    }
+                    if (batch.isEmpty()) {
+                        return;
+                    }
+                    marked = batch;
+                }
+                List<Long> ids = new ArrayList<>(batch.size());
+                for (CapMessage message : batch) {
+                    ids.add(message.getId());
+                }
+
+                // 整批更新消息状态为重试中
+                retrying = messageStorage.updateStatusBatchAsync(ids, CapMessageStatus.RETRYING);
+
+                // 执行处理器
+                handler.handle(batch);
+
+                // 整批更新消息状态为成功，须在重试中状态写入之后，否则可能被重试扫描再次取出
+                after(retrying, () -> messageStorage.updateStatusBatchAsync(ids, CapMessageStatus.SUCCEEDED));
+                for (CapMessage message : batch) {
+                    messageQueue.acknowledge(queueName, message.getId());
+                }
+
+            } catch (Exception e) {
+                log.error("Failed to process batch of {} messages, retrying them one by one", batch.size(), e);
+                retryOneByOne(queueName, batch, marked, handler, retrying);
             }
         });
     }
 
+    /**
+     * 整批失败后逐条重新调用处理器，只有自身失败的消息才撤销去重标记并进入错误处理，
+     * 单条异常消息不会拖累同批的其他消息
+     */
+    private void retryOneByOne(String queueName, List<CapMessage> batch, List<CapMessage> marked,
+            CapSubscriber.BatchMessageHandler handler, CompletableFuture<Void> retrying) {
+        if (batch.size() == 1) {
+            // 单条批次已经失败过一次，直接进入错误处理
+            unmarkProcessed(marked);
+            handleMessageError(batch.get(0), queueName, retrying);
+            return;
+        }
+        for (CapMessage message : batch) {
+            try {
+                handler.handle(List.of(message));
+                after(retrying, () -> messageStorage.updateStatusAsync(message.getId(), CapMessageStatus.SUCCEEDED));
+                messageQueue.acknowledge(queueName, message.getId());
+            } catch (Exception e) {
+                log.error("Failed to process message: {}", message.getId(), e);
+                if (!marked.isEmpty()) {
+                    unmarkProcessed(List.of(message));
+                }
+                handleMessageError(message, queueName, retrying);
+            }
+        }
+    }
+
+    /**
+     * 处理失败时撤销去重标记，否则重新投递的消息会被当作重复直接确认而丢失
+     */
+    private void unmarkProcessed(List<CapMessage> messages) {
+        if (dedupStorage == null || messages.isEmpty()) {
+            return;
+        }
+        List<String> dedupKeys = new ArrayList<>(messages.size());
+        for (CapMessage message : messages) {
+            dedupKeys.add(String.valueOf(message.getId()));
+        }
+        try {
+            dedupStorage.unmarkProcessed(dedupKeys);
+        } catch (Exception e) {
+            log.error("Failed to unmark {} dedup keys", dedupKeys.size(), e);
+        }
+    }
+
+    /**
+     * 按消息数占用拉取额度（及本订阅的并发额度）后提交到消费线程池，处理完成后归还额度
+     */
+    private void submitWithCredit(ConsumerLoop loop, List<CapMessage> messages, Runnable task) {
+        Semaphore permits = credits;
+        Semaphore subscriptionPermits = loop.permits;
+        int count = messages.size();
+        try {
+            // 多个订阅共享拉取额度，拉取后额度可能已被其他订阅占用，此时等待处理中的消息完成
+            permits.acquire(count);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            returnToQueue(messages, loop.queueName);
+            return;
+        }
+        // 本订阅的并发额度只在本订阅的拉取线程中占用，拉取前已检查，不会阻塞
+        if (subscriptionPermits != null) {
+            subscriptionPermits.acquireUninterruptibly(count);
+        }
+        try {
+            consumerExecutor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    release(permits, subscriptionPermits, count);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(permits, subscriptionPermits, count);
+            rejectedCount.addAndGet(count);
+            log.warn("Consumer executor rejected {} messages from queue {}", count, loop.queueName);
+            returnToQueue(messages, loop.queueName);
+        }
+    }
+
+    private static void release(Semaphore permits, Semaphore subscriptionPermits, int count) {
+        permits.release(count);
+        if (subscriptionPermits != null) {
+            subscriptionPermits.release(count);
+        }
+    }
+
+    private void returnToQueue(List<CapMessage> messages, String queueName) {
+        for (CapMessage message : messages) {
+            log.warn("Returning message {} to queue {}", message.getId(), queueName);
+            messageQueue.reject(queueName, message.getId(), true);
+        }
+    }
+
     /**
      * 处理消息错误
      */
     private void handleMessageError(CapMessage message, String queueName) {
+        handleMessageError(message, queueName, DONE);
+    }
+
+    /**
+     * 处理消息错误，状态在之前的重试中状态写入完成后再写入
+     */
+    private void handleMessageError(CapMessage message, String queueName, CompletableFuture<Void> retrying) {
         // 增加重试次数
         message.incrementRetries();
 
@@ -394,18 +816,25 @@ public class CapSubscriberImpl implements CapSubscriber {
         Integer retries = message.getRetries();
         if (retries != null && retries >= capProperties.getFailedRetryCount()) {
             // 超过最大重试次数，标记为失败
-            messageStorage.updateStatusAsync(message.getId(), CapMessageStatus.FAILED);
+            after(retrying, () -> messageStorage.updateStatusAsync(message.getId(), CapMessageStatus.FAILED));
             messageQueue.reject(queueName, message.getId(), false);
             log.error("Message {} exceeded max retries ({})", message.getId(), capProperties.getFailedRetryCount());
         } else {
             // 重新入队重试
-            messageStorage.updateStatusAsync(message.getId(), CapMessageStatus.PENDING);
+            after(retrying, () -> messageStorage.updateStatusAsync(message.getId(), CapMessageStatus.PENDING));
             messageQueue.reject(queueName, message.getId(), true);
             log.warn("Message {} will be retried (attempt {}/{})",
                     message.getId(), message.getRetries(), capProperties.getFailedRetryCount());
         }
     }
 
+    /**
+     * 在前一次状态写入完成（无论成功与否）后再发起下一次写入，存储执行器多线程时保证写入顺序
+     */
+    private static void after(CompletableFuture<Void> previous, Supplier<CompletableFuture<Void>> next) {
+        previous.handle((result, ex) -> null).thenCompose(ignored -> next.get());
+    }
+
     /**
      * 清理过期消息
      */
@@ -435,6 +864,83 @@ public class CapSubscriberImpl implements CapSubscriber {
         return name + ":" + group;
     }
 
+    /**
+     * 单个订阅的拉取循环：独立线程按自身的拉取超时等待消息，在额度内拉取后提交到消费线程池
+     */
+    private final class ConsumerLoop implements Runnable {
+        private final String key;
+        private final String name;
+        private final String group;
+        private final String queueName;
+        private final long pollTimeout;
+
+        /**
+         * 本订阅处理中消息的额度，为 null 时只受全局拉取额度限制
+         */
+        private final Semaphore permits;
+        private volatile boolean active = true;
+        private Thread thread;
+
+        private ConsumerLoop(String key, String name, String group, String queueName, long pollTimeout,
+                Semaphore permits) {
+            this.key = key;
+            this.name = name;
+            this.group = group;
+            this.queueName = queueName;
+            this.pollTimeout = pollTimeout;
+            this.permits = permits;
+        }
+
+        @Override
+        public void run() {
+            while (running && active && !Thread.currentThread().isInterrupted()) {
+                try {
+                    if (consumeMessages(this)) {
+                        throttledCount.incrementAndGet();
+                        Thread.sleep(POLL_INTERVAL_MILLIS);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.error("Error consuming messages for {}:{}", name, group, e);
+                }
+            }
+            log.debug("Consumer loop for queue {} stopped", queueName);
+        }
+    }
+
+    /**
+     * 订阅及其拉取参数：拉取超时不大于 0、并发上限小于 0 时使用全局配置
+     */
+    private static final class Subscription {
+        private final String name;
+        private final String group;
+        private final long pollTimeoutMillis;
+        private final int concurrency;
+
+        private Subscription(String name, String group, long pollTimeoutMillis, int concurrency) {
+            this.name = name;
+            this.group = group;
+            this.pollTimeoutMillis = pollTimeoutMillis;
+            this.concurrency = concurrency;
+        }
+    }
+
+    /**
+     * 批量订阅
+     */
+    private static final class BatchSubscription {
+        private final CapSubscriber.BatchMessageHandler handler;
+        private final int maxBatchSize;
+        private final long maxWaitMillis;
+
+        private BatchSubscription(CapSubscriber.BatchMessageHandler handler, int maxBatchSize, long maxWaitMillis) {
+            this.handler = handler;
+            this.maxBatchSize = maxBatchSize;
+            this.maxWaitMillis = maxWaitMillis;
+        }
+    }
+
     /**
      * 构建队列名称
      * 参考 .NET CAP 源码：TopicName + "." + GroupName
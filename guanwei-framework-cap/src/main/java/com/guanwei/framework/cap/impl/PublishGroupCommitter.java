@@ -0,0 +1,124 @@
+package com.guanwei.framework.cap.impl;
+
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.storage.MessageStorage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发布组提交
+ * 并发的单条发布先进入队列，攒满 maxBatchSize 条或等待窗口到期后一次性批量写入存储
+ */
+@Slf4j
+final class PublishGroupCommitter {
+
+    private final MessageStorage messageStorage;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final BlockingQueue<PendingMessage> pendingMessages = new LinkedBlockingQueue<>();
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    PublishGroupCommitter(MessageStorage messageStorage, int maxBatchSize, long windowMicros) {
+        this.messageStorage = messageStorage;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, windowMicros));
+        this.worker = new Thread(this::run, "cap-publish-group-commit");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 提交消息，存储完成后返回
+     */
+    CompletableFuture<CapMessage> submit(CapMessage message) {
+        PendingMessage pending = new PendingMessage(message);
+        // 与 stop 互斥：停止后不会再有消息滞留在队列中无人完成
+        synchronized (this) {
+            if (running) {
+                pendingMessages.add(pending);
+                return pending.future;
+            }
+        }
+        pending.future.completeExceptionally(new IllegalStateException("Group committer stopped"));
+        return pending.future;
+    }
+
+    void stop() {
+        synchronized (this) {
+            running = false;
+        }
+        worker.interrupt();
+        PendingMessage pending;
+        while ((pending = pendingMessages.poll()) != null) {
+            pending.future.completeExceptionally(new IllegalStateException("Group committer stopped"));
+        }
+    }
+
+    private void run() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                PendingMessage first = pendingMessages.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // 在窗口内继续收集，直到攒满一批
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingMessage next = remaining > 0
+                            ? pendingMessages.poll(remaining, TimeUnit.NANOSECONDS)
+                            : pendingMessages.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.forEach(pending -> pending.future.completeExceptionally(
+                        new IllegalStateException("Group commit aborted")));
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        List<CapMessage> messages = new ArrayList<>(batch.size());
+        batch.forEach(pending -> messages.add(pending.message));
+        try {
+            messageStorage.storeMessagesAsync(messages).get();
+            batch.forEach(pending -> pending.future.complete(pending.message));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while storing group commit of {} messages", batch.size());
+            batch.forEach(pending -> pending.future.completeExceptionally(e));
+        } catch (Exception e) {
+            log.error("Failed to store group commit of {} messages", batch.size(), e);
+            batch.forEach(pending -> pending.future.completeExceptionally(e));
+        }
+        batch.clear();
+    }
+
+    private static final class PendingMessage {
+        private final CapMessage message;
+        private final CompletableFuture<CapMessage> future = new CompletableFuture<>();
+
+        private PendingMessage(CapMessage message) {
+            this.message = message;
+        }
+    }
+}
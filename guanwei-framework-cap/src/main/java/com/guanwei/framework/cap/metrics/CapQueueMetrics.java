@@ -0,0 +1,112 @@
+package com.guanwei.framework.cap.metrics;
+
+import com.guanwei.framework.cap.CapSubscriber;
+import com.guanwei.framework.cap.impl.CapSubscriberImpl;
+import com.guanwei.framework.cap.processor.DefaultMessageDispatcher;
+import com.guanwei.framework.cap.processor.MessageDispatcher;
+import com.guanwei.framework.cap.queue.MemoryMessageQueue;
+import com.guanwei.framework.cap.queue.MessageQueue;
+import com.guanwei.framework.cap.storage.StorageExecutor;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CAP 内部队列指标
+ * 队列深度、剩余拉取额度为 Gauge，拒绝/限流次数为 FunctionCounter，存储执行器耗时为 FunctionTimer
+ */
+public class CapQueueMetrics implements MeterBinder {
+
+    private final MessageDispatcher messageDispatcher;
+    private final CapSubscriber capSubscriber;
+    private final MessageQueue messageQueue;
+    private final StorageExecutor storageExecutor;
+
+    public CapQueueMetrics(MessageDispatcher messageDispatcher, CapSubscriber capSubscriber,
+                           MessageQueue messageQueue) {
+        this(messageDispatcher, capSubscriber, messageQueue, null);
+    }
+
+    public CapQueueMetrics(MessageDispatcher messageDispatcher, CapSubscriber capSubscriber,
+                           MessageQueue messageQueue, StorageExecutor storageExecutor) {
+        this.messageDispatcher = messageDispatcher;
+        this.capSubscriber = capSubscriber;
+        this.messageQueue = messageQueue;
+        this.storageExecutor = storageExecutor;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (messageDispatcher instanceof DefaultMessageDispatcher dispatcher) {
+            Gauge.builder("cap.dispatcher.queue.depth", dispatcher, DefaultMessageDispatcher::getPublishQueueDepth)
+                    .tag("queue", "publish")
+                    .description("Messages waiting in the dispatcher publish queue")
+                    .register(registry);
+            Gauge.builder("cap.dispatcher.queue.depth", dispatcher, DefaultMessageDispatcher::getExecuteQueueDepth)
+                    .tag("queue", "execute")
+                    .description("Messages waiting in the dispatcher execute queue")
+                    .register(registry);
+            FunctionCounter.builder("cap.dispatcher.queue.rejected", dispatcher,
+                            DefaultMessageDispatcher::getPublishRejectedCount)
+                    .tag("queue", "publish")
+                    .description("Offers rejected because the publish queue was full")
+                    .register(registry);
+            FunctionCounter.builder("cap.dispatcher.queue.rejected", dispatcher,
+                            DefaultMessageDispatcher::getExecuteRejectedCount)
+                    .tag("queue", "execute")
+                    .description("Offers rejected because the execute queue was full")
+                    .register(registry);
+        }
+
+        if (capSubscriber instanceof CapSubscriberImpl subscriber) {
+            Gauge.builder("cap.subscriber.buffered", subscriber, CapSubscriberImpl::getBufferedMessageCount)
+                    .description("Messages pulled by the subscriber and not yet completed")
+                    .register(registry);
+            Gauge.builder("cap.subscriber.credits", subscriber, CapSubscriberImpl::getAvailableCredits)
+                    .description("Remaining pull credits of the subscriber")
+                    .register(registry);
+            FunctionCounter.builder("cap.subscriber.rejected", subscriber, CapSubscriberImpl::getRejectedCount)
+                    .description("Messages rejected by the consumer executor and returned to the queue")
+                    .register(registry);
+            FunctionCounter.builder("cap.subscriber.throttled", subscriber, CapSubscriberImpl::getThrottledCount)
+                    .description("Pull rounds skipped because no credits were left")
+                    .register(registry);
+        }
+
+        if (messageQueue instanceof MemoryMessageQueue memoryQueue) {
+            Gauge.builder("cap.queue.memory.depth", memoryQueue, MemoryMessageQueue::getTotalDepth)
+                    .description("Messages waiting in the in-memory message queue")
+                    .register(registry);
+            FunctionCounter.builder("cap.queue.memory.rejected", memoryQueue, MemoryMessageQueue::getRejectedCount)
+                    .description("Sends rejected because an in-memory queue was full")
+                    .register(registry);
+        }
+
+        if (storageExecutor != null) {
+            Gauge.builder("cap.storage.executor.queue.depth", storageExecutor, StorageExecutor::getQueueDepth)
+                    .description("Storage calls waiting for a storage executor thread")
+                    .register(registry);
+            Gauge.builder("cap.storage.executor.active", storageExecutor, StorageExecutor::getActiveCount)
+                    .description("Storage calls currently running")
+                    .register(registry);
+            FunctionTimer.builder("cap.storage.executor.latency", storageExecutor,
+                            StorageExecutor::getCompletedCount, StorageExecutor::getTotalLatencyNanos,
+                            TimeUnit.NANOSECONDS)
+                    .description("Time from submitting a storage call to its completion")
+                    .register(registry);
+            FunctionTimer.builder("cap.storage.executor.wait", storageExecutor,
+                            StorageExecutor::getCompletedCount, StorageExecutor::getTotalWaitNanos,
+                            TimeUnit.NANOSECONDS)
+                    .description("Time storage calls spent queued before running")
+                    .register(registry);
+            FunctionCounter.builder("cap.storage.executor.caller.runs", storageExecutor,
+                            StorageExecutor::getCallerRunsCount)
+                    .description("Storage calls run on the caller thread because the executor queue was full")
+                    .register(registry);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.guanwei.framework.cap.processor;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.guanwei.framework.cap.CapMessage;
 import com.guanwei.framework.cap.annotation.CapSubscribe;
 import com.guanwei.framework.cap.queue.CapQueueManager;
@@ -12,6 +13,7 @@ import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 // imports trimmed
 import java.lang.reflect.Method;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -26,6 +28,7 @@ public class CapSubscribeProcessor implements ApplicationContextAware, Applicati
     private ApplicationContext applicationContext;
     private final Map<String, SubscribeHandler> handlers = new ConcurrentHashMap<>();
     private CapSubscriberProcessor subscriberProcessor;
+    private ObjectMapper objectMapper;
     private boolean initialized = false;
 
     public CapSubscribeProcessor() {
@@ -85,6 +88,11 @@ public class CapSubscribeProcessor implements ApplicationContextAware, Applicati
                 }
             }
 
+            // 使用应用共享的 ObjectMapper 反序列化订阅参数
+            if (objectMapper == null) {
+                objectMapper = applicationContext.getBeanProvider(ObjectMapper.class).getIfAvailable();
+            }
+
             // 扫描订阅方法
             scanSubscribeMethods();
             // 注册之前扫描到的处理器
@@ -170,7 +178,7 @@ public class CapSubscribeProcessor implements ApplicationContextAware, Applicati
 
         String handlerKey = buildHandlerKey(messageName, group);
 
-        SubscribeHandler handler = new SubscribeHandler(bean, method, annotation);
+        SubscribeHandler handler = new SubscribeHandler(bean, method, annotation, objectMapper);
         handlers.put(handlerKey, handler);
 
         log.info("Registered subscribe handler: {} -> {}.{} (message: {}, group: {})", 
@@ -254,16 +262,36 @@ public class CapSubscribeProcessor implements ApplicationContextAware, Applicati
 
     /**
      * 订阅处理器
+     * 参数按类型绑定：CapMessage 传入消息本身，String 传入消息内容，其他类型按 JSON 反序列化；
+     * maxBatchSize 大于 1 且唯一参数为 List 时按批交付
      */
     public static class SubscribeHandler {
         private final Object bean;
         private final Method method;
         private final CapSubscribe annotation;
+        private final SubscriberMethodInvoker invoker;
 
         public SubscribeHandler(Object bean, Method method, CapSubscribe annotation) {
+            this(bean, method, annotation, null);
+        }
+
+        public SubscribeHandler(Object bean, Method method, CapSubscribe annotation, ObjectMapper objectMapper) {
             this.bean = bean;
             this.method = method;
             this.annotation = annotation;
+            this.invoker = SubscriberMethodInvoker.compile(bean, method, objectMapper, isBatch(method, annotation));
+        }
+
+        private static boolean isBatch(Method method, CapSubscribe annotation) {
+            if (annotation == null || annotation.maxBatchSize() <= 1) {
+                return false;
+            }
+            if (!SubscriberMethodInvoker.isBatchMethod(method)) {
+                log.warn("maxBatchSize ignored for {}.{}: batch subscriber must take a single List parameter",
+                        method.getDeclaringClass().getSimpleName(), method.getName());
+                return false;
+            }
+            return true;
         }
 
         /**
@@ -277,26 +305,45 @@ public class CapSubscribeProcessor implements ApplicationContextAware, Applicati
                 throw new RuntimeException("Message exceeded max retries");
             }
 
-            // 设置方法可访问
-            method.setAccessible(true);
-
-            // 调用方法
-            if (method.getParameterCount() == 1) {
-                // 单参数方法，直接传递消息
-                return method.invoke(bean, message);
-            } else if (method.getParameterCount() == 2) {
-                // 双参数方法，可能是消息内容和消息对象
-                // 这里需要根据方法参数类型来决定如何调用
-                Class<?>[] paramTypes = method.getParameterTypes();
-                if (paramTypes[0] == String.class && paramTypes[1] == CapMessage.class) {
-                    return method.invoke(bean, message.getContent(), message);
-                } else if (paramTypes[0] == CapMessage.class && paramTypes[1] == String.class) {
-                    return method.invoke(bean, message, message.getContent());
+            return invoker.invoke(message);
+        }
+
+        /**
+         * 处理一批消息，批内任一消息超过最大重试次数时整批失败
+         */
+        public Object handleBatch(List<CapMessage> messages) throws Exception {
+            for (CapMessage message : messages) {
+                Integer retries = message.getRetries();
+                if (retries != null && retries >= annotation.maxRetries()) {
+                    log.warn("Message {} exceeded max retries ({})", message.getId(), annotation.maxRetries());
+                    throw new RuntimeException("Message exceeded max retries");
                 }
             }
 
-            // 默认调用方式
-            return method.invoke(bean, message);
+            return invoker.invokeBatch(messages);
+        }
+
+        /**
+         * 是否按批交付
+         */
+        public boolean isBatch() {
+            return invoker.isBatch();
+        }
+
+        public int getMaxBatchSize() {
+            return annotation.maxBatchSize();
+        }
+
+        public long getMaxWaitMillis() {
+            return annotation.maxWaitMillis();
+        }
+
+        public long getPollTimeoutMillis() {
+            return annotation.pollTimeoutMillis();
+        }
+
+        public int getConcurrency() {
+            return annotation.concurrency();
         }
 
         public Object getBean() {
@@ -31,6 +31,22 @@ public class CapSubscriberProcessor {
     public void registerHandler(String messageName, String group, CapSubscribeProcessor.SubscribeHandler handler) {
         String key = buildHandlerKey(messageName, group);
         handlers.put(key, handler);
+        capSubscriber.configure(messageName, group, handler.getPollTimeoutMillis(), handler.getConcurrency());
+
+        // 批量订阅方法按批注册
+        if (handler.isBatch()) {
+            capSubscriber.subscribeBatch(messageName, group, handler.getMaxBatchSize(), handler.getMaxWaitMillis(),
+                    messages -> {
+                        try {
+                            handler.handleBatch(messages);
+                        } catch (Exception e) {
+                            log.error("Error handling batch of {} messages with handler: {}", messages.size(),
+                                    handler.getMethod().getName(), e);
+                            throw new RuntimeException("Failed to handle message batch", e);
+                        }
+                    });
+            return;
+        }
 
         // 注册到订阅者
         capSubscriber.subscribe(messageName, group, message -> {
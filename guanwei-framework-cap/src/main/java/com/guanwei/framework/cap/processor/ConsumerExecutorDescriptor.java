@@ -1,7 +1,10 @@
 package com.guanwei.framework.cap.processor;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.guanwei.framework.cap.annotation.CapSubscribe;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.lang.reflect.Method;
 
@@ -27,6 +30,13 @@ public class ConsumerExecutorDescriptor {
      */
     private CapSubscribe attribute;
 
+    /**
+     * 预编译的方法调用（订阅者实例、参数绑定与 JavaType 已解析），首次调用时构建
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private volatile SubscriberMethodInvoker invoker;
+
     /**
      * 构造函数
      */
@@ -46,6 +56,19 @@ public class ConsumerExecutorDescriptor {
         this.attribute = attribute;
     }
 
+    /**
+     * 构造函数，立即解析订阅者实例与参数绑定
+     *
+     * @param bean         订阅者实例
+     * @param methodInfo   方法信息
+     * @param attribute    订阅属性
+     * @param objectMapper 应用共享的 ObjectMapper
+     */
+    public ConsumerExecutorDescriptor(Object bean, Method methodInfo, CapSubscribe attribute, ObjectMapper objectMapper) {
+        this(bean.getClass(), methodInfo, attribute);
+        this.invoker = SubscriberMethodInvoker.compile(bean, methodInfo, objectMapper);
+    }
+
     /**
      * 获取主题名称
      *
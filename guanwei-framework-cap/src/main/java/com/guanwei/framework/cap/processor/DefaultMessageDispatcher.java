@@ -4,20 +4,24 @@ import com.guanwei.framework.cap.CapMessage;
 import com.guanwei.framework.cap.CapProperties;
 import com.guanwei.framework.cap.queue.MessageQueue;
 import com.guanwei.framework.cap.storage.MessageStorage;
+import com.guanwei.framework.cap.util.CapExecutors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.List;
 import com.guanwei.framework.cap.CapMessageStatus;
 
 /**
  * CAP 消息分发器默认实现
  * 参考 .NET Core CAP 的 Dispatcher 类
- * 负责消息的分发和调度
+ * 负责消息的分发和调度，带顺序键的消息按键哈希到固定通道，同一顺序键按入队顺序处理
+ * 发布/执行线程只在消息入队时被唤醒；延迟消息按到期时间定时触发；
+ * 存储中遗留的待发送/到期延迟消息由低频的恢复扫描补偿
  */
 @Slf4j
 @Component
@@ -32,12 +36,19 @@ public class DefaultMessageDispatcher implements MessageDispatcher {
     // 线程池
     private final ThreadPoolExecutor publishExecutor;
     private final ThreadPoolExecutor executeExecutor;
-    private final ScheduledExecutorService schedulerExecutor;
+    /**
+     * 延迟消息定时器，同时执行低频的恢复扫描
+     */
+    private final ScheduledThreadPoolExecutor schedulerExecutor;
 
-    // 队列
-    private final BlockingQueue<CapMessage> publishedQueue;
-    private final BlockingQueue<CapMessage> receivedQueue;
-    private final PriorityBlockingQueue<ScheduledMessage> scheduledQueue;
+    /**
+     * virtual 模式下承载每次发送/订阅调用的执行器，platform 模式下为空（在循环线程内直接调用）
+     */
+    private final ExecutorService taskExecutor;
+
+    // 队列，按顺序键分区，每个通道由一个线程处理
+    private final OrderedLanes publishedQueue;
+    private final OrderedLanes receivedQueue;
 
     // 控制标志
     private final AtomicBoolean running = new AtomicBoolean(false);
@@ -54,7 +65,12 @@ public class DefaultMessageDispatcher implements MessageDispatcher {
         this.subscribeExecutor = subscribeExecutor;
         this.messageSender = messageSender;
 
-        // 初始化线程池
+        // 初始化线程池，每个线程处理一个通道；virtual 模式下无顺序键的调用交给 taskExecutor
+        boolean virtual = CapExecutors.isVirtual(properties.getExecutorMode());
+        this.taskExecutor = virtual
+            ? CapExecutors.newVirtualTaskExecutor("cap-dispatch", properties.getVirtualMaxConcurrency())
+            : null;
+
         int publishThreads = properties.isEnablePublishParallelSend() ? 
             Runtime.getRuntime().availableProcessors() : 1;
         this.publishExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(publishThreads);
@@ -63,20 +79,49 @@ public class DefaultMessageDispatcher implements MessageDispatcher {
             properties.getSubscriberParallelExecuteThreadCount() : 1;
         this.executeExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(executeThreads);
         
-        this.schedulerExecutor = Executors.newScheduledThreadPool(1);
+        this.schedulerExecutor = new ScheduledThreadPoolExecutor(1);
+        // 停止时不再等待未到期的延迟消息，它们已持久化，重启后由恢复扫描补发
+        this.schedulerExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.schedulerExecutor.setRemoveOnCancelPolicy(true);
 
         // 初始化队列
-        int publishQueueSize = Runtime.getRuntime().availableProcessors() * 500;
-        this.publishedQueue = new LinkedBlockingQueue<>(publishQueueSize);
+        int publishQueueSize = properties.getPublishQueueCapacity();
+        this.publishedQueue = new OrderedLanes(publishThreads, publishQueueSize);
         
         int executeQueueSize = properties.getSubscriberParallelExecuteThreadCount() * 
             properties.getSubscriberParallelExecuteBufferFactor();
-        this.receivedQueue = new LinkedBlockingQueue<>(executeQueueSize);
-        
-        this.scheduledQueue = new PriorityBlockingQueue<>();
+        this.receivedQueue = new OrderedLanes(executeThreads, executeQueueSize);
+
+        log.info("CAP message dispatcher initialized with publish threads: {}, execute threads: {}, executor mode: {}", 
+                publishThreads, executeThreads, virtual ? CapExecutors.MODE_VIRTUAL : CapExecutors.MODE_PLATFORM);
+    }
+
+    /**
+     * 发布队列中等待发送的消息数
+     */
+    public int getPublishQueueDepth() {
+        return publishedQueue.size();
+    }
+
+    /**
+     * 执行队列中等待执行的消息数
+     */
+    public int getExecuteQueueDepth() {
+        return receivedQueue.size();
+    }
+
+    /**
+     * 发布队列已满导致入队失败（延后或放弃）的次数
+     */
+    public long getPublishRejectedCount() {
+        return publishedQueue.rejectedCount();
+    }
 
-        log.info("CAP message dispatcher initialized with publish threads: {}, execute threads: {}", 
-                publishThreads, executeThreads);
+    /**
+     * 执行队列已满导致入队失败的次数
+     */
+    public long getExecuteRejectedCount() {
+        return receivedQueue.rejectedCount();
     }
 
     @Override
@@ -85,19 +130,22 @@ public class DefaultMessageDispatcher implements MessageDispatcher {
             log.info("Starting CAP message dispatcher");
             
             // 启动发布处理线程
-            for (int i = 0; i < publishExecutor.getMaximumPoolSize(); i++) {
-                publishExecutor.submit(this::processPublishMessages);
+            for (int i = 0; i < publishedQueue.laneCount(); i++) {
+                int lane = i;
+                publishExecutor.submit(() -> processPublishMessages(lane));
             }
 
             // 启动执行处理线程
-            for (int i = 0; i < executeExecutor.getMaximumPoolSize(); i++) {
-                executeExecutor.submit(this::processExecuteMessages);
+            for (int i = 0; i < receivedQueue.laneCount(); i++) {
+                int lane = i;
+                executeExecutor.submit(() -> processExecuteMessages(lane));
             }
 
-            // 启动调度处理线程
+            // 启动存储恢复扫描（低频，空闲时不访问存储）
+            int recoveryInterval = Math.max(1, properties.getDispatcherRecoveryInterval());
             schedulerExecutor.scheduleWithFixedDelay(
-                this::processScheduledMessages,
-                1, 1, TimeUnit.SECONDS
+                this::recoverStoredMessages,
+                recoveryInterval, recoveryInterval, TimeUnit.SECONDS
             );
 
             log.info("CAP message dispatcher started successfully");
@@ -149,6 +197,19 @@ public class DefaultMessageDispatcher implements MessageDispatcher {
                 }
             }
 
+            // 停止 virtual 模式的任务执行器
+            if (taskExecutor != null && !taskExecutor.isShutdown()) {
+                taskExecutor.shutdown();
+                try {
+                    if (!taskExecutor.awaitTermination(60, TimeUnit.SECONDS)) {
+                        taskExecutor.shutdownNow();
+                    }
+                } catch (InterruptedException e) {
+                    taskExecutor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                }
+            }
+
             running.set(false);
             stopping.set(false);
             log.info("CAP message dispatcher stopped");
@@ -191,70 +252,45 @@ public class DefaultMessageDispatcher implements MessageDispatcher {
         if (stopping.get()) {
             return CompletableFuture.failedFuture(new IllegalStateException("Dispatcher is stopping"));
         }
-        ScheduledMessage scheduledMessage = new ScheduledMessage(message, publishTime);
-        scheduledQueue.offer(scheduledMessage);
-        return CompletableFuture.completedFuture(null);
+        long delayNanos = Math.max(0, Duration.between(LocalDateTime.now(), publishTime).toNanos());
+        try {
+            schedulerExecutor.schedule(() -> fireScheduledMessage(message), delayNanos, TimeUnit.NANOSECONDS);
+            return CompletableFuture.completedFuture(null);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 延迟消息到期，转入发布通道；通道已满时稍后重试，避免阻塞定时器线程
+     */
+    private void fireScheduledMessage(CapMessage message) {
+        try {
+            if (publishedQueue.offer(message, 0, TimeUnit.MILLISECONDS)) {
+                log.debug("Scheduled message {} moved to publish queue", message.getId());
+            } else if (!stopping.get()) {
+                schedulerExecutor.schedule(() -> fireScheduledMessage(message), 100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Error moving scheduled message {} to publish queue", message.getId(), e);
+        }
     }
 
     /**
      * 处理发布消息
+     *
+     * @param lane 本线程负责的通道
      */
-    private void processPublishMessages() {
+    private void processPublishMessages(int lane) {
         while (!stopping.get() && !Thread.currentThread().isInterrupted()) {
             try {
-                // 从队列中获取消息
-                CapMessage message = publishedQueue.poll(1, TimeUnit.SECONDS);
+                // 阻塞等待入队信号，超时仅用于检查停止标志，不访问存储
+                CapMessage message = publishedQueue.poll(lane, 1, TimeUnit.SECONDS);
                 if (message != null) {
-                    // 发送消息
-                    messageSender.sendAsync(message, properties.getPublishTimeout())
-                        .thenAccept(result -> {
-                            if (result.isSuccess()) {
-                                log.debug("Message {} sent successfully", message.getId());
-                            } else {
-                                log.error("Failed to send message {}: {}", message.getId(), result.getError());
-                            }
-                        })
-                        .exceptionally(ex -> {
-                            log.error("Error sending message {}", message.getId(), ex);
-                            return null;
-                        });
+                    dispatch(message, () -> sendMessage(message));
                 }
-
-                // 处理存储中的待发送消息（.NET CAP 兼容的批量处理）
-                if (properties.getSchedulerBatchSize() > 0 && publishedQueue.size() < properties.getSchedulerBatchSize() / 2) {
-                    messageStorage.getPendingPublishedMessagesAsync(CapMessageStatus.PENDING, properties.getSchedulerBatchSize())
-                        .thenAccept(pendingMessages -> {
-                            if (!pendingMessages.isEmpty()) {
-                                log.debug("Found {} pending messages from storage", pendingMessages.size());
-                                
-                                // 批量更新状态为 QUEUED
-                                messageStorage.batchUpdatePublishedStatusAsync(
-                                    CapMessageStatus.PENDING, 
-                                    CapMessageStatus.QUEUED, 
-                                    pendingMessages.size()
-                                ).thenAccept(updatedCount -> {
-                                    if (updatedCount > 0) {
-                                        log.debug("Batch updated {} pending messages to QUEUED status", updatedCount);
-                                        
-                                        // 将消息加入发布队列
-                                        for (CapMessage pendingMessage : pendingMessages) {
-                                            try {
-                                                publishedQueue.offer(pendingMessage, 100, TimeUnit.MILLISECONDS);
-                                            } catch (InterruptedException e) {
-                                                Thread.currentThread().interrupt();
-                                                break;
-                                            }
-                                        }
-                                    }
-                                });
-                            }
-                        })
-                        .exceptionally(ex -> {
-                            log.error("Error processing pending messages from storage", ex);
-                            return null;
-                        });
-                }
-
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
@@ -266,17 +302,15 @@ public class DefaultMessageDispatcher implements MessageDispatcher {
 
     /**
      * 处理执行消息
+     *
+     * @param lane 本线程负责的通道
      */
-    private void processExecuteMessages() {
-        while (running.get() && !Thread.currentThread().isInterrupted()) {
+    private void processExecuteMessages(int lane) {
+        while (running.get() && !stopping.get() && !Thread.currentThread().isInterrupted()) {
             try {
-                CapMessage message = receivedQueue.poll(1, TimeUnit.SECONDS);
+                CapMessage message = receivedQueue.poll(lane, 1, TimeUnit.SECONDS);
                 if (message != null) {
-                    subscribeExecutor.executeAsync(message)
-                        .exceptionally(ex -> {
-                            log.error("Error executing message: {}", message.getId(), ex);
-                            return null;
-                        });
+                    dispatch(message, () -> executeMessage(message));
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -288,89 +322,114 @@ public class DefaultMessageDispatcher implements MessageDispatcher {
     }
 
     /**
-     * 处理调度消息
+     * virtual 模式下交给任务执行器（达到并发上限时阻塞循环线程），否则在当前线程直接执行；
+     * 带顺序键的消息始终在通道线程内执行以保证同一顺序键的处理顺序
      */
-    private void processScheduledMessages() {
-        try {
-            // 处理内存中的延迟消息
-            List<ScheduledMessage> readyMessages = new ArrayList<>();
-            ScheduledMessage message;
-            while ((message = scheduledQueue.poll()) != null) {
-                if (message.publishTime.isBefore(LocalDateTime.now()) || 
-                    message.publishTime.isEqual(LocalDateTime.now())) {
-                    readyMessages.add(message);
+    private void dispatch(CapMessage message, Runnable task) {
+        if (taskExecutor != null && message.getOrderingKey() == null) {
+            taskExecutor.execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * 发送消息
+     */
+    private void sendMessage(CapMessage message) {
+        messageSender.sendAsync(message, properties.getPublishTimeout())
+            .thenAccept(result -> {
+                if (result.isSuccess()) {
+                    log.debug("Message {} sent successfully", message.getId());
                 } else {
-                    scheduledQueue.offer(message);
-                    break;
+                    log.error("Failed to send message {}: {}", message.getId(), result.getError());
                 }
-            }
+            })
+            .exceptionally(ex -> {
+                log.error("Error sending message {}", message.getId(), ex);
+                return null;
+            });
+    }
 
-            // 将到期的延迟消息加入发布队列
-            for (ScheduledMessage scheduledMessage : readyMessages) {
-                try {
-                    publishedQueue.offer(scheduledMessage.message, 100, TimeUnit.MILLISECONDS);
-                    log.debug("Scheduled message {} moved to publish queue", scheduledMessage.message.getId());
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
+    /**
+     * 执行订阅
+     */
+    private void executeMessage(CapMessage message) {
+        subscribeExecutor.executeAsync(message)
+            .exceptionally(ex -> {
+                log.error("Error executing message: {}", message.getId(), ex);
+                return null;
+            });
+    }
+
+    /**
+     * 恢复扫描：补发存储中遗留的待发送消息和已到期的延迟消息（如进程重启前未发出的消息）
+     */
+    private void recoverStoredMessages() {
+        try {
+            // 处理存储中的待发送消息（.NET CAP 兼容的批量处理）
+            if (properties.getSchedulerBatchSize() > 0 && publishedQueue.size() < properties.getSchedulerBatchSize() / 2) {
+                messageStorage.getPendingPublishedMessagesAsync(CapMessageStatus.PENDING, properties.getSchedulerBatchSize())
+                    .thenCompose(pendingMessages -> {
+                        if (pendingMessages.isEmpty()) {
+                            return CompletableFuture.completedFuture(null);
+                        }
+                        log.debug("Found {} pending messages from storage", pendingMessages.size());
+                        return requeueStoredMessages(pendingMessages);
+                    })
+                    .exceptionally(ex -> {
+                        log.error("Error processing pending messages from storage", ex);
+                        return null;
+                    });
             }
 
             // 处理存储中的延迟消息（.NET CAP 兼容的表驱动方式）
             if (properties.getSchedulerBatchSize() > 0) {
                 messageStorage.getExpiredDelayedMessagesAsync(properties.getSchedulerBatchSize())
-                    .thenAccept(expiredMessages -> {
-                        if (!expiredMessages.isEmpty()) {
-                            log.debug("Found {} expired delayed messages from storage", expiredMessages.size());
-                            
-                            // 批量更新状态为 PENDING
-                            messageStorage.batchUpdatePublishedStatusAsync(
-                                CapMessageStatus.DELAYED, 
-                                CapMessageStatus.PENDING, 
-                                expiredMessages.size()
-                            ).thenAccept(updatedCount -> {
-                                if (updatedCount > 0) {
-                                    log.debug("Batch updated {} delayed messages to PENDING status", updatedCount);
-                                    
-                                    // 将消息加入发布队列
-                                    for (CapMessage expiredMessage : expiredMessages) {
-                                        try {
-                                            publishedQueue.offer(expiredMessage, 100, TimeUnit.MILLISECONDS);
-                                        } catch (InterruptedException e) {
-                                            Thread.currentThread().interrupt();
-                                            break;
-                                        }
-                                    }
-                                }
-                            });
+                    .thenCompose(expiredMessages -> {
+                        if (expiredMessages.isEmpty()) {
+                            return CompletableFuture.completedFuture(null);
                         }
+                        log.debug("Found {} expired delayed messages from storage", expiredMessages.size());
+                        return requeueStoredMessages(expiredMessages);
                     })
                     .exceptionally(ex -> {
                         log.error("Error processing expired delayed messages from storage", ex);
                         return null;
                     });
             }
-
         } catch (Exception e) {
-            log.error("Error in scheduled message processing", e);
+            log.error("Error in stored message recovery", e);
         }
     }
 
     /**
-     * 调度消息包装类
+     * 按扫描取到的消息ID更新为 QUEUED 后放入发布通道；通道已满放不进的消息恢复为 PENDING，由下次扫描补发
+     * 放入通道不等待，避免在存储线程上阻塞
      */
-    private static class ScheduledMessage implements Comparable<ScheduledMessage> {
-        final CapMessage message;
-        final LocalDateTime publishTime;
-
-        ScheduledMessage(CapMessage message, LocalDateTime publishTime) {
-            this.message = message;
-            this.publishTime = publishTime;
-        }
-
-        @Override
-        public int compareTo(ScheduledMessage other) {
-            return this.publishTime.compareTo(other.publishTime);
-        }
+    private CompletableFuture<Void> requeueStoredMessages(List<CapMessage> messages) {
+        List<Long> ids = messages.stream().map(CapMessage::getId).toList();
+        return messageStorage.updateStatusBatchAsync(ids, CapMessageStatus.QUEUED)
+            .thenCompose(v -> {
+                List<Long> rejected = new ArrayList<>();
+                for (CapMessage message : messages) {
+                    boolean accepted;
+                    try {
+                        accepted = publishedQueue.offer(message, 0, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        accepted = false;
+                    }
+                    if (!accepted) {
+                        rejected.add(message.getId());
+                    }
+                }
+                if (rejected.isEmpty()) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                log.warn("Publish lanes are full, {} stored messages stay PENDING for the next recovery sweep",
+                        rejected.size());
+                return messageStorage.updateStatusBatchAsync(rejected, CapMessageStatus.PENDING);
+            });
     }
 } 
\ No newline at end of file
@@ -5,9 +5,11 @@ import com.guanwei.framework.cap.CapMessage;
 import com.guanwei.framework.cap.CapProperties;
 import com.guanwei.framework.cap.queue.MessageQueue;
 import com.guanwei.framework.cap.storage.MessageStorage;
+import com.guanwei.framework.cap.util.RetryBackoff;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -23,12 +25,14 @@ public class DefaultMessageSender implements MessageSender {
     private final MessageQueue messageQueue;
     private final MessageStorage messageStorage;
     private final ObjectMapper objectMapper;
+    private final RetryBackoff retryBackoff;
 
     public DefaultMessageSender(CapProperties properties, MessageQueue messageQueue, MessageStorage messageStorage) {
         this.properties = properties;
         this.messageQueue = messageQueue;
         this.messageStorage = messageStorage;
         this.objectMapper = new ObjectMapper();
+        this.retryBackoff = new RetryBackoff(properties);
     }
 
     @Override
@@ -46,7 +50,7 @@ public class DefaultMessageSender implements MessageSender {
             log.debug("Sending message: {} to queue", message.getName());
 
             // 序列化消息内容
-            if (message.getContent() == null && message.getOrigin() != null) {
+            if (message.getContent() == null && message.getPayload() == null && message.getOrigin() != null) {
                 try {
                     message.setContent(objectMapper.writeValueAsString(message.getOrigin()));
                 } catch (Exception ex) {
@@ -70,21 +74,31 @@ public class DefaultMessageSender implements MessageSender {
                 return CompletableFuture.completedFuture(OperateResult.success());
             } else {
                 log.error("Failed to send message: {}", message.getName());
-                try {
-                    messageStorage.updateStatusAsync(message.getId(), com.guanwei.framework.cap.CapMessageStatus.FAILED);
-                } catch (Exception ignore) {}
+                markFailed(message);
                 return CompletableFuture.completedFuture(OperateResult.failed("Failed to send message to queue"));
             }
 
         } catch (Exception ex) {
             log.error("Error sending message: {}", message.getName(), ex);
-            try {
-                messageStorage.updateStatusAsync(message.getId(), com.guanwei.framework.cap.CapMessageStatus.FAILED);
-            } catch (Exception ignore) {}
+            markFailed(message);
             return CompletableFuture.completedFuture(OperateResult.failed(ex));
         }
     }
 
+    /**
+     * 记录发送失败，按全局重试间隔计算下次重试时间，超过重试次数后不再安排重试
+     */
+    private void markFailed(CapMessage message) {
+        try {
+            int retries = message.getRetries() + 1;
+            message.setRetries(retries);
+            message.setNextRetryAt(retries < properties.getFailedRetryCount()
+                    ? retryBackoff.nextRetryAt(retries, Duration.ofSeconds(properties.getFailedRetryInterval()))
+                    : null);
+            messageStorage.changePublishStateAsync(message, com.guanwei.framework.cap.CapMessageStatus.FAILED, null);
+        } catch (Exception ignore) {}
+    }
+
     /**
      * 发送消息（带超时）
      */
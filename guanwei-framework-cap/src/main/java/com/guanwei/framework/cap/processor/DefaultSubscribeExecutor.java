@@ -4,11 +4,13 @@ import com.guanwei.framework.cap.CapMessage;
 import com.guanwei.framework.cap.CapMessageStatus;
 import com.guanwei.framework.cap.CapProperties;
 import com.guanwei.framework.cap.storage.MessageStorage;
+import com.guanwei.framework.cap.util.RetryBackoff;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.lang.reflect.Method;
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -22,12 +24,19 @@ public class DefaultSubscribeExecutor implements SubscribeExecutor {
     private final CapProperties properties;
     private final MessageStorage messageStorage;
     private final SubscribeInvoker subscribeInvoker;
+    private final RetryBackoff retryBackoff;
 
-    @Autowired
     public DefaultSubscribeExecutor(CapProperties properties, MessageStorage messageStorage) {
+        this(properties, messageStorage, new DefaultSubscribeInvoker());
+    }
+
+    @Autowired
+    public DefaultSubscribeExecutor(CapProperties properties, MessageStorage messageStorage,
+                                    SubscribeInvoker subscribeInvoker) {
         this.properties = properties;
         this.messageStorage = messageStorage;
-        this.subscribeInvoker = new DefaultSubscribeInvoker();
+        this.subscribeInvoker = subscribeInvoker;
+        this.retryBackoff = new RetryBackoff(properties);
     }
 
     @Override
@@ -86,6 +95,7 @@ public class DefaultSubscribeExecutor implements SubscribeExecutor {
             log.debug("Subscriber executed successfully in {}ms", executionTime);
 
             // 更新消息状态为成功
+            message.setNextRetryAt(null);
             messageStorage.changeReceiveStateAsync(message, CapMessageStatus.SUCCEEDED)
                     .exceptionally(ex -> {
                         log.error("Failed to update message status to succeeded: {}", message.getId(), ex);
@@ -97,15 +107,18 @@ public class DefaultSubscribeExecutor implements SubscribeExecutor {
         } catch (Exception ex) {
             log.error("Error executing subscriber for message: {}", message.getId(), ex);
 
-            // 更新消息状态为失败
+            // 检查是否需要重试
+            boolean shouldRetry = updateMessageForRetry(message);
+
+            // 更新消息状态为失败，并按订阅者的重试间隔计算下次重试时间
+            message.setNextRetryAt(message.getRetries() < properties.getFailedRetryCount()
+                    ? retryBackoff.nextRetryAt(message.getRetries(), retryInterval(descriptor))
+                    : null);
             messageStorage.changeReceiveStateAsync(message, CapMessageStatus.FAILED)
                     .exceptionally(updateEx -> {
                         log.error("Failed to update message status to failed: {}", message.getId(), updateEx);
                         return null;
                     });
-
-            // 检查是否需要重试
-            boolean shouldRetry = updateMessageForRetry(message);
             return new ExecutionResult(OperateResult.failed(ex), shouldRetry);
         }
     }
@@ -126,6 +139,13 @@ public class DefaultSubscribeExecutor implements SubscribeExecutor {
         return true;
     }
 
+    private Duration retryInterval(ConsumerExecutorDescriptor descriptor) {
+        if (descriptor.getAttribute() != null) {
+            return Duration.ofSeconds(descriptor.getAttribute().retryInterval());
+        }
+        return Duration.ofSeconds(properties.getFailedRetryInterval());
+    }
+
     private String getInstanceId() {
         try {
             String hostname = java.net.InetAddress.getLocalHost().getHostName();
@@ -12,6 +12,7 @@ import java.util.concurrent.CompletableFuture;
 /**
  * CAP 默认订阅调用器
  * 参考 .NET Core CAP 的 SubscribeInvoker 类
+ * 订阅者实例与参数绑定在描述符首次调用时解析并缓存到描述符上，之后每条消息直接走预编译调用
  */
 @Slf4j
 public class DefaultSubscribeInvoker implements SubscribeInvoker {
@@ -20,14 +21,17 @@ public class DefaultSubscribeInvoker implements SubscribeInvoker {
     private final ObjectMapper objectMapper;
 
     public DefaultSubscribeInvoker() {
-        this.applicationContext = null;
-        this.objectMapper = new ObjectMapper();
+        this(null, null);
     }
 
-    @Autowired
     public DefaultSubscribeInvoker(ApplicationContext applicationContext) {
+        this(applicationContext, null);
+    }
+
+    @Autowired
+    public DefaultSubscribeInvoker(ApplicationContext applicationContext, ObjectMapper objectMapper) {
         this.applicationContext = applicationContext;
-        this.objectMapper = new ObjectMapper();
+        this.objectMapper = objectMapper;
     }
 
     @Override
@@ -37,29 +41,11 @@ public class DefaultSubscribeInvoker implements SubscribeInvoker {
                 throw new IllegalArgumentException("Descriptor cannot be null");
             }
 
-            // 获取订阅者实例
-            Object subscriber = getSubscriberInstance(descriptor);
-            if (subscriber == null) {
-                throw new RuntimeException("Cannot find subscriber instance for: " + descriptor.getImplTypeInfo().getName());
-            }
-
-            // 获取方法
-            Method method = descriptor.getMethodInfo();
-            if (method == null) {
-                throw new RuntimeException("Method info is null");
-            }
-
-            // 反序列化消息内容
-            Object messageContent = deserializeMessage(message, method);
-
-            // 调用方法
-            if (method.getParameterCount() == 0) {
-                return method.invoke(subscriber);
-            } else if (method.getParameterCount() == 1) {
-                return method.invoke(subscriber, messageContent);
-            } else {
-                throw new RuntimeException("Unsupported method parameter count: " + method.getParameterCount());
+            SubscriberMethodInvoker invoker = descriptor.getInvoker();
+            if (invoker == null) {
+                invoker = compile(descriptor);
             }
+            return invoker.invoke(message);
 
         } catch (Exception ex) {
             log.error("Error invoking subscriber method: {}", ex.getMessage(), ex);
@@ -72,6 +58,34 @@ public class DefaultSubscribeInvoker implements SubscribeInvoker {
         return CompletableFuture.supplyAsync(() -> invokeAsync(message, descriptor));
     }
 
+    /**
+     * 解析订阅者实例并编译方法调用，结果缓存到描述符
+     */
+    private SubscriberMethodInvoker compile(ConsumerExecutorDescriptor descriptor) {
+        synchronized (descriptor) {
+            SubscriberMethodInvoker invoker = descriptor.getInvoker();
+            if (invoker != null) {
+                return invoker;
+            }
+
+            Method method = descriptor.getMethodInfo();
+            if (method == null) {
+                throw new RuntimeException("Method info is null");
+            }
+
+            Object subscriber = getSubscriberInstance(descriptor);
+            if (subscriber == null) {
+                throw new RuntimeException("Cannot find subscriber instance for: " + descriptor.getImplTypeInfo().getName());
+            }
+
+            invoker = SubscriberMethodInvoker.compile(subscriber, method, objectMapper);
+            descriptor.setInvoker(invoker);
+            log.debug("Compiled subscriber {}.{} (lambda: {})", descriptor.getImplTypeInfo().getSimpleName(),
+                    method.getName(), invoker.isLambda());
+            return invoker;
+        }
+    }
+
     /**
      * 获取订阅者实例
      */
@@ -94,39 +108,4 @@ public class DefaultSubscribeInvoker implements SubscribeInvoker {
             return null;
         }
     }
-
-    /**
-     * 反序列化消息内容
-     */
-    private Object deserializeMessage(CapMessage message, Method method) {
-        try {
-            if (method.getParameterCount() == 0) {
-                return null;
-            }
-
-            Class<?> parameterType = method.getParameterTypes()[0];
-            
-            // 如果参数类型是String，直接返回消息内容
-            if (parameterType == String.class) {
-                return message.getContent();
-            }
-
-            // 如果参数类型是CapMessage，直接返回消息对象
-            if (parameterType == CapMessage.class) {
-                return message;
-            }
-
-            // 尝试JSON反序列化
-            if (message.getContent() != null && !message.getContent().isEmpty()) {
-                return objectMapper.readValue(message.getContent(), parameterType);
-            }
-
-            // 如果消息内容为空，尝试创建默认实例
-            return parameterType.getDeclaredConstructor().newInstance();
-
-        } catch (Exception ex) {
-            log.error("Failed to deserialize message content: {}", ex.getMessage(), ex);
-            throw new RuntimeException("Failed to deserialize message content", ex);
-        }
-    }
-} 
\ No newline at end of file
+}
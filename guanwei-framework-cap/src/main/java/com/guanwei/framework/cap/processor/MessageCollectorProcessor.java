@@ -1,6 +1,8 @@
 package com.guanwei.framework.cap.processor;
 
 import com.guanwei.framework.cap.CapProperties;
+import com.guanwei.framework.cap.storage.DedupStorage;
+import com.guanwei.framework.cap.storage.JournalMessageStorage;
 import com.guanwei.framework.cap.storage.MessageStorage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,6 +25,7 @@ public class MessageCollectorProcessor {
     private final CapProperties properties;
     private final MessageStorage messageStorage;
     private final ScheduledExecutorService scheduler;
+    private volatile DedupStorage dedupStorage;
 
     @Autowired
     public MessageCollectorProcessor(CapProperties properties, MessageStorage messageStorage) {
@@ -33,6 +36,13 @@ public class MessageCollectorProcessor {
         startCollectorProcessor();
     }
 
+    /**
+     * 设置去重存储，清理时一并删除过期的去重记录
+     */
+    public void setDedupStorage(DedupStorage dedupStorage) {
+        this.dedupStorage = dedupStorage;
+    }
+
     /**
      * 启动清理处理器
      */
@@ -108,11 +118,54 @@ public class MessageCollectorProcessor {
                     return null;
                 });
 
+            // 清理过期的去重记录
+            cleanupExpiredDedupKeys();
+
+            // 压缩日志存储中存活记录较少的旧日志段
+            compactJournal();
+
         } catch (Exception ex) {
             log.error("Error in message collector processor", ex);
         }
     }
 
+    /**
+     * 分批清理过期的去重记录
+     */
+    private void cleanupExpiredDedupKeys() {
+        DedupStorage storage = dedupStorage;
+        if (storage == null) {
+            return;
+        }
+        try {
+            int count = storage.deleteExpired(properties.getSchedulerBatchSize());
+            if (count > 0) {
+                log.debug("Cleaned up {} expired dedup keys", count);
+            }
+        } catch (Exception ex) {
+            log.error("Error cleaning up expired dedup keys", ex);
+        }
+    }
+
+    /**
+     * 日志存储在本轮清理后压缩旧日志段，清理产生的删除记录使旧段的存活比例下降
+     */
+    private void compactJournal() {
+        if (!(messageStorage instanceof JournalMessageStorage journalStorage)) {
+            return;
+        }
+        journalStorage.compactAsync()
+            .thenAccept(count -> {
+                if (count > 0) {
+                    log.debug("Compacted {} journal segments", count);
+                }
+            })
+            .exceptionally(ex -> {
+                log.error("Error compacting journal segments", ex);
+                return null;
+            });
+    }
+
     /**
      * 关闭处理器
      */
@@ -7,13 +7,19 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 
 import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import com.guanwei.framework.cap.CapMessageStatus;
 
@@ -21,6 +27,8 @@ import com.guanwei.framework.cap.CapMessageStatus;
  * CAP 消息重试处理器
  * 参考 .NET Core CAP 的 MessageNeedToRetryProcessor
  * 负责处理失败消息的重试逻辑
+ * 每隔 failedRetryPollInterval 扫描一次 NEXTRETRYAT 已到期的失败消息（及重试租约已过期的 RETRYING 消息），
+ * 各消息的退避间隔在失败时已写入存储
  */
 @Slf4j
 @Component
@@ -30,6 +38,8 @@ public class MessageRetryProcessor {
     private final MessageStorage messageStorage;
     private final MessageDispatcher messageDispatcher;
     private final ScheduledExecutorService scheduler;
+    private final ExecutorService enqueueExecutor;
+    private final String instanceId = createInstanceId();
 
     // 最小建议的回退窗口回溯时间（秒）
     private static final int MIN_SUGGESTED_FALLBACK_WINDOW_LOOKBACK_SECONDS = 30;
@@ -42,6 +52,11 @@ public class MessageRetryProcessor {
         this.messageStorage = messageStorage;
         this.messageDispatcher = messageDispatcher;
         this.scheduler = Executors.newScheduledThreadPool(2);
+        this.enqueueExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "cap-retry-enqueue");
+            thread.setDaemon(true);
+            return thread;
+        });
         
         checkSafeOptionsSet();
         startRetryProcessor();
@@ -51,24 +66,25 @@ public class MessageRetryProcessor {
      * 启动重试处理器
      */
     private void startRetryProcessor() {
+        int pollInterval = Math.max(1, properties.getFailedRetryPollInterval());
+
         // 启动发布消息重试处理器
         scheduler.scheduleWithFixedDelay(
             this::processPublishedRetry,
-            properties.getFailedRetryInterval(),
-            properties.getFailedRetryInterval(),
+            pollInterval,
+            pollInterval,
             TimeUnit.SECONDS
         );
 
         // 启动接收消息重试处理器
         scheduler.scheduleWithFixedDelay(
             this::processReceivedRetry,
-            properties.getFailedRetryInterval(),
-            properties.getFailedRetryInterval(),
+            pollInterval,
+            pollInterval,
             TimeUnit.SECONDS
         );
 
-        log.info("CAP message retry processor started with interval: {} seconds", 
-                properties.getFailedRetryInterval());
+        log.info("CAP message retry processor started with poll interval: {} seconds", pollInterval);
     }
 
     /**
@@ -76,30 +92,13 @@ public class MessageRetryProcessor {
      */
     private void processPublishedRetry() {
         try {
-            if (properties.isUseStorageLock()) {
-                String lockKey = "publish_retry_" + properties.getVersion();
-                Duration ttl = Duration.ofSeconds(properties.getFailedRetryInterval() + 10);
-                String instance = getInstanceId();
-
-                messageStorage.acquireLockAsync(lockKey, ttl, instance)
-                    .thenCompose(acquired -> {
-                        if (!acquired) {
-                            return CompletableFuture.completedFuture(null);
-                        }
-                        return processPublishedMessages()
-                            .thenCompose(v -> messageStorage.releaseLockAsync(lockKey, instance));
-                    })
-                    .exceptionally(ex -> {
-                        log.error("Error processing published retry messages", ex);
-                        return null;
-                    });
-            } else {
-                processPublishedMessages()
-                    .exceptionally(ex -> {
-                        log.error("Error processing published retry messages", ex);
-                        return null;
-                    });
-            }
+            CompletableFuture<Void> sweep = properties.isUseStorageLock()
+                ? runWithLock("publish_retry_" + properties.getVersion(), this::processPublishedMessages)
+                : processPublishedMessages(() -> true);
+            sweep.exceptionally(ex -> {
+                log.error("Error processing published retry messages", ex);
+                return null;
+            });
         } catch (Exception ex) {
             log.error("Error in published retry processor", ex);
         }
@@ -110,65 +109,84 @@ public class MessageRetryProcessor {
      */
     private void processReceivedRetry() {
         try {
-            if (properties.isUseStorageLock()) {
-                String lockKey = "received_retry_" + properties.getVersion();
-                Duration ttl = Duration.ofSeconds(properties.getFailedRetryInterval() + 10);
-                String instance = getInstanceId();
-
-                messageStorage.acquireLockAsync(lockKey, ttl, instance)
-                    .thenCompose(acquired -> {
-                        if (!acquired) {
-                            return CompletableFuture.completedFuture(null);
-                        }
-                        return processReceivedMessages()
-                            .thenCompose(v -> messageStorage.releaseLockAsync(lockKey, instance));
-                    })
-                    .exceptionally(ex -> {
-                        log.error("Error processing received retry messages", ex);
-                        return null;
-                    });
-            } else {
-                processReceivedMessages()
-                    .exceptionally(ex -> {
-                        log.error("Error processing received retry messages", ex);
-                        return null;
-                    });
-            }
+            CompletableFuture<Void> sweep = properties.isUseStorageLock()
+                ? runWithLock("received_retry_" + properties.getVersion(), this::processReceivedMessages)
+                : processReceivedMessages(() -> true);
+            sweep.exceptionally(ex -> {
+                log.error("Error processing received retry messages", ex);
+                return null;
+            });
         } catch (Exception ex) {
             log.error("Error in received retry processor", ex);
         }
     }
 
-    private CompletableFuture<Void> processPublishedMessages() {
-        return messageStorage.getPublishedMessagesOfNeedRetry(Duration.ofSeconds(properties.getFallbackWindowLookbackSeconds()))
+    /**
+     * 持有存储锁执行一次扫描，未获取到锁时跳过
+     * 持有期间看门狗每隔 TTL/3 续期，扫描耗时超过租约时锁也不会被其他实例接管；
+     * 续期返回 false 说明锁已被接管，停止续期，扫描不再入队剩余消息，结束后也不释放他人的锁
+     */
+    private CompletableFuture<Void> runWithLock(String lockKey, Function<BooleanSupplier, CompletableFuture<Void>> sweep) {
+        Duration ttl = Duration.ofSeconds(Math.max(1, properties.getStorageLockTtl()));
+        return messageStorage.acquireLockAsync(lockKey, ttl, instanceId)
+            .thenCompose(acquired -> {
+                if (!acquired) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                long renewPeriod = Math.max(1, ttl.toMillis() / 3);
+                CompletableFuture<Void> lockLost = new CompletableFuture<>();
+                ScheduledFuture<?> watchdog = scheduler.scheduleAtFixedRate(
+                    () -> messageStorage.renewLockAsync(lockKey, ttl, instanceId)
+                        .whenComplete((renewed, ex) -> {
+                            if (ex != null) {
+                                // 存储暂不可用时继续尝试续期
+                                log.error("Failed to renew lock: {}", lockKey, ex);
+                            } else if (Boolean.FALSE.equals(renewed) && lockLost.complete(null)) {
+                                log.warn("Lock {} was taken over, stopping the current retry sweep", lockKey);
+                            }
+                        }),
+                    renewPeriod,
+                    renewPeriod,
+                    TimeUnit.MILLISECONDS
+                );
+                lockLost.thenRun(() -> watchdog.cancel(false));
+                CompletableFuture<Void> running;
+                try {
+                    running = sweep.apply(() -> !lockLost.isDone());
+                } catch (Exception ex) {
+                    running = CompletableFuture.failedFuture(ex);
+                }
+                return running
+                    .handle((v, ex) -> {
+                        watchdog.cancel(false);
+                        if (ex != null) {
+                            log.error("Error processing retry messages under lock: {}", lockKey, ex);
+                        }
+                        return null;
+                    })
+                    .thenCompose(v -> lockLost.isDone()
+                        ? CompletableFuture.<Void>completedFuture(null)
+                        : messageStorage.releaseLockAsync(lockKey, instanceId));
+            });
+    }
+
+    private CompletableFuture<Void> processPublishedMessages(BooleanSupplier lockHeld) {
+        Duration lookback = Duration.ofSeconds(properties.getFallbackWindowLookbackSeconds());
+        return messageStorage.getPublishedMessagesOfNeedRetry(lookback)
             .thenCompose(messages -> {
                 if (messages.isEmpty()) {
                     return CompletableFuture.completedFuture(null);
                 }
 
                 log.debug("Found {} published messages need retry", messages.size());
-                
-                // 批量更新状态为 RETRYING
-                return messageStorage.batchUpdatePublishedStatusAsync(
-                    CapMessageStatus.FAILED, 
-                    CapMessageStatus.RETRYING, 
-                    messages.size()
-                ).thenAccept(updatedCount -> {
-                    if (updatedCount > 0) {
-                        log.debug("Batch updated {} failed messages to RETRYING status", updatedCount);
-                        
-                        // 将消息重新入队到分发器
-                        List<CompletableFuture<Void>> futures = messages.stream()
-                            .map((Function<CapMessage, CompletableFuture<Void>>) message -> messageDispatcher.enqueueToPublish(message)
-                                .exceptionally(ex -> {
-                                    log.error("Failed to enqueue published message for retry: {}", message.getId(), ex);
-                                    return null;
-                                }))
-                            .toList();
 
-                        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
-                    }
-                });
+                List<CompletableFuture<Void>> futures = messages.stream()
+                    .map(message -> retry(message, lookback, lockHeld,
+                        (m, status) -> messageStorage.changePublishStateAsync(m, status, null),
+                        messageDispatcher::enqueueToPublish))
+                    .toList();
+
+                return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
             })
             .exceptionally(ex -> {
                 log.warn("Failed to get published messages for retry", ex);
@@ -176,36 +194,23 @@ public class MessageRetryProcessor {
             });
     }
 
-    private CompletableFuture<Void> processReceivedMessages() {
-        return messageStorage.getReceivedMessagesOfNeedRetry(Duration.ofSeconds(properties.getFallbackWindowLookbackSeconds()))
+    private CompletableFuture<Void> processReceivedMessages(BooleanSupplier lockHeld) {
+        Duration lookback = Duration.ofSeconds(properties.getFallbackWindowLookbackSeconds());
+        return messageStorage.getReceivedMessagesOfNeedRetry(lookback)
             .thenCompose(messages -> {
                 if (messages.isEmpty()) {
                     return CompletableFuture.completedFuture(null);
                 }
 
                 log.debug("Found {} received messages need retry", messages.size());
-                
-                // 批量更新状态为 RETRYING
-                return messageStorage.batchUpdateReceivedStatusAsync(
-                    CapMessageStatus.FAILED, 
-                    CapMessageStatus.RETRYING, 
-                    messages.size()
-                ).thenAccept(updatedCount -> {
-                    if (updatedCount > 0) {
-                        log.debug("Batch updated {} failed received messages to RETRYING status", updatedCount);
-                        
-                        // 将消息重新入队到分发器
-                        List<CompletableFuture<Void>> futures = messages.stream()
-                            .map((Function<CapMessage, CompletableFuture<Void>>) message -> messageDispatcher.enqueueToExecute(message)
-                                .exceptionally(ex -> {
-                                    log.error("Failed to enqueue received message for retry: {}", message.getId(), ex);
-                                    return null;
-                                }))
-                            .toList();
 
-                        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
-                    }
-                });
+                List<CompletableFuture<Void>> futures = messages.stream()
+                    .map(message -> retry(message, lookback, lockHeld,
+                        messageStorage::changeReceiveStateAsync,
+                        messageDispatcher::enqueueToExecute))
+                    .toList();
+
+                return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
             })
             .exceptionally(ex -> {
                 log.warn("Failed to get received messages for retry", ex);
@@ -214,15 +219,45 @@ public class MessageRetryProcessor {
     }
 
     /**
-     * 获取实例ID
+     * 把到期消息更新为 RETRYING 后重新入队到分发器
+     * RETRYING 的 NEXTRETRYAT 作为重试租约，进程在消息处理完成前退出时，租约到期后由重试扫描再次取出；
+     * 入队失败时恢复为 FAILED 并按失败重试间隔重新排期；入队前扫描锁已丢失时跳过，消息在重试租约到期后由新的锁持有者取出
+     */
+    private CompletableFuture<Void> retry(CapMessage message, Duration lease, BooleanSupplier lockHeld,
+                                          BiFunction<CapMessage, CapMessageStatus, CompletableFuture<Void>> changeState,
+                                          Function<CapMessage, CompletableFuture<Void>> enqueue) {
+        message.setNextRetryAt(LocalDateTime.now().plus(lease));
+        return changeState.apply(message, CapMessageStatus.RETRYING)
+            // 分发通道有界，入队可能阻塞，不能占用存储线程
+            .thenComposeAsync(v -> {
+                if (!lockHeld.getAsBoolean()) {
+                    log.debug("Retry lock lost, skip enqueueing message: {}", message.getId());
+                    return CompletableFuture.<Void>completedFuture(null);
+                }
+                return enqueue.apply(message);
+            }, enqueueExecutor)
+            .exceptionallyCompose(ex -> {
+                log.error("Failed to enqueue message for retry: {}", message.getId(), ex);
+                message.setNextRetryAt(LocalDateTime.now().plusSeconds(properties.getFailedRetryInterval()));
+                return changeState.apply(message, CapMessageStatus.FAILED);
+            })
+            .exceptionally(ex -> {
+                log.error("Failed to reschedule message for retry: {}", message.getId(), ex);
+                return null;
+            });
+    }
+
+    /**
+     * 获取实例ID：主机名加随机后缀，同一主机上的多个处理器各自持有不同的租约
      */
-    private String getInstanceId() {
+    private static String createInstanceId() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
         try {
             String hostname = java.net.InetAddress.getLocalHost().getHostName();
             int workerId = Math.abs(hostname.hashCode() % 1023);
-            return hostname + "_" + workerId;
+            return hostname + "_" + workerId + "_" + suffix;
         } catch (Exception ex) {
-            return "unknown_" + System.currentTimeMillis();
+            return "unknown_" + suffix;
         }
     }
 
@@ -254,6 +289,7 @@ public class MessageRetryProcessor {
                 Thread.currentThread().interrupt();
             }
         }
+        enqueueExecutor.shutdownNow();
         log.info("CAP message retry processor shutdown");
     }
 } 
\ No newline at end of file
@@ -0,0 +1,82 @@
+package com.guanwei.framework.cap.processor;
+
+import com.guanwei.framework.cap.CapMessage;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按顺序键分区的消息通道
+ * 顺序键相同的消息按哈希进入同一通道，由该通道唯一的处理线程按入队顺序处理；
+ * 没有顺序键的消息轮流分配到各通道
+ */
+class OrderedLanes {
+
+    private final BlockingQueue<CapMessage>[] lanes;
+    private final AtomicInteger nextLane = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param laneCount     通道数量
+     * @param totalCapacity 所有通道的总容量，平均分配到各通道
+     */
+    @SuppressWarnings("unchecked")
+    OrderedLanes(int laneCount, int totalCapacity) {
+        int count = Math.max(1, laneCount);
+        int capacity = Math.max(1, totalCapacity / count);
+        this.lanes = new BlockingQueue[count];
+        for (int i = 0; i < count; i++) {
+            lanes[i] = new LinkedBlockingQueue<>(capacity);
+        }
+    }
+
+    int laneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * 消息所属的通道
+     */
+    int laneOf(CapMessage message) {
+        String orderingKey = message.getOrderingKey();
+        if (orderingKey == null) {
+            return Math.floorMod(nextLane.getAndIncrement(), lanes.length);
+        }
+        int h = orderingKey.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), lanes.length);
+    }
+
+    void put(CapMessage message) throws InterruptedException {
+        lanes[laneOf(message)].put(message);
+    }
+
+    boolean offer(CapMessage message, long timeout, TimeUnit unit) throws InterruptedException {
+        boolean accepted = lanes[laneOf(message)].offer(message, timeout, unit);
+        if (!accepted) {
+            rejectedCount.incrementAndGet();
+        }
+        return accepted;
+    }
+
+    CapMessage poll(int lane, long timeout, TimeUnit unit) throws InterruptedException {
+        return lanes[lane].poll(timeout, unit);
+    }
+
+    /**
+     * 通道已满导致入队失败的次数
+     */
+    long rejectedCount() {
+        return rejectedCount.get();
+    }
+
+    int size() {
+        int size = 0;
+        for (BlockingQueue<CapMessage> lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,359 @@
+package com.guanwei.framework.cap.processor;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.codec.MessageCodecs;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 预编译的订阅方法调用
+ * 订阅者实例、参数绑定方式和参数的 JavaType/ObjectReader 在构建时一次性解析，
+ * 方法通过 LambdaMetafactory 绑定为函数接口（失败时退回缓存的 MethodHandle），
+ * 每条消息只做参数绑定和一次接口调用。
+ * 批量方法（唯一参数为 List&lt;T&gt;）按批绑定：List&lt;CapMessage&gt; 直接传入整批，其他元素类型逐条转换
+ */
+@Slf4j
+public final class SubscriberMethodInvoker {
+
+    private static final ObjectMapper DEFAULT_OBJECT_MAPPER = new ObjectMapper().findAndRegisterModules();
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final Object target;
+    private final Method method;
+    private final ParameterBinder[] binders;
+    private final BatchBinder batchBinder;
+    private final Invocation invocation;
+    private final boolean lambda;
+
+    private SubscriberMethodInvoker(Object target, Method method, ParameterBinder[] binders,
+                                    BatchBinder batchBinder, Invocation invocation, boolean lambda) {
+        this.target = target;
+        this.method = method;
+        this.binders = binders;
+        this.batchBinder = batchBinder;
+        this.invocation = invocation;
+        this.lambda = lambda;
+    }
+
+    /**
+     * 使用默认 ObjectMapper 编译
+     */
+    public static SubscriberMethodInvoker compile(Object target, Method method) {
+        return compile(target, method, DEFAULT_OBJECT_MAPPER);
+    }
+
+    /**
+     * 编译订阅方法
+     *
+     * @param target       订阅者实例
+     * @param method       订阅方法
+     * @param objectMapper 反序列化 POJO 参数使用的 ObjectMapper（应为应用共享实例）
+     * @return 预编译的调用
+     */
+    public static SubscriberMethodInvoker compile(Object target, Method method, ObjectMapper objectMapper) {
+        return compile(target, method, objectMapper, false);
+    }
+
+    /**
+     * 编译订阅方法
+     *
+     * @param target       订阅者实例
+     * @param method       订阅方法
+     * @param objectMapper 反序列化 POJO 参数使用的 ObjectMapper（应为应用共享实例）
+     * @param batch        是否按批绑定，要求 {@link #isBatchMethod(Method)}
+     * @return 预编译的调用
+     */
+    public static SubscriberMethodInvoker compile(Object target, Method method, ObjectMapper objectMapper,
+                                                  boolean batch) {
+        ObjectMapper mapper = objectMapper != null ? objectMapper : DEFAULT_OBJECT_MAPPER;
+        Type[] parameterTypes = method.getGenericParameterTypes();
+        ParameterBinder[] binders;
+        BatchBinder batchBinder = null;
+        if (batch) {
+            if (!isBatchMethod(method)) {
+                throw new IllegalArgumentException("Batch subscriber method must take a single List parameter: "
+                        + method);
+            }
+            binders = new ParameterBinder[0];
+            batchBinder = batchBinder(mapper, parameterTypes[0]);
+        } else {
+            binders = new ParameterBinder[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                binders[i] = binder(mapper, parameterTypes[i]);
+            }
+        }
+
+        MethodHandles.Lookup lookup = lookup(method);
+        Invocation invocation = null;
+        if (lookup != null && !Modifier.isStatic(method.getModifiers())) {
+            try {
+                invocation = lambda(lookup, method);
+            } catch (Throwable ex) {
+                log.debug("LambdaMetafactory binding failed for {}, falling back to MethodHandle: {}",
+                        method, ex.toString());
+            }
+        }
+        boolean lambda = invocation != null;
+        if (invocation == null) {
+            invocation = methodHandle(lookup, method);
+        }
+        return new SubscriberMethodInvoker(target, method, binders, batchBinder, invocation, lambda);
+    }
+
+    /**
+     * 方法是否可按批调用（唯一参数为 List）
+     */
+    public static boolean isBatchMethod(Method method) {
+        return method.getParameterCount() == 1 && method.getParameterTypes()[0] == List.class;
+    }
+
+    /**
+     * 调用订阅方法，订阅方法抛出的异常原样抛出
+     */
+    public Object invoke(CapMessage message) throws Exception {
+        if (batchBinder != null) {
+            return invokeBatch(List.of(message));
+        }
+        Object[] args = NO_ARGS;
+        if (binders.length > 0) {
+            args = new Object[binders.length];
+            for (int i = 0; i < binders.length; i++) {
+                args[i] = binders[i].bind(message);
+            }
+        }
+        try {
+            return invocation.invoke(target, args);
+        } catch (Exception | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * 以整批消息调用批量订阅方法，订阅方法抛出的异常原样抛出
+     */
+    public Object invokeBatch(List<CapMessage> messages) throws Exception {
+        if (batchBinder == null) {
+            throw new IllegalStateException("Subscriber method is not compiled for batches: " + method);
+        }
+        try {
+            return invocation.invoke(target, new Object[]{batchBinder.bind(messages)});
+        } catch (Exception | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * 是否按批绑定
+     */
+    public boolean isBatch() {
+        return batchBinder != null;
+    }
+
+    public Object getTarget() {
+        return target;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * 是否通过 LambdaMetafactory 绑定（否则为 MethodHandle）
+     */
+    public boolean isLambda() {
+        return lambda;
+    }
+
+    private static ParameterBinder binder(ObjectMapper mapper, Type parameterType) {
+        if (parameterType == CapMessage.class) {
+            return message -> message;
+        }
+        if (parameterType == String.class) {
+            // 二进制内容转为等价的 JSON 文本
+            return message -> message.getPayload() != null
+                    ? MessageCodecs.contentAsString(message) : message.getContent();
+        }
+
+        JavaType javaType = mapper.getTypeFactory().constructType(parameterType);
+        ObjectReader reader = mapper.readerFor(javaType);
+        Constructor<?> defaultConstructor = defaultConstructor(javaType.getRawClass());
+        return message -> {
+            if (message.getPayload() != null && message.getPayload().length > 0) {
+                // 二进制内容按 cap-content-type 对应的编解码直接解码
+                return MessageCodecs.readContent(message, parameterType);
+            }
+            String content = message.getContent();
+            if (content != null && !content.isEmpty()) {
+                return reader.readValue(content);
+            }
+            // 消息内容为空时使用默认实例
+            return defaultConstructor != null ? defaultConstructor.newInstance() : null;
+        };
+    }
+
+    private static BatchBinder batchBinder(ObjectMapper mapper, Type parameterType) {
+        Type elementType = CapMessage.class;
+        if (parameterType instanceof ParameterizedType parameterized) {
+            elementType = parameterized.getActualTypeArguments()[0];
+        }
+        if (elementType == CapMessage.class) {
+            return messages -> messages;
+        }
+
+        ParameterBinder element = binder(mapper, elementType);
+        return messages -> {
+            List<Object> values = new ArrayList<>(messages.size());
+            for (CapMessage message : messages) {
+                values.add(element.bind(message));
+            }
+            return values;
+        };
+    }
+
+    private static Constructor<?> defaultConstructor(Class<?> type) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    private static MethodHandles.Lookup lookup(Method method) {
+        try {
+            return MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+        } catch (Exception ex) {
+            log.debug("Private lookup unavailable for {}: {}", method.getDeclaringClass(), ex.toString());
+            return null;
+        }
+    }
+
+    private static Invocation lambda(MethodHandles.Lookup lookup, Method method) throws Throwable {
+        MethodHandle implementation = lookup.unreflect(method);
+        boolean isVoid = method.getReturnType() == void.class;
+        MethodType instantiated = implementation.type().wrap()
+                .changeReturnType(isVoid ? void.class : implementation.type().wrap().returnType());
+
+        switch (method.getParameterCount()) {
+            case 0:
+                if (isVoid) {
+                    Consumer<Object> consumer = bind(lookup, Consumer.class, "accept", implementation, instantiated);
+                    return (target, args) -> {
+                        consumer.accept(target);
+                        return null;
+                    };
+                } else {
+                    Function<Object, Object> function = bind(lookup, Function.class, "apply", implementation, instantiated);
+                    return (target, args) -> function.apply(target);
+                }
+            case 1:
+                if (isVoid) {
+                    BiConsumer<Object, Object> consumer = bind(lookup, BiConsumer.class, "accept", implementation, instantiated);
+                    return (target, args) -> {
+                        consumer.accept(target, args[0]);
+                        return null;
+                    };
+                } else {
+                    BiFunction<Object, Object, Object> function = bind(lookup, BiFunction.class, "apply", implementation, instantiated);
+                    return (target, args) -> function.apply(target, args[0]);
+                }
+            case 2:
+                if (isVoid) {
+                    TriConsumer consumer = bind(lookup, TriConsumer.class, "accept", implementation, instantiated);
+                    return (target, args) -> {
+                        consumer.accept(target, args[0], args[1]);
+                        return null;
+                    };
+                } else {
+                    TriFunction function = bind(lookup, TriFunction.class, "apply", implementation, instantiated);
+                    return (target, args) -> function.apply(target, args[0], args[1]);
+                }
+            default:
+                return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T bind(MethodHandles.Lookup lookup, Class<?> interfaceType, String interfaceMethod,
+                              MethodHandle implementation, MethodType instantiated) throws Throwable {
+        MethodType erased = instantiated.erase();
+        CallSite site = LambdaMetafactory.metafactory(lookup, interfaceMethod, MethodType.methodType(interfaceType),
+                erased, implementation, instantiated);
+        return (T) site.getTarget().invoke();
+    }
+
+    private static Invocation methodHandle(MethodHandles.Lookup lookup, Method method) {
+        try {
+            MethodHandle handle;
+            if (lookup != null) {
+                handle = lookup.unreflect(method);
+            } else {
+                method.setAccessible(true);
+                handle = MethodHandles.lookup().unreflect(method);
+            }
+            if (Modifier.isStatic(method.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            MethodHandle spreader = handle.asSpreader(Object[].class, method.getParameterCount())
+                    .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+            return (target, args) -> spreader.invokeExact(target, args);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException("Cannot access subscriber method: " + method, ex);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Invocation {
+        Object invoke(Object target, Object[] args) throws Throwable;
+    }
+
+    @FunctionalInterface
+    private interface ParameterBinder {
+        Object bind(CapMessage message) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface BatchBinder {
+        Object bind(List<CapMessage> messages) throws Exception;
+    }
+
+    /**
+     * 双参数订阅方法绑定的函数接口（需为 public，生成的实现类定义在订阅者所在的包中）
+     */
+    @FunctionalInterface
+    public interface TriFunction {
+        Object apply(Object target, Object first, Object second);
+    }
+
+    /**
+     * 无返回值的双参数订阅方法绑定的函数接口
+     */
+    @FunctionalInterface
+    public interface TriConsumer {
+        void accept(Object target, Object first, Object second);
+    }
+}
@@ -38,8 +38,8 @@ public class CapQueueManager {
         this.version = version;
     }
 
-    // 缓存已创建的队列，避免重复创建
-    private final Map<String, Boolean> createdQueues = new ConcurrentHashMap<>();
+    // 已声明的拓扑：消息主题 -> 消息组（null 记为空串） -> 队列名称，每个 (name, group) 只声明一次
+    private final Map<String, Map<String, String>> declaredTopology = new ConcurrentHashMap<>();
 
     @PostConstruct
     public void init() {
@@ -123,14 +123,18 @@ public class CapQueueManager {
      * @return 队列名称
      */
     public String createQueueAndBind(String messageName, String group) {
-        String queueName = buildQueueName(messageName, group);
-        String cacheKey = queueName + ":" + messageName;
-
-        // 检查是否已经创建过
-        if (createdQueues.containsKey(cacheKey)) {
-            return queueName;
-        }
+        // 热路径只有两次 Map 查找；首次声明在 computeIfAbsent 内完成，并发的首次发送不会重复声明
+        // 声明失败时异常直接抛出且不写入缓存，下次发送重试
+        return declaredTopology
+                .computeIfAbsent(messageName, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(group == null ? "" : group, k -> declareQueueAndBind(messageName, group));
+    }
 
+    /**
+     * 声明队列并以消息主题为路由键绑定到交换机
+     */
+    private String declareQueueAndBind(String messageName, String group) {
+        String queueName = buildQueueName(messageName, group);
         try {
             // 确保交换机存在
             ensureExchangeExists();
@@ -145,9 +149,6 @@ public class CapQueueManager {
                     exchangeName, messageName, null);
             rabbitAdmin.declareBinding(binding);
 
-            // 标记为已创建
-            createdQueues.put(cacheKey, true);
-
             log.info("Created CAP queue: {} and bound to exchange: {} with routing key: {}",
                     queueName, exchangeName, messageName);
 
@@ -194,6 +195,8 @@ public class CapQueueManager {
     public boolean deleteQueue(String queueName) {
         try {
             rabbitAdmin.deleteQueue(queueName);
+            // 删除后移出缓存，再次发送时重新声明
+            declaredTopology.values().forEach(groups -> groups.values().remove(queueName));
             log.info("Deleted CAP queue: {}", queueName);
             return true;
         } catch (Exception e) {
@@ -0,0 +1,166 @@
+package com.guanwei.framework.cap.queue;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 两级哈希时间轮
+ * 内层每格一个 tick，覆盖 WHEEL_SIZE 个 tick；更长的延迟放入外层（每格一整圈），
+ * 到达所在圈时一次性下沉到内层。插入与到期均为 O(1)，空闲时工作线程挂起不占用 CPU。
+ */
+@Slf4j
+final class HashedTimingWheel<T> {
+
+    private static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final Consumer<T> expiryHandler;
+
+    /**
+     * 以下桶只由工作线程访问
+     */
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Timeout<T>>[] innerWheel = new ArrayDeque[WHEEL_SIZE];
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Timeout<T>>[] outerWheel = new ArrayDeque[WHEEL_SIZE];
+
+    /**
+     * 新任务先进入无锁队列，由工作线程在每个 tick 开始时放入对应的格子
+     */
+    private final Queue<Timeout<T>> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicLong size = new AtomicLong();
+    private final Thread worker;
+
+    private volatile boolean running = true;
+    private long currentTick;
+
+    HashedTimingWheel(long tickMillis, String threadName, Consumer<T> expiryHandler) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be greater than 0: " + tickMillis);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.expiryHandler = expiryHandler;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            innerWheel[i] = new ArrayDeque<>();
+            outerWheel[i] = new ArrayDeque<>();
+        }
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, threadName);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 添加延迟任务
+     */
+    void schedule(T task, long delayMillis) {
+        long deadline = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        // 向上取整，保证不会早于到期时间触发
+        long targetTick = (deadline + tickNanos - 1) / tickNanos;
+        pendingTimeouts.add(new Timeout<>(task, targetTick));
+        if (size.getAndIncrement() == 0) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * 尚未到期的任务数量
+     */
+    long size() {
+        return size.get();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        while (running) {
+            long nowTick = (System.nanoTime() - startNanos) / tickNanos;
+            if (size.get() == 0) {
+                // 没有任务时直接对齐到当前 tick，不空转历史格子
+                currentTick = Math.max(currentTick, nowTick);
+                LockSupport.park(this);
+                continue;
+            }
+
+            while (currentTick <= nowTick) {
+                transferPendingTimeouts();
+                if ((currentTick & MASK) == 0) {
+                    cascade(currentTick / WHEEL_SIZE);
+                }
+                expire(innerWheel[(int) (currentTick & MASK)]);
+                currentTick++;
+            }
+
+            long sleepNanos = startNanos + currentTick * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                LockSupport.parkNanos(this, sleepNanos);
+            }
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        Timeout<T> timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            place(timeout);
+        }
+    }
+
+    private void place(Timeout<T> timeout) {
+        long targetTick = Math.max(timeout.targetTick, currentTick);
+        if (targetTick - currentTick < WHEEL_SIZE) {
+            innerWheel[(int) (targetTick & MASK)].add(timeout);
+        } else {
+            outerWheel[(int) ((targetTick / WHEEL_SIZE) & MASK)].add(timeout);
+        }
+    }
+
+    /**
+     * 把外层中属于当前圈的任务下沉到内层，其余（更远的圈）保持不动
+     */
+    private void cascade(long round) {
+        ArrayDeque<Timeout<T>> bucket = outerWheel[(int) (round & MASK)];
+        Iterator<Timeout<T>> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout<T> timeout = iterator.next();
+            if (timeout.targetTick / WHEEL_SIZE == round) {
+                iterator.remove();
+                innerWheel[(int) (timeout.targetTick & MASK)].add(timeout);
+            }
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout<T>> bucket) {
+        Timeout<T> timeout;
+        while ((timeout = bucket.poll()) != null) {
+            size.decrementAndGet();
+            try {
+                expiryHandler.accept(timeout.task);
+            } catch (Exception e) {
+                log.error("Failed to handle expired timeout", e);
+            }
+        }
+    }
+
+    private static final class Timeout<T> {
+        private final T task;
+        private final long targetTick;
+
+        private Timeout(T task, long targetTick) {
+            this.task = task;
+            this.targetTick = targetTick;
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package com.guanwei.framework.cap.queue;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.CapMessageStatus;
+import com.guanwei.framework.cap.CapProperties;
+import com.guanwei.framework.cap.codec.MessageCodec;
+import com.guanwei.framework.cap.codec.MessageCodecs;
+import com.guanwei.framework.cap.util.MessageIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kafka 消息队列实现
+ * 消息名称映射为主题（topicPrefix + name），队列名称（group.version）作为消费者组，
+ * 消息ID作为分区键；偏移量只在 acknowledge 之后提交
+ */
+@Slf4j
+public class KafkaMessageQueue implements MessageQueue {
+
+    private static final int MAX_POLL_RECORDS = 500;
+
+    /**
+     * 本地缓冲上限，超过后暂停拉取
+     */
+    private static final int MAX_BUFFERED_MESSAGES = 4 * MAX_POLL_RECORDS;
+
+    /**
+     * 无法生成消息ID（租约丢失、时钟回拨）时分区暂停的时长，之后从同一偏移量重新拉取
+     */
+    private static final long STALL_BACKOFF_MILLIS = 1000;
+
+    /**
+     * 二进制编码消息的 content-type 记录头，未携带时按 JSON 解码
+     */
+    private static final String CONTENT_TYPE_HEADER = "content-type";
+
+    private final CapProperties.Kafka kafkaProperties;
+    private final ObjectMapper objectMapper;
+    private final KafkaProducer<String, byte[]> producer;
+
+    /**
+     * 队列名称 -> 该消费者组订阅的主题
+     */
+    private final Map<String, Set<String>> queueTopics = new ConcurrentHashMap<>();
+
+    /**
+     * 队列名称 -> 消费者（每个消费者组一个拉取线程）
+     */
+    private final Map<String, GroupConsumer> consumers = new ConcurrentHashMap<>();
+
+    public KafkaMessageQueue(CapProperties.Kafka kafkaProperties) {
+        this.kafkaProperties = kafkaProperties;
+
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.objectMapper.registerModule(new JavaTimeModule());
+
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaProperties.getBootstrapServers());
+        props.put(ProducerConfig.ACKS_CONFIG, kafkaProperties.getProducer().getAcks());
+        props.put(ProducerConfig.RETRIES_CONFIG, kafkaProperties.getProducer().getRetries());
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, kafkaProperties.getProducer().getBatchSize());
+        props.put(ProducerConfig.LINGER_MS_CONFIG, kafkaProperties.getProducer().getLingerMs());
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        this.producer = new KafkaProducer<>(props);
+
+        log.info("CAP Kafka MessageQueue initialized with servers: {}", kafkaProperties.getBootstrapServers());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        consumers.values().forEach(GroupConsumer::close);
+        consumers.clear();
+        producer.close(Duration.ofSeconds(10));
+        log.info("CAP Kafka message queue destroyed");
+    }
+
+    @Override
+    public boolean send(String queueName, CapMessage message) {
+        try {
+            return sendAsync(queueName, message).get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while sending message to topic: {}", message.getName());
+            return false;
+        } catch (Exception e) {
+            log.error("Failed to send message to topic: {}", message.getName(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> sendAsync(String queueName, CapMessage message) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        try {
+            if (message.getId() == null) {
+                message.setDbId(MessageIdGenerator.getInstance().nextId());
+            }
+            // 不阻塞等待单条确认，由 linger.ms / batch.size 合并发送
+            MessageCodec codec = MessageCodecs.of(message);
+            byte[] value = codec.isBinary()
+                    ? codec.getObjectMapper().writeValueAsBytes(message)
+                    : objectMapper.writeValueAsBytes(message);
+            ProducerRecord<String, byte[]> record = new ProducerRecord<>(buildTopic(message.getName()),
+                    String.valueOf(message.getId()), value);
+            if (codec.isBinary()) {
+                record.headers().add(CONTENT_TYPE_HEADER, codec.getContentType().getBytes(StandardCharsets.UTF_8));
+            }
+            producer.send(record, (metadata, exception) -> {
+                if (exception != null) {
+                    log.error("Failed to send message {} to topic: {}", message.getId(), record.topic(), exception);
+                    future.complete(false);
+                } else {
+                    future.complete(true);
+                }
+            });
+        } catch (Exception e) {
+            log.error("Failed to send message to topic: {}", message.getName(), e);
+            future.complete(false);
+        }
+        return future;
+    }
+
+    @Override
+    public boolean sendDelay(String queueName, CapMessage message, long delaySeconds) {
+        // Kafka 不支持单条延迟，延迟由存储调度器在到期后发送
+        return send(queueName, message);
+    }
+
+    @Override
+    public void bind(String queueName, String messageName) {
+        Set<String> topics = queueTopics.computeIfAbsent(queueName, k -> ConcurrentHashMap.newKeySet());
+        if (topics.add(buildTopic(messageName))) {
+            GroupConsumer consumer = consumers.get(queueName);
+            if (consumer != null) {
+                consumer.resubscribe();
+            }
+            log.info("Bound topic {} to consumer group {}", buildTopic(messageName), queueName);
+        }
+    }
+
+    @Override
+    public CapMessage receive(String queueName, long timeout) {
+        try {
+            GroupConsumer consumer = getOrCreateConsumer(queueName);
+            if (consumer == null) {
+                return null;
+            }
+            return consumer.buffer.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while receiving message from queue: {}", queueName);
+            return null;
+        } catch (Exception e) {
+            log.error("Failed to receive message from queue: {}", queueName, e);
+            return null;
+        }
+    }
+
+    @Override
+    public List<CapMessage> receiveBatch(String queueName, int maxCount, long timeout) {
+        List<CapMessage> messages = new ArrayList<>();
+        CapMessage first = receive(queueName, timeout);
+        if (first == null) {
+            return messages;
+        }
+        messages.add(first);
+
+        GroupConsumer consumer = consumers.get(queueName);
+        if (consumer != null && maxCount > 1) {
+            consumer.buffer.drainTo(messages, maxCount - 1);
+        }
+        return messages;
+    }
+
+    @Override
+    public boolean acknowledge(String queueName, Long messageId) {
+        GroupConsumer consumer = consumers.get(queueName);
+        return consumer != null && consumer.complete(messageId);
+    }
+
+    @Override
+    public boolean reject(String queueName, Long messageId, boolean requeue) {
+        GroupConsumer consumer = consumers.get(queueName);
+        if (consumer == null) {
+            return false;
+        }
+        // Kafka 无法单条重新入队：需要重试时在本地重新投递，否则视为已处理并推进偏移量
+        return requeue ? consumer.redeliver(messageId) : consumer.complete(messageId);
+    }
+
+    @Override
+    public long getQueueLength(String queueName) {
+        GroupConsumer consumer = consumers.get(queueName);
+        return consumer != null ? consumer.buffer.size() : 0;
+    }
+
+    @Override
+    public boolean clearQueue(String queueName) {
+        GroupConsumer consumer = consumers.get(queueName);
+        if (consumer != null) {
+            consumer.buffer.clear();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean deleteQueue(String queueName) {
+        GroupConsumer consumer = consumers.remove(queueName);
+        queueTopics.remove(queueName);
+        if (consumer != null) {
+            consumer.close();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean queueExists(String queueName) {
+        return consumers.containsKey(queueName);
+    }
+
+    private String buildTopic(String messageName) {
+        String prefix = kafkaProperties.getTopicPrefix();
+        return prefix != null ? prefix + messageName : messageName;
+    }
+
+    private GroupConsumer getOrCreateConsumer(String queueName) {
+        GroupConsumer consumer = consumers.get(queueName);
+        if (consumer != null) {
+            return consumer;
+        }
+        Set<String> topics = queueTopics.get(queueName);
+        if (topics == null || topics.isEmpty()) {
+            log.debug("No topic bound to queue {}, skip consuming", queueName);
+            return null;
+        }
+        return consumers.computeIfAbsent(queueName, k -> new GroupConsumer(queueName, topics));
+    }
+
+    private CapMessage decode(ConsumerRecord<String, byte[]> record, String queueName) {
+        // 二进制编码的消息按 content-type 记录头解码
+        Header contentType = record.headers().lastHeader(CONTENT_TYPE_HEADER);
+        MessageCodec codec = contentType != null
+                ? MessageCodecs.forContentType(new String(contentType.value(), StandardCharsets.UTF_8)) : null;
+        try {
+            CapMessage message = codec != null && codec.isBinary()
+                    ? codec.decode(record.value(), CapMessage.class)
+                    : objectMapper.readValue(record.value(), CapMessage.class);
+            if (message.getId() != null && message.getName() != null) {
+                return message;
+            }
+        } catch (Exception e) {
+            log.debug("Record at {}-{}@{} is not a CapMessage, wrapping as content",
+                    record.topic(), record.partition(), record.offset());
+        }
+
+        // 非 CAP 格式的消息，原文作为内容
+        String prefix = kafkaProperties.getTopicPrefix();
+        String name = prefix != null && record.topic().startsWith(prefix)
+                ? record.topic().substring(prefix.length()) : record.topic();
+        LocalDateTime now = LocalDateTime.now();
+        CapMessage message = CapMessage.builder()
+                .id(MessageIdGenerator.getInstance().nextId())
+                .name(name)
+                .group(queueName)
+                .content(new String(record.value(), StandardCharsets.UTF_8))
+                .status(CapMessageStatus.PENDING)
+                .retries(0)
+                .createdAt(now)
+                .updatedAt(now)
+                .sentTime(now)
+                .messageType(CapMessage.MessageType.NORMAL)
+                .build();
+        message.initializeHeaders();
+        return message;
+    }
+
+    /**
+     * 单个消费者组：独占 KafkaConsumer 的拉取线程 + 本地缓冲 + 按分区跟踪已确认的偏移量
+     */
+    private final class GroupConsumer implements ConsumerRebalanceListener {
+
+        private final String queueName;
+        private final Set<String> topics;
+        private final KafkaConsumer<String, byte[]> consumer;
+        private final BlockingQueue<CapMessage> buffer = new LinkedBlockingQueue<>();
+
+        /**
+         * 消息ID -> 所在分区与偏移量（尚未确认）
+         */
+        private final Map<Long, InFlight> inFlight = new ConcurrentHashMap<>();
+
+        /**
+         * 分区 -> (偏移量 -> 是否已确认)，只提交连续已确认的最大偏移量
+         */
+        private final Map<TopicPartition, ConcurrentSkipListMap<Long, Boolean>> offsets = new ConcurrentHashMap<>();
+
+        /**
+         * 因无法生成消息ID而暂停的分区 -> 恢复拉取的时间（只在拉取线程中访问）
+         */
+        private final Map<TopicPartition, Long> stalled = new HashMap<>();
+
+        private final Thread pollThread;
+        private volatile boolean running = true;
+        private volatile boolean subscriptionChanged;
+
+        private GroupConsumer(String queueName, Set<String> topics) {
+            this.queueName = queueName;
+            this.topics = topics;
+
+            CapProperties.Consumer consumerProperties = kafkaProperties.getConsumer();
+            Properties props = new Properties();
+            props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaProperties.getBootstrapServers());
+            props.put(ConsumerConfig.GROUP_ID_CONFIG, queueName);
+            // 偏移量由确认驱动提交，不使用自动提交
+            props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+            props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+            props.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, consumerProperties.getSessionTimeoutMs());
+            props.put(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, consumerProperties.getHeartbeatIntervalMs());
+            props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+            props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+            props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, MAX_POLL_RECORDS);
+            this.consumer = new KafkaConsumer<>(props);
+
+            this.pollThread = new Thread(this::pollLoop, "cap-kafka-" + queueName);
+            this.pollThread.setDaemon(true);
+            this.pollThread.start();
+        }
+
+        private void pollLoop() {
+            try {
+                consumer.subscribe(new ArrayList<>(topics), this);
+                while (running) {
+                    if (subscriptionChanged) {
+                        subscriptionChanged = false;
+                        consumer.subscribe(new ArrayList<>(topics), this);
+                    }
+
+                    // 本地缓冲积压时暂停拉取，保持心跳
+                    if (buffer.size() >= MAX_BUFFERED_MESSAGES) {
+                        consumer.pause(consumer.assignment());
+                    } else if (!consumer.paused().isEmpty()) {
+                        resumeReady();
+                    }
+
+                    ConsumerRecords<String, byte[]> records = consumer.poll(Duration.ofMillis(100));
+                    for (ConsumerRecord<String, byte[]> record : records) {
+                        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                        // 分区已回退暂停，本批其余记录恢复后重新拉取
+                        if (!stalled.containsKey(partition)) {
+                            track(record, partition);
+                        }
+                    }
+                    commitCompleted(false);
+                }
+            } catch (WakeupException e) {
+                if (running) {
+                    log.error("Kafka consumer for {} woke up unexpectedly", queueName, e);
+                }
+            } catch (Exception e) {
+                log.error("Kafka consumer for {} stopped", queueName, e);
+            } finally {
+                try {
+                    commitCompleted(true);
+                } catch (Exception e) {
+                    log.warn("Failed to commit offsets on close for {}", queueName, e);
+                }
+                consumer.close(Duration.ofSeconds(5));
+            }
+        }
+
+        private void track(ConsumerRecord<String, byte[]> record, TopicPartition partition) {
+            CapMessage message;
+            try {
+                message = decode(record, queueName);
+            } catch (IllegalStateException e) {
+                // 暂时无法生成消息ID：回退到该记录并暂停分区，偏移量不登记也不提交，消费线程继续运行
+                log.warn("Cannot decode record at {}@{} for {}, retry in {} ms: {}",
+                        partition, record.offset(), queueName, STALL_BACKOFF_MILLIS, e.getMessage());
+                consumer.seek(partition, record.offset());
+                consumer.pause(List.of(partition));
+                stalled.put(partition, System.currentTimeMillis() + STALL_BACKOFF_MILLIS);
+                return;
+            }
+            offsets.computeIfAbsent(partition, k -> new ConcurrentSkipListMap<>()).put(record.offset(), Boolean.FALSE);
+
+            InFlight previous = inFlight.put(message.getId(), new InFlight(partition, record.offset(), message));
+            if (previous != null) {
+                // 同一消息重复投递，之前的位置视为已处理，避免阻塞偏移量提交
+                markCompleted(previous);
+            }
+            buffer.offer(message);
+        }
+
+        private boolean complete(Long messageId) {
+            InFlight position = inFlight.remove(messageId);
+            if (position == null) {
+                return false;
+            }
+            markCompleted(position);
+            return true;
+        }
+
+        private boolean redeliver(Long messageId) {
+            InFlight position = inFlight.get(messageId);
+            return position != null && buffer.offer(position.message);
+        }
+
+        private void markCompleted(InFlight position) {
+            ConcurrentSkipListMap<Long, Boolean> partitionOffsets = offsets.get(position.partition);
+            if (partitionOffsets != null) {
+                partitionOffsets.replace(position.offset, Boolean.TRUE);
+            }
+        }
+
+        /**
+         * 恢复暂停的分区，因无法生成消息ID而暂停的分区需等到退避结束
+         */
+        private void resumeReady() {
+            long now = System.currentTimeMillis();
+            stalled.values().removeIf(resumeAt -> resumeAt <= now);
+            List<TopicPartition> ready = new ArrayList<>(consumer.paused());
+            ready.removeAll(stalled.keySet());
+            if (!ready.isEmpty()) {
+                consumer.resume(ready);
+            }
+        }
+
+        /**
+         * 提交每个分区从头开始连续已确认的偏移量（只在拉取线程中调用）
+         */
+        private void commitCompleted(boolean sync) {
+            Map<TopicPartition, OffsetAndMetadata> commits = new HashMap<>();
+            offsets.forEach((partition, partitionOffsets) -> {
+                Long next = null;
+                Map.Entry<Long, Boolean> head;
+                while ((head = partitionOffsets.firstEntry()) != null && head.getValue()) {
+                    next = head.getKey() + 1;
+                    partitionOffsets.remove(head.getKey());
+                }
+                if (next != null) {
+                    commits.put(partition, new OffsetAndMetadata(next));
+                }
+            });
+            if (commits.isEmpty()) {
+                return;
+            }
+            if (sync) {
+                consumer.commitSync(commits);
+            } else {
+                consumer.commitAsync(commits, (committed, exception) -> {
+                    if (exception != null) {
+                        log.warn("Failed to commit offsets for {}: {}", queueName, exception.getMessage());
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            commitCompleted(true);
+            // 被回收分区上未确认的消息会由新的分区所有者重新消费，本地缓冲中尚未取走的一并丢弃，避免重复处理
+            partitions.forEach(offsets::remove);
+            partitions.forEach(stalled::remove);
+            Set<Long> revoked = new HashSet<>();
+            inFlight.values().removeIf(position -> {
+                if (partitions.contains(position.partition)) {
+                    revoked.add(position.message.getId());
+                    return true;
+                }
+                return false;
+            });
+            if (!revoked.isEmpty()) {
+                buffer.removeIf(message -> revoked.contains(message.getId()));
+                log.debug("Dropped {} unacknowledged messages of revoked partitions {} for {}",
+                        revoked.size(), partitions, queueName);
+            }
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            log.debug("Partitions assigned to {}: {}", queueName, partitions);
+        }
+
+        private void resubscribe() {
+            subscriptionChanged = true;
+        }
+
+        private void close() {
+            running = false;
+            consumer.wakeup();
+            try {
+                pollThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class InFlight {
+        private final TopicPartition partition;
+        private final long offset;
+        private final CapMessage message;
+
+        private InFlight(TopicPartition partition, long offset, CapMessage message) {
+            this.partition = partition;
+            this.offset = offset;
+            this.message = message;
+        }
+    }
+}
@@ -1,16 +1,17 @@
 package com.guanwei.framework.cap.queue;
 
 import com.guanwei.framework.cap.CapMessage;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
 
 /**
  * 内存消息队列实现
@@ -19,15 +20,58 @@ import java.util.stream.Collectors;
 @Slf4j
 public class MemoryMessageQueue implements MessageQueue {
 
+    /**
+     * 默认时间轮刻度（毫秒）
+     */
+    public static final long DEFAULT_DELAY_TICK_MILLIS = 10;
+
+    /**
+     * 默认单个队列容量
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 100000;
+
+    /**
+     * 默认队列已满时的发送等待时间（毫秒）
+     */
+    public static final long DEFAULT_SEND_TIMEOUT_MILLIS = 5000;
+
     private final Map<String, BlockingQueue<CapMessage>> queues = new ConcurrentHashMap<>();
-    private final Map<String, BlockingQueue<CapMessage>> delayQueues = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final HashedTimingWheel<DelayedMessage> delayWheel;
     private final AtomicLong messageIdCounter = new AtomicLong(0);
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+    private final int queueCapacity;
+    private final long sendTimeoutMillis;
 
     public MemoryMessageQueue() {
-        log.info("CAP Memory MessageQueue initialized");
-        // 启动延迟消息处理线程
-        scheduler.scheduleWithFixedDelay(this::processDelayMessages, 1, 1, TimeUnit.SECONDS);
+        this(DEFAULT_DELAY_TICK_MILLIS);
+    }
+
+    public MemoryMessageQueue(long delayTickMillis) {
+        this(delayTickMillis, DEFAULT_QUEUE_CAPACITY, DEFAULT_SEND_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param delayTickMillis   延迟消息时间轮刻度（毫秒）
+     * @param queueCapacity     单个队列容量
+     * @param sendTimeoutMillis 队列已满时发送方的最长等待时间（毫秒）
+     */
+    public MemoryMessageQueue(long delayTickMillis, int queueCapacity, long sendTimeoutMillis) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.sendTimeoutMillis = Math.max(0, sendTimeoutMillis);
+        // 延迟消息由时间轮到期后投递到主队列
+        this.delayWheel = new HashedTimingWheel<>(delayTickMillis, "cap-memory-delay-wheel",
+                delayed -> send(delayed.queueName, delayed.message));
+        log.info("CAP Memory MessageQueue initialized, delay tick: {}ms, queue capacity: {}",
+                delayTickMillis, this.queueCapacity);
+    }
+
+    /**
+     * 停止延迟时间轮线程，未到期的延迟消息随之丢弃
+     */
+    @PreDestroy
+    public void destroy() {
+        delayWheel.stop();
+        log.info("CAP Memory MessageQueue destroyed");
     }
 
     @Override
@@ -41,8 +85,16 @@ public class MemoryMessageQueue implements MessageQueue {
                 message.setAdded(LocalDateTime.now());
             }
 
-            boolean result = queue.offer(message);
+            // 队列已满时阻塞发送方，形成背压
+            boolean result = queue.offer(message, sendTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (!result) {
+                rejectedCount.incrementAndGet();
+                log.warn("Queue {} is full ({} messages), rejected message {}", queueName, queueCapacity, message.getId());
+            }
             return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         } catch (Exception e) {
             log.error("Failed to send message to queue {}: {}", queueName, message, e);
             return false;
@@ -57,7 +109,6 @@ public class MemoryMessageQueue implements MessageQueue {
     @Override
     public boolean sendDelay(String queueName, CapMessage message, long delaySeconds) {
         try {
-            BlockingQueue<CapMessage> delayQueue = getOrCreateDelayQueue(queueName);
             if (message.getId() == null) {
                 message.setDbId(generateMessageId());
             }
@@ -68,8 +119,8 @@ public class MemoryMessageQueue implements MessageQueue {
             // 设置过期时间
             message.setExpiresAt(LocalDateTime.now().plusSeconds(delaySeconds));
 
-            boolean result = delayQueue.offer(message);
-            return result;
+            delayWheel.schedule(new DelayedMessage(queueName, message), TimeUnit.SECONDS.toMillis(delaySeconds));
+            return true;
         } catch (Exception e) {
             log.error("Failed to send delay message to queue {}: {}", queueName, message, e);
             return false;
@@ -94,16 +145,15 @@ public class MemoryMessageQueue implements MessageQueue {
 
     @Override
     public List<CapMessage> receiveBatch(String queueName, int maxCount, long timeout) {
-        List<CapMessage> messages = new CopyOnWriteArrayList<>();
-        long startTime = System.currentTimeMillis();
-
-        while (messages.size() < maxCount && (System.currentTimeMillis() - startTime) < timeout) {
-            CapMessage message = receive(queueName, 100); // 短超时，避免阻塞
-            if (message != null) {
-                messages.add(message);
-            } else {
-                break; // 没有更多消息
-            }
+        List<CapMessage> messages = new ArrayList<>();
+        // 只为首条消息等待，其余取走已在队列中的消息，繁忙队列不会为凑满一批而延迟
+        CapMessage first = receive(queueName, timeout);
+        if (first == null) {
+            return messages;
+        }
+        messages.add(first);
+        if (maxCount > 1) {
+            getOrCreateQueue(queueName).drainTo(messages, maxCount - 1);
         }
 
         log.debug("Received {} messages from queue {}", messages.size(), queueName);
@@ -145,8 +195,7 @@ public class MemoryMessageQueue implements MessageQueue {
     @Override
     public boolean deleteQueue(String queueName) {
         BlockingQueue<CapMessage> queue = queues.remove(queueName);
-        BlockingQueue<CapMessage> delayQueue = delayQueues.remove(queueName);
-        if (queue != null || delayQueue != null) {
+        if (queue != null) {
             log.debug("Deleted queue: {}", queueName);
             return true;
         }
@@ -162,43 +211,32 @@ public class MemoryMessageQueue implements MessageQueue {
      * 获取或创建队列
      */
     private BlockingQueue<CapMessage> getOrCreateQueue(String queueName) {
-        return queues.computeIfAbsent(queueName, k -> new LinkedBlockingQueue<>());
+        return queues.computeIfAbsent(queueName, k -> new LinkedBlockingQueue<>(queueCapacity));
     }
 
     /**
-     * 获取或创建延迟队列
+     * 所有队列中等待消费的消息总数
      */
-    private BlockingQueue<CapMessage> getOrCreateDelayQueue(String queueName) {
-        return delayQueues.computeIfAbsent(queueName, k -> new LinkedBlockingQueue<>());
+    public long getTotalDepth() {
+        long depth = 0;
+        for (BlockingQueue<CapMessage> queue : queues.values()) {
+            depth += queue.size();
+        }
+        return depth;
     }
 
     /**
-     * 处理延迟消息
+     * 因队列已满而发送失败的消息数
      */
-    private void processDelayMessages() {
-        LocalDateTime now = LocalDateTime.now();
-
-        delayQueues.forEach((queueName, delayQueue) -> {
-            List<CapMessage> readyMessages = new CopyOnWriteArrayList<>();
-
-            // 收集到期的消息
-            delayQueue.drainTo(readyMessages);
-
-            readyMessages.stream()
-                    .filter(message -> message.getExpiresAt() != null &&
-                            message.getExpiresAt().isBefore(now))
-                    .forEach(message -> {
-                        // 将到期的消息发送到主队列
-                        send(queueName, message);
-                        log.debug("Processed delay message: {} -> {}", message.getId(), queueName);
-                    });
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
 
-            // 将未到期的消息重新放回延迟队列
-            readyMessages.stream()
-                    .filter(message -> message.getExpiresAt() != null &&
-                            message.getExpiresAt().isAfter(now))
-                    .forEach(delayQueue::offer);
-        });
+    /**
+     * 尚未到期的延迟消息数量
+     */
+    public long getPendingDelayCount() {
+        return delayWheel.size();
     }
 
     /**
@@ -207,4 +245,17 @@ public class MemoryMessageQueue implements MessageQueue {
     private Long generateMessageId() {
         return System.currentTimeMillis() + messageIdCounter.incrementAndGet();
     }
-}
\ No newline at end of file
+
+    /**
+     * 时间轮中的延迟消息
+     */
+    private static final class DelayedMessage {
+        private final String queueName;
+        private final CapMessage message;
+
+        private DelayedMessage(String queueName, CapMessage message) {
+            this.queueName = queueName;
+            this.message = message;
+        }
+    }
+}
@@ -39,6 +39,16 @@ public interface MessageQueue {
      */
     boolean sendDelay(String queueName, CapMessage message, long delaySeconds);
 
+    /**
+     * 将消息名称绑定到消费队列
+     * 队列名称本身不包含消息名称的实现（如 Kafka 按主题订阅）需要据此确定订阅范围，默认无需处理
+     * 
+     * @param queueName   队列名称
+     * @param messageName 消息名称
+     */
+    default void bind(String queueName, String messageName) {
+    }
+
     /**
      * 从队列接收消息
      * 
@@ -3,18 +3,24 @@ package com.guanwei.framework.cap.queue;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
 import com.guanwei.framework.cap.CapMessage;
 import com.guanwei.framework.cap.CapMessageStatus;
+import com.guanwei.framework.cap.codec.MessageCodec;
+import com.guanwei.framework.cap.codec.MessageCodecs;
 import com.guanwei.framework.cap.util.MessageIdGenerator;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.*;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
-import org.springframework.amqp.rabbit.listener.adapter.MessageListenerAdapter;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -23,12 +29,21 @@ import org.springframework.stereotype.Component;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import java.time.LocalDateTime;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -48,19 +63,111 @@ public class RabbitMQMessageQueue implements MessageQueue {
     private final String exchangeName;
     private final String queuePrefix;
 
+    private final int prefetchCount;
+    private final int concurrency;
+
     private final ObjectMapper objectMapper;
+
+    /**
+     * 缓存的 CapMessage 读取器，接收时直接从字节解析一次
+     */
+    private final ObjectReader capMessageReader;
+
+    /**
+     * LocalDateTime 序列化格式：2025-07-02T10:49:00.000
+     */
+    private static final DateTimeFormatter WRITE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+
+    /**
+     * LocalDateTime 反序列化格式，兼容：
+     * 2025-07-02T10:49:00+08:00、2025-07-02T10:49:00、2025-07-02T10:49:00.123、2025-07-02 10:49:00
+     */
+    private static final DateTimeFormatter READ_FORMATTER = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE)
+            .optionalStart().appendLiteral('T').optionalEnd()
+            .optionalStart().appendLiteral(' ').optionalEnd()
+            .append(DateTimeFormatter.ISO_LOCAL_TIME)
+            .optionalStart().appendOffsetId().optionalEnd()
+            .toFormatter();
+
+    /**
+     * 未携带 contentEncoding 的历史消息依次尝试的编码，ISO-8859-1 可解码任意字节，放在最后兜底
+     */
+    private static final Charset[] SNIFF_CHARSETS = {
+            StandardCharsets.UTF_8, Charset.forName("GBK"), StandardCharsets.ISO_8859_1
+    };
     private final Map<String, SimpleMessageListenerContainer> containers = new ConcurrentHashMap<>();
-    private final Map<String, List<CapMessage>> messageBuffers = new ConcurrentHashMap<>();
+    private final Map<String, BlockingQueue<CapMessage>> messageBuffers = new ConcurrentHashMap<>();
+
+    /**
+     * 已推送但尚未确认的投递，键为 队列名:消息ID
+     */
+    private final Map<String, Delivery> unackedDeliveries = new ConcurrentHashMap<>();
+
+    /**
+     * 最近一次投递所在的信道，信道切换（重连、新消费者）时清理已关闭信道上的投递
+     */
+    private volatile Channel lastDeliveryChannel;
+
+    /**
+     * 发送使用的消息属性，只构建一次；AMQP 属性不可变，可在所有发送间共享
+     */
+    private final AMQP.BasicProperties basicProperties;
+
+    /**
+     * 二进制编解码的消息属性，按 content-type 缓存
+     */
+    private final Map<String, AMQP.BasicProperties> binaryProperties = new ConcurrentHashMap<>();
+
+    /**
+     * 异步发送按批开启发布确认：每批最多 confirmBatchSize 条，整批只等待一次 broker 确认
+     */
+    private final int confirmBatchSize;
+    private final long confirmTimeoutMillis;
+    private final BlockingQueue<PendingPublish> pendingPublishes;
+    private volatile Thread confirmPublisher;
+    private volatile boolean running = true;
+
+    /**
+     * 确认模式的发送通道，仅由确认发送线程访问
+     */
+    private Channel confirmChannel;
 
     public RabbitMQMessageQueue(AmqpAdmin amqpAdmin, RabbitTemplate rabbitTemplate,
             ConnectionFactory connectionFactory, CapQueueManager capQueueManager,
             String exchangeName, String queuePrefix) {
+        this(amqpAdmin, rabbitTemplate, connectionFactory, capQueueManager, exchangeName, queuePrefix, 10, 1);
+    }
+
+    public RabbitMQMessageQueue(AmqpAdmin amqpAdmin, RabbitTemplate rabbitTemplate,
+            ConnectionFactory connectionFactory, CapQueueManager capQueueManager,
+            String exchangeName, String queuePrefix, int prefetchCount, int concurrency) {
+        this(amqpAdmin, rabbitTemplate, connectionFactory, capQueueManager, exchangeName, queuePrefix,
+                prefetchCount, concurrency, 100, 5000);
+    }
+
+    public RabbitMQMessageQueue(AmqpAdmin amqpAdmin, RabbitTemplate rabbitTemplate,
+            ConnectionFactory connectionFactory, CapQueueManager capQueueManager,
+            String exchangeName, String queuePrefix, int prefetchCount, int concurrency,
+            int confirmBatchSize, long confirmTimeoutMillis) {
         this.amqpAdmin = amqpAdmin;
         this.rabbitTemplate = rabbitTemplate;
         this.connectionFactory = connectionFactory;
         this.capQueueManager = capQueueManager;
         this.exchangeName = exchangeName;
         this.queuePrefix = queuePrefix;
+        this.prefetchCount = Math.max(1, prefetchCount);
+        this.concurrency = Math.max(1, concurrency);
+        this.confirmBatchSize = Math.max(1, confirmBatchSize);
+        this.confirmTimeoutMillis = Math.max(1, confirmTimeoutMillis);
+        this.pendingPublishes = new LinkedBlockingQueue<>(this.confirmBatchSize * 100);
+
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        messageProperties.setContentEncoding(StandardCharsets.UTF_8.name());
+        messageProperties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        this.basicProperties = new DefaultMessagePropertiesConverter()
+                .fromMessageProperties(messageProperties, StandardCharsets.UTF_8.name());
 
         // 配置ObjectMapper以支持多种日期时间格式
         this.objectMapper = new ObjectMapper();
@@ -69,22 +176,12 @@ public class RabbitMQMessageQueue implements MessageQueue {
         // 配置JavaTimeModule以支持多种日期时间格式
         JavaTimeModule javaTimeModule = new JavaTimeModule();
 
-        // 支持多种日期时间格式
-        DateTimeFormatter[] formatters = {
-                DateTimeFormatter.ISO_DATE_TIME, // 2025-07-02T10:49:00+08:00
-                DateTimeFormatter.ISO_LOCAL_DATE_TIME, // 2025-07-02T10:49:00
-                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS")
-        };
-
-        // 注册多种格式的序列化器和反序列化器
-        for (DateTimeFormatter formatter : formatters) {
-            javaTimeModule.addSerializer(LocalDateTime.class, new LocalDateTimeSerializer(formatter));
-            javaTimeModule.addDeserializer(LocalDateTime.class, new LocalDateTimeDeserializer(formatter));
-        }
+        // 序列化保持原有格式，反序列化用一个宽松格式兼容所有历史格式（同一类型只能注册一个，逐个注册时后者会覆盖前者）
+        javaTimeModule.addSerializer(LocalDateTime.class, new LocalDateTimeSerializer(WRITE_FORMATTER));
+        javaTimeModule.addDeserializer(LocalDateTime.class, new LocalDateTimeDeserializer(READ_FORMATTER));
 
         this.objectMapper.registerModule(javaTimeModule);
+        this.capMessageReader = objectMapper.readerFor(CapMessage.class);
     }
 
     @PostConstruct
@@ -95,30 +192,36 @@ public class RabbitMQMessageQueue implements MessageQueue {
 
     @PreDestroy
     public void destroy() {
+        // 停止确认发送线程，已入队的消息先发送完
+        running = false;
+        Thread publisher = confirmPublisher;
+        if (publisher != null) {
+            try {
+                publisher.join(confirmTimeoutMillis + 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            publisher.interrupt();
+        }
         // 关闭所有监听器容器
         containers.values().forEach(SimpleMessageListenerContainer::stop);
         containers.clear();
+        unackedDeliveries.clear();
         log.info("CAP RabbitMQ message queue destroyed");
     }
 
     @Override
     public boolean send(String queueName, CapMessage message) {
         try {
-            // 使用队列管理器确保队列存在并正确绑定
-            String actualQueueName = null;
-            if (capQueueManager != null) {
-                actualQueueName = capQueueManager.createQueueAndBind(message.getName(), message.getGroup());
-            } else {
-                // 如果capQueueManager为null，使用默认的队列名称构建方式
-                actualQueueName = message.getName() + "." + message.getGroup();
-            }
-
-            // 使用消息名称作为路由键
-            String routingKey = message.getName();
-            String messageJson = objectMapper.writeValueAsString(message);
+            MessageCodec codec = MessageCodecs.of(message);
+            byte[] body = encode(message, codec);
+            AMQP.BasicProperties properties = propertiesFor(codec);
 
-            // 发送消息到交换机
-            rabbitTemplate.convertAndSend(exchangeName, routingKey, messageJson);
+            // 直接以预构建的属性和字节消息体发布，路由键为消息名称
+            rabbitTemplate.execute(channel -> {
+                channel.basicPublish(exchangeName, message.getName(), false, properties, body);
+                return null;
+            });
 
             return true;
         } catch (Exception e) {
@@ -129,7 +232,142 @@ public class RabbitMQMessageQueue implements MessageQueue {
 
     @Override
     public CompletableFuture<Boolean> sendAsync(String queueName, CapMessage message) {
-        return CompletableFuture.supplyAsync(() -> send(queueName, message));
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        try {
+            MessageCodec codec = MessageCodecs.of(message);
+            PendingPublish publish = new PendingPublish(message.getName(), propertiesFor(codec),
+                    encode(message, codec), future);
+            if (!running) {
+                log.warn("RabbitMQ message queue is stopped, message not sent to queue: {}", queueName);
+                future.complete(false);
+                return future;
+            }
+            ensureConfirmPublisher();
+            // 待确认队列已满时发送方等待，超时则发送失败
+            if (!pendingPublishes.offer(publish, confirmTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("Pending publish queue is full, message not sent to queue: {}", queueName);
+                future.complete(false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.complete(false);
+        } catch (Exception e) {
+            log.error("Failed to send message to queue: {}", queueName, e);
+            future.complete(false);
+        }
+        return future;
+    }
+
+    /**
+     * 确保队列已声明并绑定，然后序列化消息：JSON 内容使用 JSON，二进制内容整条消息使用同一二进制格式
+     */
+    private byte[] encode(CapMessage message, MessageCodec codec) throws IOException {
+        if (capQueueManager != null) {
+            capQueueManager.createQueueAndBind(message.getName(), message.getGroup());
+        }
+        return codec.isBinary()
+                ? codec.getObjectMapper().writeValueAsBytes(message)
+                : objectMapper.writeValueAsBytes(message);
+    }
+
+    /**
+     * 编解码对应的消息属性，content_type 告知消费方如何解码
+     */
+    private AMQP.BasicProperties propertiesFor(MessageCodec codec) {
+        if (!codec.isBinary()) {
+            return basicProperties;
+        }
+        return binaryProperties.computeIfAbsent(codec.getContentType(), contentType -> {
+            MessageProperties messageProperties = new MessageProperties();
+            messageProperties.setContentType(contentType);
+            messageProperties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+            return new DefaultMessagePropertiesConverter()
+                    .fromMessageProperties(messageProperties, StandardCharsets.UTF_8.name());
+        });
+    }
+
+    /**
+     * 首次异步发送时启动确认发送线程
+     */
+    private void ensureConfirmPublisher() {
+        if (confirmPublisher != null) {
+            return;
+        }
+        synchronized (pendingPublishes) {
+            if (confirmPublisher == null) {
+                Thread thread = new Thread(this::runConfirmPublisher, "cap-rabbitmq-confirm");
+                thread.setDaemon(true);
+                thread.start();
+                confirmPublisher = thread;
+            }
+        }
+    }
+
+    /**
+     * 确认发送循环：取出一批待发送消息，逐条发布后统一等待确认
+     */
+    private void runConfirmPublisher() {
+        List<PendingPublish> batch = new ArrayList<>(confirmBatchSize);
+        try {
+            while (running || !pendingPublishes.isEmpty()) {
+                PendingPublish first = pendingPublishes.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pendingPublishes.drainTo(batch, confirmBatchSize - 1);
+                publishAndConfirm(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // 线程退出时未发送的消息全部按失败返回
+            pendingPublishes.drainTo(batch);
+            batch.forEach(publish -> publish.future.complete(false));
+            closeConfirmChannel();
+        }
+    }
+
+    private void publishAndConfirm(List<PendingPublish> batch) throws InterruptedException {
+        try {
+            Channel channel = confirmChannel();
+            for (PendingPublish publish : batch) {
+                channel.basicPublish(exchangeName, publish.routingKey, false, publish.properties, publish.body);
+            }
+            // 整批只等待一次确认，任一消息被 nack 或超时则整批按失败处理，由重试机制重新发送
+            channel.waitForConfirmsOrDie(confirmTimeoutMillis);
+            batch.forEach(publish -> publish.future.complete(true));
+        } catch (InterruptedException e) {
+            batch.forEach(publish -> publish.future.complete(false));
+            batch.clear();
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to publish {} messages with confirms to exchange: {}", batch.size(), exchangeName, e);
+            closeConfirmChannel();
+            batch.forEach(publish -> publish.future.complete(false));
+        }
+    }
+
+    private Channel confirmChannel() throws IOException {
+        if (confirmChannel == null || !confirmChannel.isOpen()) {
+            Channel channel = connectionFactory.createConnection().createChannel(false);
+            channel.confirmSelect();
+            confirmChannel = channel;
+        }
+        return confirmChannel;
+    }
+
+    private void closeConfirmChannel() {
+        Channel channel = confirmChannel;
+        confirmChannel = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (Exception e) {
+                log.debug("Failed to close confirm channel", e);
+            }
+        }
     }
 
     @Override
@@ -145,6 +383,36 @@ public class RabbitMQMessageQueue implements MessageQueue {
     @Override
     public CapMessage receive(String queueName, long timeout) {
         try {
+            BlockingQueue<CapMessage> buffer = ensureConsumer(queueName);
+            if (buffer == null) {
+                return null;
+            }
+            return buffer.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while receiving message from queue: {}", queueName);
+            return null;
+        } catch (Exception e) {
+            log.error("Failed to receive message from queue: {}", queueName, e);
+            return null;
+        }
+    }
+
+    /**
+     * 确保队列存在并已启动推送消费者，返回该队列的本地缓冲
+     */
+    private BlockingQueue<CapMessage> ensureConsumer(String queueName) {
+        BlockingQueue<CapMessage> buffer = messageBuffers.get(queueName);
+        if (buffer != null) {
+            return buffer;
+        }
+
+        synchronized (containers) {
+            buffer = messageBuffers.get(queueName);
+            if (buffer != null) {
+                return buffer;
+            }
+
             // 确保队列存在
             if (capQueueManager != null && !capQueueManager.queueExists(queueName)) {
                 // 从队列名称中提取消息名称和组
@@ -158,86 +426,137 @@ public class RabbitMQMessageQueue implements MessageQueue {
                 }
             }
 
-            // 从队列接收原始消息（二进制）
-            org.springframework.amqp.core.Message message = rabbitTemplate.receive(queueName, timeout);
-            if (message != null) {
-                try {
-                    // 获取消息体（二进制数据）
-                    byte[] messageBody = message.getBody();
-
-                    // 检查消息体是否为空
-                    if (messageBody == null || messageBody.length == 0) {
-                        return null;
-                    }
-
-                    // 尝试多种编码方式解析消息
-                    String messageJson = null;
-                    String[] encodings = { "UTF-8", "ISO-8859-1", "GBK" };
-
-                    for (String encoding : encodings) {
-                        try {
-                            messageJson = new String(messageBody, encoding);
-                            // 验证是否为有效的JSON
-                            objectMapper.readTree(messageJson);
-                            break;
-                        } catch (Exception e) {
-                            continue;
-                        }
-                    }
-
-                    if (messageJson == null) {
-                        log.error("Failed to decode message from queue: {} with any encoding", queueName);
-                        return null;
-                    }
-
-                    // 尝试解析为CapMessage，如果失败则尝试解析为业务对象并转换
-                    try {
-                        // 首先尝试直接解析为CapMessage
-                        CapMessage capMessage = objectMapper.readValue(messageJson, CapMessage.class);
-
-                        // 检查解析出的CapMessage是否有效（有id和name字段）
-                        if (capMessage.getId() != null && capMessage.getName() != null) {
-                            return capMessage;
-                        } else {
-                            throw new Exception("CapMessage fields are empty, treating as business object");
-                        }
-                    } catch (Exception e) {
-                        // 如果解析CapMessage失败，尝试解析为业务对象JSON并转换为CapMessage
-                        try {
-                            JsonNode jsonNode = objectMapper.readTree(messageJson);
-                            if (jsonNode.isObject()) {
-                                // 将业务对象JSON转换为CapMessage
-                                CapMessage capMessage = convertBusinessObjectToCapMessage(jsonNode, queueName);
-                                if (capMessage != null) {
-                                    log.debug("Successfully converted business object to CapMessage: {}",
-                                            capMessage.getId());
-                                }
-                                return capMessage;
-                            } else if (jsonNode.isArray()) {
-                                // 如果是数组，取第一个元素
-                                if (jsonNode.size() > 0) {
-                                    CapMessage capMessage = convertBusinessObjectToCapMessage(jsonNode.get(0),
-                                            queueName);
-                                    return capMessage;
-                                }
-                            }
-                        } catch (Exception jsonException) {
-                            log.error("Failed to parse message as either CapMessage or business object from queue: {}",
-                                    queueName,
-                                    jsonException);
-                            return null;
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("Failed to parse message from queue: {}", queueName, e);
-                    return null;
-                }
+            buffer = new LinkedBlockingQueue<>();
+            messageBuffers.put(queueName, buffer);
+            try {
+                createMessageListenerContainer(queueName,
+                        (ChannelAwareMessageListener) (message, channel) -> handleDelivery(queueName, message, channel));
+            } catch (RuntimeException e) {
+                // 消费者启动失败时移除缓冲，下次接收时重试
+                messageBuffers.remove(queueName);
+                throw e;
             }
+            return buffer;
+        }
+    }
+
+    /**
+     * 处理 broker 推送的消息：解码后放入本地缓冲，等待订阅者处理完成后再确认
+     */
+    void handleDelivery(String queueName, Message message, Channel channel) throws IOException {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        CapMessage capMessage = decode(queueName, message);
+        if (capMessage == null) {
+            // 无法解析的消息不再重新投递
+            channel.basicNack(deliveryTag, false, false);
+            return;
+        }
+
+        if (channel != lastDeliveryChannel) {
+            lastDeliveryChannel = channel;
+            // 信道关闭后 broker 已重新投递其未确认的消息，旧的投递标签不再有效
+            unackedDeliveries.values().removeIf(delivery -> !delivery.channel.isOpen());
+        }
+        Delivery previous = unackedDeliveries.put(deliveryKey(queueName, capMessage.getId()),
+                new Delivery(channel, deliveryTag));
+        if (previous != null) {
+            // 同一消息重复投递，之前的投递确认掉以释放预取额度，处理结果以最新一次投递为准
+            try {
+                previous.channel.basicAck(previous.deliveryTag, false);
+            } catch (Exception e) {
+                log.debug("Failed to acknowledge superseded delivery {} of message {} on queue {}",
+                        previous.deliveryTag, capMessage.getId(), queueName, e);
+            }
+        }
+        messageBuffers.computeIfAbsent(queueName, k -> new LinkedBlockingQueue<>()).offer(capMessage);
+    }
+
+    /**
+     * 将消息体解码为 CapMessage
+     * 二进制 content_type（smile、cbor）按对应编解码解析；
+     * JSON 按 contentEncoding 解码一次，未携带时才按 UTF-8、GBK、ISO-8859-1 的顺序探测编码
+     */
+    public CapMessage decode(String queueName, Message message) {
+        byte[] messageBody = message.getBody();
+        // 检查消息体是否为空
+        if (messageBody == null || messageBody.length == 0) {
             return null;
+        }
+
+        // 二进制编码的消息按 content_type 直接解码
+        MessageCodec codec = MessageCodecs.forContentType(message.getMessageProperties().getContentType());
+        if (codec != null && codec.isBinary()) {
+            try {
+                CapMessage capMessage = codec.decode(messageBody, CapMessage.class);
+                return capMessage.getId() != null && capMessage.getName() != null ? capMessage : null;
+            } catch (IOException e) {
+                log.error("Failed to decode {} message from queue: {}", codec.getContentType(), queueName, e);
+                return null;
+            }
+        }
+
+        try {
+            Charset charset = charsetOf(message.getMessageProperties().getContentEncoding(), messageBody);
+            // UTF-8 由 Jackson 直接解析字节，其他编码先转为字符串
+            String messageJson = StandardCharsets.UTF_8.equals(charset) ? null : new String(messageBody, charset);
+
+            // 首先尝试直接解析为CapMessage
+            try {
+                CapMessage capMessage = messageJson == null
+                        ? capMessageReader.readValue(messageBody)
+                        : capMessageReader.readValue(messageJson);
+                // 检查解析出的CapMessage是否有效（有id和name字段）
+                if (capMessage.getId() != null && capMessage.getName() != null) {
+                    return capMessage;
+                }
+            } catch (IOException e) {
+                log.debug("Message from queue: {} is not a CapMessage, treating as business object", queueName);
+            }
+
+            // 不是CapMessage时尝试解析为业务对象JSON并转换为CapMessage
+            JsonNode jsonNode = messageJson == null
+                    ? objectMapper.readTree(messageBody)
+                    : objectMapper.readTree(messageJson);
+            if (jsonNode.isObject()) {
+                // 将业务对象JSON转换为CapMessage
+                CapMessage capMessage = convertBusinessObjectToCapMessage(jsonNode, queueName);
+                if (capMessage != null) {
+                    log.debug("Successfully converted business object to CapMessage: {}", capMessage.getId());
+                }
+                return capMessage;
+            } else if (jsonNode.isArray() && jsonNode.size() > 0) {
+                // 如果是数组，取第一个元素
+                return convertBusinessObjectToCapMessage(jsonNode.get(0), queueName);
+            }
         } catch (Exception e) {
-            log.error("Failed to receive message from queue: {}", queueName, e);
-            return null;
+            log.error("Failed to parse message as either CapMessage or business object from queue: {}", queueName, e);
+        }
+        return null;
+    }
+
+    /**
+     * 确定消息体编码：优先使用 contentEncoding，缺失或无法识别时探测
+     */
+    private static Charset charsetOf(String contentEncoding, byte[] messageBody) {
+        if (contentEncoding != null && !contentEncoding.isEmpty()) {
+            try {
+                return Charset.forName(contentEncoding);
+            } catch (IllegalArgumentException e) {
+                log.debug("Unsupported content encoding: {}, detecting charset", contentEncoding);
+            }
         }
+        for (Charset charset : SNIFF_CHARSETS) {
+            try {
+                charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT)
+                        .decode(ByteBuffer.wrap(messageBody));
+                return charset;
+            } catch (CharacterCodingException e) {
+                // 尝试下一种编码
+            }
+        }
+        return StandardCharsets.ISO_8859_1;
     }
 
     /**
@@ -296,34 +615,53 @@ public class RabbitMQMessageQueue implements MessageQueue {
 
     @Override
     public List<CapMessage> receiveBatch(String queueName, int maxCount, long timeout) {
-        List<CapMessage> messages = new CopyOnWriteArrayList<>();
-        long endTime = System.currentTimeMillis() + timeout;
-
-        while (messages.size() < maxCount && System.currentTimeMillis() < endTime) {
-            CapMessage message = receive(queueName, 100); // 100ms timeout for each message
-            if (message != null) {
-                messages.add(message);
-            } else {
-                break; // 没有更多消息
-            }
+        List<CapMessage> messages = new ArrayList<>();
+        // 阻塞等待第一条消息，其余直接取出缓冲中已推送的消息
+        CapMessage first = receive(queueName, timeout);
+        if (first == null) {
+            return messages;
         }
+        messages.add(first);
 
-        if (!messages.isEmpty()) {
-            log.debug("Received {} messages from queue: {}", messages.size(), queueName);
+        BlockingQueue<CapMessage> buffer = messageBuffers.get(queueName);
+        if (buffer != null && maxCount > 1) {
+            buffer.drainTo(messages, maxCount - 1);
         }
 
+        log.debug("Received {} messages from queue: {}", messages.size(), queueName);
         return messages;
     }
 
     @Override
     public boolean acknowledge(String queueName, Long messageId) {
-        // RabbitMQ的确认机制由监听器容器处理
-        return true;
+        Delivery delivery = unackedDeliveries.remove(deliveryKey(queueName, messageId));
+        if (delivery == null) {
+            log.debug("No pending delivery to acknowledge for message {} on queue {}", messageId, queueName);
+            return false;
+        }
+        try {
+            delivery.channel.basicAck(delivery.deliveryTag, false);
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to acknowledge message {} on queue {}", messageId, queueName, e);
+            return false;
+        }
     }
 
     @Override
     public boolean reject(String queueName, Long messageId, boolean requeue) {
-        return true;
+        Delivery delivery = unackedDeliveries.remove(deliveryKey(queueName, messageId));
+        if (delivery == null) {
+            log.debug("No pending delivery to reject for message {} on queue {}", messageId, queueName);
+            return false;
+        }
+        try {
+            delivery.channel.basicNack(delivery.deliveryTag, false, requeue);
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to reject message {} on queue {}", messageId, queueName, e);
+            return false;
+        }
     }
 
     @Override
@@ -391,14 +729,14 @@ public class RabbitMQMessageQueue implements MessageQueue {
      * 参考 GitHub CAP 源码的消费者实现
      */
     public SimpleMessageListenerContainer createMessageListenerContainer(String queueName,
-            MessageListenerAdapter messageListenerAdapter) {
+            MessageListener messageListener) {
         SimpleMessageListenerContainer container = new SimpleMessageListenerContainer(connectionFactory);
         container.setQueueNames(queueName);
-        container.setMessageListener(messageListenerAdapter);
+        container.setMessageListener(messageListener);
         container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
-        container.setPrefetchCount(1);
-        container.setConcurrentConsumers(1);
-        container.setMaxConcurrentConsumers(1);
+        container.setPrefetchCount(prefetchCount);
+        container.setConcurrentConsumers(concurrency);
+        container.setMaxConcurrentConsumers(concurrency);
 
         containers.put(queueName, container);
         container.start();
@@ -406,4 +744,39 @@ public class RabbitMQMessageQueue implements MessageQueue {
         log.info("Created message listener container for queue: {}", queueName);
         return container;
     }
-}
\ No newline at end of file
+
+    private String deliveryKey(String queueName, Long messageId) {
+        return queueName + ":" + messageId;
+    }
+
+    /**
+     * 等待批量确认的发送
+     */
+    private static final class PendingPublish {
+        private final String routingKey;
+        private final AMQP.BasicProperties properties;
+        private final byte[] body;
+        private final CompletableFuture<Boolean> future;
+
+        private PendingPublish(String routingKey, AMQP.BasicProperties properties, byte[] body,
+                CompletableFuture<Boolean> future) {
+            this.routingKey = routingKey;
+            this.properties = properties;
+            this.body = body;
+            this.future = future;
+        }
+    }
+
+    /**
+     * 未确认的投递
+     */
+    private static final class Delivery {
+        private final Channel channel;
+        private final long deliveryTag;
+
+        private Delivery(Channel channel, long deliveryTag) {
+            this.channel = channel;
+            this.deliveryTag = deliveryTag;
+        }
+    }
+}
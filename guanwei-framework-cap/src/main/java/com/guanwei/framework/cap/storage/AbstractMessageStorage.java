@@ -0,0 +1,30 @@
+package com.guanwei.framework.cap.storage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 消息存储基类
+ * 异步方法统一运行在存储专用执行器上；未注入时使用 {@link StorageExecutor#getDefault()}
+ */
+public abstract class AbstractMessageStorage implements MessageStorage {
+
+    private volatile StorageExecutor storageExecutor;
+
+    public void setStorageExecutor(StorageExecutor storageExecutor) {
+        this.storageExecutor = storageExecutor;
+    }
+
+    public StorageExecutor getStorageExecutor() {
+        StorageExecutor executor = storageExecutor;
+        return executor != null ? executor : StorageExecutor.getDefault();
+    }
+
+    protected <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        return getStorageExecutor().supplyAsync(supplier);
+    }
+
+    protected CompletableFuture<Void> runAsync(Runnable runnable) {
+        return getStorageExecutor().runAsync(runnable);
+    }
+}
@@ -1,5 +1,9 @@
 package com.guanwei.framework.cap.storage;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * 幂等去重存储
  * 尝试以原子方式标记 key 已处理，如已存在则返回 false
@@ -12,6 +16,39 @@ public interface DedupStorage {
      * @return true 表示首次处理，false 表示已处理（重复）
      */
     boolean tryMarkProcessed(String key, long ttlSeconds);
+
+    /**
+     * 批量尝试标记已处理，供批量订阅一次性去重
+     * 默认逐个调用 {@link #tryMarkProcessed(String, long)}，实现类可改为一次往返
+     * @param keys 唯一幂等键列表
+     * @param ttlSeconds 过期秒数，<=0 表示不过期
+     * @return 首次处理的 key 集合（重复的 key 不在其中）
+     */
+    default Set<String> tryMarkProcessedBatch(List<String> keys, long ttlSeconds) {
+        Set<String> first = new HashSet<>();
+        for (String key : keys) {
+            if (tryMarkProcessed(key, ttlSeconds)) {
+                first.add(key);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * 撤销处理标记，处理失败后重新投递的消息不会被误判为重复
+     * @param keys 唯一幂等键列表
+     */
+    void unmarkProcessed(List<String> keys);
+
+    /**
+     * 删除已过期的去重记录，由清理处理器定期调用
+     * 默认不做处理（如 Redis 由键过期自动清理）
+     * @param batchSize 单次删除的最大条数
+     * @return 删除的记录数
+     */
+    default int deleteExpired(int batchSize) {
+        return 0;
+    }
 }
 
 
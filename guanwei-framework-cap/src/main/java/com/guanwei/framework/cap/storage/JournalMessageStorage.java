@@ -0,0 +1,148 @@
+package com.guanwei.framework.cap.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.codec.MessageCodecs;
+import com.guanwei.framework.cap.util.MessageIdGenerator;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 嵌入式日志消息存储
+ * 消息的每次新增、状态变更和删除都以完整快照追加到本地分段日志（{@link MessageJournal}），
+ * 异步方法在本次写入的记录刷盘后才完成；启动时回放日志重建 {@link MemoryMessageStorage} 的状态索引。
+ * 适用于没有 Redis、Oracle 的单节点部署，锁只在本进程内有效
+ */
+@Slf4j
+public class JournalMessageStorage extends MemoryMessageStorage {
+
+    private final ObjectMapper objectMapper = MessageCodecs.json().getObjectMapper();
+    private final MessageJournal journal;
+    private final double compactLiveRatio;
+
+    /**
+     * @param directory        日志目录
+     * @param segmentSize      单个日志段的字节数
+     * @param compactLiveRatio 最早的日志段中存活记录比例不高于该值时压缩
+     */
+    public JournalMessageStorage(Path directory, int segmentSize, double compactLiveRatio) throws IOException {
+        this.compactLiveRatio = compactLiveRatio;
+        Map<Long, byte[]> published = new LinkedHashMap<>();
+        Map<Long, byte[]> received = new LinkedHashMap<>();
+        this.journal = new MessageJournal(directory, segmentSize, (type, id, content) -> {
+            switch (type) {
+                case MessageJournal.PUT_PUBLISHED -> published.put(id, content);
+                case MessageJournal.PUT_RECEIVED -> received.put(id, content);
+                case MessageJournal.DELETE_PUBLISHED -> published.remove(id);
+                case MessageJournal.DELETE_RECEIVED -> received.remove(id);
+                default -> log.warn("Unknown journal record type {} for message {}", type, id);
+            }
+        });
+        // 只反序列化每条消息的最终快照
+        restore(published, true);
+        restore(received, false);
+    }
+
+    /**
+     * 压缩最早的日志段：把其中仍存活的消息重新追加到当前段，刷盘后删除旧段
+     *
+     * @return 删除的日志段数量
+     */
+    public CompletableFuture<Integer> compactAsync() {
+        return supplyAsync(() -> {
+            int compacted = 0;
+            Long segment;
+            while ((segment = journal.compactionCandidate(compactLiveRatio)) != null) {
+                for (Long id : journal.liveIds(segment, true)) {
+                    touchMessage(true, id);
+                }
+                for (Long id : journal.liveIds(segment, false)) {
+                    touchMessage(false, id);
+                }
+                journal.awaitDurable();
+                if (!journal.deleteSegment(segment)) {
+                    log.warn("Journal segment {} still has live records after compaction", segment);
+                    break;
+                }
+                compacted++;
+            }
+            if (compacted > 0) {
+                log.info("Compacted {} journal segments", compacted);
+            }
+            return compacted;
+        });
+    }
+
+    /**
+     * 当前日志段数量
+     */
+    public int getSegmentCount() {
+        return journal.getSegmentCount();
+    }
+
+    @PreDestroy
+    public void close() {
+        journal.close();
+    }
+
+    @Override
+    protected <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        return super.supplyAsync(() -> {
+            journal.resetPending();
+            T result = supplier.get();
+            journal.awaitDurable();
+            return result;
+        });
+    }
+
+    @Override
+    protected CompletableFuture<Void> runAsync(Runnable runnable) {
+        return super.runAsync(() -> {
+            journal.resetPending();
+            runnable.run();
+            journal.awaitDurable();
+        });
+    }
+
+    @Override
+    protected void onMessageChanged(boolean published, CapMessage message) {
+        try {
+            journal.append(published ? MessageJournal.PUT_PUBLISHED : MessageJournal.PUT_RECEIVED,
+                    message.getId(), objectMapper.writeValueAsBytes(message));
+        } catch (IOException e) {
+            log.error("Failed to serialize message {} for journal", message.getId(), e);
+            journal.fail(e);
+        }
+    }
+
+    @Override
+    protected void onMessageRemoved(boolean published, Long id) {
+        journal.append(published ? MessageJournal.DELETE_PUBLISHED : MessageJournal.DELETE_RECEIVED, id, new byte[0]);
+    }
+
+    @Override
+    protected Long generateMessageId() {
+        // 重启后计数器归零，改用雪花ID避免与日志中已有的消息ID冲突
+        return MessageIdGenerator.getInstance().nextId();
+    }
+
+    private void restore(Map<Long, byte[]> snapshots, boolean published) {
+        for (Map.Entry<Long, byte[]> snapshot : snapshots.entrySet()) {
+            try {
+                CapMessage message = objectMapper.readValue(snapshot.getValue(), CapMessage.class);
+                message.setDbId(snapshot.getKey());
+                restoreMessage(published, message);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to restore message " + snapshot.getKey() + " from journal", e);
+            }
+        }
+    }
+}
@@ -6,28 +6,38 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
 
 /**
  * 内存消息存储实现
  * 完整实现，用于开发和测试环境，生产环境建议使用数据库存储
+ * 按状态维护 (ADDED, ID)、(EXPIRESAT, ID) 与 (NEXTRETRYAT, ID) 二级索引，重试/待发送/过期查询为 O(log N + k)
  */
 @Slf4j
-public class MemoryMessageStorage implements MessageStorage {
+public class MemoryMessageStorage extends AbstractMessageStorage {
 
-    private final Map<Long, CapMessage> publishedMessages = new ConcurrentHashMap<>();
-    private final Map<Long, CapMessage> receivedMessages = new ConcurrentHashMap<>();
+    private final IndexedMessages publishedMessages = new IndexedMessages(this, true);
+    private final IndexedMessages receivedMessages = new IndexedMessages(this, false);
     private final Map<String, LockInfo> locks = new ConcurrentHashMap<>();
     private final AtomicLong messageIdCounter = new AtomicLong(0);
 
+    /**
+     * 单次重试查询返回的最大条数
+     */
+    private static final int RETRY_BATCH_SIZE = 200;
+
     @Override
     public CompletableFuture<Boolean> acquireLockAsync(String key, Duration ttl, String instance) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 LockInfo existingLock = locks.get(key);
                 if (existingLock != null && existingLock.isValid()) {
@@ -46,7 +56,7 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> releaseLockAsync(String key, String instance) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 LockInfo lock = locks.get(key);
                 if (lock != null && instance.equals(lock.getInstance())) {
@@ -59,28 +69,28 @@ public class MemoryMessageStorage implements MessageStorage {
     }
 
     @Override
-    public CompletableFuture<Void> renewLockAsync(String key, Duration ttl, String instance) {
-        return CompletableFuture.runAsync(() -> {
+    public CompletableFuture<Boolean> renewLockAsync(String key, Duration ttl, String instance) {
+        return supplyAsync(() -> {
             try {
                 LockInfo lock = locks.get(key);
                 if (lock != null && instance.equals(lock.getInstance())) {
                     lock.setExpiresAt(LocalDateTime.now().plus(ttl));
+                    return true;
                 }
+                return false;
             } catch (Exception e) {
                 log.error("Error renewing lock: {}", key, e);
+                return false;
             }
         });
     }
 
     @Override
     public CompletableFuture<Void> changePublishStateToDelayedAsync(List<Long> ids) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 for (Long id : ids) {
-                    CapMessage message = publishedMessages.get(id);
-                    if (message != null) {
-                        message.setStatus(CapMessageStatus.DELAYED);
-                    }
+                    publishedMessages.changeStatus(id, CapMessageStatus.DELAYED);
                 }
             } catch (Exception e) {
                 log.error("Error changing publish state to delayed", e);
@@ -90,13 +100,10 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> changePublishStateAsync(CapMessage message, CapMessageStatus status, Object transaction) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 if (message != null && message.getId() != null) {
-                    CapMessage storedMessage = publishedMessages.get(message.getId());
-                    if (storedMessage != null) {
-                        storedMessage.setStatus(status);
-                    }
+                    publishedMessages.changeStatus(message, status);
                 }
             } catch (Exception e) {
                 log.error("Error changing publish state", e);
@@ -106,13 +113,10 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> changeReceiveStateAsync(CapMessage message, CapMessageStatus status) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 if (message != null && message.getId() != null) {
-                    CapMessage storedMessage = receivedMessages.get(message.getId());
-                    if (storedMessage != null) {
-                        storedMessage.setStatus(status);
-                    }
+                    receivedMessages.changeStatus(message, status);
                 }
             } catch (Exception e) {
                 log.error("Error changing receive state", e);
@@ -122,7 +126,7 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<CapMessage> storeMessageAsync(String name, Object content, Object transaction) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 CapMessage message;
                 Long id;
@@ -154,9 +158,34 @@ public class MemoryMessageStorage implements MessageStorage {
         });
     }
 
+    @Override
+    public CompletableFuture<List<CapMessage>> storeMessagesAsync(List<CapMessage> messages) {
+        return supplyAsync(() -> {
+            try {
+                LocalDateTime now = LocalDateTime.now();
+                for (CapMessage message : messages) {
+                    if (message.getId() == null) {
+                        message.setDbId(generateMessageId());
+                    }
+                    if (message.getStatus() == null) {
+                        message.setStatus(CapMessageStatus.SCHEDULED);
+                    }
+                    if (message.getAdded() == null) {
+                        message.setAdded(now);
+                    }
+                }
+                publishedMessages.putAll(messages);
+                return messages;
+            } catch (Exception e) {
+                log.error("Error storing published messages", e);
+                throw new RuntimeException("Failed to store published messages", e);
+            }
+        });
+    }
+
     @Override
     public CompletableFuture<Void> storeReceivedExceptionMessageAsync(String name, String group, String content) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 Long id = generateMessageId();
                 CapMessage exceptionMessage = new CapMessage(name, group, content);
@@ -173,7 +202,7 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<CapMessage> storeReceivedMessageAsync(String name, String group, Object content) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 Long id = generateMessageId();
                 CapMessage message = new CapMessage(name, group, content);
@@ -193,10 +222,10 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> deleteExpiresAsync(String table, LocalDateTime timeout, int batchCount) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                Map<Long, CapMessage> messageMap = "published".equals(table) ? publishedMessages : receivedMessages;
-                return deleteExpiredMessages(messageMap, timeout, batchCount);
+                IndexedMessages messages = isPublishedTable(table) ? publishedMessages : receivedMessages;
+                return messages.removeAddedBefore(toMillis(timeout), batchCount);
             } catch (Exception e) {
                 log.error("Error deleting expired messages", e);
                 return 0;
@@ -206,13 +235,9 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<List<CapMessage>> getPublishedMessagesOfNeedRetry(Duration lookbackSeconds) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                LocalDateTime cutoff = LocalDateTime.now().minus(lookbackSeconds);
-                return publishedMessages.values().stream()
-                    .filter(message -> message.getStatus() == CapMessageStatus.FAILED)
-                    .filter(message -> message.getAdded() != null && message.getAdded().isAfter(cutoff))
-                    .collect(Collectors.toList());
+                return findRetryDue(publishedMessages);
             } catch (Exception e) {
                 log.error("Error getting published messages of need retry", e);
                 return new java.util.ArrayList<>();
@@ -222,13 +247,9 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<List<CapMessage>> getReceivedMessagesOfNeedRetry(Duration lookbackSeconds) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                LocalDateTime cutoff = LocalDateTime.now().minus(lookbackSeconds);
-                return receivedMessages.values().stream()
-                    .filter(message -> message.getStatus() == CapMessageStatus.FAILED)
-                    .filter(message -> message.getAdded() != null && message.getAdded().isAfter(cutoff))
-                    .collect(Collectors.toList());
+                return findRetryDue(receivedMessages);
             } catch (Exception e) {
                 log.error("Error getting received messages of need retry", e);
                 return new java.util.ArrayList<>();
@@ -236,9 +257,21 @@ public class MemoryMessageStorage implements MessageStorage {
         });
     }
 
+    /**
+     * 到期的失败消息在前，不足一批时补充重试租约已过期的 RETRYING 消息
+     */
+    private static List<CapMessage> findRetryDue(IndexedMessages messages) {
+        long now = toMillis(LocalDateTime.now());
+        List<CapMessage> due = messages.findRetryDue(CapMessageStatus.FAILED, now, RETRY_BATCH_SIZE);
+        if (due.size() < RETRY_BATCH_SIZE) {
+            due.addAll(messages.findRetryDue(CapMessageStatus.RETRYING, now, RETRY_BATCH_SIZE - due.size()));
+        }
+        return due;
+    }
+
     @Override
     public CompletableFuture<Integer> deleteReceivedMessageAsync(String id) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 CapMessage removed = receivedMessages.remove(parseId(id));
                 return removed != null ? 1 : 0;
@@ -251,7 +284,7 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> deletePublishedMessageAsync(String id) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 CapMessage removed = publishedMessages.remove(parseId(id));
                 return removed != null ? 1 : 0;
@@ -264,13 +297,10 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> scheduleMessagesOfDelayedAsync(DelayedMessageScheduler scheduleTask) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
-                List<CapMessage> delayedMessages = publishedMessages.values().stream()
-                    .filter(message -> message.getStatus() == CapMessageStatus.DELAYED)
-                    .filter(message -> message.getExpiresAt() != null && 
-                                     message.getExpiresAt().isBefore(LocalDateTime.now()))
-                    .collect(Collectors.toList());
+                List<CapMessage> delayedMessages = publishedMessages.findExpiresBefore(
+                    CapMessageStatus.DELAYED, toMillis(LocalDateTime.now()), Integer.MAX_VALUE);
                 
                 if (!delayedMessages.isEmpty()) {
                     scheduleTask.schedule(null, delayedMessages);
@@ -283,26 +313,16 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> deleteExpiredMessagesAsync(CapMessageStatus status, long expiredBefore) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                LocalDateTime expiredTime = LocalDateTime.ofEpochSecond(expiredBefore, 0, java.time.ZoneOffset.UTC);
+                LocalDateTime expiredTime = LocalDateTime.ofEpochSecond(expiredBefore, 0, ZoneOffset.UTC);
                 int deletedCount = 0;
                 
                 // 删除已发布消息中指定状态且过期的消息
-                deletedCount += publishedMessages.entrySet().removeIf(entry -> {
-                    CapMessage message = entry.getValue();
-                    return message.getStatus() == status && 
-                           message.getExpiresAt() != null && 
-                           message.getExpiresAt().isBefore(expiredTime);
-                }) ? 1 : 0;
+                deletedCount += publishedMessages.removeExpiresBefore(status, toMillis(expiredTime));
                 
                 // 删除已接收消息中指定状态且过期的消息
-                deletedCount += receivedMessages.entrySet().removeIf(entry -> {
-                    CapMessage message = entry.getValue();
-                    return message.getStatus() == status && 
-                           message.getExpiresAt() != null && 
-                           message.getExpiresAt().isBefore(expiredTime);
-                }) ? 1 : 0;
+                deletedCount += receivedMessages.removeExpiresBefore(status, toMillis(expiredTime));
                 
                 return deletedCount;
             } catch (Exception e) {
@@ -314,50 +334,75 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> updateStatusAsync(Long messageId, CapMessageStatus status) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 // 尝试更新已发布消息
-                CapMessage publishedMessage = publishedMessages.get(messageId);
-                if (publishedMessage != null) {
-                    publishedMessage.setStatus(status);
+                if (publishedMessages.changeStatus(messageId, status)) {
                     return;
                 }
                 
                 // 尝试更新已接收消息
-                CapMessage receivedMessage = receivedMessages.get(messageId);
-                if (receivedMessage != null) {
-                    receivedMessage.setStatus(status);
-                }
+                receivedMessages.changeStatus(messageId, status);
             } catch (Exception e) {
                 log.error("Error updating message status: {}", messageId, e);
             }
         });
     }
 
-    private int deleteExpiredMessages(Map<Long, CapMessage> messageMap, LocalDateTime timeout, int batchCount) {
-        int deletedCount = 0;
-        int processedCount = 0;
-        
-        for (Map.Entry<Long, CapMessage> entry : messageMap.entrySet()) {
-            if (processedCount >= batchCount) {
-                break;
-            }
-            
-            CapMessage message = entry.getValue();
-            if (message.getAdded() != null && message.getAdded().isBefore(timeout)) {
-                messageMap.remove(entry.getKey());
-                deletedCount++;
+    @Override
+    public CompletableFuture<Void> updateStatusBatchAsync(List<Long> messageIds, CapMessageStatus status) {
+        return runAsync(() -> {
+            for (Long messageId : messageIds) {
+                try {
+                    if (!publishedMessages.changeStatus(messageId, status)) {
+                        receivedMessages.changeStatus(messageId, status);
+                    }
+                } catch (Exception e) {
+                    log.error("Error updating message status: {}", messageId, e);
+                }
             }
-            processedCount++;
-        }
-        
-        return deletedCount;
+        });
     }
 
-    private Long generateMessageId() {
+    protected Long generateMessageId() {
         return System.currentTimeMillis() + messageIdCounter.incrementAndGet();
     }
 
+    /**
+     * 消息新增或变更后的回调，子类可据此持久化
+     * 在该消息的索引更新内调用，同一消息的回调顺序与变更顺序一致
+     *
+     * @param published 是否为发布消息
+     * @param message   变更后的消息
+     */
+    protected void onMessageChanged(boolean published, CapMessage message) {
+    }
+
+    /**
+     * 消息删除后的回调，调用时机同 {@link #onMessageChanged(boolean, CapMessage)}
+     *
+     * @param published 是否为发布消息
+     * @param id        消息ID
+     */
+    protected void onMessageRemoved(boolean published, Long id) {
+    }
+
+    /**
+     * 直接载入消息，不触发回调，用于从持久化数据恢复
+     */
+    protected void restoreMessage(boolean published, CapMessage message) {
+        (published ? publishedMessages : receivedMessages).restore(message.getId(), message);
+    }
+
+    /**
+     * 以消息当前内容重新触发变更回调，用于持久化层改写旧数据
+     *
+     * @return 消息是否存在
+     */
+    protected boolean touchMessage(boolean published, Long id) {
+        return (published ? publishedMessages : receivedMessages).touch(id);
+    }
+
     private static class LockInfo {
         private final String instance;
         private LocalDateTime expiresAt;
@@ -390,20 +435,307 @@ public class MemoryMessageStorage implements MessageStorage {
         }
     }
 
+    private boolean isPublishedTable(String table) {
+        return "published".equalsIgnoreCase(table) || "cap.published".equalsIgnoreCase(table);
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * 索引键：(时间, 消息ID)，时间相同时按ID排序保证唯一
+     */
+    private static final class IndexKey implements Comparable<IndexKey> {
+        private final long time;
+        private final long id;
+
+        IndexKey(long time, long id) {
+            this.time = time;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(IndexKey other) {
+            int result = Long.compare(time, other.time);
+            return result != 0 ? result : Long.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof IndexKey)) {
+                return false;
+            }
+            IndexKey other = (IndexKey) o;
+            return time == other.time && id == other.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(time) * 31 + Long.hashCode(id);
+        }
+    }
+
+    /**
+     * 已入索引的消息及其索引位置
+     * 记录入索引时的状态和键，调用方直接修改消息对象后仍能准确移除旧索引
+     */
+    private static final class IndexedEntry {
+        private final CapMessage message;
+        private final CapMessageStatus status;
+        private final IndexKey statusKey;
+        private final IndexKey addedKey;
+        private final IndexKey expiresKey;
+        private final IndexKey retryKey;
+
+        IndexedEntry(CapMessage message, CapMessageStatus status, IndexKey statusKey, IndexKey addedKey,
+                IndexKey expiresKey, IndexKey retryKey) {
+            this.message = message;
+            this.status = status;
+            this.statusKey = statusKey;
+            this.addedKey = addedKey;
+            this.expiresKey = expiresKey;
+            this.retryKey = retryKey;
+        }
+    }
+
+    /**
+     * 带状态二级索引的消息集合
+     * 每个状态维护按 (ADDED, ID)、(EXPIRESAT, ID) 与 (NEXTRETRYAT, ID) 排序的跳表，
+     * 所有变更都在主表的 compute 中完成，保证单条消息的索引迁移是原子的
+     */
+    private static final class IndexedMessages {
+
+        private final MemoryMessageStorage owner;
+        private final boolean published;
+        private final Map<Long, IndexedEntry> entries = new ConcurrentHashMap<>();
+        private final NavigableMap<IndexKey, CapMessage> byAdded = new ConcurrentSkipListMap<>();
+        private final Map<CapMessageStatus, NavigableMap<IndexKey, CapMessage>> byStatusAdded =
+                new EnumMap<>(CapMessageStatus.class);
+        private final Map<CapMessageStatus, NavigableMap<IndexKey, CapMessage>> byStatusExpires =
+                new EnumMap<>(CapMessageStatus.class);
+        private final Map<CapMessageStatus, NavigableMap<IndexKey, CapMessage>> byStatusNextRetry =
+                new EnumMap<>(CapMessageStatus.class);
+
+        IndexedMessages(MemoryMessageStorage owner, boolean published) {
+            this.owner = owner;
+            this.published = published;
+            // 构造时一次性创建全部状态的索引，之后只读，EnumMap 可安全并发访问
+            for (CapMessageStatus status : CapMessageStatus.values()) {
+                byStatusAdded.put(status, new ConcurrentSkipListMap<>());
+                byStatusExpires.put(status, new ConcurrentSkipListMap<>());
+                byStatusNextRetry.put(status, new ConcurrentSkipListMap<>());
+            }
+        }
+
+        void put(Long id, CapMessage message) {
+            entries.compute(id, (key, old) -> {
+                unindex(old);
+                return reindex(id, message);
+            });
+        }
+
+        void restore(Long id, CapMessage message) {
+            entries.compute(id, (key, old) -> {
+                unindex(old);
+                return index(id, message);
+            });
+        }
+
+        boolean touch(Long id) {
+            return entries.computeIfPresent(id, (key, old) -> {
+                owner.onMessageChanged(published, old.message);
+                return old;
+            }) != null;
+        }
+
+        void putAll(List<CapMessage> messages) {
+            for (CapMessage message : messages) {
+                put(message.getId(), message);
+            }
+        }
+
+        CapMessage get(Long id) {
+            IndexedEntry entry = id != null ? entries.get(id) : null;
+            return entry != null ? entry.message : null;
+        }
+
+        CapMessage remove(Long id) {
+            if (id == null) {
+                return null;
+            }
+            CapMessage[] removed = new CapMessage[1];
+            entries.computeIfPresent(id, (key, old) -> {
+                unindex(old);
+                removed[0] = old.message;
+                owner.onMessageRemoved(published, id);
+                return null;
+            });
+            return removed[0];
+        }
+
+        /**
+         * 修改状态并迁移索引（同时按消息当前字段刷新 ADDED/EXPIRESAT 索引）
+         *
+         * @return 消息是否存在
+         */
+        boolean changeStatus(Long id, CapMessageStatus status) {
+            if (id == null) {
+                return false;
+            }
+            return entries.computeIfPresent(id, (key, old) -> {
+                unindex(old);
+                old.message.setStatus(status);
+                return reindex(id, old.message);
+            }) != null;
+        }
+
+        /**
+         * 按传入消息修改状态，并同步其重试次数与下次重试时间（传入的可能是存储对象的副本）
+         *
+         * @return 消息是否存在
+         */
+        boolean changeStatus(CapMessage source, CapMessageStatus status) {
+            Long id = source.getId();
+            return entries.computeIfPresent(id, (key, old) -> {
+                unindex(old);
+                old.message.setRetries(source.getRetries());
+                old.message.setNextRetryAt(source.getNextRetryAt());
+                old.message.setStatus(status);
+                return reindex(id, old.message);
+            }) != null;
+        }
+
+        /**
+         * 按 ADDED 顺序把最多 batchSize 条 fromStatus 消息迁移到 toStatus
+         */
+        int changeStatus(CapMessageStatus fromStatus, CapMessageStatus toStatus, int batchSize) {
+            int updated = 0;
+            for (IndexKey key : byStatusAdded.get(fromStatus).keySet()) {
+                if (updated >= batchSize) {
+                    break;
+                }
+                boolean[] moved = new boolean[1];
+                entries.computeIfPresent(key.id, (id, old) -> {
+                    // 并发下该消息可能已被其他线程迁移，只迁移仍处于原状态的消息
+                    if (old.status != fromStatus) {
+                        return old;
+                    }
+                    unindex(old);
+                    old.message.setStatus(toStatus);
+                    moved[0] = true;
+                    return reindex(id, old.message);
+                });
+                if (moved[0]) {
+                    updated++;
+                }
+            }
+            return updated;
+        }
+
+        List<CapMessage> findByStatus(CapMessageStatus status, int limit) {
+            return take(byStatusAdded.get(status), limit);
+        }
+
+        /**
+         * 按 NEXTRETRYAT 顺序取出已到期（NEXTRETRYAT <= nowMillis）的消息
+         */
+        List<CapMessage> findRetryDue(CapMessageStatus status, long nowMillis, int limit) {
+            return take(byStatusNextRetry.get(status).headMap(new IndexKey(nowMillis, Long.MAX_VALUE), true), limit);
+        }
+
+        List<CapMessage> findExpiresBefore(CapMessageStatus status, long timeMillis, int limit) {
+            return take(byStatusExpires.get(status).headMap(new IndexKey(timeMillis, Long.MIN_VALUE), false), limit);
+        }
+
+        int removeAddedBefore(long timeMillis, int limit) {
+            return removeAll(byAdded.headMap(new IndexKey(timeMillis, Long.MIN_VALUE), false), limit);
+        }
+
+        int removeExpiresBefore(CapMessageStatus status, long timeMillis) {
+            return removeAll(byStatusExpires.get(status).headMap(new IndexKey(timeMillis, Long.MIN_VALUE), false),
+                    Integer.MAX_VALUE);
+        }
+
+        private int removeAll(NavigableMap<IndexKey, CapMessage> range, int limit) {
+            int removed = 0;
+            for (IndexKey key : range.keySet()) {
+                if (removed >= limit) {
+                    break;
+                }
+                if (remove(key.id) != null) {
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        private List<CapMessage> take(NavigableMap<IndexKey, CapMessage> range, int limit) {
+            List<CapMessage> result = new ArrayList<>(Math.min(limit, 256));
+            for (CapMessage message : range.values()) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                result.add(message);
+            }
+            return result;
+        }
+
+        /**
+         * 建立索引并通知变更
+         */
+        private IndexedEntry reindex(Long id, CapMessage message) {
+            IndexedEntry entry = index(id, message);
+            owner.onMessageChanged(published, message);
+            return entry;
+        }
+
+        private IndexedEntry index(Long id, CapMessage message) {
+            CapMessageStatus status = message.getStatus() != null ? message.getStatus() : CapMessageStatus.SCHEDULED;
+            IndexKey addedKey = message.getAdded() != null ? new IndexKey(toMillis(message.getAdded()), id) : null;
+            IndexKey expiresKey = message.getExpiresAt() != null ? new IndexKey(toMillis(message.getExpiresAt()), id) : null;
+            IndexKey retryKey = message.getNextRetryAt() != null ? new IndexKey(toMillis(message.getNextRetryAt()), id) : null;
+
+            // 无 ADDED 的消息只进入状态索引（排在最前），不参与按时间清理
+            IndexKey statusKey = addedKey != null ? addedKey : new IndexKey(Long.MIN_VALUE, id);
+            byStatusAdded.get(status).put(statusKey, message);
+            if (addedKey != null) {
+                byAdded.put(addedKey, message);
+            }
+            if (expiresKey != null) {
+                byStatusExpires.get(status).put(expiresKey, message);
+            }
+            if (retryKey != null) {
+                byStatusNextRetry.get(status).put(retryKey, message);
+            }
+            return new IndexedEntry(message, status, statusKey, addedKey, expiresKey, retryKey);
+        }
+
+        private void unindex(IndexedEntry entry) {
+            if (entry == null) {
+                return;
+            }
+            byStatusAdded.get(entry.status).remove(entry.statusKey);
+            if (entry.addedKey != null) {
+                byAdded.remove(entry.addedKey);
+            }
+            if (entry.expiresKey != null) {
+                byStatusExpires.get(entry.status).remove(entry.expiresKey);
+            }
+            if (entry.retryKey != null) {
+                byStatusNextRetry.get(entry.status).remove(entry.retryKey);
+            }
+        }
+    }
+
     @Override
     public CompletableFuture<Integer> batchUpdatePublishedStatusAsync(CapMessageStatus fromStatus, CapMessageStatus toStatus, int batchSize) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                int updatedCount = 0;
-                for (CapMessage message : publishedMessages.values()) {
-                    if (updatedCount >= batchSize) {
-                        break;
-                    }
-                    if (message.getStatus() == fromStatus) {
-                        message.setStatus(toStatus);
-                        updatedCount++;
-                    }
-                }
+                int updatedCount = publishedMessages.changeStatus(fromStatus, toStatus, batchSize);
                 if (updatedCount > 0) {
                     log.debug("Batch updated {} published messages from {} to {}", updatedCount, fromStatus, toStatus);
                 }
@@ -417,18 +749,9 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> batchUpdateReceivedStatusAsync(CapMessageStatus fromStatus, CapMessageStatus toStatus, int batchSize) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                int updatedCount = 0;
-                for (CapMessage message : receivedMessages.values()) {
-                    if (updatedCount >= batchSize) {
-                        break;
-                    }
-                    if (message.getStatus() == fromStatus) {
-                        message.setStatus(toStatus);
-                        updatedCount++;
-                    }
-                }
+                int updatedCount = receivedMessages.changeStatus(fromStatus, toStatus, batchSize);
                 if (updatedCount > 0) {
                     log.debug("Batch updated {} received messages from {} to {}", updatedCount, fromStatus, toStatus);
                 }
@@ -442,13 +765,10 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<List<CapMessage>> getExpiredDelayedMessagesAsync(int batchSize) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                List<CapMessage> expiredMessages = publishedMessages.values().stream()
-                    .filter(message -> message.getStatus() == CapMessageStatus.DELAYED)
-                    .filter(message -> message.getExpiresAt() != null && message.getExpiresAt().isBefore(LocalDateTime.now()))
-                    .limit(batchSize)
-                    .collect(Collectors.toList());
+                List<CapMessage> expiredMessages = publishedMessages.findExpiresBefore(
+                    CapMessageStatus.DELAYED, toMillis(LocalDateTime.now()), batchSize);
                 
                 if (!expiredMessages.isEmpty()) {
                     log.debug("Found {} expired delayed messages", expiredMessages.size());
@@ -463,12 +783,9 @@ public class MemoryMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<List<CapMessage>> getPendingPublishedMessagesAsync(CapMessageStatus status, int batchSize) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                List<CapMessage> pendingMessages = publishedMessages.values().stream()
-                    .filter(message -> message.getStatus() == status)
-                    .limit(batchSize)
-                    .collect(Collectors.toList());
+                List<CapMessage> pendingMessages = publishedMessages.findByStatus(status, batchSize);
                 
                 if (!pendingMessages.isEmpty()) {
                     log.debug("Found {} pending published messages with status {}", pendingMessages.size(), status);
@@ -0,0 +1,454 @@
+package com.guanwei.framework.cap.storage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 分段、内存映射的只追加日志
+ * 记录格式：长度(4) + CRC32C(4) + 类型(1) + 消息ID(8) + 内容，长度为 0 表示段内数据结束；
+ * 刷盘线程把并发追加的记录合并为一次 force（组提交），{@link #awaitDurable()} 等待本线程最后一条记录落盘。
+ * 同时记录每条消息最新记录所在的段，供 {@link JournalMessageStorage} 判断旧段的存活比例并压缩
+ */
+@Slf4j
+final class MessageJournal implements Closeable {
+
+    static final byte PUT_PUBLISHED = 1;
+    static final byte PUT_RECEIVED = 2;
+    static final byte DELETE_PUBLISHED = 3;
+    static final byte DELETE_RECEIVED = 4;
+
+    private static final int HEADER_SIZE = 17;
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    /**
+     * 回放记录的处理器
+     */
+    @FunctionalInterface
+    interface RecordHandler {
+        void accept(byte type, long id, byte[] content);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Map<Long, Segment> latestPublished = new HashMap<>();
+    private final Map<Long, Segment> latestReceived = new HashMap<>();
+    private final List<Segment> unforcedSegments = new ArrayList<>();
+    private final ThreadLocal<Pending> pending = ThreadLocal.withInitial(Pending::new);
+    private final Thread flusher;
+
+    private Segment active;
+    private long appendedSequence;
+    private long durableSequence;
+    private IOException flushFailure;
+    private volatile boolean running = true;
+
+    MessageJournal(Path directory, int segmentSize, RecordHandler handler) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        replay(handler);
+        this.flusher = new Thread(this::runFlusher, "cap-journal-flush");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 追加一条记录；失败不抛出，由本线程随后的 {@link #awaitDurable()} 报告
+     */
+    void append(byte type, long id, byte[] content) {
+        Pending state = pending.get();
+        try {
+            int size = HEADER_SIZE + content.length;
+            if (size > segmentSize) {
+                throw new IOException("Journal record of " + size + " bytes exceeds segment size " + segmentSize);
+            }
+            synchronized (this) {
+                if (!running) {
+                    throw new IOException("Journal closed");
+                }
+                if (segmentSize - active.position < size) {
+                    roll();
+                }
+                write(active, type, id, content);
+                track(active, type, id);
+                state.sequence = ++appendedSequence;
+                notifyAll();
+            }
+        } catch (IOException | RuntimeException e) {
+            state.failure = e;
+        }
+    }
+
+    /**
+     * 记录本线程中发生在追加之前的失败（如序列化失败）
+     */
+    void fail(Exception failure) {
+        pending.get().failure = failure;
+    }
+
+    /**
+     * 清除本线程未等待的追加状态
+     */
+    void resetPending() {
+        Pending state = pending.get();
+        state.sequence = 0;
+        state.failure = null;
+    }
+
+    /**
+     * 等待本线程最后追加的记录落盘，追加或刷盘失败时抛出
+     */
+    void awaitDurable() {
+        Pending state = pending.get();
+        long sequence = state.sequence;
+        Exception failure = state.failure;
+        state.sequence = 0;
+        state.failure = null;
+        if (failure != null) {
+            throw failure instanceof IOException io ? new UncheckedIOException(io)
+                    : new IllegalStateException("Journal append failed", failure);
+        }
+        if (sequence == 0) {
+            return;
+        }
+        synchronized (this) {
+            while (durableSequence < sequence) {
+                if (flushFailure != null) {
+                    throw new UncheckedIOException(flushFailure);
+                }
+                if (!running && !flusher.isAlive()) {
+                    throw new IllegalStateException("Journal closed before record was flushed");
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for journal flush", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 最早的非活动段，存活记录比例不高于 maxLiveRatio 时返回，否则返回 null
+     * 只压缩最早的段，使被丢弃的删除记录不会再有更早的新增记录与之对应
+     */
+    synchronized Long compactionCandidate(double maxLiveRatio) {
+        Map.Entry<Long, Segment> oldest = segments.firstEntry();
+        if (oldest == null || oldest.getValue() == active) {
+            return null;
+        }
+        Segment segment = oldest.getValue();
+        return segment.records == 0 || (double) segment.live / segment.records <= maxLiveRatio
+                ? segment.id : null;
+    }
+
+    /**
+     * 最新记录仍在该段中的消息ID
+     */
+    synchronized List<Long> liveIds(long segmentId, boolean published) {
+        Segment segment = segments.get(segmentId);
+        List<Long> ids = new ArrayList<>();
+        if (segment == null) {
+            return ids;
+        }
+        (published ? latestPublished : latestReceived).forEach((id, latest) -> {
+            if (latest == segment) {
+                ids.add(id);
+            }
+        });
+        return ids;
+    }
+
+    /**
+     * 删除已无存活记录的段
+     *
+     * @return 是否已删除
+     */
+    boolean deleteSegment(long segmentId) {
+        Segment segment;
+        synchronized (this) {
+            segment = segments.get(segmentId);
+            if (segment == null || segment == active || segment.live > 0 || unforcedSegments.contains(segment)) {
+                return false;
+            }
+            segments.remove(segmentId);
+        }
+        // 先把首条记录长度清零，文件删除失败时重启也会把它当作空段
+        segment.buffer.putInt(0, 0);
+        segment.buffer.force(0, 4);
+        segment.close();
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            log.warn("Failed to delete compacted journal segment {}: {}", segment.path, e.getMessage());
+        }
+        return true;
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            notifyAll();
+        }
+        try {
+            flusher.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            segments.values().forEach(Segment::close);
+            notifyAll();
+        }
+    }
+
+    private void replay(RecordHandler handler) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = Segment.open(file, id, segmentSize);
+            segments.put(id, segment);
+            read(segment, handler);
+        }
+        if (segments.isEmpty()) {
+            active = createSegment(0);
+        } else {
+            active = segments.lastEntry().getValue();
+            // 活动段尾部可能是写了一半的记录，清零后从该位置继续追加
+            zeroTail(active);
+        }
+        log.info("Opened CAP journal {} with {} segments, {} published and {} received messages",
+                directory, segments.size(), latestPublished.size(), latestReceived.size());
+    }
+
+    private void read(Segment segment, RecordHandler handler) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        CRC32C crc = new CRC32C();
+        while (position + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < HEADER_SIZE || position + length > segmentSize) {
+                log.warn("Truncated journal record in {} at {}", segment.path, position);
+                break;
+            }
+            byte[] record = new byte[length - 8];
+            buffer.get(position + 8, record);
+            crc.reset();
+            crc.update(record);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                log.warn("Corrupted journal record in {} at {}", segment.path, position);
+                break;
+            }
+            byte type = record[0];
+            long id = readLong(record, 1);
+            byte[] content = new byte[record.length - 9];
+            System.arraycopy(record, 9, content, 0, content.length);
+            track(segment, type, id);
+            handler.accept(type, id, content);
+            position += length;
+        }
+        segment.position = position;
+        segment.forcedPosition = position;
+    }
+
+    private void write(Segment segment, byte type, long id, byte[] content) {
+        int length = HEADER_SIZE + content.length;
+        byte[] record = new byte[length - 8];
+        record[0] = type;
+        for (int i = 0; i < 8; i++) {
+            record[1 + i] = (byte) (id >>> (56 - 8 * i));
+        }
+        System.arraycopy(content, 0, record, 9, content.length);
+        CRC32C crc = new CRC32C();
+        crc.update(record);
+
+        MappedByteBuffer buffer = segment.buffer;
+        int position = segment.position;
+        buffer.put(position + 8, record);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, length);
+        segment.position = position + length;
+    }
+
+    private void track(Segment segment, byte type, long id) {
+        segment.records++;
+        Map<Long, Segment> latest = type == PUT_PUBLISHED || type == DELETE_PUBLISHED ? latestPublished : latestReceived;
+        Segment previous = type == PUT_PUBLISHED || type == PUT_RECEIVED
+                ? latest.put(id, segment) : latest.remove(id);
+        if (previous != null) {
+            previous.live--;
+        }
+        if (type == PUT_PUBLISHED || type == PUT_RECEIVED) {
+            segment.live++;
+        }
+    }
+
+    private void roll() throws IOException {
+        unforcedSegments.add(active);
+        active = createSegment(active.id + 1);
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Segment segment = Segment.open(directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX)), id, segmentSize);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void zeroTail(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int start = segment.position;
+        if (start + 4 > segmentSize || buffer.getInt(start) == 0) {
+            return;
+        }
+        byte[] zeros = new byte[Math.min(1 << 20, segmentSize - start)];
+        for (int position = start; position < segmentSize; position += zeros.length) {
+            buffer.put(position, zeros, 0, Math.min(zeros.length, segmentSize - position));
+        }
+        buffer.force(start, segmentSize - start);
+        log.warn("Discarded incomplete journal data in {} after {}", segment.path, start);
+    }
+
+    /**
+     * 刷盘循环：每轮把此前所有追加一次性 force 到磁盘，再唤醒等待的线程
+     */
+    private void runFlusher() {
+        List<Segment> toForce = new ArrayList<>();
+        while (true) {
+            long target;
+            int activePosition;
+            Segment current;
+            synchronized (this) {
+                while (running && appendedSequence == durableSequence) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (appendedSequence == durableSequence) {
+                    return;
+                }
+                target = appendedSequence;
+                current = active;
+                activePosition = active.position;
+                toForce.addAll(unforcedSegments);
+            }
+            try {
+                for (Segment segment : toForce) {
+                    segment.force(segment.position);
+                }
+                current.force(activePosition);
+                synchronized (this) {
+                    unforcedSegments.removeAll(toForce);
+                    durableSequence = target;
+                    notifyAll();
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    flushFailure = new IOException("Failed to flush CAP journal", e);
+                    notifyAll();
+                }
+                log.error("Failed to flush CAP journal {}", directory, e);
+                return;
+            }
+            toForce.clear();
+        }
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * 本线程最后一次追加的序号和失败
+     */
+    private static final class Pending {
+        private long sequence;
+        private Exception failure;
+    }
+
+    /**
+     * 日志段：固定大小的内存映射文件
+     */
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private int forcedPosition;
+        private int records;
+        private int live;
+
+        private Segment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path path, long id, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        /**
+         * 把 [forcedPosition, position) 写回磁盘，只由刷盘线程调用
+         */
+        void force(int position) {
+            int from = forcedPosition;
+            if (position > from) {
+                buffer.force(from, position - from);
+                forcedPosition = position;
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Failed to close journal segment {}: {}", path, e.getMessage());
+            }
+        }
+    }
+}
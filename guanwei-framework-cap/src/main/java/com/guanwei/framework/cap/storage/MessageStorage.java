@@ -39,9 +39,9 @@ public interface MessageStorage {
      * @param key      锁键
      * @param ttl      锁过期时间
      * @param instance 实例标识
-     * @return 操作结果
+     * @return 锁仍由该实例持有并已续期时为 true
      */
-    CompletableFuture<Void> renewLockAsync(String key, Duration ttl, String instance);
+    CompletableFuture<Boolean> renewLockAsync(String key, Duration ttl, String instance);
 
     /**
      * 将发布消息状态改为延迟
@@ -80,6 +80,14 @@ public interface MessageStorage {
      */
     CompletableFuture<CapMessage> storeMessageAsync(String name, Object content, Object transaction);
 
+    /**
+     * 批量存储发布消息（一次往返写入整批）
+     *
+     * @param messages 消息列表
+     * @return 存储的消息
+     */
+    CompletableFuture<List<CapMessage>> storeMessagesAsync(List<CapMessage> messages);
+
     /**
      * 存储接收异常消息
      *
@@ -112,16 +120,20 @@ public interface MessageStorage {
 
     /**
      * 获取需要重试的发布消息
+     * 返回 NEXTRETRYAT 已到期的失败消息，以及 NEXTRETRYAT（重试租约）已到期仍为 RETRYING 的消息，
+     * 各自按 NEXTRETRYAT 升序，失败消息在前
      *
-     * @param lookbackSeconds 回溯时间（秒）
+     * @param lookbackSeconds 回溯时间（秒），保留参数，到期判断以 NEXTRETRYAT 为准
      * @return 需要重试的消息列表
      */
     CompletableFuture<List<CapMessage>> getPublishedMessagesOfNeedRetry(Duration lookbackSeconds);
 
     /**
      * 获取需要重试的接收消息
+     * 返回 NEXTRETRYAT 已到期的失败消息，以及 NEXTRETRYAT（重试租约）已到期仍为 RETRYING 的消息，
+     * 各自按 NEXTRETRYAT 升序，失败消息在前
      *
-     * @param lookbackSeconds 回溯时间（秒）
+     * @param lookbackSeconds 回溯时间（秒），保留参数，到期判断以 NEXTRETRYAT 为准
      * @return 需要重试的消息列表
      */
     CompletableFuture<List<CapMessage>> getReceivedMessagesOfNeedRetry(Duration lookbackSeconds);
@@ -170,6 +182,21 @@ public interface MessageStorage {
      */
     CompletableFuture<Void> updateStatusAsync(Long messageId, CapMessageStatus status);
 
+    /**
+     * 批量更新消息状态（通用），供批量订阅在一次存储往返中推进整批状态
+     * 默认逐条调用 {@link #updateStatusAsync(Long, CapMessageStatus)}
+     *
+     * @param messageIds 消息ID列表
+     * @param status     目标状态
+     * @return 操作结果
+     */
+    default CompletableFuture<Void> updateStatusBatchAsync(List<Long> messageIds, CapMessageStatus status) {
+        CompletableFuture<?>[] futures = messageIds.stream()
+                .map(id -> updateStatusAsync(id, status))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures);
+    }
+
     /**
      * 删除指定状态的过期消息
      */
@@ -1,19 +1,36 @@
 package com.guanwei.framework.cap.storage;
 
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.sql.BatchUpdateException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * 基于 Oracle 的幂等去重存储
- * 依赖唯一键约束实现 SETNX 语义
+ * 通过 MERGE 实现 SETNX 语义：不存在时插入，已过期时重新占用，未过期时不修改（影响行数为 0 即重复）
  */
 public class OracleDedupStorage implements DedupStorage {
 
     private final JdbcTemplate jdbcTemplate;
     private static final String TABLE = "CAP_DEDUP";
 
+    /**
+     * 参数：去重键、过期时间、当前时间
+     */
+    private static final String MERGE_SQL = "MERGE INTO " + TABLE + " t\n" +
+            "USING (SELECT CAST(? AS VARCHAR2(256)) AS IDEMPOTENT_KEY, CAST(? AS TIMESTAMP) AS EXPIRESAT FROM DUAL) s\n" +
+            "ON (t.IDEMPOTENT_KEY = s.IDEMPOTENT_KEY)\n" +
+            "WHEN MATCHED THEN UPDATE SET t.EXPIRESAT = s.EXPIRESAT\n" +
+            "  WHERE t.EXPIRESAT IS NOT NULL AND t.EXPIRESAT <= ?\n" +
+            "WHEN NOT MATCHED THEN INSERT (IDEMPOTENT_KEY, EXPIRESAT) VALUES (s.IDEMPOTENT_KEY, s.EXPIRESAT)";
+
     public OracleDedupStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
         createTableIfNeeded();
@@ -21,17 +38,90 @@ public class OracleDedupStorage implements DedupStorage {
 
     @Override
     public boolean tryMarkProcessed(String key, long ttlSeconds) {
+        LocalDateTime now = LocalDateTime.now();
         try {
-            LocalDateTime expiresAt = ttlSeconds > 0 ? LocalDateTime.now().plusSeconds(ttlSeconds) : null;
-            String sql = "INSERT INTO " + TABLE + " (IDEMPOTENT_KEY, EXPIRESAT) VALUES (?, ?)";
-            jdbcTemplate.update(sql, key, expiresAt != null ? Timestamp.valueOf(expiresAt) : null);
-            return true;
-        } catch (Exception e) {
-            // 唯一约束冲突即为已存在，视为重复
+            return jdbcTemplate.update(MERGE_SQL, mergeArgs(key, ttlSeconds, now)) > 0;
+        } catch (DuplicateKeyException e) {
+            // 并发插入同一个键时唯一约束冲突，视为重复；其他异常直接抛出
             return false;
         }
     }
 
+    @Override
+    public Set<String> tryMarkProcessedBatch(List<String> keys, long ttlSeconds) {
+        Set<String> first = new HashSet<>();
+        if (keys.isEmpty()) {
+            return first;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> batchArgs = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            batchArgs.add(mergeArgs(key, ttlSeconds, now));
+        }
+
+        int[] updated;
+        int failedIndex = -1;
+        try {
+            // 整批一次 executeBatch
+            updated = jdbcTemplate.batchUpdate(MERGE_SQL, batchArgs);
+        } catch (DuplicateKeyException e) {
+            // 与并发写入同一个键冲突：已执行的语句按结果计入，驱动在冲突处停止时冲突的键视为重复，其后的键逐个标记
+            updated = e.getCause() instanceof BatchUpdateException batch && batch.getUpdateCounts() != null
+                    ? batch.getUpdateCounts() : new int[0];
+            failedIndex = updated.length;
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            if (i < updated.length) {
+                if (updated[i] > 0 || updated[i] == Statement.SUCCESS_NO_INFO) {
+                    first.add(key);
+                }
+            } else if (i != failedIndex || updated.length == 0) {
+                if (tryMarkProcessed(key, ttlSeconds)) {
+                    first.add(key);
+                }
+            }
+        }
+        return first;
+    }
+
+    @Override
+    public void unmarkProcessed(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<Object[]> batchArgs = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            batchArgs.add(new Object[]{key});
+        }
+        jdbcTemplate.batchUpdate("DELETE FROM " + TABLE + " WHERE IDEMPOTENT_KEY = ?", batchArgs);
+    }
+
+    /**
+     * 分批删除已过期的去重记录
+     *
+     * @param batchSize 单条 DELETE 最多删除的行数
+     * @return 删除的记录数
+     */
+    @Override
+    public int deleteExpired(int batchSize) {
+        int limit = Math.max(1, batchSize);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        String sql = "DELETE FROM " + TABLE + " WHERE EXPIRESAT <= ? AND ROWNUM <= ?";
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(sql, now, limit);
+            total += deleted;
+        } while (deleted >= limit);
+        return total;
+    }
+
+    private static Object[] mergeArgs(String key, long ttlSeconds, LocalDateTime now) {
+        Timestamp expiresAt = ttlSeconds > 0 ? Timestamp.valueOf(now.plusSeconds(ttlSeconds)) : null;
+        return new Object[]{key, expiresAt, Timestamp.valueOf(now)};
+    }
+
     private void createTableIfNeeded() {
         try {
             String sql = "CREATE TABLE " + TABLE + " (\n" +
@@ -42,12 +132,10 @@ public class OracleDedupStorage implements DedupStorage {
         } catch (Exception ignored) {
         }
 
-        // 可选：为过期字段创建索引以便清理
+        // 为过期字段创建索引以便清理
         try {
             jdbcTemplate.execute("CREATE INDEX IDX_CAP_DEDUP_EXPIRES ON " + TABLE + "(EXPIRESAT)");
         } catch (Exception ignored) {
         }
     }
 }
-
-
@@ -6,6 +6,7 @@ import com.guanwei.framework.cap.CapMessageStatus;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 
@@ -14,6 +15,7 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import com.guanwei.framework.cap.util.MessageIdGenerator;
@@ -23,7 +25,7 @@ import com.guanwei.framework.cap.util.MessageIdGenerator;
  * 完整实现，参考 .NET Core CAP 的 Oracle 存储实现
  */
 @Slf4j
-public class OracleMessageStorage implements MessageStorage {
+public class OracleMessageStorage extends AbstractMessageStorage {
 
     @Autowired
     private JdbcTemplate jdbcTemplate;
@@ -38,6 +40,21 @@ public class OracleMessageStorage implements MessageStorage {
     private static final String LOCK_TABLE = "CAP_LOCKS";
     private static final String DEDUP_TABLE = "CAP_DEDUP";
 
+    /**
+     * 已释放锁行的租约到期时间
+     */
+    private static final Timestamp RELEASED_LOCK_TIME = Timestamp.valueOf(LocalDateTime.of(1970, 1, 1, 0, 0));
+
+    /**
+     * Oracle IN 列表最多 1000 个元素
+     */
+    private static final int IN_CLAUSE_LIMIT = 1000;
+
+    /**
+     * 单次重试查询返回的最大条数
+     */
+    private static final int RETRY_BATCH_SIZE = 200;
+
     /**
      * 初始化表结构
      */
@@ -47,6 +64,11 @@ public class OracleMessageStorage implements MessageStorage {
         createReceivedTable();
         createLockTable();
         createDedupTable();
+        addNextRetryColumn(PUBLISHED_TABLE);
+        addNextRetryColumn(RECEIVED_TABLE);
+        addPayloadColumns(PUBLISHED_TABLE);
+        addPayloadColumns(RECEIVED_TABLE);
+        createIndexes();
     }
 
     private void createPublishedTable() {
@@ -59,7 +81,10 @@ public class OracleMessageStorage implements MessageStorage {
                     STATUSNAME VARCHAR2(50),
                     EXPIRESAT TIMESTAMP,
                     ADDED TIMESTAMP DEFAULT SYSTIMESTAMP,
-                    VERSION VARCHAR2(20) DEFAULT 'v1'
+                    VERSION VARCHAR2(20) DEFAULT 'v1',
+                    NEXTRETRYAT TIMESTAMP,
+                    PAYLOAD BLOB,
+                    CONTENTTYPE VARCHAR2(100)
                 )
                 """;
         try {
@@ -81,7 +106,10 @@ public class OracleMessageStorage implements MessageStorage {
                     STATUSNAME VARCHAR2(50),
                     EXPIRESAT TIMESTAMP,
                     ADDED TIMESTAMP DEFAULT SYSTIMESTAMP,
-                    VERSION VARCHAR2(20) DEFAULT 'v1'
+                    VERSION VARCHAR2(20) DEFAULT 'v1',
+                    NEXTRETRYAT TIMESTAMP,
+                    PAYLOAD BLOB,
+                    CONTENTTYPE VARCHAR2(100)
                 )
                 """;
         try {
@@ -123,21 +151,75 @@ public class OracleMessageStorage implements MessageStorage {
         }
     }
 
+    /**
+     * 为旧版本创建的表补充 NEXTRETRYAT 列，已有的失败消息视为立即到期
+     */
+    private void addNextRetryColumn(String tableName) {
+        try {
+            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD (NEXTRETRYAT TIMESTAMP)");
+            jdbcTemplate.update("UPDATE " + tableName + " SET NEXTRETRYAT = ADDED WHERE STATUSNAME = ?",
+                    CapMessageStatus.FAILED.getValue());
+            log.info("Added NEXTRETRYAT column to {}", tableName);
+        } catch (Exception e) {
+            log.debug("NEXTRETRYAT column may already exist on {}: {}", tableName, e.getMessage());
+        }
+    }
+
+    /**
+     * 为旧版本创建的表补充二进制内容列，PAYLOAD 保存二进制编码的内容，CONTENTTYPE 为其编码
+     */
+    private void addPayloadColumns(String tableName) {
+        try {
+            jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD (PAYLOAD BLOB, CONTENTTYPE VARCHAR2(100))");
+            log.info("Added PAYLOAD, CONTENTTYPE columns to {}", tableName);
+        } catch (Exception e) {
+            log.debug("PAYLOAD column may already exist on {}: {}", tableName, e.getMessage());
+        }
+    }
+
+    /**
+     * 为重试/待发送/过期查询创建索引，已存在时忽略
+     */
+    private void createIndexes() {
+        createIndex("IDX_CAP_PUBLISHED_STATUS_ADDED", PUBLISHED_TABLE, "STATUSNAME, ADDED");
+        createIndex("IDX_CAP_PUBLISHED_EXPIRESAT", PUBLISHED_TABLE, "EXPIRESAT");
+        createIndex("IDX_CAP_PUBLISHED_STATUS_RETRY", PUBLISHED_TABLE, "STATUSNAME, NEXTRETRYAT");
+        createIndex("IDX_CAP_RECEIVED_STATUS_ADDED", RECEIVED_TABLE, "STATUSNAME, ADDED");
+        createIndex("IDX_CAP_RECEIVED_EXPIRESAT", RECEIVED_TABLE, "EXPIRESAT");
+        createIndex("IDX_CAP_RECEIVED_STATUS_RETRY", RECEIVED_TABLE, "STATUSNAME, NEXTRETRYAT");
+    }
+
+    private void createIndex(String indexName, String tableName, String columns) {
+        try {
+            jdbcTemplate.execute("CREATE INDEX " + indexName + " ON " + tableName + " (" + columns + ")");
+            log.info("Created index {} on {}", indexName, tableName);
+        } catch (Exception e) {
+            log.debug("Index {} may already exist: {}", indexName, e.getMessage());
+        }
+    }
+
     @Override
     public CompletableFuture<Boolean> acquireLockAsync(String key, Duration ttl, String instance) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
+            LocalDateTime now = LocalDateTime.now();
+            Timestamp expiresAt = Timestamp.valueOf(now.plus(ttl));
             try {
-                // 先清理过期的锁
-                String cleanupSql = "DELETE FROM " + LOCK_TABLE + " WHERE LASTLOCKTIME < SYSTIMESTAMP";
-                jdbcTemplate.update(cleanupSql);
+                // 只接管本键已过期的租约，释放后保留锁行，常态下一条按主键的条件更新即可
+                String takeOverSql = "UPDATE " + LOCK_TABLE + " SET INSTANCE = ?, LASTLOCKTIME = ? "
+                        + "WHERE KEYID = ? AND LASTLOCKTIME < ?";
+                if (jdbcTemplate.update(takeOverSql, instance, expiresAt, key, Timestamp.valueOf(now)) == 1) {
+                    return true;
+                }
 
-                // 尝试插入新锁
+                // 锁行不存在时插入，并发插入由主键保证只有一个实例成功
                 String insertSql = "INSERT INTO " + LOCK_TABLE + " (KEYID, INSTANCE, LASTLOCKTIME) VALUES (?, ?, ?)";
-                jdbcTemplate.update(insertSql, key, instance,
-                        Timestamp.valueOf(LocalDateTime.now().plus(ttl)));
+                jdbcTemplate.update(insertSql, key, instance, expiresAt);
                 return true;
+            } catch (DuplicateKeyException e) {
+                log.debug("Lock {} is held by another instance, instance: {}", key, instance);
+                return false;
             } catch (Exception e) {
-                log.debug("Failed to acquire lock: {} by instance: {}", key, instance);
+                log.error("Error acquiring lock: {} by instance: {}", key, instance, e);
                 return false;
             }
         });
@@ -145,10 +227,11 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> releaseLockAsync(String key, String instance) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
-                String sql = "DELETE FROM " + LOCK_TABLE + " WHERE KEYID = ? AND INSTANCE = ?";
-                jdbcTemplate.update(sql, key, instance);
+                // 让租约立即过期而不删除锁行，下次获取仍走条件更新
+                String sql = "UPDATE " + LOCK_TABLE + " SET LASTLOCKTIME = ? WHERE KEYID = ? AND INSTANCE = ?";
+                jdbcTemplate.update(sql, RELEASED_LOCK_TIME, key, instance);
             } catch (Exception e) {
                 log.error("Error releasing lock: {}", key, e);
             }
@@ -156,25 +239,39 @@ public class OracleMessageStorage implements MessageStorage {
     }
 
     @Override
-    public CompletableFuture<Void> renewLockAsync(String key, Duration ttl, String instance) {
-        return CompletableFuture.runAsync(() -> {
+    public CompletableFuture<Boolean> renewLockAsync(String key, Duration ttl, String instance) {
+        return supplyAsync(() -> {
             try {
                 String sql = "UPDATE " + LOCK_TABLE + " SET LASTLOCKTIME = ? WHERE KEYID = ? AND INSTANCE = ?";
-                jdbcTemplate.update(sql,
+                int renewed = jdbcTemplate.update(sql,
                         Timestamp.valueOf(LocalDateTime.now().plus(ttl)), key, instance);
+                if (renewed == 0) {
+                    log.warn("Lock renewal failed for key: {}, instance: {}", key, instance);
+                }
+                return renewed > 0;
             } catch (Exception e) {
                 log.error("Error renewing lock: {}", key, e);
+                return false;
             }
         });
     }
 
     @Override
     public CompletableFuture<Void> changePublishStateToDelayedAsync(List<Long> ids) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
-                String sql = "UPDATE " + PUBLISHED_TABLE + " SET STATUSNAME = ? WHERE ID = ?";
-                for (Long id : ids) {
-                    jdbcTemplate.update(sql, CapMessageStatus.DELAYED.getValue(), id);
+                // 按 IN 列表上限分块，每块一条 UPDATE
+                for (int from = 0; from < ids.size(); from += IN_CLAUSE_LIMIT) {
+                    List<Long> chunk = ids.subList(from, Math.min(from + IN_CLAUSE_LIMIT, ids.size()));
+                    String placeholders = String.join(", ", java.util.Collections.nCopies(chunk.size(), "?"));
+                    String sql = "UPDATE " + PUBLISHED_TABLE + " SET STATUSNAME = ? WHERE ID IN (" + placeholders + ")";
+
+                    Object[] args = new Object[chunk.size() + 1];
+                    args[0] = CapMessageStatus.DELAYED.getValue();
+                    for (int i = 0; i < chunk.size(); i++) {
+                        args[i + 1] = chunk.get(i);
+                    }
+                    jdbcTemplate.update(sql, args);
                 }
             } catch (Exception e) {
                 log.error("Error changing publish state to delayed", e);
@@ -185,11 +282,12 @@ public class OracleMessageStorage implements MessageStorage {
     @Override
     public CompletableFuture<Void> changePublishStateAsync(CapMessage message, CapMessageStatus status,
             Object transaction) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 if (message != null && message.getId() != null) {
-                    String sql = "UPDATE " + PUBLISHED_TABLE + " SET STATUSNAME = ? WHERE ID = ?";
-                    jdbcTemplate.update(sql, status.getValue(), message.getId());
+                    String sql = "UPDATE " + PUBLISHED_TABLE + " SET STATUSNAME = ?, RETRIES = ?, NEXTRETRYAT = ? WHERE ID = ?";
+                    jdbcTemplate.update(sql, status.getValue(), message.getRetries(),
+                            toTimestamp(message.getNextRetryAt()), message.getId());
                 }
             } catch (Exception e) {
                 log.error("Error changing publish state", e);
@@ -199,11 +297,12 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> changeReceiveStateAsync(CapMessage message, CapMessageStatus status) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 if (message != null && message.getId() != null) {
-                    String sql = "UPDATE " + RECEIVED_TABLE + " SET STATUSNAME = ? WHERE ID = ?";
-                    jdbcTemplate.update(sql, status.getValue(), message.getId());
+                    String sql = "UPDATE " + RECEIVED_TABLE + " SET STATUSNAME = ?, RETRIES = ?, NEXTRETRYAT = ? WHERE ID = ?";
+                    jdbcTemplate.update(sql, status.getValue(), message.getRetries(),
+                            toTimestamp(message.getNextRetryAt()), message.getId());
                 }
             } catch (Exception e) {
                 log.error("Error changing receive state", e);
@@ -213,7 +312,7 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<CapMessage> storeMessageAsync(String name, Object content, Object transaction) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 CapMessage message;
                 Long id;
@@ -226,14 +325,14 @@ public class OracleMessageStorage implements MessageStorage {
                     message.setDbId(id);
                 }
 
-                String contentJson = objectMapper.writeValueAsString(message.getContent());
-
+                // 内容已由发布方编码：JSON 原样存入 CONTENT，二进制存入 PAYLOAD
                 String sql = """
-                        INSERT INTO %s (ID, NAME, CONTENT, RETRIES, STATUSNAME, ADDED, VERSION)
-                        VALUES (?, ?, ?, ?, ?, SYSTIMESTAMP, ?)
+                        INSERT INTO %s (ID, NAME, CONTENT, PAYLOAD, CONTENTTYPE, RETRIES, STATUSNAME, ADDED, VERSION)
+                        VALUES (?, ?, ?, ?, ?, ?, ?, SYSTIMESTAMP, ?)
                         """.formatted(PUBLISHED_TABLE);
 
-                jdbcTemplate.update(sql, id, name, contentJson, 0,
+                jdbcTemplate.update(sql, id, name, message.getContent(), message.getPayload(),
+                        message.getContentType(), 0,
                         CapMessageStatus.SCHEDULED.getValue(), "v1");
 
                 message.setDbId(id);
@@ -249,9 +348,42 @@ public class OracleMessageStorage implements MessageStorage {
         });
     }
 
+    @Override
+    public CompletableFuture<List<CapMessage>> storeMessagesAsync(List<CapMessage> messages) {
+        return supplyAsync(() -> {
+            try {
+                String sql = """
+                        INSERT INTO %s (ID, NAME, CONTENT, PAYLOAD, CONTENTTYPE, RETRIES, STATUSNAME, ADDED, VERSION)
+                        VALUES (?, ?, ?, ?, ?, ?, ?, SYSTIMESTAMP, ?)
+                        """.formatted(PUBLISHED_TABLE);
+
+                LocalDateTime now = LocalDateTime.now();
+                List<Object[]> batchArgs = new ArrayList<>(messages.size());
+                for (CapMessage message : messages) {
+                    if (message.getId() == null) {
+                        message.setDbId(generateMessageId());
+                    }
+                    batchArgs.add(new Object[]{message.getId(), message.getName(), message.getContent(),
+                            message.getPayload(), message.getContentType(), 0,
+                            CapMessageStatus.SCHEDULED.getValue(), "v1"});
+                    message.setStatus(CapMessageStatus.SCHEDULED);
+                    message.setAdded(now);
+                    message.setRetries(0);
+                }
+
+                // 整批一次 executeBatch，避免逐条往返
+                jdbcTemplate.batchUpdate(sql, batchArgs);
+                return messages;
+            } catch (Exception e) {
+                log.error("Error storing published messages", e);
+                throw new RuntimeException("Failed to store published messages", e);
+            }
+        });
+    }
+
     @Override
     public CompletableFuture<Void> storeReceivedExceptionMessageAsync(String name, String group, String content) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 Long id = generateMessageId();
                 String sql = """
@@ -270,7 +402,7 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<CapMessage> storeReceivedMessageAsync(String name, String group, Object content) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 Long id = generateMessageId();
                 String contentJson = objectMapper.writeValueAsString(content);
@@ -299,7 +431,7 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> deleteExpiresAsync(String table, LocalDateTime timeout, int batchCount) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 String tableName;
                 if ("published".equalsIgnoreCase(table) || "cap.published".equalsIgnoreCase(table)) {
@@ -321,16 +453,18 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<List<CapMessage>> getPublishedMessagesOfNeedRetry(Duration lookbackSeconds) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                LocalDateTime cutoff = LocalDateTime.now().minus(lookbackSeconds);
                 String sql = """
-                        SELECT ID, NAME, CONTENT, RETRIES, STATUSNAME, EXPIRESAT, ADDED, VERSION
-                        FROM %s WHERE STATUSNAME = ? AND ADDED > ? ORDER BY ADDED
+                        SELECT * FROM (
+                            SELECT ID, NAME, CONTENT, PAYLOAD, CONTENTTYPE, RETRIES, STATUSNAME, EXPIRESAT, ADDED, VERSION, NEXTRETRYAT
+                            FROM %s WHERE STATUSNAME IN (?, ?) AND NEXTRETRYAT <= ? ORDER BY STATUSNAME, NEXTRETRYAT
+                        ) WHERE ROWNUM <= ?
                         """.formatted(PUBLISHED_TABLE);
 
                 return jdbcTemplate.query(sql, new CapMessageRowMapper(),
-                        CapMessageStatus.FAILED.getValue(), Timestamp.valueOf(cutoff));
+                        CapMessageStatus.FAILED.getValue(), CapMessageStatus.RETRYING.getValue(),
+                        Timestamp.valueOf(LocalDateTime.now()), RETRY_BATCH_SIZE);
             } catch (Exception e) {
                 log.error("Error getting published messages of need retry", e);
                 return new java.util.ArrayList<>();
@@ -340,16 +474,18 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<List<CapMessage>> getReceivedMessagesOfNeedRetry(Duration lookbackSeconds) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                LocalDateTime cutoff = LocalDateTime.now().minus(lookbackSeconds);
                 String sql = """
-                        SELECT ID, NAME, SUBGROUP, CONTENT, RETRIES, STATUSNAME, EXPIRESAT, ADDED, VERSION
-                        FROM %s WHERE STATUSNAME = ? AND ADDED > ? ORDER BY ADDED
+                        SELECT * FROM (
+                            SELECT ID, NAME, SUBGROUP, CONTENT, PAYLOAD, CONTENTTYPE, RETRIES, STATUSNAME, EXPIRESAT, ADDED, VERSION, NEXTRETRYAT
+                            FROM %s WHERE STATUSNAME IN (?, ?) AND NEXTRETRYAT <= ? ORDER BY STATUSNAME, NEXTRETRYAT
+                        ) WHERE ROWNUM <= ?
                         """.formatted(RECEIVED_TABLE);
 
                 return jdbcTemplate.query(sql, new CapMessageRowMapper(),
-                        CapMessageStatus.FAILED.getValue(), Timestamp.valueOf(cutoff));
+                        CapMessageStatus.FAILED.getValue(), CapMessageStatus.RETRYING.getValue(),
+                        Timestamp.valueOf(LocalDateTime.now()), RETRY_BATCH_SIZE);
             } catch (Exception e) {
                 log.error("Error getting received messages of need retry", e);
                 return new java.util.ArrayList<>();
@@ -359,7 +495,7 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> deleteReceivedMessageAsync(String id) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 String sql = "DELETE FROM " + RECEIVED_TABLE + " WHERE ID = ?";
                 int deleted = jdbcTemplate.update(sql, id);
@@ -373,7 +509,7 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> deletePublishedMessageAsync(String id) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 String sql = "DELETE FROM " + PUBLISHED_TABLE + " WHERE ID = ?";
                 int deleted = jdbcTemplate.update(sql, id);
@@ -387,10 +523,10 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> scheduleMessagesOfDelayedAsync(DelayedMessageScheduler scheduleTask) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 String sql = """
-                        SELECT ID, NAME, CONTENT, RETRIES, STATUSNAME, EXPIRESAT, ADDED, VERSION
+                        SELECT ID, NAME, CONTENT, PAYLOAD, CONTENTTYPE, RETRIES, STATUSNAME, EXPIRESAT, ADDED, VERSION, NEXTRETRYAT
                         FROM %s WHERE STATUSNAME = ? AND EXPIRESAT < SYSTIMESTAMP
                         """.formatted(PUBLISHED_TABLE);
 
@@ -408,7 +544,7 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> deleteExpiredMessagesAsync(CapMessageStatus status, long expiredBefore) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 LocalDateTime expiredTime = LocalDateTime.ofEpochSecond(expiredBefore, 0, java.time.ZoneOffset.UTC);
                 int totalDeleted = 0;
@@ -435,7 +571,7 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> updateStatusAsync(Long messageId, CapMessageStatus status) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 // 尝试更新已发布消息
                 String publishedSql = "UPDATE " + PUBLISHED_TABLE + " SET STATUSNAME = ? WHERE ID = ?";
@@ -449,9 +585,43 @@ public class OracleMessageStorage implements MessageStorage {
         });
     }
 
+    @Override
+    public CompletableFuture<Void> updateStatusBatchAsync(List<Long> messageIds, CapMessageStatus status) {
+        return runAsync(() -> {
+            if (messageIds.isEmpty()) {
+                return;
+            }
+            try {
+                // 整批一次 JDBC batch，已发布表未命中的再更新已接收表
+                String publishedSql = "UPDATE " + PUBLISHED_TABLE + " SET STATUSNAME = ? WHERE ID = ?";
+                int[] updated = jdbcTemplate.batchUpdate(publishedSql, statusArgs(messageIds, status));
+                List<Long> missed = new ArrayList<>();
+                for (int i = 0; i < updated.length; i++) {
+                    if (updated[i] == 0) {
+                        missed.add(messageIds.get(i));
+                    }
+                }
+                if (!missed.isEmpty()) {
+                    String receivedSql = "UPDATE " + RECEIVED_TABLE + " SET STATUSNAME = ? WHERE ID = ?";
+                    jdbcTemplate.batchUpdate(receivedSql, statusArgs(missed, status));
+                }
+            } catch (Exception e) {
+                log.error("Error batch updating {} message statuses", messageIds.size(), e);
+            }
+        });
+    }
+
+    private static List<Object[]> statusArgs(List<Long> messageIds, CapMessageStatus status) {
+        List<Object[]> batchArgs = new ArrayList<>(messageIds.size());
+        for (Long messageId : messageIds) {
+            batchArgs.add(new Object[]{status.getValue(), messageId});
+        }
+        return batchArgs;
+    }
+
     @Override
     public CompletableFuture<Integer> batchUpdatePublishedStatusAsync(CapMessageStatus fromStatus, CapMessageStatus toStatus, int batchSize) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 String sql = """
                         UPDATE %s SET STATUSNAME = ? 
@@ -472,7 +642,7 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> batchUpdateReceivedStatusAsync(CapMessageStatus fromStatus, CapMessageStatus toStatus, int batchSize) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 String sql = """
                         UPDATE %s SET STATUSNAME = ? 
@@ -493,10 +663,10 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<List<CapMessage>> getExpiredDelayedMessagesAsync(int batchSize) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 String sql = """
-                        SELECT ID, NAME, CONTENT, RETRIES, STATUSNAME, EXPIRESAT, ADDED, VERSION
+                        SELECT ID, NAME, CONTENT, PAYLOAD, CONTENTTYPE, RETRIES, STATUSNAME, EXPIRESAT, ADDED, VERSION, NEXTRETRYAT
                         FROM %s 
                         WHERE STATUSNAME = ? AND EXPIRESAT < SYSTIMESTAMP AND ROWNUM <= ?
                         ORDER BY EXPIRESAT ASC
@@ -518,10 +688,10 @@ public class OracleMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<List<CapMessage>> getPendingPublishedMessagesAsync(CapMessageStatus status, int batchSize) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 String sql = """
-                        SELECT ID, NAME, CONTENT, RETRIES, STATUSNAME, EXPIRESAT, ADDED, VERSION
+                        SELECT ID, NAME, CONTENT, PAYLOAD, CONTENTTYPE, RETRIES, STATUSNAME, EXPIRESAT, ADDED, VERSION, NEXTRETRYAT
                         FROM %s 
                         WHERE STATUSNAME = ? AND ROWNUM <= ?
                         ORDER BY ADDED ASC
@@ -545,6 +715,10 @@ public class OracleMessageStorage implements MessageStorage {
         return MessageIdGenerator.getInstance().nextId();
     }
 
+    private static Timestamp toTimestamp(LocalDateTime time) {
+        return time != null ? Timestamp.valueOf(time) : null;
+    }
+
     private static class CapMessageRowMapper implements RowMapper<CapMessage> {
         @Override
         public CapMessage mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -552,6 +726,11 @@ public class OracleMessageStorage implements MessageStorage {
             message.setDbId(rs.getLong("ID"));
             message.setName(rs.getString("NAME"));
             message.setContent(rs.getString("CONTENT"));
+            message.setPayload(rs.getBytes("PAYLOAD"));
+            String contentType = rs.getString("CONTENTTYPE");
+            if (contentType != null) {
+                message.setHeader(CapMessage.CONTENT_TYPE_HEADER, contentType);
+            }
             message.setRetries(rs.getInt("RETRIES"));
             message.setStatus(CapMessageStatus.fromValue(rs.getString("STATUSNAME")));
 
@@ -566,6 +745,11 @@ public class OracleMessageStorage implements MessageStorage {
             }
 
             message.setVersion(rs.getString("VERSION"));
+
+            Timestamp nextRetryAt = rs.getTimestamp("NEXTRETRYAT");
+            if (nextRetryAt != null) {
+                message.setNextRetryAt(nextRetryAt.toLocalDateTime());
+            }
             return message;
         }
     }
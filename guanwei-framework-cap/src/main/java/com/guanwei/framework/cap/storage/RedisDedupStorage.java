@@ -1,16 +1,26 @@
 package com.guanwei.framework.cap.storage;
 
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
  * 基于 Redis 的幂等去重存储
+ * 每个 key 一条 SET key 1 NX EX ttl，标记与过期时间原子生效；批量标记通过管道一次往返完成
  */
 public class RedisDedupStorage implements DedupStorage {
 
     private final StringRedisTemplate stringRedisTemplate;
     private static final String PREFIX = "cap:dedup:";
+    private static final byte[] VALUE = "1".getBytes(StandardCharsets.UTF_8);
 
     public RedisDedupStorage(StringRedisTemplate stringRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
@@ -19,15 +29,43 @@ public class RedisDedupStorage implements DedupStorage {
     @Override
     public boolean tryMarkProcessed(String key, long ttlSeconds) {
         String redisKey = PREFIX + key;
-        Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(redisKey, "1");
-        if (Boolean.TRUE.equals(success)) {
-            if (ttlSeconds > 0) {
-                stringRedisTemplate.expire(redisKey, ttlSeconds, TimeUnit.SECONDS);
+        Boolean success = ttlSeconds > 0
+                ? stringRedisTemplate.opsForValue().setIfAbsent(redisKey, "1", ttlSeconds, TimeUnit.SECONDS)
+                : stringRedisTemplate.opsForValue().setIfAbsent(redisKey, "1");
+        return Boolean.TRUE.equals(success);
+    }
+
+    @Override
+    public Set<String> tryMarkProcessedBatch(List<String> keys, long ttlSeconds) {
+        Set<String> first = new HashSet<>();
+        if (keys.isEmpty()) {
+            return first;
+        }
+        Expiration expiration = ttlSeconds > 0 ? Expiration.seconds(ttlSeconds) : Expiration.persistent();
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.stringCommands().set((PREFIX + key).getBytes(StandardCharsets.UTF_8), VALUE,
+                        expiration, RedisStringCommands.SetOption.ifAbsent());
+            }
+            return null;
+        });
+        for (int i = 0; i < keys.size(); i++) {
+            if (Boolean.TRUE.equals(results.get(i))) {
+                first.add(keys.get(i));
             }
-            return true;
         }
-        return false;
+        return first;
     }
-}
-
 
+    @Override
+    public void unmarkProcessed(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<String> redisKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            redisKeys.add(PREFIX + key);
+        }
+        stringRedisTemplate.delete(redisKeys);
+    }
+}
@@ -2,68 +2,214 @@ package com.guanwei.framework.cap.storage;
 
 import com.guanwei.framework.cap.CapMessage;
 import com.guanwei.framework.cap.CapMessageStatus;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
-import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 /**
  * Redis 消息存储实现
  * 完整实现，支持Redis的分布式锁、消息存储和过期清理
+ * 消息体与状态分别保存在 HASH 中，并按状态维护 ADDED / EXPIRESAT / NEXTRETRYAT 三个 ZSET 索引，
+ * 查询为 ZRANGEBYSCORE LIMIT + 管道化 HMGET，状态迁移由 Lua 脚本原子完成。
+ * 同一张表的键共用一个哈希标签（cap:{published}: / cap:{received}:），脚本访问的键全部通过 KEYS 声明，
+ * 在 Redis Cluster 中落在同一槽位，不会出现 CROSSSLOT
  */
 @Slf4j
-public class RedisMessageStorage implements MessageStorage {
+public class RedisMessageStorage extends AbstractMessageStorage {
 
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
-    // no-op
+    /**
+     * 索引与状态使用纯字符串序列化，保证 Lua 脚本中读写的值一致
+     */
+    private StringRedisTemplate indexTemplate;
 
-    // Redis键前缀
-    private static final String PUBLISHED_PREFIX = "cap:published:";
-    private static final String RECEIVED_PREFIX = "cap:received:";
+    // Redis键前缀，花括号内为哈希标签
+    private static final String PUBLISHED_PREFIX = "cap:{published}:";
+    private static final String RECEIVED_PREFIX = "cap:{received}:";
     private static final String LOCK_PREFIX = "cap:lock:";
     private static final String EXCEPTION_PREFIX = "cap:exception:";
 
-    // Lua脚本：获取分布式锁
-    private static final String ACQUIRE_LOCK_SCRIPT = 
-        "if redis.call('exists', KEYS[1]) == 0 then " +
-        "  redis.call('setex', KEYS[1], ARGV[1], ARGV[2]) " +
+    /**
+     * 每个状态维护的 ZSET 索引（须在 TableKeys 常量之前初始化）
+     */
+    private static final String[] INDEXES = {"added", "expires", "retry"};
+
+    private static final TableKeys PUBLISHED = new TableKeys(PUBLISHED_PREFIX);
+    private static final TableKeys RECEIVED = new TableKeys(RECEIVED_PREFIX);
+
+    /**
+     * 未使用哈希标签的旧版键前缀，启动时迁移到新前缀
+     */
+    private static final TableKeys LEGACY_PUBLISHED = new TableKeys("cap:published:");
+    private static final TableKeys LEGACY_RECEIVED = new TableKeys("cap:received:");
+
+    /**
+     * 单次重试查询返回的最大条数（与 CAP 默认一致）
+     */
+    private static final int RETRY_BATCH_SIZE = 200;
+
+    /**
+     * 批量写入时单个管道包含的消息数
+     */
+    private static final int PIPELINE_BATCH_SIZE = 1000;
+
+    // Lua脚本：获取分布式锁。KEYS[1]=锁，ARGV[1]=租约（毫秒），ARGV[2]=实例
+    private static final RedisScript<Long> ACQUIRE_LOCK_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('set', KEYS[1], ARGV[2], 'NX', 'PX', ARGV[1]) then " +
         "  return 1 " +
         "else " +
         "  return 0 " +
-        "end";
+        "end", Long.class);
 
-    // Lua脚本：释放分布式锁
-    private static final String RELEASE_LOCK_SCRIPT = 
+    // Lua脚本：释放分布式锁。KEYS[1]=锁，ARGV[1]=实例
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
         "if redis.call('get', KEYS[1]) == ARGV[1] then " +
         "  return redis.call('del', KEYS[1]) " +
         "else " +
         "  return 0 " +
-        "end";
+        "end", Long.class);
+
+    // Lua脚本：续期分布式锁，仍由本实例持有时才延长。KEYS[1]=锁，ARGV[1]=实例，ARGV[2]=租约（毫秒）
+    private static final RedisScript<Long> RENEW_LOCK_SCRIPT = new DefaultRedisScript<>(
+        "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+        "  return redis.call('pexpire', KEYS[1], ARGV[2]) " +
+        "else " +
+        "  return 0 " +
+        "end", Long.class);
+
+    // Lua函数：把单条消息从原状态索引迁移到目标状态索引，保留 ADDED/EXPIRESAT/NEXTRETRYAT 分值
+    private static final String MOVE_FUNCTION =
+        "local function move(prefix, statusKey, id, to) " +
+        "  local old = redis.call('hget', statusKey, id) " +
+        "  if not old then return 0 end " +
+        "  local added = redis.call('zscore', prefix .. old .. ':added', id) " +
+        "  local expires = redis.call('zscore', prefix .. old .. ':expires', id) " +
+        "  local retry = redis.call('zscore', prefix .. old .. ':retry', id) " +
+        "  redis.call('zrem', prefix .. old .. ':added', id) " +
+        "  redis.call('zrem', prefix .. old .. ':expires', id) " +
+        "  redis.call('zrem', prefix .. old .. ':retry', id) " +
+        "  redis.call('hset', statusKey, id, to) " +
+        "  if added then redis.call('zadd', prefix .. to .. ':added', added, id) end " +
+        "  if expires then redis.call('zadd', prefix .. to .. ':expires', expires, id) end " +
+        "  if retry then redis.call('zadd', prefix .. to .. ':retry', retry, id) end " +
+        "  return 1 " +
+        "end ";
+
+    // Lua脚本：按ID迁移状态。KEYS[1]=状态HASH，ARGV[1]=索引前缀，ARGV[2]=目标状态，ARGV[3..]=消息ID
+    private static final RedisScript<Long> MOVE_SCRIPT = new DefaultRedisScript<>(
+        MOVE_FUNCTION +
+        "local moved = 0 " +
+        "for i = 3, #ARGV do moved = moved + move(ARGV[1], KEYS[1], ARGV[i], ARGV[2]) end " +
+        "return moved", Long.class);
+
+    // Lua脚本：按ADDED顺序迁移一批状态。ARGV[1]=索引前缀，ARGV[2]=原状态，ARGV[3]=目标状态，ARGV[4]=批量大小
+    private static final RedisScript<Long> BATCH_MOVE_SCRIPT = new DefaultRedisScript<>(
+        MOVE_FUNCTION +
+        "local ids = redis.call('zrange', ARGV[1] .. ARGV[2] .. ':added', 0, tonumber(ARGV[4]) - 1) " +
+        "local moved = 0 " +
+        "for _, id in ipairs(ids) do moved = moved + move(ARGV[1], KEYS[1], id, ARGV[3]) end " +
+        "return moved", Long.class);
+
+    // Lua脚本：保存消息体并重建索引。KEYS[1]=状态HASH，KEYS[2]=消息HASH，
+    // ARGV[1]=索引前缀，ARGV[2]=ID，ARGV[3]=状态，ARGV[4]=ADDED分值，ARGV[5]=EXPIRESAT分值（可空），ARGV[6]=消息体，
+    // ARGV[7]=NEXTRETRYAT分值（可空）
+    private static final RedisScript<Long> SAVE_SCRIPT = new DefaultRedisScript<>(
+        "local old = redis.call('hget', KEYS[1], ARGV[2]) " +
+        "if old then " +
+        "  redis.call('zrem', ARGV[1] .. old .. ':added', ARGV[2]) " +
+        "  redis.call('zrem', ARGV[1] .. old .. ':expires', ARGV[2]) " +
+        "  redis.call('zrem', ARGV[1] .. old .. ':retry', ARGV[2]) " +
+        "end " +
+        "redis.call('hset', KEYS[1], ARGV[2], ARGV[3]) " +
+        "redis.call('hset', KEYS[2], ARGV[2], ARGV[6]) " +
+        "redis.call('zadd', ARGV[1] .. ARGV[3] .. ':added', ARGV[4], ARGV[2]) " +
+        "if ARGV[5] ~= '' then redis.call('zadd', ARGV[1] .. ARGV[3] .. ':expires', ARGV[5], ARGV[2]) end " +
+        "if ARGV[7] ~= '' then redis.call('zadd', ARGV[1] .. ARGV[3] .. ':retry', ARGV[7], ARGV[2]) end " +
+        "return 1", Long.class);
+
+    // Lua脚本：删除单条消息及其索引。ARGV[1]=索引前缀，ARGV[2]=ID
+    private static final RedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>(
+        "local old = redis.call('hget', KEYS[1], ARGV[2]) " +
+        "if not old then return 0 end " +
+        "redis.call('zrem', ARGV[1] .. old .. ':added', ARGV[2]) " +
+        "redis.call('zrem', ARGV[1] .. old .. ':expires', ARGV[2]) " +
+        "redis.call('zrem', ARGV[1] .. old .. ':retry', ARGV[2]) " +
+        "redis.call('hdel', KEYS[1], ARGV[2]) " +
+        "redis.call('hdel', KEYS[2], ARGV[2]) " +
+        "return 1", Long.class);
+
+    // Lua脚本：按索引分值批量删除。ARGV[1]=索引前缀，ARGV[2]=索引名(added/expires/retry)，
+    // ARGV[3]=分值上限（不含），ARGV[4]=最大删除数，ARGV[5..]=状态
+    private static final RedisScript<Long> REMOVE_BEFORE_SCRIPT = new DefaultRedisScript<>(
+        "local removed = 0 " +
+        "local limit = tonumber(ARGV[4]) " +
+        "for i = 5, #ARGV do " +
+        "  if removed >= limit then break end " +
+        "  local ids = redis.call('zrangebyscore', ARGV[1] .. ARGV[i] .. ':' .. ARGV[2], '-inf', '(' .. ARGV[3], 'LIMIT', 0, limit - removed) " +
+        "  for _, id in ipairs(ids) do " +
+        "    redis.call('zrem', ARGV[1] .. ARGV[i] .. ':added', id) " +
+        "    redis.call('zrem', ARGV[1] .. ARGV[i] .. ':expires', id) " +
+        "    redis.call('zrem', ARGV[1] .. ARGV[i] .. ':retry', id) " +
+        "    redis.call('hdel', KEYS[1], id) " +
+        "    redis.call('hdel', KEYS[2], id) " +
+        "  end " +
+        "  removed = removed + #ids " +
+        "end " +
+        "return removed", Long.class);
+
+    @PostConstruct
+    public void initialize() {
+        indexTemplate = new StringRedisTemplate(redisTemplate.getConnectionFactory());
+        migrateLegacyKeys(LEGACY_PUBLISHED, PUBLISHED);
+        migrateLegacyKeys(LEGACY_RECEIVED, RECEIVED);
+    }
+
+    /**
+     * 把旧版前缀下的状态、消息体与索引改名到带哈希标签的新前缀（仅单机部署可能存在旧键）
+     */
+    private void migrateLegacyKeys(TableKeys legacy, TableKeys current) {
+        try {
+            int migrated = 0;
+            for (int i = 0; i < legacy.scriptKeys.size(); i++) {
+                String from = legacy.scriptKeys.get(i);
+                if (Boolean.TRUE.equals(indexTemplate.hasKey(from))
+                        && Boolean.TRUE.equals(indexTemplate.renameIfAbsent(from, current.scriptKeys.get(i)))) {
+                    migrated++;
+                }
+            }
+            if (migrated > 0) {
+                log.info("Migrated {} redis keys from {} to {}", migrated, legacy.prefix, current.prefix);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to migrate legacy redis keys from {}", legacy.prefix, e);
+        }
+    }
 
     @Override
     public CompletableFuture<Boolean> acquireLockAsync(String key, Duration ttl, String instance) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                String lockKey = LOCK_PREFIX + key;
-                DefaultRedisScript<Long> script = new DefaultRedisScript<>();
-                script.setScriptText(ACQUIRE_LOCK_SCRIPT);
-                script.setResultType(Long.class);
-                
-                Long result = redisTemplate.execute(script, 
-                    List.of(lockKey), 
-                    String.valueOf(ttl.getSeconds()), 
-                    instance);
-                
-                boolean acquired = result != null && result == 1L;
-                return acquired;
+                Long result = indexTemplate.execute(ACQUIRE_LOCK_SCRIPT, List.of(LOCK_PREFIX + key),
+                        String.valueOf(ttl.toMillis()), instance);
+                return result != null && result == 1L;
             } catch (Exception e) {
                 log.error("Error acquiring lock for key: {}", key, e);
                 return false;
@@ -73,14 +219,9 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> releaseLockAsync(String key, String instance) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
-                String lockKey = LOCK_PREFIX + key;
-                DefaultRedisScript<Long> script = new DefaultRedisScript<>();
-                script.setScriptText(RELEASE_LOCK_SCRIPT);
-                script.setResultType(Long.class);
-                
-                redisTemplate.execute(script, List.of(lockKey), instance);
+                indexTemplate.execute(RELEASE_LOCK_SCRIPT, List.of(LOCK_PREFIX + key), instance);
             } catch (Exception e) {
                 log.error("Error releasing lock for key: {}", key, e);
             }
@@ -88,35 +229,31 @@ public class RedisMessageStorage implements MessageStorage {
     }
 
     @Override
-    public CompletableFuture<Void> renewLockAsync(String key, Duration ttl, String instance) {
-        return CompletableFuture.runAsync(() -> {
+    public CompletableFuture<Boolean> renewLockAsync(String key, Duration ttl, String instance) {
+        return supplyAsync(() -> {
             try {
-                String lockKey = LOCK_PREFIX + key;
-                String currentInstance = (String) redisTemplate.opsForValue().get(lockKey);
-                
-                if (instance.equals(currentInstance)) {
-                    redisTemplate.expire(lockKey, ttl);
-                } else {
-                    log.warn("Lock renewal failed for key: {}, instance: {}, current: {}", key, instance, currentInstance);
+                Long renewed = indexTemplate.execute(RENEW_LOCK_SCRIPT, List.of(LOCK_PREFIX + key),
+                        instance, String.valueOf(ttl.toMillis()));
+                if (renewed == null || renewed == 0L) {
+                    log.warn("Lock renewal failed for key: {}, instance: {}", key, instance);
+                    return false;
                 }
+                return true;
             } catch (Exception e) {
                 log.error("Error renewing lock for key: {}", key, e);
+                return false;
             }
         });
     }
 
     @Override
     public CompletableFuture<Void> changePublishStateToDelayedAsync(List<Long> ids) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
-                for (Long id : ids) {
-                    String key = PUBLISHED_PREFIX + id;
-                    CapMessage message = (CapMessage) redisTemplate.opsForValue().get(key);
-                    if (message != null) {
-                        message.setStatus(CapMessageStatus.DELAYED);
-                        redisTemplate.opsForValue().set(key, message);
-                    }
+                if (ids == null || ids.isEmpty()) {
+                    return;
                 }
+                move(PUBLISHED, CapMessageStatus.DELAYED, ids);
             } catch (Exception e) {
                 log.error("Error changing publish state to delayed", e);
             }
@@ -125,12 +262,11 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> changePublishStateAsync(CapMessage message, CapMessageStatus status, Object transaction) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 if (message != null && message.getId() != null) {
-                    String key = PUBLISHED_PREFIX + message.getId();
                     message.setStatus(status);
-                    redisTemplate.opsForValue().set(key, message);
+                    save(PUBLISHED, message);
                 }
             } catch (Exception e) {
                 log.error("Error changing publish state", e);
@@ -140,12 +276,11 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> changeReceiveStateAsync(CapMessage message, CapMessageStatus status) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 if (message != null && message.getId() != null) {
-                    String key = RECEIVED_PREFIX + message.getId();
                     message.setStatus(status);
-                    redisTemplate.opsForValue().set(key, message);
+                    save(RECEIVED, message);
                 }
             } catch (Exception e) {
                 log.error("Error changing receive state", e);
@@ -155,7 +290,7 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<CapMessage> storeMessageAsync(String name, Object content, Object transaction) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 CapMessage message;
                 Long id;
@@ -177,9 +312,8 @@ public class RedisMessageStorage implements MessageStorage {
                 if (message.getRetries() == 0) {
                     message.setRetries(0);
                 }
-                
-                String key = PUBLISHED_PREFIX + id;
-                redisTemplate.opsForValue().set(key, message);
+
+                save(PUBLISHED, message);
                 return message;
             } catch (Exception e) {
                 log.error("Error storing published message", e);
@@ -188,18 +322,45 @@ public class RedisMessageStorage implements MessageStorage {
         });
     }
 
+    @Override
+    public CompletableFuture<List<CapMessage>> storeMessagesAsync(List<CapMessage> messages) {
+        return supplyAsync(() -> {
+            try {
+                LocalDateTime now = LocalDateTime.now();
+                for (CapMessage message : messages) {
+                    if (message.getId() == null) {
+                        message.setDbId(System.currentTimeMillis() + System.nanoTime());
+                    }
+                    if (message.getStatus() == null) {
+                        message.setStatus(CapMessageStatus.SCHEDULED);
+                    }
+                    if (message.getAdded() == null) {
+                        message.setAdded(now);
+                    }
+                }
+                for (int from = 0; from < messages.size(); from += PIPELINE_BATCH_SIZE) {
+                    saveAll(PUBLISHED, messages.subList(from, Math.min(from + PIPELINE_BATCH_SIZE, messages.size())));
+                }
+                return messages;
+            } catch (Exception e) {
+                log.error("Error storing published messages", e);
+                throw new RuntimeException("Failed to store published messages", e);
+            }
+        });
+    }
+
     @Override
     public CompletableFuture<Void> storeReceivedExceptionMessageAsync(String name, String group, String content) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
                 Long id = System.currentTimeMillis() + System.nanoTime();
                 String key = EXCEPTION_PREFIX + id;
-                
+
                 CapMessage exceptionMessage = new CapMessage(name, group, content);
                 exceptionMessage.setDbId(id);
                 exceptionMessage.setStatus(CapMessageStatus.FAILED);
                 exceptionMessage.setAdded(LocalDateTime.now());
-                
+
                 redisTemplate.opsForValue().set(key, exceptionMessage);
             } catch (Exception e) {
                 log.error("Error storing exception message", e);
@@ -209,7 +370,7 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<CapMessage> storeReceivedMessageAsync(String name, String group, Object content) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
                 Long id = System.currentTimeMillis() + System.nanoTime();
                 CapMessage message = new CapMessage(name, group, content);
@@ -217,9 +378,8 @@ public class RedisMessageStorage implements MessageStorage {
                 message.setStatus(CapMessageStatus.SCHEDULED);
                 message.setAdded(LocalDateTime.now());
                 message.setRetries(0);
-                
-                String key = RECEIVED_PREFIX + id;
-                redisTemplate.opsForValue().set(key, message);
+
+                save(RECEIVED, message);
                 return message;
             } catch (Exception e) {
                 log.error("Error storing received message", e);
@@ -230,30 +390,11 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> deleteExpiresAsync(String table, LocalDateTime timeout, int batchCount) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                int deletedCount = 0;
-                String pattern = table.equals("published") ? PUBLISHED_PREFIX + "*" : RECEIVED_PREFIX + "*";
-                
-                // 使用SCAN命令遍历键
-                long cursor = 0;
-                do {
-                    var scanOptions = ScanOptions.scanOptions().match(pattern).count(batchCount).build();
-                    var scanResult = redisTemplate.scan(scanOptions);
-                    cursor = scanResult.getCursorId();
-                    
-                    while (scanResult.hasNext()) {
-                        String key = scanResult.next();
-                        CapMessage message = (CapMessage) redisTemplate.opsForValue().get(key);
-                        if (message != null && message.getAdded() != null && 
-                            message.getAdded().isBefore(timeout)) {
-                            redisTemplate.delete(key);
-                            deletedCount++;
-                        }
-                    }
-                } while (cursor != 0);
-                
-                return deletedCount;
+                TableKeys keys = table.endsWith("published") ? PUBLISHED : RECEIVED;
+                return removeBefore(keys, "added", toMillis(timeout), batchCount,
+                        CapMessageStatus.values());
             } catch (Exception e) {
                 log.error("Error deleting expired messages", e);
                 return 0;
@@ -263,31 +404,9 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<List<CapMessage>> getPublishedMessagesOfNeedRetry(Duration lookbackSeconds) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                List<CapMessage> messages = new java.util.ArrayList<>();
-                LocalDateTime cutoff = LocalDateTime.now().minus(lookbackSeconds);
-                String pattern = PUBLISHED_PREFIX + "*";
-                
-                long cursor = 0;
-                do {
-                    var scanOptions = ScanOptions.scanOptions().match(pattern).count(100).build();
-                    var scanResult = redisTemplate.scan(scanOptions);
-                    cursor = scanResult.getCursorId();
-                    
-                    while (scanResult.hasNext()) {
-                        String key = scanResult.next();
-                        CapMessage message = (CapMessage) redisTemplate.opsForValue().get(key);
-                        if (message != null && 
-                            message.getStatus() == CapMessageStatus.FAILED &&
-                            message.getAdded() != null && 
-                            message.getAdded().isAfter(cutoff)) {
-                            messages.add(message);
-                        }
-                    }
-                } while (cursor != 0);
-                
-                return messages;
+                return findRetryDue(PUBLISHED);
             } catch (Exception e) {
                 log.error("Error getting published messages of need retry", e);
                 return new java.util.ArrayList<>();
@@ -297,31 +416,9 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<List<CapMessage>> getReceivedMessagesOfNeedRetry(Duration lookbackSeconds) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                List<CapMessage> messages = new java.util.ArrayList<>();
-                LocalDateTime cutoff = LocalDateTime.now().minus(lookbackSeconds);
-                String pattern = RECEIVED_PREFIX + "*";
-                
-                long cursor = 0;
-                do {
-                    var scanOptions = ScanOptions.scanOptions().match(pattern).count(100).build();
-                    var scanResult = redisTemplate.scan(scanOptions);
-                    cursor = scanResult.getCursorId();
-                    
-                    while (scanResult.hasNext()) {
-                        String key = scanResult.next();
-                        CapMessage message = (CapMessage) redisTemplate.opsForValue().get(key);
-                        if (message != null && 
-                            message.getStatus() == CapMessageStatus.FAILED &&
-                            message.getAdded() != null && 
-                            message.getAdded().isAfter(cutoff)) {
-                            messages.add(message);
-                        }
-                    }
-                } while (cursor != 0);
-                
-                return messages;
+                return findRetryDue(RECEIVED);
             } catch (Exception e) {
                 log.error("Error getting received messages of need retry", e);
                 return new java.util.ArrayList<>();
@@ -331,11 +428,9 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> deleteReceivedMessageAsync(String id) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                String key = RECEIVED_PREFIX + id;
-                Boolean deleted = redisTemplate.delete(key);
-                return deleted != null && deleted ? 1 : 0;
+                return remove(RECEIVED, id);
             } catch (Exception e) {
                 log.error("Error deleting received message: {}", id, e);
                 return 0;
@@ -345,11 +440,9 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> deletePublishedMessageAsync(String id) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                String key = PUBLISHED_PREFIX + id;
-                Boolean deleted = redisTemplate.delete(key);
-                return deleted != null && deleted ? 1 : 0;
+                return remove(PUBLISHED, id);
             } catch (Exception e) {
                 log.error("Error deleting published message: {}", id, e);
                 return 0;
@@ -359,29 +452,11 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> scheduleMessagesOfDelayedAsync(DelayedMessageScheduler scheduleTask) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
-                List<CapMessage> delayedMessages = new java.util.ArrayList<>();
-                String pattern = PUBLISHED_PREFIX + "*";
-                
-                long cursor = 0;
-                do {
-                    var scanOptions = ScanOptions.scanOptions().match(pattern).count(100).build();
-                    var scanResult = redisTemplate.scan(scanOptions);
-                    cursor = scanResult.getCursorId();
-                    
-                    while (scanResult.hasNext()) {
-                        String key = scanResult.next();
-                        CapMessage message = (CapMessage) redisTemplate.opsForValue().get(key);
-                        if (message != null && 
-                            message.getStatus() == CapMessageStatus.DELAYED &&
-                            message.getExpiresAt() != null && 
-                            message.getExpiresAt().isBefore(LocalDateTime.now())) {
-                            delayedMessages.add(message);
-                        }
-                    }
-                } while (cursor != 0);
-                
+                List<CapMessage> delayedMessages = findByScore(PUBLISHED, CapMessageStatus.DELAYED, "expires",
+                        Double.NEGATIVE_INFINITY, toMillis(LocalDateTime.now()) - 1, -1);
+
                 if (!delayedMessages.isEmpty()) {
                     scheduleTask.schedule(null, delayedMessages);
                 }
@@ -393,53 +468,11 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> deleteExpiredMessagesAsync(CapMessageStatus status, long expiredBefore) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                int deletedCount = 0;
-                LocalDateTime expiredTime = LocalDateTime.ofEpochSecond(expiredBefore, 0, java.time.ZoneOffset.UTC);
-                
-                // 删除已发布消息
-                String publishedPattern = PUBLISHED_PREFIX + "*";
-                long cursor = 0;
-                do {
-                    var scanOptions = ScanOptions.scanOptions().match(publishedPattern).count(100).build();
-                    var scanResult = redisTemplate.scan(scanOptions);
-                    cursor = scanResult.getCursorId();
-                    
-                    while (scanResult.hasNext()) {
-                        String key = scanResult.next();
-                        CapMessage message = (CapMessage) redisTemplate.opsForValue().get(key);
-                        if (message != null && 
-                            message.getStatus() == status &&
-                            message.getExpiresAt() != null && 
-                            message.getExpiresAt().isBefore(expiredTime)) {
-                            redisTemplate.delete(key);
-                            deletedCount++;
-                        }
-                    }
-                } while (cursor != 0);
-                
-                // 删除已接收消息中指定状态且过期的消息
-                String receivedPattern = RECEIVED_PREFIX + "*";
-                cursor = 0;
-                do {
-                    var scanOptions = ScanOptions.scanOptions().match(receivedPattern).count(100).build();
-                    var scanResult = redisTemplate.scan(scanOptions);
-                    cursor = scanResult.getCursorId();
-                    
-                    while (scanResult.hasNext()) {
-                        String key = scanResult.next();
-                        CapMessage message = (CapMessage) redisTemplate.opsForValue().get(key);
-                        if (message != null && 
-                            message.getStatus() == status &&
-                            message.getExpiresAt() != null && 
-                            message.getExpiresAt().isBefore(expiredTime)) {
-                            redisTemplate.delete(key);
-                            deletedCount++;
-                        }
-                    }
-                } while (cursor != 0);
-                
+                long expiredMillis = expiredBefore * 1000;
+                int deletedCount = removeBefore(PUBLISHED, "expires", expiredMillis, Integer.MAX_VALUE, status);
+                deletedCount += removeBefore(RECEIVED, "expires", expiredMillis, Integer.MAX_VALUE, status);
                 return deletedCount;
             } catch (Exception e) {
                 log.error("Error deleting expired messages from Redis", e);
@@ -450,23 +483,11 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Void> updateStatusAsync(Long messageId, CapMessageStatus status) {
-        return CompletableFuture.runAsync(() -> {
+        return runAsync(() -> {
             try {
-                // 尝试更新已发布消息
-                String publishedKey = PUBLISHED_PREFIX + messageId;
-                CapMessage publishedMessage = (CapMessage) redisTemplate.opsForValue().get(publishedKey);
-                if (publishedMessage != null) {
-                    publishedMessage.setStatus(status);
-                    redisTemplate.opsForValue().set(publishedKey, publishedMessage);
-                    return;
-                }
-                
-                // 尝试更新已接收消息
-                String receivedKey = RECEIVED_PREFIX + messageId;
-                CapMessage receivedMessage = (CapMessage) redisTemplate.opsForValue().get(receivedKey);
-                if (receivedMessage != null) {
-                    receivedMessage.setStatus(status);
-                    redisTemplate.opsForValue().set(receivedKey, receivedMessage);
+                // 先尝试已发布消息，不存在时再尝试已接收消息
+                if (move(PUBLISHED, status, List.of(messageId)) == 0) {
+                    move(RECEIVED, status, List.of(messageId));
                 }
             } catch (Exception e) {
                 log.error("Error updating message status in Redis: {}", messageId, e);
@@ -474,29 +495,28 @@ public class RedisMessageStorage implements MessageStorage {
         });
     }
 
+    @Override
+    public CompletableFuture<Void> updateStatusBatchAsync(List<Long> messageIds, CapMessageStatus status) {
+        return runAsync(() -> {
+            if (messageIds.isEmpty()) {
+                return;
+            }
+            try {
+                // 整批一次脚本调用，已发布表未全部命中时再迁移已接收表
+                if (move(PUBLISHED, status, messageIds) < messageIds.size()) {
+                    move(RECEIVED, status, messageIds);
+                }
+            } catch (Exception e) {
+                log.error("Error batch updating {} message statuses in Redis", messageIds.size(), e);
+            }
+        });
+    }
+
     @Override
     public CompletableFuture<Integer> batchUpdatePublishedStatusAsync(CapMessageStatus fromStatus, CapMessageStatus toStatus, int batchSize) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                int updatedCount = 0;
-                String publishedPattern = PUBLISHED_PREFIX + "*";
-                long cursor = 0;
-                do {
-                    var scanOptions = ScanOptions.scanOptions().match(publishedPattern).count(100).build();
-                    var scanResult = redisTemplate.scan(scanOptions);
-                    cursor = scanResult.getCursorId();
-                    
-                    while (scanResult.hasNext() && updatedCount < batchSize) {
-                        String key = scanResult.next();
-                        CapMessage message = (CapMessage) redisTemplate.opsForValue().get(key);
-                        if (message != null && message.getStatus() == fromStatus) {
-                            message.setStatus(toStatus);
-                            redisTemplate.opsForValue().set(key, message);
-                            updatedCount++;
-                        }
-                    }
-                } while (cursor != 0 && updatedCount < batchSize);
-                
+                int updatedCount = batchMove(PUBLISHED, fromStatus, toStatus, batchSize);
                 if (updatedCount > 0) {
                     log.debug("Batch updated {} published messages from {} to {}", updatedCount, fromStatus, toStatus);
                 }
@@ -510,27 +530,9 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<Integer> batchUpdateReceivedStatusAsync(CapMessageStatus fromStatus, CapMessageStatus toStatus, int batchSize) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                int updatedCount = 0;
-                String receivedPattern = RECEIVED_PREFIX + "*";
-                long cursor = 0;
-                do {
-                    var scanOptions = ScanOptions.scanOptions().match(receivedPattern).count(100).build();
-                    var scanResult = redisTemplate.scan(scanOptions);
-                    cursor = scanResult.getCursorId();
-                    
-                    while (scanResult.hasNext() && updatedCount < batchSize) {
-                        String key = scanResult.next();
-                        CapMessage message = (CapMessage) redisTemplate.opsForValue().get(key);
-                        if (message != null && message.getStatus() == fromStatus) {
-                            message.setStatus(toStatus);
-                            redisTemplate.opsForValue().set(key, message);
-                            updatedCount++;
-                        }
-                    }
-                } while (cursor != 0 && updatedCount < batchSize);
-                
+                int updatedCount = batchMove(RECEIVED, fromStatus, toStatus, batchSize);
                 if (updatedCount > 0) {
                     log.debug("Batch updated {} received messages from {} to {}", updatedCount, fromStatus, toStatus);
                 }
@@ -544,28 +546,11 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<List<CapMessage>> getExpiredDelayedMessagesAsync(int batchSize) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                List<CapMessage> expiredMessages = new java.util.ArrayList<>();
-                String publishedPattern = PUBLISHED_PREFIX + "*";
-                long cursor = 0;
-                do {
-                    var scanOptions = ScanOptions.scanOptions().match(publishedPattern).count(100).build();
-                    var scanResult = redisTemplate.scan(scanOptions);
-                    cursor = scanResult.getCursorId();
-                    
-                    while (scanResult.hasNext() && expiredMessages.size() < batchSize) {
-                        String key = scanResult.next();
-                        CapMessage message = (CapMessage) redisTemplate.opsForValue().get(key);
-                        if (message != null && 
-                            message.getStatus() == CapMessageStatus.DELAYED &&
-                            message.getExpiresAt() != null && 
-                            message.getExpiresAt().isBefore(LocalDateTime.now())) {
-                            expiredMessages.add(message);
-                        }
-                    }
-                } while (cursor != 0 && expiredMessages.size() < batchSize);
-                
+                List<CapMessage> expiredMessages = findByScore(PUBLISHED, CapMessageStatus.DELAYED, "expires",
+                        Double.NEGATIVE_INFINITY, toMillis(LocalDateTime.now()) - 1, batchSize);
+
                 if (!expiredMessages.isEmpty()) {
                     log.debug("Found {} expired delayed messages", expiredMessages.size());
                 }
@@ -579,25 +564,11 @@ public class RedisMessageStorage implements MessageStorage {
 
     @Override
     public CompletableFuture<List<CapMessage>> getPendingPublishedMessagesAsync(CapMessageStatus status, int batchSize) {
-        return CompletableFuture.supplyAsync(() -> {
+        return supplyAsync(() -> {
             try {
-                List<CapMessage> pendingMessages = new java.util.ArrayList<>();
-                String publishedPattern = PUBLISHED_PREFIX + "*";
-                long cursor = 0;
-                do {
-                    var scanOptions = ScanOptions.scanOptions().match(publishedPattern).count(100).build();
-                    var scanResult = redisTemplate.scan(scanOptions);
-                    cursor = scanResult.getCursorId();
-                    
-                    while (scanResult.hasNext() && pendingMessages.size() < batchSize) {
-                        String key = scanResult.next();
-                        CapMessage message = (CapMessage) redisTemplate.opsForValue().get(key);
-                        if (message != null && message.getStatus() == status) {
-                            pendingMessages.add(message);
-                        }
-                    }
-                } while (cursor != 0 && pendingMessages.size() < batchSize);
-                
+                List<CapMessage> pendingMessages = findByScore(PUBLISHED, status, "added",
+                        Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, batchSize);
+
                 if (!pendingMessages.isEmpty()) {
                     log.debug("Found {} pending published messages with status {}", pendingMessages.size(), status);
                 }
@@ -608,4 +579,191 @@ public class RedisMessageStorage implements MessageStorage {
             }
         });
     }
-} 
\ No newline at end of file
+
+    /**
+     * 保存消息体并按当前状态重建索引（单次往返）
+     */
+    private void save(TableKeys keys, CapMessage message) {
+        String added = message.getAdded() != null
+                ? String.valueOf(toMillis(message.getAdded())) : "0";
+        String expires = message.getExpiresAt() != null
+                ? String.valueOf(toMillis(message.getExpiresAt())) : "";
+        execute(SAVE_SCRIPT, keys,
+                bytes(keys.indexPrefix), bytes(String.valueOf(message.getId())), bytes(message.getStatus().getValue()),
+                bytes(added), bytes(expires), serializeMessage(message), bytes(nextRetryScore(message)));
+    }
+
+    /**
+     * 管道化批量保存：先 SCRIPT LOAD 再逐条 EVALSHA，整批只有一次往返
+     */
+    private void saveAll(TableKeys keys, List<CapMessage> messages) {
+        byte[][] scriptKeys = keys.scriptKeys.stream().map(RedisMessageStorage::bytes).toArray(byte[][]::new);
+        byte[] indexPrefix = bytes(keys.indexPrefix);
+        indexTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.scriptingCommands().scriptLoad(bytes(SAVE_SCRIPT.getScriptAsString()));
+            for (CapMessage message : messages) {
+                String added = message.getAdded() != null
+                        ? String.valueOf(toMillis(message.getAdded())) : "0";
+                String expires = message.getExpiresAt() != null
+                        ? String.valueOf(toMillis(message.getExpiresAt())) : "";
+                byte[][] keysAndArgs = new byte[scriptKeys.length + 7][];
+                System.arraycopy(scriptKeys, 0, keysAndArgs, 0, scriptKeys.length);
+                int arg = scriptKeys.length;
+                keysAndArgs[arg++] = indexPrefix;
+                keysAndArgs[arg++] = bytes(String.valueOf(message.getId()));
+                keysAndArgs[arg++] = bytes(message.getStatus().getValue());
+                keysAndArgs[arg++] = bytes(added);
+                keysAndArgs[arg++] = bytes(expires);
+                keysAndArgs[arg++] = serializeMessage(message);
+                keysAndArgs[arg] = bytes(nextRetryScore(message));
+                connection.scriptingCommands().evalSha(SAVE_SCRIPT.getSha1(), ReturnType.INTEGER, scriptKeys.length,
+                        keysAndArgs);
+            }
+            return null;
+        }, null);
+    }
+
+    /**
+     * 将指定ID的消息迁移到目标状态（单次往返）
+     */
+    private long move(TableKeys keys, CapMessageStatus status, List<Long> ids) {
+        byte[][] args = new byte[ids.size() + 2][];
+        args[0] = bytes(keys.indexPrefix);
+        args[1] = bytes(status.getValue());
+        for (int i = 0; i < ids.size(); i++) {
+            args[i + 2] = bytes(String.valueOf(ids.get(i)));
+        }
+        return execute(MOVE_SCRIPT, keys, args);
+    }
+
+    private int batchMove(TableKeys keys, CapMessageStatus fromStatus, CapMessageStatus toStatus, int batchSize) {
+        if (batchSize <= 0) {
+            return 0;
+        }
+        return (int) execute(BATCH_MOVE_SCRIPT, keys, bytes(keys.indexPrefix), bytes(fromStatus.getValue()),
+                bytes(toStatus.getValue()), bytes(String.valueOf(batchSize)));
+    }
+
+    private int remove(TableKeys keys, String id) {
+        return (int) execute(REMOVE_SCRIPT, keys, bytes(keys.indexPrefix), bytes(id));
+    }
+
+    private int removeBefore(TableKeys keys, String index, long maxScore, int limit, CapMessageStatus... statuses) {
+        byte[][] args = new byte[statuses.length + 4][];
+        args[0] = bytes(keys.indexPrefix);
+        args[1] = bytes(index);
+        args[2] = bytes(String.valueOf(maxScore));
+        args[3] = bytes(String.valueOf(limit));
+        for (int i = 0; i < statuses.length; i++) {
+            args[i + 4] = bytes(statuses[i].getValue());
+        }
+        return (int) execute(REMOVE_BEFORE_SCRIPT, keys, args);
+    }
+
+    private long execute(RedisScript<Long> script, TableKeys keys, byte[]... args) {
+        Long result = indexTemplate.execute(script, RedisSerializer.byteArray(), null,
+                keys.scriptKeys, (Object[]) args);
+        return result != null ? result : 0L;
+    }
+
+    /**
+     * 到期的失败消息在前，不足一批时补充重试租约已过期的 RETRYING 消息
+     */
+    private List<CapMessage> findRetryDue(TableKeys keys) {
+        double now = toMillis(LocalDateTime.now());
+        List<CapMessage> due = findByScore(keys, CapMessageStatus.FAILED, "retry",
+                Double.NEGATIVE_INFINITY, now, RETRY_BATCH_SIZE);
+        if (due.size() < RETRY_BATCH_SIZE) {
+            due.addAll(findByScore(keys, CapMessageStatus.RETRYING, "retry",
+                    Double.NEGATIVE_INFINITY, now, RETRY_BATCH_SIZE - due.size()));
+        }
+        return due;
+    }
+
+    /**
+     * ZRANGEBYSCORE LIMIT 取出ID，再用一次管道化 HMGET 读取消息体与状态（共两次往返）
+     */
+    private List<CapMessage> findByScore(TableKeys keys, CapMessageStatus status, String index,
+                                         double min, double max, int limit) {
+        Set<String> ids = indexTemplate.opsForZSet()
+                .rangeByScore(keys.indexPrefix + status.getValue() + ":" + index, min, max, 0, limit);
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        byte[][] fields = ids.stream().map(RedisMessageStorage::bytes).toArray(byte[][]::new);
+        List<Object> results = indexTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hMGet(bytes(keys.messagesKey), fields);
+            connection.hashCommands().hMGet(bytes(keys.statusKey), fields);
+            return null;
+        }, null);
+
+        List<?> bodies = (List<?>) results.get(0);
+        List<?> statuses = (List<?>) results.get(1);
+        List<CapMessage> messages = new ArrayList<>(fields.length);
+        for (int i = 0; i < fields.length; i++) {
+            byte[] body = (byte[]) bodies.get(i);
+            if (body == null) {
+                continue;
+            }
+            CapMessage message = (CapMessage) redisTemplate.getHashValueSerializer().deserialize(body);
+            byte[] current = (byte[]) statuses.get(i);
+            if (message != null && current != null) {
+                // 状态以状态HASH为准，消息体中的状态可能是迁移前的旧值
+                message.setStatus(CapMessageStatus.fromValue(new String(current, StandardCharsets.UTF_8)));
+            }
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serializeMessage(CapMessage message) {
+        return ((RedisSerializer<Object>) redisTemplate.getHashValueSerializer()).serialize(message);
+    }
+
+    private static String nextRetryScore(CapMessage message) {
+        return message.getNextRetryAt() != null ? String.valueOf(toMillis(message.getNextRetryAt())) : "";
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 单张表（已发布/已接收）对应的 Redis 键
+     */
+    private static final class TableKeys {
+        private final String prefix;
+        private final String statusKey;
+        private final String messagesKey;
+        private final String indexPrefix;
+
+        /**
+         * 脚本可能访问的全部键：状态HASH、消息HASH、各状态的三个索引，按 KEYS 声明
+         */
+        private final List<String> scriptKeys;
+
+        private TableKeys(String prefix) {
+            this.prefix = prefix;
+            this.statusKey = prefix + "status";
+            this.messagesKey = prefix + "messages";
+            this.indexPrefix = prefix + "idx:";
+            List<String> keys = new ArrayList<>();
+            keys.add(statusKey);
+            keys.add(messagesKey);
+            for (CapMessageStatus status : CapMessageStatus.values()) {
+                for (String index : INDEXES) {
+                    keys.add(indexPrefix + status.getValue() + ":" + index);
+                }
+            }
+            this.scriptKeys = List.copyOf(keys);
+        }
+    }
+}
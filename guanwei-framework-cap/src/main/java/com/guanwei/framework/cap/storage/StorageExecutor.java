@@ -0,0 +1,180 @@
+package com.guanwei.framework.cap.storage;
+
+import com.guanwei.framework.cap.util.CapExecutors;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 存储专用执行器
+ * 存储的异步方法都会阻塞在 JDBC/Redis 调用上，统一提交到这里，避免占用 ForkJoinPool.commonPool；
+ * platform 模式为固定大小的线程池加有界队列，队列满时由提交方线程直接执行（背压）；
+ * virtual 模式每次调用一个虚拟线程，并发数受限
+ */
+@Slf4j
+public class StorageExecutor {
+
+    public static final int DEFAULT_THREADS = 16;
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    private static volatile StorageExecutor defaultExecutor;
+
+    private final ExecutorService executor;
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong startedCount = new AtomicLong();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder callerRunsCount = new LongAdder();
+
+    /**
+     * @param threads       platform 模式的线程数，virtual 模式的并发上限
+     * @param queueCapacity platform 模式的等待队列容量
+     * @param executorMode  platform 或 virtual
+     */
+    public StorageExecutor(int threads, int queueCapacity, String executorMode) {
+        int size = Math.max(1, threads);
+        if (CapExecutors.isVirtual(executorMode)) {
+            this.executor = CapExecutors.newVirtualTaskExecutor("cap-storage", size);
+        } else {
+            AtomicInteger counter = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "cap-storage-" + counter.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    (runnable, rejected) -> {
+                        if (rejected.isShutdown()) {
+                            throw new RejectedExecutionException("Storage executor has been shut down");
+                        }
+                        // 队列已满时由提交方执行，拖慢生产者而不是丢弃存储操作
+                        callerRunsCount.increment();
+                        runnable.run();
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+        }
+        log.info("CAP storage executor initialized (mode: {}, threads: {}, queue capacity: {})",
+                CapExecutors.isVirtual(executorMode) ? CapExecutors.MODE_VIRTUAL : CapExecutors.MODE_PLATFORM,
+                size, queueCapacity);
+    }
+
+    /**
+     * 未显式注入执行器的存储（如直接 new 的实例）共用的默认执行器
+     */
+    public static StorageExecutor getDefault() {
+        StorageExecutor executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (StorageExecutor.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    executor = new StorageExecutor(DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY, CapExecutors.MODE_PLATFORM);
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    public <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, this::execute);
+    }
+
+    public CompletableFuture<Void> runAsync(Runnable runnable) {
+        return CompletableFuture.runAsync(runnable, this::execute);
+    }
+
+    /**
+     * 提交任务并记录排队时间与总耗时
+     */
+    private void execute(Runnable task) {
+        long submittedAt = System.nanoTime();
+        submittedCount.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                long startedAt = System.nanoTime();
+                startedCount.incrementAndGet();
+                activeCount.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    activeCount.decrementAndGet();
+                    long finishedAt = System.nanoTime();
+                    totalWaitNanos.add(startedAt - submittedAt);
+                    totalLatencyNanos.add(finishedAt - submittedAt);
+                    completedCount.increment();
+                }
+            });
+        } catch (RuntimeException e) {
+            submittedCount.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 已提交但尚未开始执行的任务数
+     */
+    public long getQueueDepth() {
+        return Math.max(0, submittedCount.get() - startedCount.get());
+    }
+
+    /**
+     * 正在执行的任务数
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * 已完成的任务数
+     */
+    public long getCompletedCount() {
+        return completedCount.sum();
+    }
+
+    /**
+     * 已完成任务从提交到完成的总耗时（纳秒）
+     */
+    public long getTotalLatencyNanos() {
+        return totalLatencyNanos.sum();
+    }
+
+    /**
+     * 已完成任务在队列中等待的总时间（纳秒）
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    /**
+     * 队列已满时由提交方线程执行的次数
+     */
+    public long getCallerRunsCount() {
+        return callerRunsCount.sum();
+    }
+}
@@ -0,0 +1,170 @@
+package com.guanwei.framework.cap.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CAP 执行器工厂
+ * virtual 模式下每个任务运行在独立的虚拟线程上，由信号量限制同时执行的任务数；
+ * 运行时低于 Java 21 时退化为每任务一个平台线程（同样受信号量限制）
+ */
+@Slf4j
+public final class CapExecutors {
+
+    public static final String MODE_PLATFORM = "platform";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    private CapExecutors() {
+    }
+
+    /**
+     * 是否为 virtual 执行模式
+     */
+    public static boolean isVirtual(String executorMode) {
+        return MODE_VIRTUAL.equalsIgnoreCase(executorMode);
+    }
+
+    /**
+     * 当前运行时是否支持虚拟线程
+     */
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadFactory("cap-probe") != null;
+    }
+
+    /**
+     * 创建每任务一个线程、并发受限的执行器
+     * 提交任务时若已达到并发上限则阻塞提交方，直到有任务结束，以此形成背压
+     *
+     * @param name           线程名前缀
+     * @param maxConcurrency 同时执行的任务上限
+     * @return 执行器
+     */
+    public static ExecutorService newVirtualTaskExecutor(String name, int maxConcurrency) {
+        ThreadFactory factory = virtualThreadFactory(name);
+        ExecutorService delegate = factory != null ? newThreadPerTaskExecutor(factory) : null;
+        if (delegate == null) {
+            log.warn("Virtual threads require Java 21+, running {} tasks on platform threads (max concurrency: {})",
+                    name, maxConcurrency);
+            // 平台线程创建成本高，借助缓存线程池复用空闲线程
+            delegate = Executors.newCachedThreadPool(platformThreadFactory(name));
+        }
+        return new BoundedTaskExecutor(delegate, Math.max(1, maxConcurrency));
+    }
+
+    /**
+     * 通过反射调用 Executors.newThreadPerTaskExecutor(factory)（Java 21+），虚拟线程不池化
+     */
+    private static ExecutorService newThreadPerTaskExecutor(ThreadFactory factory) {
+        try {
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) method.invoke(null, factory);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            log.debug("Thread-per-task executor unavailable: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * 通过反射调用 Thread.ofVirtual().name(prefix, 0).factory()，保持 Java 17 编译兼容
+     */
+    private static ThreadFactory virtualThreadFactory(String name) {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            // 实现类不对外开放，方法需从公开的 Thread.Builder 接口上获取
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = ofVirtual.invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            log.debug("Virtual threads unavailable: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 用信号量限制并发的每任务线程执行器
+     */
+    private static final class BoundedTaskExecutor extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        private BoundedTaskExecutor(ExecutorService delegate, int maxConcurrency) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (delegate.isShutdown()) {
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for a free slot", e);
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
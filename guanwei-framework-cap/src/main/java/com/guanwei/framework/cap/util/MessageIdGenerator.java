@@ -3,121 +3,174 @@ package com.guanwei.framework.cap.util;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 /**
  * 消息ID生成器
  * 使用雪花算法生成唯一的消息ID
- * 
+ * 时间戳与毫秒内序列打包在一个 AtomicLong 中通过 CAS 推进，无锁；
+ * 序列用尽时直接借用下一毫秒，时钟小幅回拨时沿用上一次的时间戳继续生成
+ *
  * @author Guanwei Framework
  * @since 1.0.0
  */
 @Slf4j
 public class MessageIdGenerator {
-    
+
     private static final long EPOCH = 1609459200000L; // 2021-01-01 00:00:00 UTC
     private static final long WORKER_ID_BITS = 5L;
     private static final long DATACENTER_ID_BITS = 5L;
     private static final long SEQUENCE_BITS = 12L;
-    
-    private static final long MAX_WORKER_ID = ~(-1L << WORKER_ID_BITS);
-    private static final long MAX_DATACENTER_ID = ~(-1L << DATACENTER_ID_BITS);
+
+    public static final long MAX_WORKER_ID = ~(-1L << WORKER_ID_BITS);
+    public static final long MAX_DATACENTER_ID = ~(-1L << DATACENTER_ID_BITS);
     private static final long SEQUENCE_MASK = ~(-1L << SEQUENCE_BITS);
-    
+
     private static final long WORKER_ID_SHIFT = SEQUENCE_BITS;
     private static final long DATACENTER_ID_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
     private static final long TIMESTAMP_LEFT_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS + DATACENTER_ID_BITS;
-    
+
+    /**
+     * 可容忍的时钟回拨（或借用未来时间戳）上限，超过则拒绝生成
+     */
+    private static final long MAX_BACKWARD_MILLIS = 5000L;
+
     private final long workerId;
     private final long datacenterId;
-    private final AtomicLong sequence = new AtomicLong(0L);
-    private long lastTimestamp = -1L;
-    
+    private final LongSupplier clock;
+
+    /**
+     * 节点标识来自租约时非空，租约失效后拒绝生成
+     */
+    private final WorkerIdLease lease;
+
+    /**
+     * 高位为相对 EPOCH 的时间戳，低 SEQUENCE_BITS 位为毫秒内序列
+     */
+    private final AtomicLong state = new AtomicLong(0L);
+
     private static volatile MessageIdGenerator instance;
-    
+
     /**
-     * 私有构造函数
+     * 使用显式的工作节点与数据中心标识
+     *
+     * @param workerId     工作节点ID（0-31）
+     * @param datacenterId 数据中心ID（0-31）
      */
-    private MessageIdGenerator() {
-        // 使用当前进程ID作为workerId，线程ID作为datacenterId
-        this.workerId = getProcessId() % (MAX_WORKER_ID + 1);
-        this.datacenterId = getThreadId() % (MAX_DATACENTER_ID + 1);
-        
-        log.info("MessageIdGenerator initialized with workerId: {}, datacenterId: {}", workerId, datacenterId);
+    public MessageIdGenerator(long workerId, long datacenterId) {
+        this(workerId, datacenterId, System::currentTimeMillis);
+    }
+
+    MessageIdGenerator(long workerId, long datacenterId, LongSupplier clock) {
+        this(workerId, datacenterId, clock, null);
     }
-    
+
+    private MessageIdGenerator(long workerId, long datacenterId, LongSupplier clock, WorkerIdLease lease) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId must be between 0 and " + MAX_WORKER_ID + ": " + workerId);
+        }
+        if (datacenterId < 0 || datacenterId > MAX_DATACENTER_ID) {
+            throw new IllegalArgumentException(
+                    "datacenterId must be between 0 and " + MAX_DATACENTER_ID + ": " + datacenterId);
+        }
+        this.workerId = workerId;
+        this.datacenterId = datacenterId;
+        this.clock = clock;
+        this.lease = lease;
+    }
+
     /**
      * 获取单例实例
+     * 未调用 {@link #configure(long, long)} 时使用 workerId=0、datacenterId=0，仅适用于单实例部署
      */
     public static MessageIdGenerator getInstance() {
         if (instance == null) {
             synchronized (MessageIdGenerator.class) {
                 if (instance == null) {
-                    instance = new MessageIdGenerator();
+                    instance = new MessageIdGenerator(0L, 0L);
+                    log.warn("MessageIdGenerator used before configure(), falling back to workerId: 0, datacenterId: 0");
                 }
             }
         }
         return instance;
     }
-    
+
     /**
-     * 生成下一个消息ID
+     * 按配置或租用到的节点标识替换单例实例
+     *
+     * @param workerId     工作节点ID（0-31）
+     * @param datacenterId 数据中心ID（0-31）
+     * @return 新的单例实例
      */
-    public synchronized Long nextId() {
-        long timestamp = System.currentTimeMillis();
-        
-        // 如果当前时间小于上一次ID生成的时间戳，说明系统时钟回退过
-        if (timestamp < lastTimestamp) {
-            throw new RuntimeException("Clock moved backwards. Refusing to generate id for " + 
-                    (lastTimestamp - timestamp) + " milliseconds");
-        }
-        
-        // 如果是同一时间生成的，则进行毫秒内序列
-        if (lastTimestamp == timestamp) {
-            long sequenceValue = sequence.incrementAndGet() & SEQUENCE_MASK;
-            // 同一毫秒内序列数已经达到最大
-            if (sequenceValue == 0) {
-                timestamp = tilNextMillis(lastTimestamp);
-            }
-        } else {
-            // 时间戳改变，毫秒内序列重置
-            sequence.set(0L);
-        }
-        
-        lastTimestamp = timestamp;
-        
-        return ((timestamp - EPOCH) << TIMESTAMP_LEFT_SHIFT) |
-                (datacenterId << DATACENTER_ID_SHIFT) |
-                (workerId << WORKER_ID_SHIFT) |
-                sequence.get();
+    public static synchronized MessageIdGenerator configure(long workerId, long datacenterId) {
+        return install(new MessageIdGenerator(workerId, datacenterId));
     }
-    
+
     /**
-     * 阻塞到下一个毫秒，直到获得新的时间戳
+     * 按租用到的节点槽位替换单例实例，租约失效后 {@link #nextId()} 抛出异常
+     *
+     * @param lease 节点槽位租约
+     * @return 新的单例实例
      */
-    private long tilNextMillis(long lastTimestamp) {
-        long timestamp = System.currentTimeMillis();
-        while (timestamp <= lastTimestamp) {
-            timestamp = System.currentTimeMillis();
+    public static synchronized MessageIdGenerator configure(WorkerIdLease lease) {
+        return install(new MessageIdGenerator(lease.getWorkerId(), lease.getDatacenterId(),
+                System::currentTimeMillis, lease));
+    }
+
+    private static MessageIdGenerator install(MessageIdGenerator generator) {
+        long workerId = generator.workerId;
+        long datacenterId = generator.datacenterId;
+        MessageIdGenerator previous = instance;
+        if (previous != null) {
+            // 继承已发放的最大时间戳/序列，避免替换实例后在同一毫秒内产生重复ID
+            generator.state.set(previous.state.get());
         }
-        return timestamp;
+        instance = generator;
+        log.info("MessageIdGenerator configured with workerId: {}, datacenterId: {}", workerId, datacenterId);
+        return generator;
     }
-    
+
     /**
-     * 获取当前进程ID
+     * 生成下一个消息ID
      */
-    private long getProcessId() {
-        try {
-            String processName = java.lang.management.ManagementFactory.getRuntimeMXBean().getName();
-            return Long.parseLong(processName.split("@")[0]);
-        } catch (Exception e) {
-            return Thread.currentThread().getId();
+    public Long nextId() {
+        if (lease != null && !lease.holds(workerId, datacenterId)) {
+            throw new IllegalStateException("Worker slot lease (workerId: " + workerId + ", datacenterId: " +
+                    datacenterId + ") is no longer held. Refusing to generate id");
+        }
+        while (true) {
+            long current = state.get();
+            long lastTimestamp = current >>> SEQUENCE_BITS;
+            long timestamp = clock.getAsLong() - EPOCH;
+
+            long next;
+            if (timestamp > lastTimestamp) {
+                // 新的毫秒，序列从0开始
+                next = timestamp << SEQUENCE_BITS;
+            } else {
+                // 同一毫秒、序列用尽后借用的未来毫秒或时钟回拨：沿用上一次时间戳，
+                // 序列溢出时自然进位到下一毫秒
+                if (lastTimestamp - timestamp > MAX_BACKWARD_MILLIS) {
+                    throw new IllegalStateException("Clock moved backwards. Refusing to generate id for " +
+                            (lastTimestamp - timestamp) + " milliseconds");
+                }
+                next = current + 1;
+            }
+
+            if (state.compareAndSet(current, next)) {
+                return ((next >>> SEQUENCE_BITS) << TIMESTAMP_LEFT_SHIFT) |
+                        (datacenterId << DATACENTER_ID_SHIFT) |
+                        (workerId << WORKER_ID_SHIFT) |
+                        (next & SEQUENCE_MASK);
+            }
         }
     }
-    
-    /**
-     * 获取当前线程ID
-     */
-    private long getThreadId() {
-        return Thread.currentThread().getId();
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    public long getDatacenterId() {
+        return datacenterId;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package com.guanwei.framework.cap.util;
+
+import com.guanwei.framework.cap.CapProperties;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+/**
+ * 失败重试的指数退避
+ * 第 n 次失败后的等待时间为 min(上限, 基础间隔 * 2^(n-1))，再叠加 ±jitter 比例的随机抖动，
+ * 避免同一批失败消息在同一时刻集中重试
+ */
+public class RetryBackoff {
+
+    /**
+     * 指数上限，避免移位溢出（2^30 倍的基础间隔已远超任何合理的上限）
+     */
+    private static final int MAX_EXPONENT = 30;
+
+    private final long maxIntervalMillis;
+    private final double jitter;
+    private final Clock clock;
+    private final DoubleSupplier random;
+
+    public RetryBackoff(CapProperties properties) {
+        this(Duration.ofSeconds(properties.getFailedRetryMaxInterval()), properties.getFailedRetryJitter(),
+                Clock.systemDefaultZone(), () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    RetryBackoff(Duration maxInterval, double jitter, Clock clock, DoubleSupplier random) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1: " + jitter);
+        }
+        this.maxIntervalMillis = maxInterval.toMillis();
+        this.jitter = jitter;
+        this.clock = clock;
+        this.random = random;
+    }
+
+    /**
+     * 计算下次重试时间
+     *
+     * @param retries      已失败次数（从1开始）
+     * @param baseInterval 基础重试间隔（订阅者的 retryInterval 或全局 failedRetryInterval）
+     * @return 下次重试时间
+     */
+    public LocalDateTime nextRetryAt(int retries, Duration baseInterval) {
+        return LocalDateTime.now(clock).plus(delay(retries, baseInterval));
+    }
+
+    /**
+     * 计算第 retries 次失败后的等待时间
+     */
+    public Duration delay(int retries, Duration baseInterval) {
+        long baseMillis = Math.max(0, baseInterval.toMillis());
+        int exponent = Math.min(Math.max(retries - 1, 0), MAX_EXPONENT);
+        long millis = baseMillis > (maxIntervalMillis >> exponent)
+                ? maxIntervalMillis
+                : Math.min(maxIntervalMillis, baseMillis << exponent);
+
+        // random() 取值 [0, 1)，映射为 [-jitter, +jitter)
+        double factor = 1 + jitter * (2 * random.getAsDouble() - 1);
+        return Duration.ofMillis(Math.max(0, Math.round(millis * factor)));
+    }
+}
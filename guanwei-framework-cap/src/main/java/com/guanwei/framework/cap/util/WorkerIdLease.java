@@ -0,0 +1,163 @@
+package com.guanwei.framework.cap.util;
+
+import com.guanwei.framework.cap.storage.MessageStorage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过存储锁租用雪花算法的节点槽位（datacenterId << 5 | workerId，共 1024 个）
+ * 租约按 TTL/3 周期续期，应用关闭时释放。
+ * 距上次成功续期已达 TTL 或续期发现槽位已被接管时租约失效，绑定的 {@link MessageIdGenerator} 拒绝生成ID，
+ * 直到重新租到槽位并以新的节点标识替换生成器
+ */
+@Slf4j
+public class WorkerIdLease implements AutoCloseable {
+
+    private static final String LOCK_KEY_PREFIX = "cap.worker.";
+    private static final long SLOT_COUNT = (MessageIdGenerator.MAX_DATACENTER_ID + 1) * (MessageIdGenerator.MAX_WORKER_ID + 1);
+
+    private final MessageStorage messageStorage;
+    private final Duration ttl;
+    private final String instance;
+    private final ScheduledExecutorService renewer;
+
+    private volatile long slot;
+    private volatile boolean lost;
+
+    /**
+     * 最近一次成功续期请求的发出时间（System.nanoTime）
+     */
+    private volatile long renewedAtNanos;
+
+    private WorkerIdLease(MessageStorage messageStorage, Duration ttl, long slot, String instance, long leasedAtNanos) {
+        this.messageStorage = messageStorage;
+        this.ttl = ttl;
+        this.slot = slot;
+        this.instance = instance;
+        this.renewedAtNanos = leasedAtNanos;
+        this.renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cap-worker-id-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, ttl.toMillis() / 3);
+        this.renewer.scheduleAtFixedRate(this::renew, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 依次尝试获取空闲槽位
+     *
+     * @param messageStorage 消息存储（使用其分布式锁）
+     * @param ttl            租约有效期
+     * @return 租约
+     */
+    public static WorkerIdLease acquire(MessageStorage messageStorage, Duration ttl) {
+        String instance = UUID.randomUUID().toString();
+        long leasedAtNanos = System.nanoTime();
+        long slot = leaseFreeSlot(messageStorage, ttl, instance);
+        if (slot < 0) {
+            throw new IllegalStateException("No free worker slot available, all " + SLOT_COUNT + " slots are leased");
+        }
+        WorkerIdLease lease = new WorkerIdLease(messageStorage, ttl, slot, instance, leasedAtNanos);
+        log.info("Leased worker slot {} (workerId: {}, datacenterId: {})",
+                slot, lease.getWorkerId(), lease.getDatacenterId());
+        return lease;
+    }
+
+    /**
+     * @return 租到的槽位，没有空闲槽位时返回 -1
+     */
+    private static long leaseFreeSlot(MessageStorage messageStorage, Duration ttl, String instance) {
+        for (long slot = 0; slot < SLOT_COUNT; slot++) {
+            try {
+                if (Boolean.TRUE.equals(messageStorage.acquireLockAsync(LOCK_KEY_PREFIX + slot, ttl, instance).get())) {
+                    return slot;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while leasing worker slot", e);
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to lease worker slot " + slot, e);
+            }
+        }
+        return -1;
+    }
+
+    public long getWorkerId() {
+        return slot & MessageIdGenerator.MAX_WORKER_ID;
+    }
+
+    public long getDatacenterId() {
+        return slot / (MessageIdGenerator.MAX_WORKER_ID + 1);
+    }
+
+    /**
+     * 租约是否仍持有指定槽位：未被接管，且距上次成功续期不足 TTL
+     */
+    public boolean holds(long workerId, long datacenterId) {
+        return !lost
+                && getWorkerId() == workerId && getDatacenterId() == datacenterId
+                && System.nanoTime() - renewedAtNanos < ttl.toNanos();
+    }
+
+    private void renew() {
+        if (lost) {
+            relet();
+            return;
+        }
+        long slot = this.slot;
+        long sentAtNanos = System.nanoTime();
+        messageStorage.renewLockAsync(LOCK_KEY_PREFIX + slot, ttl, instance)
+                .whenComplete((renewed, ex) -> {
+                    if (ex != null) {
+                        // 存储暂不可用：不立即失效，超过 TTL 仍未续期成功时由 holds 拒绝生成
+                        log.error("Failed to renew worker slot {}", slot, ex);
+                    } else if (Boolean.TRUE.equals(renewed)) {
+                        renewedAtNanos = Math.max(renewedAtNanos, sentAtNanos);
+                    } else if (this.slot == slot) {
+                        lost = true;
+                        log.error("Worker slot {} lease lost, message id generation is fenced until a slot is re-leased",
+                                slot);
+                    }
+                });
+    }
+
+    /**
+     * 槽位被接管后重新租用空闲槽位，并以新的节点标识替换生成器
+     */
+    private void relet() {
+        long previous = slot;
+        try {
+            long leasedAtNanos = System.nanoTime();
+            long next = leaseFreeSlot(messageStorage, ttl, instance);
+            if (next < 0) {
+                log.error("No free worker slot available, message id generation stays fenced");
+                return;
+            }
+            slot = next;
+            renewedAtNanos = leasedAtNanos;
+            lost = false;
+            MessageIdGenerator.configure(this);
+            log.warn("Re-leased worker slot {} after losing slot {} (workerId: {}, datacenterId: {})",
+                    next, previous, getWorkerId(), getDatacenterId());
+        } catch (Exception e) {
+            log.error("Failed to re-lease worker slot after losing slot {}", previous, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        renewer.shutdownNow();
+        long slot = this.slot;
+        messageStorage.releaseLockAsync(LOCK_KEY_PREFIX + slot, instance)
+                .exceptionally(ex -> {
+                    log.warn("Failed to release worker slot {}", slot, ex);
+                    return null;
+                });
+    }
+}
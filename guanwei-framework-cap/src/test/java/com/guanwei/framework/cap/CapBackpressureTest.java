@@ -0,0 +1,73 @@
+package com.guanwei.framework.cap;
+
+import com.guanwei.framework.cap.impl.CapSubscriberImpl;
+import com.guanwei.framework.cap.queue.MemoryMessageQueue;
+import com.guanwei.framework.cap.storage.MemoryMessageStorage;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 由 surefire 单独以 -Xmx256m 运行
+ */
+class CapBackpressureTest {
+
+    private static final int MESSAGE_COUNT = 1_000_000;
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int CONSUMER_THREADS = 8;
+    private static final int CONSUMER_QUEUE_CAPACITY = 1_000;
+
+    @Test
+    void slowHandlerThrottlesProducerInsteadOfBuffering() throws Exception {
+        CapProperties props = new CapProperties();
+        props.setDefaultGroupName("test");
+        props.setConsumerThreadCount(CONSUMER_THREADS);
+        props.setConsumerQueueCapacity(CONSUMER_QUEUE_CAPACITY);
+
+        MemoryMessageQueue queue = new MemoryMessageQueue(MemoryMessageQueue.DEFAULT_DELAY_TICK_MILLIS,
+                QUEUE_CAPACITY, TimeUnit.MINUTES.toMillis(1));
+        CapSubscriberImpl subscriber = new CapSubscriberImpl(new MemoryMessageStorage(), queue, props, null);
+
+        AtomicLong processed = new AtomicLong();
+        subscriber.subscribe("load", "test", message -> {
+            // 故意放慢处理速度，发布方远快于消费方
+            LockSupport.parkNanos(100_000);
+            processed.incrementAndGet();
+        });
+        subscriber.start();
+
+        long maxQueueDepth = 0;
+        int maxBuffered = 0;
+        try {
+            for (long i = 1; i <= MESSAGE_COUNT; i++) {
+                CapMessage message = new CapMessage("load", "payload");
+                message.setDbId(i);
+                assertTrue(queue.send("load.test", message));
+                if (i % 1_000 == 0) {
+                    maxQueueDepth = Math.max(maxQueueDepth, queue.getQueueLength("load.test"));
+                    maxBuffered = Math.max(maxBuffered, subscriber.getBufferedMessageCount());
+                }
+            }
+
+            long giveUpAt = System.nanoTime() + TimeUnit.MINUTES.toNanos(3);
+            while (processed.get() < MESSAGE_COUNT && System.nanoTime() < giveUpAt) {
+                maxBuffered = Math.max(maxBuffered, subscriber.getBufferedMessageCount());
+                Thread.sleep(10);
+            }
+        } finally {
+            subscriber.stop();
+        }
+
+        assertEquals(MESSAGE_COUNT, processed.get());
+        assertTrue(maxQueueDepth <= QUEUE_CAPACITY, "queue depth " + maxQueueDepth);
+        assertTrue(maxBuffered <= CONSUMER_THREADS + CONSUMER_QUEUE_CAPACITY, "buffered " + maxBuffered);
+        assertEquals(0, subscriber.getRejectedCount());
+        assertEquals(0, queue.getRejectedCount());
+        // 额度用尽时暂停过拉取
+        assertTrue(subscriber.getThrottledCount() > 0);
+    }
+}
@@ -0,0 +1,310 @@
+package com.guanwei.framework.cap;
+
+import com.guanwei.framework.cap.annotation.CapSubscribe;
+import com.guanwei.framework.cap.impl.CapSubscriberImpl;
+import com.guanwei.framework.cap.processor.CapSubscribeProcessor;
+import com.guanwei.framework.cap.processor.CapSubscriberProcessor;
+import com.guanwei.framework.cap.queue.MemoryMessageQueue;
+import com.guanwei.framework.cap.storage.DedupStorage;
+import com.guanwei.framework.cap.storage.MemoryMessageStorage;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CapBatchSubscribeTest {
+
+    private static final int MESSAGE_COUNT = 10_000;
+    private static final int BATCH_SIZE = 100;
+
+    @Test
+    void singleSubscriberTouchesStoragePerMessage() throws Exception {
+        StorageCalls calls = consume("onCase", CaseEvent.class);
+
+        assertEquals(MESSAGE_COUNT, calls.handled);
+        // 每条消息一次去重 + 两次状态更新
+        assertEquals(3L * MESSAGE_COUNT, calls.total());
+    }
+
+    @Test
+    void batchSubscriberTouchesStoragePerBatch() throws Exception {
+        StorageCalls calls = consume("onCases", List.class);
+
+        assertEquals(MESSAGE_COUNT, calls.handled);
+        assertTrue(calls.maxBatch <= BATCH_SIZE, "batch size " + calls.maxBatch);
+        // 每批一次去重 + 两次状态更新，允许少量未凑满的批次
+        long batches = MESSAGE_COUNT / BATCH_SIZE;
+        assertTrue(calls.total() <= 3 * batches * 2, "storage calls " + calls.total());
+        assertEquals(0, calls.singleCalls);
+    }
+
+    @Test
+    void failedBatchIsRedeliveredAndProcessed() throws Exception {
+        CapProperties props = new CapProperties();
+        props.setDefaultGroupName("test");
+
+        RequeueingQueue queue = new RequeueingQueue();
+        CapSubscriberImpl subscriber = new CapSubscriberImpl(new MemoryMessageStorage(), queue, props, null);
+        subscriber.setDedupStorage(new CountingDedupStorage());
+
+        FlakySubscriber bean = new FlakySubscriber();
+        Method method = FlakySubscriber.class.getMethod("onCases", List.class);
+        new CapSubscriberProcessor(subscriber).registerHandler("case.flaky", "test",
+                new CapSubscribeProcessor.SubscribeHandler(bean, method, method.getAnnotation(CapSubscribe.class)));
+
+        int count = 200;
+        for (long i = 1; i <= count; i++) {
+            CapMessage message = new CapMessage("case.flaky", "{\"caseId\":\"AJ" + i + "\"}");
+            message.setDbId(i);
+            assertTrue(queue.send("case.flaky.test", message));
+        }
+
+        subscriber.start();
+        try {
+            long giveUpAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (bean.caseIds.size() < count && System.nanoTime() < giveUpAt) {
+                Thread.sleep(10);
+            }
+        } finally {
+            subscriber.stop();
+        }
+
+        // 第一批处理失败后逐条重试，不能因去重标记被跳过
+        assertEquals(1, bean.failures.get());
+        assertEquals(count, bean.caseIds.size());
+    }
+
+    @Test
+    void poisonMessageFailsAloneWithoutBlockingItsBatch() throws Exception {
+        CapProperties props = new CapProperties();
+        props.setDefaultGroupName("test");
+        props.setFailedRetryCount(3);
+
+        RequeueingQueue queue = new RequeueingQueue();
+        CapSubscriberImpl subscriber = new CapSubscriberImpl(new MemoryMessageStorage(), queue, props, null);
+        subscriber.setDedupStorage(new CountingDedupStorage());
+
+        PoisonSubscriber bean = new PoisonSubscriber();
+        Method method = PoisonSubscriber.class.getMethod("onCases", List.class);
+        new CapSubscriberProcessor(subscriber).registerHandler("case.poison", "test",
+                new CapSubscribeProcessor.SubscribeHandler(bean, method, method.getAnnotation(CapSubscribe.class)));
+
+        int count = 200;
+        for (long i = 1; i <= count; i++) {
+            CapMessage message = new CapMessage("case.poison", "{\"caseId\":\"AJ" + i + "\"}");
+            message.setDbId(i);
+            assertTrue(queue.send("case.poison.test", message));
+        }
+
+        subscriber.start();
+        try {
+            long giveUpAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while ((bean.caseIds.size() < count - 1 || bean.poisonAttempts.get() < 3)
+                    && System.nanoTime() < giveUpAt) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(300);
+        } finally {
+            subscriber.stop();
+        }
+
+        // 同批其他消息逐条重试后成功，异常消息单独重试到上限后不再投递
+        assertEquals(count - 1, bean.caseIds.size());
+        assertFalse(bean.caseIds.contains(PoisonSubscriber.POISON));
+        assertEquals(3, bean.poisonAttempts.get());
+    }
+
+    private StorageCalls consume(String methodName, Class<?> parameterType) throws Exception {
+        CapProperties props = new CapProperties();
+        props.setDefaultGroupName("test");
+
+        CountingStorage storage = new CountingStorage();
+        CountingDedupStorage dedupStorage = new CountingDedupStorage();
+        MemoryMessageQueue queue = new MemoryMessageQueue();
+        CapSubscriberImpl subscriber = new CapSubscriberImpl(storage, queue, props, null);
+        subscriber.setDedupStorage(dedupStorage);
+
+        CaseSubscriber bean = new CaseSubscriber();
+        Method method = CaseSubscriber.class.getMethod(methodName, parameterType);
+        new CapSubscriberProcessor(subscriber).registerHandler("case.batch", "test",
+                new CapSubscribeProcessor.SubscribeHandler(bean, method, method.getAnnotation(CapSubscribe.class)));
+
+        for (long i = 1; i <= MESSAGE_COUNT; i++) {
+            CapMessage message = new CapMessage("case.batch", "{\"caseId\":\"AJ" + i + "\"}");
+            message.setDbId(i);
+            assertTrue(queue.send("case.batch.test", message));
+        }
+
+        subscriber.start();
+        try {
+            long giveUpAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (bean.handled.get() < MESSAGE_COUNT && System.nanoTime() < giveUpAt) {
+                Thread.sleep(10);
+            }
+        } finally {
+            subscriber.stop();
+        }
+
+        StorageCalls calls = new StorageCalls();
+        calls.handled = bean.handled.get();
+        calls.maxBatch = bean.maxBatch.get();
+        calls.singleCalls = storage.singleCalls.get() + dedupStorage.singleCalls.get();
+        calls.storageCalls = storage.singleCalls.get() + storage.batchCalls.get();
+        calls.dedupCalls = dedupStorage.singleCalls.get() + dedupStorage.batchCalls.get();
+        return calls;
+    }
+
+    private static class StorageCalls {
+        private long handled;
+        private int maxBatch;
+        private long singleCalls;
+        private long storageCalls;
+        private long dedupCalls;
+
+        long total() {
+            return storageCalls + dedupCalls;
+        }
+    }
+
+    private static class CountingStorage extends MemoryMessageStorage {
+
+        private final AtomicLong singleCalls = new AtomicLong();
+        private final AtomicLong batchCalls = new AtomicLong();
+
+        @Override
+        public CompletableFuture<Void> updateStatusAsync(Long messageId, CapMessageStatus status) {
+            singleCalls.incrementAndGet();
+            return super.updateStatusAsync(messageId, status);
+        }
+
+        @Override
+        public CompletableFuture<Void> updateStatusBatchAsync(List<Long> messageIds, CapMessageStatus status) {
+            batchCalls.incrementAndGet();
+            return super.updateStatusBatchAsync(messageIds, status);
+        }
+    }
+
+    private static class CountingDedupStorage implements DedupStorage {
+
+        private final Set<String> processed = ConcurrentHashMap.newKeySet();
+        private final AtomicLong singleCalls = new AtomicLong();
+        private final AtomicLong batchCalls = new AtomicLong();
+
+        @Override
+        public boolean tryMarkProcessed(String key, long ttlSeconds) {
+            singleCalls.incrementAndGet();
+            return processed.add(key);
+        }
+
+        @Override
+        public Set<String> tryMarkProcessedBatch(List<String> keys, long ttlSeconds) {
+            batchCalls.incrementAndGet();
+            Set<String> first = new HashSet<>();
+            for (String key : keys) {
+                if (processed.add(key)) {
+                    first.add(key);
+                }
+            }
+            return first;
+        }
+
+        @Override
+        public void unmarkProcessed(List<String> keys) {
+            processed.removeAll(keys);
+        }
+    }
+
+    /**
+     * 拒绝并要求重新入队时把消息放回队列，模拟 Broker 的重新投递
+     */
+    private static class RequeueingQueue extends MemoryMessageQueue {
+
+        private final Map<Long, CapMessage> delivered = new ConcurrentHashMap<>();
+
+        @Override
+        public List<CapMessage> receiveBatch(String queueName, int maxCount, long timeout) {
+            List<CapMessage> messages = super.receiveBatch(queueName, maxCount, timeout);
+            messages.forEach(message -> delivered.put(message.getId(), message));
+            return messages;
+        }
+
+        @Override
+        public boolean reject(String queueName, Long messageId, boolean requeue) {
+            CapMessage message = delivered.remove(messageId);
+            return !requeue || message == null || send(queueName, message);
+        }
+    }
+
+    public static class FlakySubscriber {
+
+        private final Set<String> caseIds = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        @CapSubscribe(value = "case.flaky", group = "test", maxBatchSize = BATCH_SIZE, maxWaitMillis = 50)
+        public void onCases(List<CaseEvent> events) {
+            if (failures.compareAndSet(0, 1)) {
+                throw new IllegalStateException("downstream unavailable");
+            }
+            events.forEach(event -> caseIds.add(event.getCaseId()));
+        }
+    }
+
+    public static class PoisonSubscriber {
+
+        static final String POISON = "AJ7";
+
+        private final Set<String> caseIds = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger poisonAttempts = new AtomicInteger();
+
+        @CapSubscribe(value = "case.poison", group = "test", maxBatchSize = BATCH_SIZE, maxWaitMillis = 50)
+        public void onCases(List<CaseEvent> events) {
+            if (events.stream().anyMatch(event -> POISON.equals(event.getCaseId()))) {
+                if (events.size() == 1) {
+                    poisonAttempts.incrementAndGet();
+                }
+                throw new IllegalStateException("unprocessable case " + POISON);
+            }
+            events.forEach(event -> caseIds.add(event.getCaseId()));
+        }
+    }
+
+    public static class CaseSubscriber {
+
+        private final AtomicLong handled = new AtomicLong();
+        private final AtomicInteger maxBatch = new AtomicInteger();
+
+        @CapSubscribe(value = "case.batch", group = "test")
+        public void onCase(CaseEvent event) {
+            handled.incrementAndGet();
+        }
+
+        @CapSubscribe(value = "case.batch", group = "test", maxBatchSize = BATCH_SIZE, maxWaitMillis = 50)
+        public void onCases(List<CaseEvent> events) {
+            maxBatch.accumulateAndGet(events.size(), Math::max);
+            handled.addAndGet(events.size());
+        }
+    }
+
+    public static class CaseEvent {
+
+        private String caseId;
+
+        public String getCaseId() {
+            return caseId;
+        }
+
+        public void setCaseId(String caseId) {
+            this.caseId = caseId;
+        }
+    }
+}
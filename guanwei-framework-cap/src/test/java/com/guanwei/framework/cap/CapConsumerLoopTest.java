@@ -0,0 +1,116 @@
+package com.guanwei.framework.cap;
+
+import com.guanwei.framework.cap.impl.CapSubscriberImpl;
+import com.guanwei.framework.cap.queue.MemoryMessageQueue;
+import com.guanwei.framework.cap.storage.MemoryMessageStorage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CapConsumerLoopTest {
+
+    private static final List<String> TOPICS = List.of("case.transfer.accept", "case.transfer.assign",
+            "case.transfer.return", "case.transfer.archive", "case.transfer.close", "case.transfer.reopen");
+    private static final String IDLE_TOPIC = "case.transfer.reopen";
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int ROUNDS = 200;
+
+    @Test
+    void idleQueueDoesNotDelayBusyQueues() throws Exception {
+        CapProperties props = new CapProperties();
+        props.setDefaultGroupName("test");
+        props.setConsumerThreadCount(4);
+        // 空闲队列每次拉取都会等满超时，串行轮询时会拖慢其他队列
+        props.setConsumerPollTimeout(500);
+
+        MemoryMessageQueue queue = new MemoryMessageQueue();
+        CapSubscriberImpl subscriber = new CapSubscriberImpl(new MemoryMessageStorage(), queue, props, null);
+
+        Map<Long, Long> sentAt = new ConcurrentHashMap<>();
+        AtomicLong maxLatencyNanos = new AtomicLong();
+        CountDownLatch done = new CountDownLatch((WARMUP_ROUNDS + ROUNDS) * (TOPICS.size() - 1));
+        for (String topic : TOPICS) {
+            subscriber.subscribe(topic, "test", message -> {
+                long latency = System.nanoTime() - sentAt.get(message.getId());
+                if (message.getId() > (long) WARMUP_ROUNDS * TOPICS.size()) {
+                    maxLatencyNanos.accumulateAndGet(latency, Math::max);
+                }
+                done.countDown();
+            });
+        }
+        subscriber.start();
+
+        try {
+            long id = 0;
+            for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+                for (String topic : TOPICS) {
+                    id++;
+                    if (topic.equals(IDLE_TOPIC)) {
+                        continue;
+                    }
+                    CapMessage message = new CapMessage(topic, "AJ" + id);
+                    message.setDbId(id);
+                    sentAt.put(id, System.nanoTime());
+                    assertTrue(queue.send(topic + ".test", message));
+                }
+                Thread.sleep(5);
+            }
+
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        } finally {
+            subscriber.stop();
+        }
+
+        long maxLatencyMillis = TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+        assertTrue(maxLatencyMillis < 50, "max end-to-end latency " + maxLatencyMillis + "ms");
+    }
+
+    @Test
+    void subscriptionOptionsOverrideGlobalSettings() throws Exception {
+        CapProperties props = new CapProperties();
+        props.setDefaultGroupName("test");
+        props.setConsumerThreadCount(8);
+        props.setConsumerConcurrency(0);
+
+        MemoryMessageQueue queue = new MemoryMessageQueue();
+        CapSubscriberImpl subscriber = new CapSubscriberImpl(new MemoryMessageStorage(), queue, props, null);
+
+        // 消息名称含冒号，启动前登记的订阅仍按原名称和组启动拉取循环
+        String topic = "case:transfer";
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(20);
+        subscriber.configure(topic, "test", 50, 2);
+        subscriber.subscribe(topic, "test", message -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            active.decrementAndGet();
+            done.countDown();
+        });
+        for (long id = 1; id <= 20; id++) {
+            CapMessage message = new CapMessage(topic, "AJ" + id);
+            message.setDbId(id);
+            assertTrue(queue.send(topic + ".test", message));
+        }
+
+        subscriber.start();
+        try {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            subscriber.stop();
+        }
+        assertEquals(2, maxActive.get());
+    }
+}
@@ -37,6 +37,37 @@ class CapMemoryModeTest {
         assertTrue(consumed[0]);
         subscriber.stop();
     }
-}
 
+    @Test
+    void virtualModeDrainsBlockingHandlersConcurrently() throws Exception {
+        CapProperties props = new CapProperties();
+        props.setDefaultGroupName("test");
+        props.setExecutorMode("virtual");
 
+        var storage = new MemoryMessageStorage();
+        var queue = new MemoryMessageQueue();
+        var subscriber = new com.guanwei.framework.cap.impl.CapSubscriberImpl(storage, queue, props, null);
+
+        // 每条消息阻塞50ms，串行消费1000条约需50秒
+        java.util.concurrent.CountDownLatch done = new java.util.concurrent.CountDownLatch(1000);
+        subscriber.subscribe("demo", "test", msg -> {
+            try { Thread.sleep(50); } catch (InterruptedException ignored) {}
+            done.countDown();
+        });
+        for (long i = 1; i <= 1000; i++) {
+            CapMessage message = new CapMessage("demo", "hello");
+            message.setDbId(i);
+            queue.send("demo.test", message);
+        }
+
+        long start = System.nanoTime();
+        subscriber.start();
+        try {
+            assertTrue(done.await(10, java.util.concurrent.TimeUnit.SECONDS));
+            long elapsedMillis = java.util.concurrent.TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsedMillis < 2000, "draining took " + elapsedMillis + "ms");
+        } finally {
+            subscriber.stop();
+        }
+    }
+}
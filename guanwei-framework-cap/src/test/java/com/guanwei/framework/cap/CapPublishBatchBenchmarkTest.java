@@ -0,0 +1,171 @@
+package com.guanwei.framework.cap;
+
+import com.guanwei.framework.cap.impl.CapPublisherImpl;
+import com.guanwei.framework.cap.impl.CapTransactionManagerImpl;
+import com.guanwei.framework.cap.processor.MessageDispatcher;
+import com.guanwei.framework.cap.storage.MemoryMessageStorage;
+import com.guanwei.framework.cap.storage.MessageStorage;
+import com.guanwei.framework.cap.storage.OracleMessageStorage;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 对比 10 万条单条发布与批量发布在内存与 H2 存储上的耗时，并验证组提交合并写入、停止时不挂起发布方
+ */
+class CapPublishBatchBenchmarkTest {
+
+    private static final int MESSAGE_COUNT = 100_000;
+    private static final int BATCH_SIZE = 1000;
+
+    @Test
+    void comparesSingleAndBatchedPublishOnMemory() throws Exception {
+        MemoryMessageStorage storage = new MemoryMessageStorage();
+        CapPublisherImpl publisher = publisher(storage, new CapProperties());
+
+        long single = timeSingle(publisher);
+        long batched = timeBatched(publisher);
+
+        assertEquals(2 * MESSAGE_COUNT, storage.getPendingPublishedMessagesAsync(
+                CapMessageStatus.SCHEDULED, 3 * MESSAGE_COUNT).get().size(),
+                "memory: single " + single + "ms, batched " + batched + "ms");
+    }
+
+    @Test
+    void batchedPublishBeatsSinglePublishOnH2() {
+        JdbcTemplate jdbcTemplate = h2();
+        OracleMessageStorage storage = new OracleMessageStorage();
+        ReflectionTestUtils.setField(storage, "jdbcTemplate", jdbcTemplate);
+        storage.initializeTables();
+        CapPublisherImpl publisher = publisher(storage, new CapProperties());
+
+        long single = timeSingle(publisher);
+        long batched = timeBatched(publisher);
+
+        assertTrue(batched < single, "h2: batched " + batched + "ms vs single " + single + "ms");
+        assertEquals(2 * MESSAGE_COUNT, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM CAP_PUBLISHED", Integer.class));
+    }
+
+    @Test
+    void concurrentSinglePublishesAreGroupCommitted() throws Exception {
+        JdbcTemplate jdbcTemplate = h2();
+        OracleMessageStorage target = new OracleMessageStorage();
+        ReflectionTestUtils.setField(target, "jdbcTemplate", jdbcTemplate);
+        target.initializeTables();
+        OracleMessageStorage storage = spy(target);
+
+        CapProperties properties = new CapProperties();
+        properties.setPublishGroupCommitSize(64);
+        properties.setPublishGroupCommitWindowMicros(500);
+        CapPublisherImpl publisher = publisher(storage, properties);
+
+        int count = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            List<CompletableFuture<Long>> futures = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String payload = "payload-" + i;
+                futures.add(CompletableFuture.supplyAsync(() -> publisher.publish("demo", payload), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+            assertEquals(count, new HashSet<>(futures.stream().map(CompletableFuture::join).toList()).size());
+        } finally {
+            executor.shutdownNow();
+            publisher.destroy();
+        }
+
+        assertEquals(count, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM CAP_PUBLISHED", Integer.class));
+        verify(storage, never()).storeMessageAsync(any(), any(), any());
+        verify(storage, atMost(count / 2)).storeMessagesAsync(any());
+    }
+
+    @Test
+    void publishesRacingWithShutdownAllComplete() throws Exception {
+        CapProperties properties = new CapProperties();
+        properties.setPublishGroupCommitSize(64);
+        CapPublisherImpl publisher = publisher(new MemoryMessageStorage(), properties);
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        try {
+                            publisher.publish("demo", "payload-" + i);
+                        } catch (RuntimeException e) {
+                            // 停止后的发布失败是预期的，只要求不挂起
+                        }
+                    }
+                }, executor));
+            }
+            Thread.sleep(20);
+            publisher.destroy();
+            // 停止之后提交的消息不能滞留在组提交队列中无人完成
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void asyncBatchPublishRunsOnDedicatedExecutor() throws Exception {
+        MemoryMessageStorage storage = spy(new MemoryMessageStorage());
+        List<String> threads = new ArrayList<>();
+        doAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return invocation.callRealMethod();
+        }).when(storage).storeMessagesAsync(any());
+        CapPublisherImpl publisher = publisher(storage, new CapProperties());
+        try {
+            assertEquals(3, publisher.publishBatchAsync("demo", List.of("a", "b", "c")).get(10, TimeUnit.SECONDS).size());
+        } finally {
+            publisher.destroy();
+        }
+        assertEquals(1, threads.size());
+        assertTrue(threads.get(0).startsWith("cap-publish-async-"), threads.get(0));
+    }
+
+    private long timeSingle(CapPublisherImpl publisher) {
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            publisher.publish("demo", "payload-" + i);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private long timeBatched(CapPublisherImpl publisher) {
+        long start = System.nanoTime();
+        for (int from = 0; from < MESSAGE_COUNT; from += BATCH_SIZE) {
+            List<String> payloads = new ArrayList<>(BATCH_SIZE);
+            for (int i = from; i < from + BATCH_SIZE; i++) {
+                payloads.add("payload-" + i);
+            }
+            assertEquals(BATCH_SIZE, publisher.publishBatch("demo", payloads).size());
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private CapPublisherImpl publisher(MessageStorage storage, CapProperties properties) {
+        return new CapPublisherImpl(null, storage, properties, new CapTransactionManagerImpl(),
+                mock(MessageDispatcher.class));
+    }
+
+    private JdbcTemplate h2() {
+        return new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:cap_" + System.nanoTime() + ";MODE=Oracle;DB_CLOSE_DELAY=-1", "sa", ""));
+    }
+}
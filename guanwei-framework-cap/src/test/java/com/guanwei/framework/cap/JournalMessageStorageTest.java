@@ -0,0 +1,225 @@
+package com.guanwei.framework.cap;
+
+import com.guanwei.framework.cap.storage.JournalMessageStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证日志存储：重启后状态索引恢复、写入进程被强制终止时已确认的消息不丢失、残缺尾部被丢弃、旧日志段压缩
+ */
+class JournalMessageStorageTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private final List<JournalMessageStorage> storages = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        storages.forEach(JournalMessageStorage::close);
+    }
+
+    @Test
+    void restartRestoresMessagesAndStatusIndex() throws Exception {
+        JournalMessageStorage storage = open();
+        CapMessage failed = storage.storeMessageAsync("case.transfer", "failed", null).get(5, TimeUnit.SECONDS);
+        CapMessage succeeded = storage.storeMessageAsync("case.transfer", "succeeded", null).get(5, TimeUnit.SECONDS);
+        CapMessage deleted = storage.storeMessageAsync("case.transfer", "deleted", null).get(5, TimeUnit.SECONDS);
+        CapMessage received = storage.storeReceivedMessageAsync("case.transfer", "group", "received")
+                .get(5, TimeUnit.SECONDS);
+        failed.setRetries(2);
+        failed.setNextRetryAt(LocalDateTime.now().minusSeconds(1));
+        storage.changePublishStateAsync(failed, CapMessageStatus.FAILED, null).get(5, TimeUnit.SECONDS);
+        storage.updateStatusAsync(succeeded.getId(), CapMessageStatus.SUCCEEDED).get(5, TimeUnit.SECONDS);
+        storage.deletePublishedMessageAsync(String.valueOf(deleted.getId())).get(5, TimeUnit.SECONDS);
+        storage.close();
+
+        JournalMessageStorage reopened = open();
+
+        List<CapMessage> retry = reopened.getPublishedMessagesOfNeedRetry(Duration.ZERO).get(5, TimeUnit.SECONDS);
+        assertEquals(1, retry.size());
+        assertEquals(failed.getId(), retry.get(0).getId());
+        assertEquals(2, retry.get(0).getRetries());
+        assertEquals("failed", retry.get(0).getContent());
+        assertEquals(List.of(succeeded.getId()), ids(reopened.getPendingPublishedMessagesAsync(
+                CapMessageStatus.SUCCEEDED, 10).get(5, TimeUnit.SECONDS)));
+        assertTrue(reopened.getPendingPublishedMessagesAsync(CapMessageStatus.SCHEDULED, 10)
+                .get(5, TimeUnit.SECONDS).isEmpty());
+        assertEquals(0, reopened.deletePublishedMessageAsync(String.valueOf(deleted.getId())).get(5, TimeUnit.SECONDS));
+        assertEquals(1, reopened.deleteReceivedMessageAsync(String.valueOf(received.getId())).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void killedWriterLosesNoAcknowledgedMessage() throws Exception {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Process writer = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                Writer.class.getName(), directory.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        // 读到足够多的确认后直接杀死进程，此时仍有批次正在写入
+        Set<Long> acknowledged = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(writer.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while (acknowledged.size() < 2_000 && (line = reader.readLine()) != null) {
+                acknowledge(acknowledged, line);
+            }
+            writer.destroyForcibly();
+            while ((line = reader.readLine()) != null) {
+                acknowledge(acknowledged, line);
+            }
+        }
+        assertTrue(writer.waitFor(30, TimeUnit.SECONDS));
+        assertTrue(acknowledged.size() >= 2_000, "acknowledged " + acknowledged.size());
+
+        JournalMessageStorage recovered = open();
+        Set<Long> stored = new HashSet<>(ids(recovered.getPendingPublishedMessagesAsync(
+                CapMessageStatus.SCHEDULED, Integer.MAX_VALUE).get(30, TimeUnit.SECONDS)));
+
+        acknowledged.removeAll(stored);
+        assertTrue(acknowledged.isEmpty(), "lost acknowledged messages: " + acknowledged);
+    }
+
+    @Test
+    void tornTailIsDiscardedAndAppendingContinues() throws Exception {
+        JournalMessageStorage storage = open();
+        Long kept = storage.storeMessageAsync("case.transfer", "kept", null).get(5, TimeUnit.SECONDS).getId();
+        storage.close();
+
+        // 模拟写了一半的记录：长度和部分内容已写入，CRC 不匹配
+        Path segment = lastSegment();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long end = dataEnd(file);
+            file.seek(end);
+            file.writeInt(200);
+            file.writeInt(12345);
+            file.write("{\"dbId\":1,\"name\":\"torn".getBytes(StandardCharsets.UTF_8));
+        }
+
+        JournalMessageStorage reopened = open();
+        Long appended = reopened.storeMessageAsync("case.transfer", "appended", null).get(5, TimeUnit.SECONDS).getId();
+        reopened.close();
+
+        JournalMessageStorage again = open();
+        assertEquals(Set.of(kept, appended), new HashSet<>(ids(again.getPendingPublishedMessagesAsync(
+                CapMessageStatus.SCHEDULED, 10).get(5, TimeUnit.SECONDS))));
+    }
+
+    @Test
+    void compactionRemovesSegmentsOfDeletedMessages() throws Exception {
+        JournalMessageStorage storage = open();
+        List<CapMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            messages.add(new CapMessage("case.transfer", "payload-" + i));
+        }
+        storage.storeMessagesAsync(messages).get(10, TimeUnit.SECONDS);
+        Set<Long> remaining = new HashSet<>();
+        for (int i = 0; i < messages.size(); i++) {
+            Long id = messages.get(i).getId();
+            if (i % 10 == 0) {
+                remaining.add(id);
+            } else {
+                storage.deletePublishedMessageAsync(String.valueOf(id)).get(5, TimeUnit.SECONDS);
+            }
+        }
+        int before = storage.getSegmentCount();
+
+        int compacted = storage.compactAsync().get(10, TimeUnit.SECONDS);
+
+        assertTrue(compacted > 0);
+        assertTrue(storage.getSegmentCount() < before, before + " -> " + storage.getSegmentCount());
+        storage.close();
+        JournalMessageStorage reopened = open();
+        assertEquals(remaining, new HashSet<>(ids(reopened.getPendingPublishedMessagesAsync(
+                CapMessageStatus.SCHEDULED, Integer.MAX_VALUE).get(5, TimeUnit.SECONDS))));
+    }
+
+    private JournalMessageStorage open() throws Exception {
+        JournalMessageStorage storage = new JournalMessageStorage(directory, SEGMENT_SIZE, 0.5);
+        storages.add(storage);
+        return storage;
+    }
+
+    private Path lastSegment() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().reduce((first, second) -> second).orElseThrow();
+        }
+    }
+
+    /**
+     * 最后一个非零字节之后的位置
+     */
+    private static long dataEnd(RandomAccessFile file) throws Exception {
+        long end = file.length();
+        while (end > 0) {
+            file.seek(end - 1);
+            if (file.read() != 0) {
+                break;
+            }
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * 子进程的日志也输出到标准输出，只取消息ID行
+     */
+    private static void acknowledge(Set<Long> acknowledged, String line) {
+        if (line.matches("\\d+")) {
+            acknowledged.add(Long.parseLong(line));
+        }
+    }
+
+    private static List<Long> ids(List<CapMessage> messages) {
+        return messages.stream().map(CapMessage::getId).toList();
+    }
+
+    /**
+     * 子进程写入：持续并发提交批次，每批确认后把消息ID逐行输出
+     */
+    public static class Writer {
+        public static void main(String[] args) throws Exception {
+            JournalMessageStorage storage = new JournalMessageStorage(Path.of(args[0]), SEGMENT_SIZE, 0.5);
+            List<CompletableFuture<Void>> inFlight = new ArrayList<>();
+            for (int batch = 0; ; batch++) {
+                List<CapMessage> messages = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    messages.add(new CapMessage("case.transfer", "batch-" + batch + "-" + i));
+                }
+                inFlight.add(storage.storeMessagesAsync(messages).thenAccept(stored -> {
+                    StringBuilder acknowledged = new StringBuilder();
+                    stored.forEach(message -> acknowledged.append(message.getId()).append('\n'));
+                    synchronized (System.out) {
+                        System.out.print(acknowledged);
+                        System.out.flush();
+                    }
+                }));
+                if (inFlight.size() >= 8) {
+                    inFlight.remove(0).join();
+                }
+            }
+        }
+    }
+}
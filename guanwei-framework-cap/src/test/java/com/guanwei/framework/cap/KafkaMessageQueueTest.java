@@ -0,0 +1,223 @@
+package com.guanwei.framework.cap;
+
+import com.guanwei.framework.cap.queue.KafkaMessageQueue;
+import com.guanwei.framework.cap.storage.MemoryMessageStorage;
+import com.guanwei.framework.cap.util.MessageIdGenerator;
+import com.guanwei.framework.cap.util.WorkerIdLease;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 基于内嵌 Kafka 验证批量发送吞吐、分区内顺序、确认后才提交偏移量、分区回收时清理本地缓冲以及无法生成消息ID时暂停分区
+ */
+@EmbeddedKafka(partitions = 1, topics = "cap_demo")
+class KafkaMessageQueueTest {
+
+    private static final int MESSAGE_COUNT = 100_000;
+    private static final String QUEUE = "group.v1";
+
+    private KafkaMessageQueue queue;
+    private KafkaMessageQueue joiner;
+
+    @AfterEach
+    void tearDown() {
+        if (queue != null) {
+            queue.destroy();
+        }
+        if (joiner != null) {
+            joiner.destroy();
+        }
+    }
+
+    @Test
+    void publishesInOrderAndCommitsOnlyAcknowledgedOffsets(EmbeddedKafkaBroker broker) throws Exception {
+        CapProperties.Kafka kafka = new CapProperties.Kafka();
+        kafka.setBootstrapServers(broker.getBrokersAsString());
+        kafka.getProducer().setLingerMs(5);
+        queue = new KafkaMessageQueue(kafka);
+        queue.bind(QUEUE, "demo");
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(MESSAGE_COUNT);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            CapMessage message = new CapMessage("demo", "payload-" + i);
+            message.setDbId((long) i);
+            futures.add(queue.sendAsync("demo", message));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+        long publishMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(futures.stream().allMatch(CompletableFuture::join));
+        assertTrue(publishMillis < 30_000, "publishing took " + publishMillis + "ms");
+
+        // 未确认前不提交偏移量
+        List<CapMessage> first = queue.receiveBatch(QUEUE, 100, 10_000);
+        assertFalse(first.isEmpty());
+        Thread.sleep(500);
+        assertNull(committedOffset(broker));
+
+        long expectedId = 0;
+        List<CapMessage> batch = first;
+        long giveUpAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (expectedId < MESSAGE_COUNT && System.nanoTime() < giveUpAt) {
+            for (CapMessage message : batch) {
+                assertEquals(expectedId++, message.getId(), "messages must keep partition order");
+                assertTrue(queue.acknowledge(QUEUE, message.getId()));
+            }
+            batch = queue.receiveBatch(QUEUE, 500, 1000);
+        }
+        assertEquals(MESSAGE_COUNT, expectedId);
+
+        long committedDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        OffsetAndMetadata committed = committedOffset(broker);
+        while ((committed == null || committed.offset() < MESSAGE_COUNT) && System.nanoTime() < committedDeadline) {
+            Thread.sleep(100);
+            committed = committedOffset(broker);
+        }
+        assertNotNull(committed);
+        assertEquals(MESSAGE_COUNT, committed.offset());
+    }
+
+    @Test
+    void revokedPartitionsAreDroppedFromTheLocalBuffer(EmbeddedKafkaBroker broker) throws Exception {
+        try (AdminClient admin = AdminClient.create(
+                Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()))) {
+            admin.createTopics(List.of(new NewTopic("cap_revoke", 2, (short) 1))).all().get(10, TimeUnit.SECONDS);
+        }
+        CapProperties.Kafka kafka = new CapProperties.Kafka();
+        kafka.setBootstrapServers(broker.getBrokersAsString());
+        String group = "revoke.v1";
+        queue = new KafkaMessageQueue(kafka);
+        queue.bind(group, "revoke");
+        int count = 200;
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            CapMessage message = new CapMessage("revoke", "payload-" + i);
+            message.setDbId((long) i);
+            futures.add(queue.sendAsync("revoke", message));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        // 第一个消费者独占两个分区，把全部消息拉入本地缓冲
+        CapMessage handedOut = queue.receive(group, 10_000);
+        assertNotNull(handedOut);
+        long bufferedDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (queue.getQueueLength(group) < count - 1 && System.nanoTime() < bufferedDeadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(count - 1, queue.getQueueLength(group));
+
+        // 第二个消费者加入同一消费组，再均衡后各自只消费自己分区上的消息
+        joiner = new KafkaMessageQueue(kafka);
+        joiner.bind(group, "revoke");
+        Set<Long> joined = new HashSet<>();
+        List<CapMessage> batch = joiner.receiveBatch(group, 500, 30_000);
+        assertFalse(batch.isEmpty(), "joiner was never assigned a partition");
+        Set<Long> kept = new HashSet<>();
+        Set<Long> duplicates = new HashSet<>();
+        long quietUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        while (System.nanoTime() < quietUntil) {
+            batch.forEach(message -> {
+                if (!joined.add(message.getId())) {
+                    duplicates.add(message.getId());
+                }
+            });
+            queue.receiveBatch(group, 500, 100).forEach(message -> {
+                if (!kept.add(message.getId())) {
+                    duplicates.add(message.getId());
+                }
+            });
+            batch = joiner.receiveBatch(group, 500, 100);
+        }
+
+        // 再均衡前已交出的消息允许由新的分区所有者再次消费，其余消息只出现一次
+        kept.remove(handedOut.getId());
+        joined.remove(handedOut.getId());
+        assertTrue(duplicates.isEmpty(), "duplicated: " + duplicates);
+        assertTrue(Collections.disjoint(kept, joined), "messages of revoked partitions were still handed out");
+        Set<Long> all = new HashSet<>(kept);
+        all.addAll(joined);
+        all.add(handedOut.getId());
+        assertEquals(count, all.size());
+    }
+
+    @Test
+    void fencedIdGenerationPausesThePartitionWithoutStoppingTheConsumer(EmbeddedKafkaBroker broker) throws Exception {
+        try (AdminClient admin = AdminClient.create(
+                Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()))) {
+            admin.createTopics(List.of(new NewTopic("cap_fenced", 1, (short) 1))).all().get(10, TimeUnit.SECONDS);
+        }
+        CapProperties.Kafka kafka = new CapProperties.Kafka();
+        kafka.setBootstrapServers(broker.getBrokersAsString());
+        String group = "fenced.v1";
+        queue = new KafkaMessageQueue(kafka);
+        queue.bind(group, "fenced");
+
+        Duration ttl = Duration.ofMillis(200);
+        try {
+            // 租约停止续期并过期，非 CAP 格式的记录无法生成消息ID
+            WorkerIdLease lease = WorkerIdLease.acquire(new MemoryMessageStorage(), ttl);
+            MessageIdGenerator.configure(lease);
+            lease.close();
+            Thread.sleep(ttl.toMillis() + 100);
+            try (KafkaProducer<String, byte[]> producer = new KafkaProducer<>(Map.of(
+                    ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+                    ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+                    ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class))) {
+                producer.send(new ProducerRecord<>("cap_fenced", "plain-text".getBytes(StandardCharsets.UTF_8)))
+                        .get(10, TimeUnit.SECONDS);
+            }
+
+            // 记录留在分区上，偏移量不提交
+            assertNull(queue.receive(group, 3000));
+            assertNull(committedOffset(broker, group, "cap_fenced"));
+
+            // 恢复生成ID后同一消费者从原偏移量继续消费
+            MessageIdGenerator.configure(0, 0);
+            CapMessage message = queue.receive(group, 10_000);
+            assertNotNull(message, "consumer stopped after id generation was fenced");
+            assertEquals("plain-text", message.getContent());
+            assertTrue(queue.acknowledge(group, message.getId()));
+        } finally {
+            MessageIdGenerator.configure(0, 0);
+        }
+    }
+
+    private OffsetAndMetadata committedOffset(EmbeddedKafkaBroker broker) throws Exception {
+        return committedOffset(broker, QUEUE, "cap_demo");
+    }
+
+    private OffsetAndMetadata committedOffset(EmbeddedKafkaBroker broker, String group, String topic) throws Exception {
+        try (AdminClient admin = AdminClient.create(
+                Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()))) {
+            return admin.listConsumerGroupOffsets(group)
+                    .partitionsToOffsetAndMetadata()
+                    .get(10, TimeUnit.SECONDS)
+                    .get(new TopicPartition(topic, 0));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.guanwei.framework.cap;
+
+import com.guanwei.framework.cap.queue.MemoryMessageQueue;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryMessageQueueDelayTest {
+
+    private static final int MESSAGE_COUNT = 200_000;
+    private static final int MAX_DELAY_SECONDS = 20;
+
+    @Test
+    void delayedMessagesFireOnTimeAndWheelIdlesWithoutCpu() throws Exception {
+        MemoryMessageQueue queue = new MemoryMessageQueue();
+        long[] deadlines = new long[MESSAGE_COUNT];
+        long[] skews = new long[MESSAGE_COUNT];
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            long delaySeconds = i % MAX_DELAY_SECONDS + 1;
+            CapMessage message = new CapMessage("demo", "payload");
+            message.setDbId((long) i);
+            deadlines[i] = System.nanoTime() + TimeUnit.SECONDS.toNanos(delaySeconds);
+            queue.sendDelay("delay.test", message, delaySeconds);
+        }
+
+        int received = 0;
+        long giveUpAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(MAX_DELAY_SECONDS + 10);
+        while (received < MESSAGE_COUNT && System.nanoTime() < giveUpAt) {
+            CapMessage message = queue.receive("delay.test", 100);
+            if (message != null) {
+                int index = message.getId().intValue();
+                skews[index] = System.nanoTime() - deadlines[index];
+                received++;
+            }
+        }
+        assertEquals(MESSAGE_COUNT, received);
+        assertEquals(0, queue.getPendingDelayCount());
+
+        Arrays.sort(skews);
+        assertTrue(skews[0] >= -TimeUnit.MILLISECONDS.toNanos(1), "message fired early: " + skews[0] + "ns");
+        long p99 = skews[(int) (MESSAGE_COUNT * 0.99)];
+        assertTrue(p99 < TimeUnit.MILLISECONDS.toNanos(20), "p99 skew " + p99 + "ns");
+
+        // 无延迟消息时时间轮线程应挂起
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        long[] wheelThreadIds = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> "cap-memory-delay-wheel".equals(thread.getName()))
+                .mapToLong(Thread::getId)
+                .toArray();
+        assertTrue(wheelThreadIds.length > 0);
+        long cpuBefore = totalCpuTime(threadMXBean, wheelThreadIds);
+        Thread.sleep(1000);
+        long idleCpu = totalCpuTime(threadMXBean, wheelThreadIds) - cpuBefore;
+        assertTrue(idleCpu < TimeUnit.MILLISECONDS.toNanos(20), "idle wheel used " + idleCpu + "ns CPU");
+        queue.destroy();
+    }
+
+    @Test
+    void destroyStopsTheWheelThread() throws Exception {
+        Set<Thread> before = wheelThreads();
+        MemoryMessageQueue queue = new MemoryMessageQueue();
+        Set<Thread> started = wheelThreads();
+        started.removeAll(before);
+        assertEquals(1, started.size());
+
+        queue.destroy();
+        Thread wheel = started.iterator().next();
+        wheel.join(TimeUnit.SECONDS.toMillis(2));
+        assertFalse(wheel.isAlive(), "delay wheel thread still running after destroy");
+    }
+
+    private Set<Thread> wheelThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> "cap-memory-delay-wheel".equals(thread.getName()))
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    private long totalCpuTime(ThreadMXBean threadMXBean, long[] threadIds) {
+        long total = 0;
+        for (long threadId : threadIds) {
+            total += Math.max(0, threadMXBean.getThreadCpuTime(threadId));
+        }
+        return total;
+    }
+}
@@ -0,0 +1,120 @@
+package com.guanwei.framework.cap;
+
+import com.guanwei.framework.cap.storage.MemoryMessageStorage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryMessageStorageIndexTest {
+
+    private static final int PENDING_COUNT = 50;
+
+    @Test
+    void statusChangesMoveMessagesBetweenIndexes() throws Exception {
+        MemoryMessageStorage storage = new MemoryMessageStorage();
+        CapMessage message = newMessage(1L, CapMessageStatus.PENDING, LocalDateTime.now());
+        storage.storeMessageAsync("demo", message, null).get();
+
+        assertEquals(1, storage.getPendingPublishedMessagesAsync(CapMessageStatus.PENDING, 10).get().size());
+
+        message.setNextRetryAt(LocalDateTime.now());
+        storage.changePublishStateAsync(message, CapMessageStatus.FAILED, null).get();
+        assertTrue(storage.getPendingPublishedMessagesAsync(CapMessageStatus.PENDING, 10).get().isEmpty());
+        assertEquals(1, storage.getPublishedMessagesOfNeedRetry(Duration.ofMinutes(5)).get().size());
+
+        // 调用方先直接修改对象状态，再通知存储，索引仍应正确迁移
+        message.setStatus(CapMessageStatus.SUCCEEDED);
+        storage.updateStatusAsync(message.getId(), CapMessageStatus.SUCCEEDED).get();
+        assertTrue(storage.getPublishedMessagesOfNeedRetry(Duration.ofMinutes(5)).get().isEmpty());
+
+        assertEquals(1, storage.deletePublishedMessageAsync("1").get());
+        assertTrue(storage.getPendingPublishedMessagesAsync(CapMessageStatus.SUCCEEDED, 10).get().isEmpty());
+    }
+
+    @Test
+    void expiredDelayedMessagesAreReturnedInExpiryOrder() throws Exception {
+        MemoryMessageStorage storage = new MemoryMessageStorage();
+        LocalDateTime now = LocalDateTime.now();
+        for (long id = 1; id <= 5; id++) {
+            CapMessage message = newMessage(id, CapMessageStatus.DELAYED, now);
+            message.setExpiresAt(now.minusSeconds(10 - id));
+            storage.storeMessageAsync("demo", message, null).get();
+        }
+        CapMessage future = newMessage(6L, CapMessageStatus.DELAYED, now);
+        future.setExpiresAt(now.plusMinutes(10));
+        storage.storeMessageAsync("demo", future, null).get();
+
+        List<CapMessage> expired = storage.getExpiredDelayedMessagesAsync(3).get();
+        assertEquals(Arrays.asList(1L, 2L, 3L), expired.stream().map(CapMessage::getId).toList());
+
+        assertEquals(5, storage.batchUpdatePublishedStatusAsync(CapMessageStatus.DELAYED, CapMessageStatus.PENDING, 5).get());
+        assertTrue(storage.getExpiredDelayedMessagesAsync(10).get().isEmpty());
+        assertEquals(1, storage.getPendingPublishedMessagesAsync(CapMessageStatus.DELAYED, 10).get().size());
+    }
+
+    @Test
+    void retryQueryReturnsOnlyDueMessagesInNextRetryOrder() throws Exception {
+        MemoryMessageStorage storage = new MemoryMessageStorage();
+        LocalDateTime now = LocalDateTime.now();
+        for (long id = 1; id <= 5; id++) {
+            CapMessage message = newMessage(id, CapMessageStatus.PENDING, now.minusHours(1));
+            storage.storeMessageAsync("demo", message, null).get();
+
+            // ID 越大越早到期，4、5 尚未到期
+            message.setRetries((int) id);
+            message.setNextRetryAt(id <= 3 ? now.minusSeconds(id) : now.plusMinutes(id));
+            storage.changePublishStateAsync(message, CapMessageStatus.FAILED, null).get();
+        }
+        CapMessage exhausted = newMessage(6L, CapMessageStatus.FAILED, now.minusHours(1));
+        storage.storeMessageAsync("demo", exhausted, null).get();
+
+        List<CapMessage> due = storage.getPublishedMessagesOfNeedRetry(Duration.ofMinutes(5)).get();
+        assertEquals(Arrays.asList(3L, 2L, 1L), due.stream().map(CapMessage::getId).toList());
+
+        storage.changePublishStateAsync(due.get(0), CapMessageStatus.RETRYING, null).get();
+        assertEquals(Arrays.asList(2L, 1L), storage.getPublishedMessagesOfNeedRetry(Duration.ofMinutes(5)).get()
+                .stream().map(CapMessage::getId).toList());
+    }
+
+    @Test
+    void pendingLookupLatencyStaysFlatAsBacklogGrows() throws Exception {
+        long small = medianPendingLookupNanos(10_000);
+        long large = medianPendingLookupNanos(200_000);
+
+        // 全量扫描实现下 20 倍数据量会带来数十倍的耗时，索引查询只依赖 k
+        assertTrue(large < small * 5 + 1_000_000,
+                "pending lookup grew from " + small + "ns to " + large + "ns");
+    }
+
+    private long medianPendingLookupNanos(int total) throws Exception {
+        MemoryMessageStorage storage = new MemoryMessageStorage();
+        LocalDateTime base = LocalDateTime.now().minusHours(1);
+        for (long id = 1; id <= total; id++) {
+            CapMessageStatus status = id % (total / PENDING_COUNT) == 0 ? CapMessageStatus.PENDING : CapMessageStatus.SUCCEEDED;
+            storage.storeMessageAsync("demo", newMessage(id, status, base.plusNanos(id * 1000)), null).get();
+        }
+
+        long[] samples = new long[201];
+        for (int i = 0; i < samples.length; i++) {
+            long start = System.nanoTime();
+            List<CapMessage> pending = storage.getPendingPublishedMessagesAsync(CapMessageStatus.PENDING, 100).get();
+            samples[i] = System.nanoTime() - start;
+            assertEquals(PENDING_COUNT, pending.size());
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+
+    private CapMessage newMessage(long id, CapMessageStatus status, LocalDateTime added) {
+        CapMessage message = new CapMessage("demo", "payload-" + id);
+        message.setDbId(id);
+        message.setStatus(status);
+        message.setAdded(added);
+        return message;
+    }
+}
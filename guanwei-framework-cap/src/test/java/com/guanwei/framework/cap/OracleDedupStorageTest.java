@@ -0,0 +1,99 @@
+package com.guanwei.framework.cap;
+
+import com.guanwei.framework.cap.storage.OracleDedupStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 基于 H2 Oracle 兼容模式验证去重的 MERGE 语义与过期清理
+ */
+class OracleDedupStorageTest {
+
+    private static final long TTL_SECONDS = 3600;
+
+    private JdbcTemplate jdbcTemplate;
+    private OracleDedupStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:cap_dedup_" + System.nanoTime() + ";MODE=Oracle;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        storage = new OracleDedupStorage(jdbcTemplate);
+    }
+
+    @Test
+    void secondMarkOfLiveKeyIsDuplicate() {
+        assertTrue(storage.tryMarkProcessed("AJ1", TTL_SECONDS));
+        assertFalse(storage.tryMarkProcessed("AJ1", TTL_SECONDS));
+        assertTrue(storage.tryMarkProcessed("AJ2", 0));
+        assertFalse(storage.tryMarkProcessed("AJ2", 0));
+    }
+
+    @Test
+    void expiredKeyIsReclaimed() {
+        assertTrue(storage.tryMarkProcessed("AJ1", TTL_SECONDS));
+        expire("AJ1");
+
+        assertTrue(storage.tryMarkProcessed("AJ1", TTL_SECONDS));
+        assertTrue(expiresAt("AJ1").isAfter(LocalDateTime.now()));
+        assertFalse(storage.tryMarkProcessed("AJ1", TTL_SECONDS));
+    }
+
+    @Test
+    void nonDuplicateErrorsPropagate() {
+        jdbcTemplate.execute("DROP TABLE CAP_DEDUP");
+
+        assertThrows(DataAccessException.class, () -> storage.tryMarkProcessed("AJ1", TTL_SECONDS));
+        assertThrows(DataAccessException.class, () -> storage.tryMarkProcessedBatch(List.of("AJ1"), TTL_SECONDS));
+    }
+
+    @Test
+    void batchMarkReportsFirstTimeKeys() {
+        assertTrue(storage.tryMarkProcessed("AJ1", TTL_SECONDS));
+        assertTrue(storage.tryMarkProcessed("AJ2", TTL_SECONDS));
+        expire("AJ2");
+
+        Set<String> first = storage.tryMarkProcessedBatch(List.of("AJ1", "AJ2", "AJ3", "AJ3"), TTL_SECONDS);
+
+        assertEquals(Set.of("AJ2", "AJ3"), first);
+        assertTrue(expiresAt("AJ2").isAfter(LocalDateTime.now()));
+        assertTrue(storage.tryMarkProcessedBatch(List.of("AJ1", "AJ2", "AJ3"), TTL_SECONDS).isEmpty());
+    }
+
+    @Test
+    void expiredKeysAreDeletedInBatches() {
+        for (int i = 1; i <= 25; i++) {
+            assertTrue(storage.tryMarkProcessed("AJ" + i, TTL_SECONDS));
+            expire("AJ" + i);
+        }
+        assertTrue(storage.tryMarkProcessed("LIVE", TTL_SECONDS));
+        assertTrue(storage.tryMarkProcessed("FOREVER", 0));
+
+        assertEquals(25, storage.deleteExpired(10));
+
+        assertEquals(List.of("FOREVER", "LIVE"), jdbcTemplate.queryForList(
+                "SELECT IDEMPOTENT_KEY FROM CAP_DEDUP ORDER BY IDEMPOTENT_KEY", String.class));
+        assertEquals(0, storage.deleteExpired(10));
+    }
+
+    private void expire(String key) {
+        jdbcTemplate.update("UPDATE CAP_DEDUP SET EXPIRESAT = ? WHERE IDEMPOTENT_KEY = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusSeconds(1)), key);
+    }
+
+    private LocalDateTime expiresAt(String key) {
+        return jdbcTemplate.queryForObject("SELECT EXPIRESAT FROM CAP_DEDUP WHERE IDEMPOTENT_KEY = ?",
+                Timestamp.class, key).toLocalDateTime();
+    }
+}
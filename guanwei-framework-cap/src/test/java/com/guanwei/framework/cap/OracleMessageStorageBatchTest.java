@@ -0,0 +1,115 @@
+package com.guanwei.framework.cap;
+
+import com.guanwei.framework.cap.storage.OracleMessageStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 基于 H2 Oracle 兼容模式验证批量状态变更的语句数与索引创建
+ */
+class OracleMessageStorageBatchTest {
+
+    private final AtomicInteger executedStatements = new AtomicInteger();
+
+    private JdbcTemplate jdbcTemplate;
+    private OracleMessageStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource target = new DriverManagerDataSource(
+                "jdbc:h2:mem:cap_" + System.nanoTime() + ";MODE=Oracle;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(new CountingDataSource(target));
+
+        storage = new OracleMessageStorage();
+        ReflectionTestUtils.setField(storage, "jdbcTemplate", jdbcTemplate);
+        storage.initializeTables();
+    }
+
+    @Test
+    void delayedStateChangeUsesOneStatementPerThousandIds() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(storage.storeMessageAsync("demo", "payload-" + i, null).get().getId());
+        }
+
+        executedStatements.set(0);
+        storage.changePublishStateToDelayedAsync(ids).get();
+
+        assertEquals(10, executedStatements.get());
+        assertEquals(10_000, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM CAP_PUBLISHED WHERE STATUSNAME = ?", Integer.class,
+                CapMessageStatus.DELAYED.getValue()));
+    }
+
+    @Test
+    void indexesAreCreatedOnceAndStartupStaysIdempotent() {
+        storage.initializeTables();
+
+        List<String> indexes = jdbcTemplate.queryForList(
+                "SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE INDEX_NAME LIKE 'IDX_CAP_%'", String.class);
+        assertTrue(indexes.contains("IDX_CAP_PUBLISHED_STATUS_ADDED"));
+        assertTrue(indexes.contains("IDX_CAP_PUBLISHED_EXPIRESAT"));
+        assertTrue(indexes.contains("IDX_CAP_RECEIVED_STATUS_ADDED"));
+        assertTrue(indexes.contains("IDX_CAP_RECEIVED_EXPIRESAT"));
+    }
+
+    /**
+     * 统计经由连接执行的语句数（一次 executeBatch 计为一条）
+     */
+    private class CountingDataSource extends DelegatingDataSource {
+
+        CountingDataSource(DriverManagerDataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = super.getConnection();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(connection, method, args);
+                        if (result instanceof Statement statement) {
+                            return countingStatement(statement);
+                        }
+                        return result;
+                    });
+        }
+
+        private Object countingStatement(Statement statement) {
+            Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                    : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("execute")) {
+                            executedStatements.incrementAndGet();
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
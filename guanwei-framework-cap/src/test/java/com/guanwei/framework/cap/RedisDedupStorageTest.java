@@ -0,0 +1,126 @@
+package com.guanwei.framework.cap;
+
+import com.guanwei.framework.cap.storage.RedisDedupStorage;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 基于记录命令的 RedisConnection 替身验证去重标记：每个 key 一条带 EX 的 SET NX，不额外发送 EXPIRE
+ */
+class RedisDedupStorageTest {
+
+    private static final long TTL_SECONDS = 3600;
+
+    private final RecordingRedis redis = new RecordingRedis();
+    private final RedisDedupStorage storage = new RedisDedupStorage(new StringRedisTemplate(redis.factory));
+
+    @Test
+    void singleMarkIsOneSetCommandWithTtl() {
+        assertTrue(storage.tryMarkProcessed("AJ1", TTL_SECONDS));
+        assertFalse(storage.tryMarkProcessed("AJ1", TTL_SECONDS));
+
+        assertEquals(List.of("SET cap:dedup:AJ1 NX EX 3600", "SET cap:dedup:AJ1 NX EX 3600"), redis.commands);
+    }
+
+    @Test
+    void batchMarkIsOneSetCommandPerKeyWithTtl() {
+        assertTrue(storage.tryMarkProcessed("AJ3", TTL_SECONDS));
+        List<String> keys = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            keys.add("AJ" + i);
+        }
+        redis.commands.clear();
+
+        Set<String> first = storage.tryMarkProcessedBatch(keys, TTL_SECONDS);
+
+        assertEquals(99, first.size());
+        assertFalse(first.contains("AJ3"));
+        assertEquals(100, redis.commands.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals("SET cap:dedup:" + keys.get(i) + " NX EX 3600", redis.commands.get(i));
+        }
+        // 整批在一个管道中发送
+        assertEquals(1, redis.pipelines);
+        assertTrue(storage.tryMarkProcessedBatch(keys, TTL_SECONDS).isEmpty());
+    }
+
+    @Test
+    void nonPositiveTtlNeverExpires() {
+        assertTrue(storage.tryMarkProcessed("AJ1", 0));
+        assertTrue(storage.tryMarkProcessedBatch(List.of("AJ2"), 0).contains("AJ2"));
+
+        assertEquals(List.of("SETNX cap:dedup:AJ1", "SET cap:dedup:AJ2 NX"), redis.commands);
+    }
+
+    /**
+     * 记录字符串命令并按 SET NX 语义维护已存在的键，管道内的结果在 closePipeline 时统一返回
+     */
+    private static final class RecordingRedis {
+
+        final List<String> commands = new ArrayList<>();
+        final RedisConnectionFactory factory = mock(RedisConnectionFactory.class);
+        int pipelines;
+        private final Set<String> existing = new HashSet<>();
+        private List<Object> pipelined;
+
+        RecordingRedis() {
+            RedisStringCommands strings = mock(RedisStringCommands.class);
+            RedisConnection connection = mock(RedisConnection.class, CALLS_REAL_METHODS);
+            doReturn(strings).when(connection).stringCommands();
+            doAnswer(invocation -> pipelined != null).when(connection).isPipelined();
+            doAnswer(invocation -> {
+                pipelines++;
+                pipelined = new ArrayList<>();
+                return null;
+            }).when(connection).openPipeline();
+            doAnswer(invocation -> {
+                List<Object> results = pipelined;
+                pipelined = null;
+                return results;
+            }).when(connection).closePipeline();
+
+            doAnswer(invocation -> {
+                String key = string(invocation.getArgument(0));
+                Expiration expiration = invocation.getArgument(2);
+                RedisStringCommands.SetOption option = invocation.getArgument(3);
+                commands.add("SET " + key + (option == RedisStringCommands.SetOption.SET_IF_ABSENT ? " NX" : "")
+                        + (expiration.isPersistent() ? "" : " EX " + expiration.getExpirationTimeInSeconds()));
+                return reply(existing.add(key));
+            }).when(strings).set(any(byte[].class), any(byte[].class), any(Expiration.class),
+                    any(RedisStringCommands.SetOption.class));
+            doAnswer(invocation -> {
+                String key = string(invocation.getArgument(0));
+                commands.add("SETNX " + key);
+                return reply(existing.add(key));
+            }).when(strings).setNX(any(byte[].class), any(byte[].class));
+
+            when(factory.getConnection()).thenReturn(connection);
+        }
+
+        private Boolean reply(boolean result) {
+            if (pipelined != null) {
+                pipelined.add(result);
+                return null;
+            }
+            return result;
+        }
+
+        private static String string(byte[] value) {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.guanwei.framework.cap;
+
+import com.guanwei.framework.cap.storage.RedisMessageStorage;
+import io.lettuce.core.cluster.SlotHash;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证 Redis 脚本访问的键全部通过 KEYS 声明且落在同一 Cluster 槽位
+ */
+class RedisMessageStorageClusterKeysTest {
+
+    @Test
+    void scriptKeysAreDeclaredAndShareOneSlot() throws Exception {
+        RecordingRedis redis = new RecordingRedis();
+        RedisMessageStorage storage = new RedisMessageStorage();
+        ReflectionTestUtils.setField(storage, "indexTemplate", redis);
+
+        storage.updateStatusAsync(1L, CapMessageStatus.FAILED).get(5, TimeUnit.SECONDS);
+        storage.batchUpdatePublishedStatusAsync(CapMessageStatus.PENDING, CapMessageStatus.QUEUED, 10)
+                .get(5, TimeUnit.SECONDS);
+        storage.deletePublishedMessageAsync("1").get(5, TimeUnit.SECONDS);
+
+        assertFalse(redis.calls.isEmpty());
+        for (List<String> keys : redis.calls) {
+            int slot = SlotHash.getSlot(keys.get(0));
+            keys.forEach(key -> assertEquals(slot, SlotHash.getSlot(key), key));
+            // 脚本按索引前缀拼出的键都必须在 KEYS 中声明
+            String prefix = keys.get(0).substring(0, keys.get(0).length() - "status".length());
+            for (CapMessageStatus status : CapMessageStatus.values()) {
+                for (String index : List.of("added", "expires", "retry")) {
+                    assertTrue(keys.contains(prefix + "idx:" + status.getValue() + ":" + index),
+                            prefix + status + ":" + index);
+                }
+            }
+        }
+        assertTrue(redis.calls.stream().anyMatch(keys -> keys.get(0).equals("cap:{published}:status")));
+        assertTrue(redis.calls.stream().anyMatch(keys -> keys.get(0).equals("cap:{received}:status")));
+    }
+
+    /**
+     * 记录脚本声明的键，脚本均按未命中返回
+     */
+    private static class RecordingRedis extends StringRedisTemplate {
+
+        final List<List<String>> calls = new ArrayList<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T> T execute(RedisScript<T> script, RedisSerializer<?> argsSerializer,
+                                          RedisSerializer<T> resultSerializer, List<String> keys, Object... args) {
+            calls.add(List.copyOf(keys));
+            return (T) Long.valueOf(0L);
+        }
+    }
+}
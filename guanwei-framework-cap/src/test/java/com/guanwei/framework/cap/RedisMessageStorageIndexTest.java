@@ -0,0 +1,166 @@
+package com.guanwei.framework.cap;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.guanwei.framework.cap.storage.RedisMessageStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 基于本地 Redis（localhost:6379，DB 15）的索引查询测试，Redis 不可用时跳过
+ */
+class RedisMessageStorageIndexTest {
+
+    private static final int DATABASE = 15;
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisMessageStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration("localhost", 6379);
+        configuration.setDatabase(DATABASE);
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        assumeTrue(isReachable(), "local redis is not available");
+
+        ObjectMapper om = new ObjectMapper().findAndRegisterModules();
+        om.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        om.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        om.activateDefaultTyping(LaissezFaireSubTypeValidator.instance, ObjectMapper.DefaultTyping.NON_FINAL);
+        Jackson2JsonRedisSerializer<Object> serializer = new Jackson2JsonRedisSerializer<>(om, Object.class);
+
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(serializer);
+        template.setHashValueSerializer(serializer);
+        template.afterPropertiesSet();
+
+        storage = new RedisMessageStorage();
+        ReflectionTestUtils.setField(storage, "redisTemplate", template);
+        storage.initialize();
+        cleanup();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (connectionFactory != null) {
+            if (isReachable()) {
+                cleanup();
+            }
+            connectionFactory.destroy();
+        }
+    }
+
+    @Test
+    void pendingQueryUsesTwoRoundTripsRegardlessOfBacklog() throws Exception {
+        LocalDateTime base = LocalDateTime.now().minusMinutes(10);
+        for (long id = 1; id <= 500; id++) {
+            CapMessageStatus status = id % 10 == 0 ? CapMessageStatus.PENDING : CapMessageStatus.SUCCEEDED;
+            storage.storeMessageAsync("demo", newMessage(id, status, base.plusSeconds(id)), null).get();
+        }
+
+        long before = commandsProcessed();
+        List<CapMessage> pending = storage.getPendingPublishedMessagesAsync(CapMessageStatus.PENDING, 20).get();
+        // ZRANGEBYSCORE + 管道中的两条 HMGET，共两次往返、三条命令
+        assertEquals(3, commandsProcessed() - before - 1);
+
+        assertEquals(20, pending.size());
+        assertEquals(10L, pending.get(0).getId());
+        assertTrue(pending.stream().allMatch(m -> m.getStatus() == CapMessageStatus.PENDING));
+    }
+
+    @Test
+    void statusTransitionMovesIdBetweenIndexesInOneCommand() throws Exception {
+        CapMessage message = newMessage(1L, CapMessageStatus.PENDING, LocalDateTime.now());
+        message.setNextRetryAt(LocalDateTime.now());
+        storage.storeMessageAsync("demo", message, null).get();
+
+        long before = commandsProcessed();
+        storage.updateStatusAsync(1L, CapMessageStatus.FAILED).get();
+        // 单条 EVALSHA；脚本首次加载时会额外多一次 EVAL
+        assertTrue(commandsProcessed() - before - 1 <= 2);
+
+        assertTrue(storage.getPendingPublishedMessagesAsync(CapMessageStatus.PENDING, 10).get().isEmpty());
+        List<CapMessage> retry = storage.getPublishedMessagesOfNeedRetry(Duration.ofMinutes(5)).get();
+        assertEquals(1, retry.size());
+        assertEquals(CapMessageStatus.FAILED, retry.get(0).getStatus());
+
+        assertEquals(1, storage.batchUpdatePublishedStatusAsync(CapMessageStatus.FAILED, CapMessageStatus.SUCCEEDED, 10).get());
+        assertTrue(storage.getPublishedMessagesOfNeedRetry(Duration.ofMinutes(5)).get().isEmpty());
+    }
+
+    @Test
+    void expiredDelayedAndCleanupUseExpiryIndex() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        for (long id = 1; id <= 5; id++) {
+            CapMessage message = newMessage(id, CapMessageStatus.DELAYED, now.minusHours(1));
+            message.setExpiresAt(now.minusSeconds(10 - id));
+            storage.storeMessageAsync("demo", message, null).get();
+        }
+        CapMessage future = newMessage(6L, CapMessageStatus.DELAYED, now);
+        future.setExpiresAt(now.plusMinutes(10));
+        storage.storeMessageAsync("demo", future, null).get();
+
+        List<CapMessage> expired = storage.getExpiredDelayedMessagesAsync(3).get();
+        assertEquals(List.of(1L, 2L, 3L), expired.stream().map(CapMessage::getId).toList());
+
+        assertEquals(5, storage.deleteExpiresAsync("cap.published", now.minusMinutes(30), 100).get());
+        assertEquals(1, storage.getPendingPublishedMessagesAsync(CapMessageStatus.DELAYED, 10).get().size());
+        assertEquals(1, storage.deletePublishedMessageAsync("6").get());
+        assertTrue(storage.getPendingPublishedMessagesAsync(CapMessageStatus.DELAYED, 10).get().isEmpty());
+    }
+
+    private CapMessage newMessage(long id, CapMessageStatus status, LocalDateTime added) {
+        CapMessage message = new CapMessage("demo", "payload-" + id);
+        message.setDbId(id);
+        message.setStatus(status);
+        message.setAdded(added);
+        return message;
+    }
+
+    private long commandsProcessed() {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            return Long.parseLong(connection.serverCommands().info("stats").getProperty("total_commands_processed"));
+        }
+    }
+
+    private boolean isReachable() {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            return "PONG".equals(connection.ping());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void cleanup() {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            Set<byte[]> keys = connection.keyCommands().keys("cap:*".getBytes());
+            if (keys != null && !keys.isEmpty()) {
+                connection.keyCommands().del(keys.toArray(new byte[0][]));
+            }
+        }
+    }
+}
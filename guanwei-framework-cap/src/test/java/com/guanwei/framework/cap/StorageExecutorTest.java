@@ -0,0 +1,134 @@
+package com.guanwei.framework.cap;
+
+import com.guanwei.framework.cap.storage.OracleMessageStorage;
+import com.guanwei.framework.cap.storage.StorageExecutor;
+import com.guanwei.framework.cap.util.CapExecutors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 验证存储异步方法运行在专用执行器上：commonPool 被 CPU 任务占满时存储调用仍在 SLA 内完成
+ */
+class StorageExecutorTest {
+
+    private static final long SLA_MILLIS = 500;
+
+    private final List<StorageExecutor> executors = new ArrayList<>();
+    private volatile boolean spinning;
+
+    /**
+     * 保存自旋结果，避免循环体被优化掉
+     */
+    private volatile long spinResult;
+
+    @AfterEach
+    void tearDown() {
+        spinning = false;
+        executors.forEach(StorageExecutor::shutdown);
+    }
+
+    @Test
+    void storageCallsMeetSlaWhileCommonPoolIsSaturated() throws Exception {
+        OracleMessageStorage storage = new OracleMessageStorage();
+        ReflectionTestUtils.setField(storage, "jdbcTemplate", new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:cap_" + System.nanoTime() + ";MODE=Oracle;DB_CLOSE_DELAY=-1", "sa", "")));
+        storage.initializeTables();
+        StorageExecutor executor = executor(4, 100);
+        storage.setStorageExecutor(executor);
+
+        // 每个 commonPool 工作线程都被一个长时间自旋的 CPU 任务占住，后续提交只能排队
+        spinning = true;
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        List<CompletableFuture<Void>> spinners = new ArrayList<>();
+        for (int i = 0; i < parallelism * 2; i++) {
+            spinners.add(CompletableFuture.runAsync(this::spin));
+        }
+        CompletableFuture<Thread> onCommonPool = CompletableFuture.supplyAsync(Thread::currentThread);
+
+        long maxMillis = 0;
+        for (int i = 0; i < 200; i++) {
+            long start = System.nanoTime();
+            CapMessage message = storage.storeMessageAsync("demo", "payload-" + i, null)
+                    .get(SLA_MILLIS, TimeUnit.MILLISECONDS);
+            storage.changePublishStateAsync(message, CapMessageStatus.SUCCEEDED, null)
+                    .get(SLA_MILLIS, TimeUnit.MILLISECONDS);
+            maxMillis = Math.max(maxMillis, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        assertTrue(maxMillis < SLA_MILLIS, "max storage latency " + maxMillis
+                + "ms under saturated common pool, common pool task done=" + onCommonPool.isDone());
+        awaitCompleted(executor, 400);
+        assertEquals(0, executor.getQueueDepth());
+        assertEquals(0, executor.getCallerRunsCount());
+        assertTrue(executor.getTotalLatencyNanos() >= executor.getTotalWaitNanos());
+
+        spinning = false;
+        CompletableFuture.allOf(spinners.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void fullQueueRunsOnCallerThread() throws Exception {
+        StorageExecutor executor = executor(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> blocking = executor.runAsync(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        // 等待唯一的线程开始执行，使下一个任务进入队列
+        while (executor.getActiveCount() == 0) {
+            Thread.sleep(1);
+        }
+        CompletableFuture<String> queued = executor.supplyAsync(() -> Thread.currentThread().getName());
+        assertEquals(1, executor.getQueueDepth());
+
+        String callerThread = executor.supplyAsync(() -> Thread.currentThread().getName()).get(1, TimeUnit.SECONDS);
+
+        assertEquals(Thread.currentThread().getName(), callerThread);
+        assertEquals(1, executor.getCallerRunsCount());
+
+        release.countDown();
+        blocking.get(1, TimeUnit.SECONDS);
+        assertTrue(queued.get(1, TimeUnit.SECONDS).startsWith("cap-storage-"));
+        awaitCompleted(executor, 3);
+    }
+
+    /**
+     * 计数在任务返回后更新，可能略晚于 future 完成
+     */
+    private void awaitCompleted(StorageExecutor executor, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (executor.getCompletedCount() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, executor.getCompletedCount());
+    }
+
+    private void spin() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        long x = 0;
+        while (spinning && System.nanoTime() < deadline) {
+            x += System.nanoTime() % 7;
+        }
+        spinResult = x;
+    }
+
+    private StorageExecutor executor(int threads, int queueCapacity) {
+        StorageExecutor executor = new StorageExecutor(threads, queueCapacity, CapExecutors.MODE_PLATFORM);
+        executors.add(executor);
+        return executor;
+    }
+}
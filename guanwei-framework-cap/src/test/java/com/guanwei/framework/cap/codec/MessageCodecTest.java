@@ -0,0 +1,185 @@
+package com.guanwei.framework.cap.codec;
+
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.CapMessageStatus;
+import com.guanwei.framework.cap.processor.SubscriberMethodInvoker;
+import com.guanwei.framework.cap.queue.RabbitMQMessageQueue;
+import com.guanwei.framework.cap.storage.OracleMessageStorage;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证二进制编解码：内容往返、体积、content-type 随消息传递、BLOB 存储和订阅参数绑定
+ */
+class MessageCodecTest {
+
+    @Test
+    void everyCodecRoundTripsContent() throws Exception {
+        CaseTransfer value = caseTransfer();
+        for (String name : new String[]{"json", "smile", "cbor"}) {
+            CapMessage message = new CapMessage();
+            MessageCodecs.writeContent(message, value, MessageCodecs.get(name));
+
+            assertEquals(value, MessageCodecs.readContent(message, CaseTransfer.class), name);
+            assertTrue(MessageCodecs.contentAsString(message).contains("\"caseNo\":\"AJ2025-0001\""), name);
+        }
+    }
+
+    @Test
+    void binaryEnvelopeIsSmallerThanJsonEnvelope() throws Exception {
+        CapMessage json = message();
+        MessageCodecs.writeContent(json, caseTransfer(), MessageCodecs.json());
+        CapMessage smile = message();
+        MessageCodec codec = MessageCodecs.get("smile");
+        MessageCodecs.writeContent(smile, caseTransfer(), codec);
+
+        int jsonSize = MessageCodecs.json().getObjectMapper().writeValueAsBytes(json).length;
+        int smileSize = codec.getObjectMapper().writeValueAsBytes(smile).length;
+
+        assertTrue(smileSize < jsonSize, "envelope size: json " + jsonSize + ", smile " + smileSize);
+    }
+
+    @Test
+    void unknownNamesAndContentTypes() {
+        assertSame(MessageCodecs.json(), MessageCodecs.get("protobuf"));
+        assertSame(MessageCodecs.json(), MessageCodecs.forContentType(null));
+        assertEquals("smile", MessageCodecs.forContentType("application/x-jackson-smile; v=1").getName());
+        assertNull(MessageCodecs.forContentType("text/plain"));
+    }
+
+    @Test
+    void stringContentIsNotReEncoded() throws Exception {
+        CapMessage message = new CapMessage();
+        MessageCodecs.writeContent(message, "{\"caseNo\":\"AJ1\"}", MessageCodecs.get("cbor"));
+
+        assertEquals("{\"caseNo\":\"AJ1\"}", message.getContent());
+        assertNull(message.getPayload());
+        assertNull(message.getContentType());
+    }
+
+    @Test
+    void rabbitMQCarriesContentTypeAndDecodesBinaryMessage() throws Exception {
+        Channel channel = mock(Channel.class);
+        RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<ChannelCallback<?>>getArgument(0).doInRabbit(channel));
+        RabbitMQMessageQueue queue =
+                new RabbitMQMessageQueue(null, rabbitTemplate, null, null, "cap.exchange", "", 10, 1);
+        CapMessage sent = message();
+        sent.setDbId(7L);
+        sent.setCreatedAt(LocalDateTime.of(2025, 7, 2, 10, 49, 0));
+        MessageCodecs.writeContent(sent, caseTransfer(), MessageCodecs.get("smile"));
+
+        assertTrue(queue.send("case.transfer", sent));
+
+        ArgumentCaptor<AMQP.BasicProperties> properties = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        ArgumentCaptor<byte[]> body = ArgumentCaptor.forClass(byte[].class);
+        verify(channel).basicPublish(eq("cap.exchange"), eq("case.transfer"), eq(false),
+                properties.capture(), body.capture());
+        assertEquals(SmileMessageCodec.CONTENT_TYPE, properties.getValue().getContentType());
+
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType(properties.getValue().getContentType());
+        CapMessage received = queue.decode("case.transfer.v1", new Message(body.getValue(), messageProperties));
+
+        assertEquals(7L, received.getId());
+        assertEquals(sent.getCreatedAt(), received.getCreatedAt());
+        assertEquals(caseTransfer(), MessageCodecs.readContent(received, CaseTransfer.class));
+    }
+
+    @Test
+    void oracleStoresBinaryContentAsBlob() throws Exception {
+        OracleMessageStorage storage = new OracleMessageStorage();
+        ReflectionTestUtils.setField(storage, "jdbcTemplate", new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:cap_" + System.nanoTime() + ";MODE=Oracle;DB_CLOSE_DELAY=-1", "sa", "")));
+        storage.initializeTables();
+
+        CapMessage binary = message();
+        MessageCodecs.writeContent(binary, caseTransfer(), MessageCodecs.get("cbor"));
+        CapMessage text = message();
+        MessageCodecs.writeContent(text, caseTransfer(), MessageCodecs.json());
+        List<CapMessage> messages = new ArrayList<>(List.of(binary, text));
+        storage.storeMessagesAsync(messages).get(5, TimeUnit.SECONDS);
+
+        List<CapMessage> stored = storage.getPendingPublishedMessagesAsync(CapMessageStatus.SCHEDULED, 10)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, stored.size());
+        for (CapMessage message : stored) {
+            assertEquals(caseTransfer(), MessageCodecs.readContent(message, CaseTransfer.class));
+        }
+        CapMessage storedBinary = stored.stream()
+                .filter(message -> message.getId().equals(binary.getId())).findFirst().orElseThrow();
+        assertEquals(CborMessageCodec.CONTENT_TYPE, storedBinary.getContentType());
+        assertNull(storedBinary.getContent());
+    }
+
+    @Test
+    void subscriberParametersBindFromBinaryContent() throws Exception {
+        Handler handler = new Handler();
+        CapMessage message = message();
+        MessageCodecs.writeContent(message, caseTransfer(), MessageCodecs.get("smile"));
+
+        SubscriberMethodInvoker.compile(handler, Handler.class.getMethod("onCase", CaseTransfer.class)).invoke(message);
+        SubscriberMethodInvoker.compile(handler, Handler.class.getMethod("onText", String.class)).invoke(message);
+
+        assertEquals(caseTransfer(), handler.value);
+        assertEquals(new String(MessageCodecs.json().encode(caseTransfer()), StandardCharsets.UTF_8), handler.text);
+    }
+
+    private static CapMessage message() {
+        CapMessage message = new CapMessage();
+        message.setName("case.transfer");
+        return message;
+    }
+
+    private static CaseTransfer caseTransfer() {
+        CaseTransfer value = new CaseTransfer();
+        value.setCaseNo("AJ2025-0001");
+        value.setCaseName("某某公司未按规定办理道路运输经营许可案");
+        value.setOrgCode("330100");
+        value.setAmount(20000L);
+        return value;
+    }
+
+    public static class Handler {
+        private CaseTransfer value;
+        private String text;
+
+        public void onCase(CaseTransfer value) {
+            this.value = value;
+        }
+
+        public void onText(String text) {
+            this.text = text;
+        }
+    }
+
+    @Data
+    public static class CaseTransfer {
+        private String caseNo;
+        private String caseName;
+        private String orgCode;
+        private Long amount;
+    }
+}
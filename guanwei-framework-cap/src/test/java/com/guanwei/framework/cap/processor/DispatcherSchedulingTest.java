@@ -0,0 +1,140 @@
+package com.guanwei.framework.cap.processor;
+
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.CapMessageStatus;
+import com.guanwei.framework.cap.CapProperties;
+import com.guanwei.framework.cap.queue.MemoryMessageQueue;
+import com.guanwei.framework.cap.storage.MemoryMessageStorage;
+import com.guanwei.framework.cap.storage.MessageStorage;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DispatcherSchedulingTest {
+
+    @Test
+    void idleDispatcherDoesNotTouchStorage() throws Exception {
+        MessageStorage storage = mock(MessageStorage.class);
+        DefaultMessageDispatcher dispatcher = new DefaultMessageDispatcher(new CapProperties(), storage,
+                new MemoryMessageQueue(), mock(SubscribeExecutor.class), mock(MessageSender.class));
+
+        dispatcher.start();
+        try {
+            Thread.sleep(10_000);
+            verifyNoInteractions(storage);
+        } finally {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    void delayedMessagesFireAtDueTime() throws Exception {
+        RecordingSender sender = new RecordingSender(20);
+        DefaultMessageDispatcher dispatcher = new DefaultMessageDispatcher(new CapProperties(),
+                new MemoryMessageStorage(), new MemoryMessageQueue(), mock(SubscribeExecutor.class), sender);
+
+        dispatcher.start();
+        try {
+            Map<Long, Long> dueAt = new ConcurrentHashMap<>();
+            for (long i = 1; i <= 20; i++) {
+                CapMessage message = new CapMessage("case.timeout", "AJ" + i);
+                message.setDbId(i);
+                long delayNanos = TimeUnit.MILLISECONDS.toNanos(50 * i);
+                dueAt.put(i, System.nanoTime() + delayNanos);
+                dispatcher.enqueueToScheduler(message, LocalDateTime.now().plusNanos(delayNanos), null).get();
+            }
+
+            assertTrue(sender.done.await(5, TimeUnit.SECONDS));
+            for (Map.Entry<Long, Long> entry : dueAt.entrySet()) {
+                long skewMillis = TimeUnit.NANOSECONDS.toMillis(sender.sentAt.get(entry.getKey()) - entry.getValue());
+                assertTrue(skewMillis > -2 && skewMillis < 10,
+                        "message " + entry.getKey() + " fired with skew " + skewMillis + "ms");
+            }
+        } finally {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    void recoverySweepQueuesExactlyTheDueMessagesAndRevertsOverflow() throws Exception {
+        CapProperties properties = new CapProperties();
+        properties.setPublishQueueCapacity(2);
+        MemoryMessageStorage storage = new MemoryMessageStorage();
+        DefaultMessageDispatcher dispatcher = new DefaultMessageDispatcher(properties, storage,
+                new MemoryMessageQueue(), mock(SubscribeExecutor.class), mock(MessageSender.class));
+
+        // 未到期的延迟消息 ADDED 最早，不能被按状态批量迁移误提前发送
+        Long notDue = storeDelayed(storage, LocalDateTime.now().plusHours(1));
+        Set<Long> due = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            due.add(storeDelayed(storage, LocalDateTime.now().minusSeconds(1)));
+        }
+
+        // 不启动分发线程，发布通道只能容纳 2 条
+        ReflectionTestUtils.invokeMethod(dispatcher, "recoverStoredMessages");
+
+        long giveUpAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (idsOf(storage, CapMessageStatus.QUEUED).size() < 2 && System.nanoTime() < giveUpAt) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(200);
+        assertEquals(Set.of(notDue), idsOf(storage, CapMessageStatus.DELAYED));
+        Set<Long> queued = idsOf(storage, CapMessageStatus.QUEUED);
+        Set<Long> pending = idsOf(storage, CapMessageStatus.PENDING);
+        assertEquals(2, queued.size());
+        assertEquals(1, pending.size());
+        Set<Long> recovered = new HashSet<>(queued);
+        recovered.addAll(pending);
+        assertEquals(due, recovered);
+        assertEquals(2, dispatcher.getPublishQueueDepth());
+        dispatcher.stop();
+    }
+
+    private static Long storeDelayed(MemoryMessageStorage storage, LocalDateTime dueAt) throws Exception {
+        CapMessage message = new CapMessage("case.timeout", "AJ");
+        message.setStatus(CapMessageStatus.DELAYED);
+        message.setExpiresAt(dueAt);
+        return storage.storeMessageAsync("case.timeout", message, null).get(5, TimeUnit.SECONDS).getId();
+    }
+
+    private static Set<Long> idsOf(MemoryMessageStorage storage, CapMessageStatus status) throws Exception {
+        Set<Long> ids = new HashSet<>();
+        for (CapMessage message : storage.getPendingPublishedMessagesAsync(status, 100).get(5, TimeUnit.SECONDS)) {
+            ids.add(message.getId());
+        }
+        return ids;
+    }
+
+    private static class RecordingSender implements MessageSender {
+
+        private final Map<Long, Long> sentAt = new ConcurrentHashMap<>();
+        private final CountDownLatch done;
+
+        RecordingSender(int expected) {
+            this.done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public CompletableFuture<OperateResult> sendAsync(CapMessage message) {
+            sentAt.put(message.getId(), System.nanoTime());
+            done.countDown();
+            return CompletableFuture.completedFuture(OperateResult.success());
+        }
+
+        @Override
+        public CompletableFuture<OperateResult> sendAsync(CapMessage message, long timeout) {
+            return sendAsync(message);
+        }
+    }
+}
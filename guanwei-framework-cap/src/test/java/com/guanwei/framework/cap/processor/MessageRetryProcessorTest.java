@@ -0,0 +1,173 @@
+package com.guanwei.framework.cap.processor;
+
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.CapMessageStatus;
+import com.guanwei.framework.cap.CapProperties;
+import com.guanwei.framework.cap.storage.MemoryMessageStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证重试处理器：入队失败恢复为 FAILED、重试租约过期的 RETRYING 消息被再次取出、入队不占用存储线程、
+ * 扫描锁被接管后停止续期与入队
+ */
+class MessageRetryProcessorTest {
+
+    private final TakenOverStorage storage = new TakenOverStorage();
+    private final MessageDispatcher dispatcher = mock(MessageDispatcher.class);
+    private MessageRetryProcessor processor;
+
+    @AfterEach
+    void tearDown() {
+        if (processor != null) {
+            processor.shutdown();
+        }
+    }
+
+    @Test
+    void failedEnqueueRevertsToFailedWithFreshRetryTime() throws Exception {
+        CountDownLatch attempted = new CountDownLatch(1);
+        when(dispatcher.enqueueToPublish(any())).thenAnswer(invocation -> {
+            attempted.countDown();
+            return CompletableFuture.failedFuture(new IllegalStateException("lane closed"));
+        });
+        CapMessage message = storeDue(CapMessageStatus.FAILED);
+
+        processor = new MessageRetryProcessor(properties(), storage, dispatcher);
+
+        assertTrue(attempted.await(5, TimeUnit.SECONDS));
+        assertTrue(awaitRescheduled(message.getId()), "message was not reverted to FAILED");
+        verify(dispatcher, times(1)).enqueueToPublish(any());
+    }
+
+    @Test
+    void retryingMessageWithExpiredLeaseIsPickedUpAgain() throws Exception {
+        AtomicReference<String> enqueueThread = new AtomicReference<>();
+        CountDownLatch enqueued = new CountDownLatch(1);
+        when(dispatcher.enqueueToPublish(any())).thenAnswer(invocation -> {
+            enqueueThread.set(Thread.currentThread().getName());
+            enqueued.countDown();
+            return CompletableFuture.completedFuture(null);
+        });
+        // 上一个进程置为 RETRYING 后退出，消息只在其内存通道中
+        CapMessage message = storeDue(CapMessageStatus.RETRYING);
+
+        processor = new MessageRetryProcessor(properties(), storage, dispatcher);
+
+        assertTrue(enqueued.await(5, TimeUnit.SECONDS));
+        verify(dispatcher).enqueueToPublish(argThat(m -> m.getId().equals(message.getId())));
+        assertEquals("cap-retry-enqueue", enqueueThread.get());
+        // 新的重试租约尚未到期，不会被重复取出
+        assertTrue(storage.getPublishedMessagesOfNeedRetry(null).get(5, TimeUnit.SECONDS).isEmpty());
+    }
+
+    @Test
+    void lostLockStopsWatchdogAndSweepWithoutReleasing() throws Exception {
+        AtomicInteger enqueued = new AtomicInteger();
+        CountDownLatch firstEnqueued = new CountDownLatch(1);
+        when(dispatcher.enqueueToPublish(any())).thenAnswer(invocation -> {
+            enqueued.incrementAndGet();
+            firstEnqueued.countDown();
+            // 第一条入队耗时超过 TTL/3，期间看门狗续期发现锁已被接管
+            Thread.sleep(700);
+            return CompletableFuture.completedFuture(null);
+        });
+        for (int i = 0; i < 3; i++) {
+            storeDue(CapMessageStatus.FAILED);
+        }
+        storage.takenOver.set(true);
+        CapProperties properties = properties();
+        properties.setUseStorageLock(true);
+        properties.setStorageLockTtl(1);
+
+        processor = new MessageRetryProcessor(properties, storage, dispatcher);
+
+        assertTrue(firstEnqueued.await(5, TimeUnit.SECONDS));
+        Thread.sleep(2000);
+        assertEquals(1, enqueued.get(), "sweep kept enqueueing after the lock was taken over");
+        assertEquals(1, storage.renewals.get(), "watchdog kept renewing a lost lock");
+        assertEquals(0, storage.releases.get(), "released a lock held by another instance");
+    }
+
+    private CapMessage storeDue(CapMessageStatus status) throws Exception {
+        CapMessage message = storage.storeMessageAsync("case.transfer", "{\"caseId\":\"AJ1\"}", null)
+                .get(5, TimeUnit.SECONDS);
+        message.setRetries(1);
+        message.setNextRetryAt(LocalDateTime.now().minusSeconds(1));
+        storage.changePublishStateAsync(message, status, null).get(5, TimeUnit.SECONDS);
+        return message;
+    }
+
+    /**
+     * 等待消息恢复为 FAILED 且按失败重试间隔重新排期
+     */
+    private boolean awaitRescheduled(Long id) throws Exception {
+        long giveUpAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < giveUpAt) {
+            for (CapMessage message : storage.getPendingPublishedMessagesAsync(CapMessageStatus.FAILED, 10)
+                    .get(5, TimeUnit.SECONDS)) {
+                if (message.getId().equals(id) && message.getNextRetryAt() != null
+                        && message.getNextRetryAt().isAfter(LocalDateTime.now().plusSeconds(30))) {
+                    return true;
+                }
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+    /**
+     * 只有第一次能获取到发布重试锁，之后锁被其他实例接管：续期返回 false，再次获取失败
+     */
+    private static class TakenOverStorage extends MemoryMessageStorage {
+
+        final AtomicBoolean takenOver = new AtomicBoolean();
+        final AtomicBoolean acquired = new AtomicBoolean();
+        final AtomicInteger renewals = new AtomicInteger();
+        final AtomicInteger releases = new AtomicInteger();
+
+        @Override
+        public CompletableFuture<Boolean> acquireLockAsync(String key, Duration ttl, String instance) {
+            if (takenOver.get() && key.startsWith("publish_retry_")) {
+                return CompletableFuture.completedFuture(acquired.compareAndSet(false, true));
+            }
+            return super.acquireLockAsync(key, ttl, instance);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> renewLockAsync(String key, Duration ttl, String instance) {
+            if (takenOver.get() && key.startsWith("publish_retry_")) {
+                renewals.incrementAndGet();
+                return CompletableFuture.completedFuture(false);
+            }
+            return super.renewLockAsync(key, ttl, instance);
+        }
+
+        @Override
+        public CompletableFuture<Void> releaseLockAsync(String key, String instance) {
+            if (takenOver.get() && key.startsWith("publish_retry_")) {
+                releases.incrementAndGet();
+            }
+            return super.releaseLockAsync(key, instance);
+        }
+    }
+
+    private static CapProperties properties() {
+        CapProperties properties = new CapProperties();
+        properties.setFailedRetryPollInterval(1);
+        return properties;
+    }
+}
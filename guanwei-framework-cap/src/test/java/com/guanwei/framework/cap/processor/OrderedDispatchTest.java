@@ -0,0 +1,144 @@
+package com.guanwei.framework.cap.processor;
+
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.CapProperties;
+import com.guanwei.framework.cap.queue.MemoryMessageQueue;
+import com.guanwei.framework.cap.storage.MemoryMessageStorage;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderedDispatchTest {
+
+    @Test
+    void sameKeyIsExecutedInPublishOrderAcrossLanes() throws Exception {
+        int messageCount = 100_000;
+        int keyCount = 1_000;
+        RecordingExecutor executor = new RecordingExecutor(messageCount, 0);
+        DefaultMessageDispatcher dispatcher = dispatcher(8, executor);
+
+        dispatcher.start();
+        try {
+            Random random = new Random(20240101L);
+            Map<String, Integer> sequences = new HashMap<>();
+            for (int i = 0; i < messageCount; i++) {
+                String key = "AJ" + random.nextInt(keyCount);
+                int sequence = sequences.merge(key, 1, Integer::sum);
+                dispatcher.enqueueToExecute(message(key, sequence)).get();
+            }
+
+            assertTrue(executor.done.await(30, TimeUnit.SECONDS));
+            assertEquals(0, executor.outOfOrder.get());
+            assertEquals(sequences, executor.lastSequence);
+            assertTrue(executor.threads.size() > 1, "expected parallel lanes, got " + executor.threads);
+        } finally {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    void throughputScalesWithLaneCount() throws Exception {
+        long oneLane = drain(1);
+        long fourLanes = drain(4);
+
+        // 每条消息阻塞约1ms，4个通道应接近4倍吞吐
+        assertTrue(oneLane > fourLanes * 2.5,
+                "1 lane: " + oneLane + "ms, 4 lanes: " + fourLanes + "ms");
+    }
+
+    @Test
+    void sameKeyAlwaysMapsToSameLane() {
+        OrderedLanes lanes = new OrderedLanes(8, 64);
+        CapMessage first = message("AJ20240001", 1);
+        CapMessage second = message("AJ20240001", 2);
+
+        assertEquals(lanes.laneOf(first), lanes.laneOf(second));
+    }
+
+    private long drain(int lanes) throws Exception {
+        int messageCount = 1_200;
+        RecordingExecutor executor = new RecordingExecutor(messageCount, 1);
+        DefaultMessageDispatcher dispatcher = dispatcher(lanes, executor);
+
+        dispatcher.start();
+        try {
+            Map<String, Integer> sequences = new HashMap<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < messageCount; i++) {
+                String key = "AJ" + (i % 64);
+                dispatcher.enqueueToExecute(message(key, sequences.merge(key, 1, Integer::sum))).get();
+            }
+            assertTrue(executor.done.await(30, TimeUnit.SECONDS));
+            assertEquals(0, executor.outOfOrder.get());
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } finally {
+            dispatcher.stop();
+        }
+    }
+
+    private DefaultMessageDispatcher dispatcher(int lanes, SubscribeExecutor executor) {
+        CapProperties props = new CapProperties();
+        props.setEnableSubscriberParallelExecute(true);
+        props.setSubscriberParallelExecuteThreadCount(lanes);
+        props.setSubscriberParallelExecuteBufferFactor(512);
+        return new DefaultMessageDispatcher(props, new MemoryMessageStorage(), new MemoryMessageQueue(),
+                executor, null);
+    }
+
+    private static CapMessage message(String key, int sequence) {
+        CapMessage message = new CapMessage("case.changed", String.valueOf(sequence));
+        message.setHeader(CapMessage.ORDERING_KEY_HEADER, key);
+        return message;
+    }
+
+    /**
+     * 记录每个顺序键最近处理到的序号
+     */
+    private static class RecordingExecutor implements SubscribeExecutor {
+
+        private final Map<String, Integer> lastSequence = new ConcurrentHashMap<>();
+        private final Set<String> threads = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger outOfOrder = new AtomicInteger();
+        private final CountDownLatch done;
+        private final long sleepMillis;
+
+        RecordingExecutor(int expected, long sleepMillis) {
+            this.done = new CountDownLatch(expected);
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public CompletableFuture<OperateResult> executeAsync(CapMessage message) {
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            int sequence = Integer.parseInt(message.getContent());
+            Integer previous = lastSequence.put(message.getOrderingKey(), sequence);
+            if (sequence != (previous == null ? 0 : previous) + 1) {
+                outOfOrder.incrementAndGet();
+            }
+            threads.add(Thread.currentThread().getName());
+            done.countDown();
+            return CompletableFuture.completedFuture(OperateResult.success());
+        }
+
+        @Override
+        public CompletableFuture<OperateResult> executeAsync(CapMessage message, ConsumerExecutorDescriptor descriptor) {
+            return executeAsync(message);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.guanwei.framework.cap.processor;
+
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.CapMessageStatus;
+import com.guanwei.framework.cap.CapProperties;
+import com.guanwei.framework.cap.storage.OracleMessageStorage;
+import com.guanwei.framework.cap.storage.RedisMessageStorage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证存储锁：两个重试处理器在 H2（Oracle 兼容模式）上竞争时每条消息只重试一次，
+ * 扫描耗时超过租约时看门狗续期保持锁；Redis 锁在本地替身上的竞争、续期与脚本复用
+ */
+class StorageLockRaceTest {
+
+    private static final int MESSAGE_COUNT = 50;
+
+    private final List<MessageRetryProcessor> processors = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        processors.forEach(MessageRetryProcessor::shutdown);
+    }
+
+    @Test
+    void twoProcessorsOverH2RetryEachMessageOnceAndWatchdogKeepsLease() throws Exception {
+        OracleMessageStorage storage = new OracleMessageStorage();
+        ReflectionTestUtils.setField(storage, "jdbcTemplate", new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:cap_" + System.nanoTime() + ";MODE=Oracle;DB_CLOSE_DELAY=-1", "sa", "")));
+        storage.initializeTables();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            CapMessage message = storage.storeMessageAsync("case.transfer", "payload-" + i, null).get(5, TimeUnit.SECONDS);
+            message.setRetries(1);
+            message.setNextRetryAt(LocalDateTime.now().minusSeconds(1));
+            storage.changePublishStateAsync(message, CapMessageStatus.FAILED, null).get(5, TimeUnit.SECONDS);
+        }
+
+        // 每条消息的重新入队都耗时 2.5 秒，整次扫描远超 1 秒的租约
+        Map<Long, Integer> enqueued = new ConcurrentHashMap<>();
+        CountDownLatch allEnqueued = new CountDownLatch(MESSAGE_COUNT);
+        CountDownLatch sweepDone = new CountDownLatch(MESSAGE_COUNT);
+        MessageDispatcher dispatcher = mock(MessageDispatcher.class);
+        when(dispatcher.enqueueToExecute(any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(dispatcher.enqueueToPublish(any())).thenAnswer(invocation -> {
+            CapMessage message = invocation.getArgument(0);
+            enqueued.merge(message.getId(), 1, Integer::sum);
+            allEnqueued.countDown();
+            return CompletableFuture.runAsync(sweepDone::countDown,
+                    CompletableFuture.delayedExecutor(2500, TimeUnit.MILLISECONDS));
+        });
+
+        CapProperties properties = new CapProperties();
+        properties.setUseStorageLock(true);
+        properties.setStorageLockTtl(1);
+        properties.setFailedRetryPollInterval(1);
+        processors.add(new MessageRetryProcessor(properties, storage, dispatcher));
+        processors.add(new MessageRetryProcessor(properties, storage, dispatcher));
+
+        String lockKey = "publish_retry_" + properties.getVersion();
+        assertTrue(allEnqueued.await(10, TimeUnit.SECONDS));
+        Thread.sleep(1500);
+        assertTrue(sweepDone.getCount() > 0, "sweep finished too early");
+        assertFalse(storage.acquireLockAsync(lockKey, Duration.ofSeconds(1), "intruder").get(5, TimeUnit.SECONDS),
+                "lease expired while the sweep was still running");
+
+        assertTrue(sweepDone.await(10, TimeUnit.SECONDS));
+        Thread.sleep(1500);
+        assertEquals(MESSAGE_COUNT, enqueued.size());
+        enqueued.forEach((id, count) -> assertEquals(1, count, "message " + id + " retried " + count + " times"));
+    }
+
+    @Test
+    void redisLockRacesOnLocalStandIn() throws Exception {
+        LocalRedis redis = new LocalRedis();
+        RedisMessageStorage first = redisStorage(redis);
+        RedisMessageStorage second = redisStorage(redis);
+        Duration ttl = Duration.ofMillis(300);
+
+        for (int round = 0; round < 20; round++) {
+            String key = "publish_retry_" + round;
+            CompletableFuture<Boolean> a = first.acquireLockAsync(key, ttl, "a");
+            CompletableFuture<Boolean> b = second.acquireLockAsync(key, ttl, "b");
+            assertTrue(a.get(5, TimeUnit.SECONDS) ^ b.get(5, TimeUnit.SECONDS), "round " + round);
+        }
+
+        assertTrue(first.acquireLockAsync("received_retry", ttl, "a").get(5, TimeUnit.SECONDS));
+        // 非持有者的续期与释放不生效
+        assertFalse(second.renewLockAsync("received_retry", Duration.ofSeconds(10), "b").get(5, TimeUnit.SECONDS));
+        second.releaseLockAsync("received_retry", "b").get(5, TimeUnit.SECONDS);
+        assertFalse(second.acquireLockAsync("received_retry", ttl, "b").get(5, TimeUnit.SECONDS));
+
+        // 持有者按 TTL/3 续期，超过原租约后仍然持有
+        for (int i = 0; i < 6; i++) {
+            Thread.sleep(ttl.toMillis() / 3);
+            assertTrue(first.renewLockAsync("received_retry", ttl, "a").get(5, TimeUnit.SECONDS));
+        }
+        assertFalse(second.acquireLockAsync("received_retry", ttl, "b").get(5, TimeUnit.SECONDS));
+
+        // 停止续期后租约过期，可被接管
+        Thread.sleep(ttl.toMillis() + 100);
+        assertTrue(second.acquireLockAsync("received_retry", ttl, "b").get(5, TimeUnit.SECONDS));
+        second.releaseLockAsync("received_retry", "b").get(5, TimeUnit.SECONDS);
+        assertTrue(first.acquireLockAsync("received_retry", ttl, "a").get(5, TimeUnit.SECONDS));
+
+        assertEquals(3, redis.scripts.size(), "lock scripts should be reused across calls");
+    }
+
+    private static RedisMessageStorage redisStorage(LocalRedis redis) {
+        RedisMessageStorage storage = new RedisMessageStorage();
+        ReflectionTestUtils.setField(storage, "indexTemplate", redis);
+        return storage;
+    }
+
+    /**
+     * 本地 Redis 替身：按脚本语义在单一监视器下执行锁脚本，与 Redis 单线程执行 Lua 的原子性一致
+     */
+    private static class LocalRedis extends StringRedisTemplate {
+
+        final Set<RedisScript<?>> scripts = ConcurrentHashMap.newKeySet();
+        private final Map<String, String> values = new HashMap<>();
+        private final Map<String, Long> expiresAt = new HashMap<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            scripts.add(script);
+            String key = keys.get(0);
+            long now = System.currentTimeMillis();
+            if (expiresAt.containsKey(key) && expiresAt.get(key) <= now) {
+                values.remove(key);
+                expiresAt.remove(key);
+            }
+            String text = script.getScriptAsString();
+            long result;
+            if (text.contains("'NX'")) {
+                result = values.putIfAbsent(key, (String) args[1]) == null ? 1L : 0L;
+                if (result == 1L) {
+                    expiresAt.put(key, now + Long.parseLong((String) args[0]));
+                }
+            } else if (text.contains("'pexpire'")) {
+                result = args[0].equals(values.get(key)) ? 1L : 0L;
+                if (result == 1L) {
+                    expiresAt.put(key, now + Long.parseLong((String) args[1]));
+                }
+            } else if (text.contains("'del'")) {
+                result = args[0].equals(values.get(key)) ? 1L : 0L;
+                if (result == 1L) {
+                    values.remove(key);
+                    expiresAt.remove(key);
+                }
+            } else {
+                throw new UnsupportedOperationException(text);
+            }
+            return (T) Long.valueOf(result);
+        }
+    }
+}
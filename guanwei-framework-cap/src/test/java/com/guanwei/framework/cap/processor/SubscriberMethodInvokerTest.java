@@ -0,0 +1,194 @@
+package com.guanwei.framework.cap.processor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.guanwei.framework.cap.CapMessage;
+import com.guanwei.framework.cap.annotation.CapSubscribe;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationContext;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SubscriberMethodInvokerTest {
+
+    private static final String CASE_JSON = "{\"caseId\":\"AJ20240001\",\"status\":2}";
+
+    @Test
+    void bindsSingleCapMessageParameter() throws Exception {
+        CaseSubscriber subscriber = new CaseSubscriber();
+        CapSubscribeProcessor.SubscribeHandler handler = handler(subscriber, "onMessage", CapMessage.class);
+        CapMessage message = message("payload");
+
+        handler.handle(message);
+
+        assertSame(message, subscriber.received.get(0));
+    }
+
+    @Test
+    void bindsSingleStringParameterToContent() throws Exception {
+        CaseSubscriber subscriber = new CaseSubscriber();
+        CapSubscribeProcessor.SubscribeHandler handler = handler(subscriber, "onContent", String.class);
+
+        assertEquals("payload", handler.handle(message("payload")));
+    }
+
+    @Test
+    void bindsStringAndCapMessageParameters() throws Exception {
+        CaseSubscriber subscriber = new CaseSubscriber();
+        CapSubscribeProcessor.SubscribeHandler handler =
+                handler(subscriber, "onContentAndMessage", String.class, CapMessage.class);
+
+        assertEquals("payload#7", handler.handle(message("payload")));
+    }
+
+    @Test
+    void deserializesPojoParameterWithSharedMapper() throws Exception {
+        CaseSubscriber subscriber = new CaseSubscriber();
+        Method method = CaseSubscriber.class.getMethod("onCase", CaseEvent.class);
+        SubscriberMethodInvoker invoker = SubscriberMethodInvoker.compile(subscriber, method, new ObjectMapper());
+
+        assertTrue(invoker.isLambda());
+        assertEquals(2, invoker.invoke(message(CASE_JSON)));
+        assertEquals("AJ20240001", ((CaseEvent) subscriber.received.get(0)).getCaseId());
+    }
+
+    @Test
+    void subscriberExceptionsAreNotWrapped() throws Exception {
+        CaseSubscriber subscriber = new CaseSubscriber();
+        CapSubscribeProcessor.SubscribeHandler handler = handler(subscriber, "onFailure", String.class);
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> handler.handle(message("payload")));
+        assertEquals("payload", ex.getMessage());
+    }
+
+    @Test
+    void bindsBatchOfPojosAndCapMessages() throws Exception {
+        CaseSubscriber subscriber = new CaseSubscriber();
+        CapSubscribeProcessor.SubscribeHandler cases = handler(subscriber, "onCases", List.class);
+        CapSubscribeProcessor.SubscribeHandler messages = handler(subscriber, "onMessages", List.class);
+        List<CapMessage> batch = List.of(message(CASE_JSON), message("{\"caseId\":\"AJ20240002\",\"status\":3}"));
+
+        assertTrue(cases.isBatch());
+        assertEquals(5, cases.handleBatch(batch));
+        assertEquals("AJ20240002", ((CaseEvent) subscriber.received.get(1)).getCaseId());
+
+        assertTrue(messages.isBatch());
+        messages.handleBatch(batch);
+        assertSame(batch, subscriber.received.get(2));
+    }
+
+    @Test
+    void listParameterWithoutBatchSizeBindsContent() throws Exception {
+        CaseSubscriber subscriber = new CaseSubscriber();
+        CapSubscribeProcessor.SubscribeHandler handler = handler(subscriber, "onCaseArray", List.class);
+
+        assertFalse(handler.isBatch());
+        assertEquals(1, handler.handle(message("[" + CASE_JSON + "]")));
+    }
+
+    @Test
+    void invokerResolvesBeanOnlyOncePerDescriptor() throws Exception {
+        CaseSubscriber subscriber = new CaseSubscriber();
+        ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBean(CaseSubscriber.class)).thenReturn(subscriber);
+
+        Method method = CaseSubscriber.class.getMethod("onCase", CaseEvent.class);
+        ConsumerExecutorDescriptor descriptor =
+                new ConsumerExecutorDescriptor(CaseSubscriber.class, method, method.getAnnotation(CapSubscribe.class));
+        DefaultSubscribeInvoker invoker = new DefaultSubscribeInvoker(applicationContext, new ObjectMapper());
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(2, invoker.invokeAsync(message(CASE_JSON), descriptor));
+        }
+
+        verify(applicationContext, times(1)).getBean(CaseSubscriber.class);
+        assertNotNull(descriptor.getInvoker());
+        assertEquals(100, subscriber.received.size());
+    }
+
+    private CapSubscribeProcessor.SubscribeHandler handler(Object bean, String methodName, Class<?>... parameterTypes)
+            throws Exception {
+        Method method = bean.getClass().getMethod(methodName, parameterTypes);
+        return new CapSubscribeProcessor.SubscribeHandler(bean, method, method.getAnnotation(CapSubscribe.class),
+                new ObjectMapper());
+    }
+
+    private CapMessage message(String content) {
+        CapMessage message = new CapMessage("case.created", content);
+        message.setDbId(7L);
+        return message;
+    }
+
+    public static class CaseSubscriber {
+
+        private final List<Object> received = new ArrayList<>();
+
+        @CapSubscribe("case.created")
+        public void onMessage(CapMessage message) {
+            received.add(message);
+        }
+
+        @CapSubscribe("case.created")
+        public String onContent(String content) {
+            return content;
+        }
+
+        @CapSubscribe("case.created")
+        public String onContentAndMessage(String content, CapMessage message) {
+            return content + "#" + message.getId();
+        }
+
+        @CapSubscribe("case.created")
+        public int onCase(CaseEvent event) {
+            received.add(event);
+            return event.getStatus();
+        }
+
+        @CapSubscribe(value = "case.created", maxBatchSize = 100)
+        public int onCases(List<CaseEvent> events) {
+            received.addAll(events);
+            return events.stream().mapToInt(CaseEvent::getStatus).sum();
+        }
+
+        @CapSubscribe(value = "case.created", maxBatchSize = 100)
+        public void onMessages(List<CapMessage> messages) {
+            received.add(messages);
+        }
+
+        @CapSubscribe("case.created")
+        public int onCaseArray(List<CaseEvent> events) {
+            return events.size();
+        }
+
+        @CapSubscribe("case.created")
+        public void onFailure(String content) {
+            throw new IllegalStateException(content);
+        }
+    }
+
+    public static class CaseEvent {
+
+        private String caseId;
+        private int status;
+
+        public String getCaseId() {
+            return caseId;
+        }
+
+        public void setCaseId(String caseId) {
+            this.caseId = caseId;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public void setStatus(int status) {
+            this.status = status;
+        }
+    }
+}
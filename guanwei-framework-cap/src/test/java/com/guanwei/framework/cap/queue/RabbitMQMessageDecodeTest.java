@@ -0,0 +1,124 @@
+package com.guanwei.framework.cap.queue;
+
+import com.guanwei.framework.cap.CapMessage;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 验证接收解码：按 contentEncoding 一次解析，缺失时探测编码（兼容历史 GBK 消息），并兼容多种日期格式
+ */
+class RabbitMQMessageDecodeTest {
+
+    private static final String QUEUE = "case.transfer.v1";
+    private static final Charset GBK = Charset.forName("GBK");
+
+    private final RabbitMQMessageQueue queue =
+            new RabbitMQMessageQueue(null, null, null, null, "cap.exchange", "", 10, 1);
+
+    @Test
+    void utf8BodyWithContentEncodingDecodes() {
+        CapMessage message = queue.decode(QUEUE, message(json(1L, "案件移交"), StandardCharsets.UTF_8, "UTF-8"));
+
+        assertEquals(1L, message.getId());
+        assertEquals("案件移交", message.getContent());
+    }
+
+    @Test
+    void legacyGbkBodyWithoutContentEncodingDecodes() {
+        CapMessage message = queue.decode(QUEUE, message(json(2L, "案件移交"), GBK, null));
+
+        assertEquals(2L, message.getId());
+        assertEquals("案件移交", message.getContent());
+    }
+
+    @Test
+    void gbkBodyWithContentEncodingDecodes() {
+        CapMessage message = queue.decode(QUEUE, message(json(3L, "卷宗归档"), GBK, "GBK"));
+
+        assertEquals("卷宗归档", message.getContent());
+    }
+
+    @Test
+    void utf8BodyWithoutContentEncodingDecodes() {
+        CapMessage message = queue.decode(QUEUE, message(json(4L, "案件移交"), StandardCharsets.UTF_8, null));
+
+        assertEquals("案件移交", message.getContent());
+    }
+
+    @Test
+    void legacyGbkBusinessObjectIsWrapped() {
+        String json = "{\"caseNo\":\"AJ1\",\"title\":\"案件移交\"}";
+        CapMessage message = queue.decode(QUEUE, message(json, GBK, null));
+
+        assertNotNull(message.getId());
+        assertEquals(json, message.getContent());
+    }
+
+    @Test
+    void allHistoricalDateFormatsAreAccepted() {
+        LocalDateTime expected = LocalDateTime.of(2025, 7, 2, 10, 49, 0);
+        String[] values = {
+                "2025-07-02T10:49:00+08:00", "2025-07-02T10:49:00", "2025-07-02 10:49:00", "2025-07-02T10:49:00.000"
+        };
+        for (String value : values) {
+            String json = "{\"dbId\":5,\"name\":\"demo\",\"content\":\"hello\",\"createdAt\":\"" + value + "\"}";
+            CapMessage message = queue.decode(QUEUE, message(json, StandardCharsets.UTF_8, "UTF-8"));
+            assertEquals(expected, message.getCreatedAt(), value);
+        }
+    }
+
+    @Test
+    void sentBodyCarriesContentEncodingAndRoundTrips() throws Exception {
+        Channel channel = mock(Channel.class);
+        RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<ChannelCallback<?>>getArgument(0).doInRabbit(channel));
+        RabbitMQMessageQueue sender =
+                new RabbitMQMessageQueue(null, rabbitTemplate, null, null, "cap.exchange", "", 10, 1);
+        CapMessage sent = new CapMessage("case.transfer", "案件移交");
+        sent.setDbId(6L);
+        sent.setCreatedAt(LocalDateTime.of(2025, 7, 2, 10, 49, 0, 123_000_000));
+
+        assertTrue(sender.send("case.transfer", sent));
+
+        ArgumentCaptor<AMQP.BasicProperties> properties = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        ArgumentCaptor<byte[]> body = ArgumentCaptor.forClass(byte[].class);
+        verify(channel).basicPublish(eq("cap.exchange"), eq("case.transfer"), eq(false),
+                properties.capture(), body.capture());
+        assertEquals("UTF-8", properties.getValue().getContentEncoding());
+        assertEquals(MessageProperties.CONTENT_TYPE_JSON, properties.getValue().getContentType());
+
+        CapMessage received = queue.decode(QUEUE, message(body.getValue(), "UTF-8"));
+        assertEquals(6L, received.getId());
+        assertEquals(sent.getContent(), received.getContent());
+        assertEquals(sent.getCreatedAt(), received.getCreatedAt());
+    }
+
+    private String json(long id, String content) {
+        return "{\"dbId\":" + id + ",\"name\":\"case.transfer\",\"group\":\"group\",\"content\":\"" + content + "\"}";
+    }
+
+    private Message message(String json, Charset charset, String contentEncoding) {
+        return message(json.getBytes(charset), contentEncoding);
+    }
+
+    private Message message(byte[] body, String contentEncoding) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentEncoding(contentEncoding);
+        return new Message(body, properties);
+    }
+}
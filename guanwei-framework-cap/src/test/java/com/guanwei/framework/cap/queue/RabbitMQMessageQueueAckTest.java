@@ -0,0 +1,109 @@
+package com.guanwei.framework.cap.queue;
+
+import com.guanwei.framework.cap.CapMessage;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 直接驱动监听器回调验证推送缓冲与 basicAck/basicNack，无需真实 broker
+ */
+class RabbitMQMessageQueueAckTest {
+
+    private static final String QUEUE = "demo.group.v1";
+
+    private final RabbitMQMessageQueue queue =
+            new RabbitMQMessageQueue(null, null, null, null, "cap.exchange", "", 10, 2);
+
+    @Test
+    void pushedMessagesAreAckedAndNackedByDeliveryTag() throws Exception {
+        Channel channel = mock(Channel.class);
+        queue.handleDelivery(QUEUE, delivery(1L, 11L), channel);
+        queue.handleDelivery(QUEUE, delivery(2L, 12L), channel);
+
+        List<CapMessage> messages = queue.receiveBatch(QUEUE, 10, 100);
+        assertEquals(List.of(1L, 2L), messages.stream().map(CapMessage::getId).toList());
+
+        assertTrue(queue.acknowledge(QUEUE, 1L));
+        verify(channel).basicAck(11L, false);
+
+        assertTrue(queue.reject(QUEUE, 2L, true));
+        verify(channel).basicNack(12L, false, true);
+
+        // 同一投递不能重复确认
+        assertFalse(queue.acknowledge(QUEUE, 1L));
+        verifyNoMoreInteractions(channel);
+    }
+
+    @Test
+    void redeliveredMessageReleasesThePreviousDeliveryTag() throws Exception {
+        Channel channel = mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+        queue.handleDelivery(QUEUE, delivery(5L, 41L), channel);
+        queue.handleDelivery(QUEUE, delivery(5L, 42L), channel);
+
+        // 旧的投递标签立即确认，不再占用预取额度
+        verify(channel).basicAck(41L, false);
+        assertTrue(queue.reject(QUEUE, 5L, true));
+        verify(channel).basicNack(42L, false, true);
+        assertFalse(queue.acknowledge(QUEUE, 5L));
+    }
+
+    @Test
+    void deliveriesOfClosedChannelAreDropped() throws Exception {
+        Channel closed = mock(Channel.class);
+        Channel current = mock(Channel.class);
+        when(current.isOpen()).thenReturn(true);
+        queue.handleDelivery(QUEUE, delivery(6L, 51L), closed);
+        queue.handleDelivery(QUEUE, delivery(7L, 1L), current);
+
+        assertFalse(queue.acknowledge(QUEUE, 6L));
+        assertTrue(queue.acknowledge(QUEUE, 7L));
+        verify(current).basicAck(1L, false);
+        verify(closed, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void undecodableMessageIsNackedWithoutRequeue() throws Exception {
+        Channel channel = mock(Channel.class);
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(21L);
+
+        queue.handleDelivery(QUEUE, new Message(new byte[0], properties), channel);
+
+        verify(channel).basicNack(21L, false, false);
+        verifyNoMoreInteractions(channel);
+    }
+
+    @Test
+    void receiveWakesUpAsSoonAsMessageIsPushed() throws Exception {
+        Channel channel = mock(Channel.class);
+        queue.handleDelivery(QUEUE, delivery(0L, 30L), channel);
+        queue.receive(QUEUE, 10);
+
+        CompletableFuture<CapMessage> waiting = CompletableFuture.supplyAsync(() -> queue.receive(QUEUE, 5000));
+        Thread.sleep(50);
+        long pushedAt = System.nanoTime();
+        queue.handleDelivery(QUEUE, delivery(3L, 31L), channel);
+
+        CapMessage received = waiting.get(1, TimeUnit.SECONDS);
+        assertEquals(3L, received.getId());
+        assertTrue(System.nanoTime() - pushedAt < TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    private Message delivery(long id, long deliveryTag) {
+        MessageProperties properties = new MessageProperties();
+        properties.setDeliveryTag(deliveryTag);
+        String json = "{\"dbId\":" + id + ",\"name\":\"demo\",\"group\":\"group\",\"content\":\"hello\"}";
+        return new Message(json.getBytes(StandardCharsets.UTF_8), properties);
+    }
+}
@@ -0,0 +1,194 @@
+package com.guanwei.framework.cap.queue;
+
+import com.guanwei.framework.cap.CapMessage;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 以 Mockito 通道模拟进程内 broker：发布只计数，每次等待确认模拟一次往返延迟，
+ * 对比同步发送、逐条确认与批量确认的发送吞吐，并验证拓扑只声明一次
+ */
+class RabbitMQSendBenchmarkTest {
+
+    private static final int MESSAGE_COUNT = 5000;
+    private static final long CONFIRM_ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final AtomicInteger published = new AtomicInteger();
+    private final AtomicInteger confirms = new AtomicInteger();
+
+    private Channel channel;
+    private RabbitAdmin rabbitAdmin;
+    private RabbitTemplate rabbitTemplate;
+    private ConnectionFactory connectionFactory;
+    private CapQueueManager queueManager;
+    private final List<RabbitMQMessageQueue> queues = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        channel = mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            published.incrementAndGet();
+            return null;
+        }).when(channel).basicPublish(anyString(), anyString(), anyBoolean(), any(AMQP.BasicProperties.class), any(byte[].class));
+        doAnswer(invocation -> {
+            confirms.incrementAndGet();
+            LockSupport.parkNanos(CONFIRM_ROUND_TRIP_NANOS);
+            return null;
+        }).when(channel).waitForConfirmsOrDie(anyLong());
+
+        Connection connection = mock(Connection.class);
+        when(connection.createChannel(false)).thenReturn(channel);
+        connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.createConnection()).thenReturn(connection);
+
+        rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<ChannelCallback<?>>getArgument(0).doInRabbit(channel));
+
+        rabbitAdmin = mock(RabbitAdmin.class);
+        queueManager = new CapQueueManager(rabbitAdmin, "cap.exchange", "topic", "cap.default", "v1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        queues.forEach(RabbitMQMessageQueue::destroy);
+    }
+
+    @Test
+    void concurrentFirstSendsDeclareTopologyOnce() throws Exception {
+        RabbitMQMessageQueue queue = queue(100);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                CapMessage message = message(i);
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return queue.send("case.transfer", message);
+                }, executor));
+            }
+            start.countDown();
+            for (CompletableFuture<Boolean> future : futures) {
+                assertTrue(future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(rabbitAdmin, times(1)).declareQueue(any(Queue.class));
+        verify(rabbitAdmin, times(1)).declareBinding(any(Binding.class));
+        assertEquals(64, published.get());
+        assertEquals(0, confirms.get());
+    }
+
+    @Test
+    void deletedQueueIsDeclaredAgain() {
+        RabbitMQMessageQueue queue = queue(100);
+        assertTrue(queue.send("case.transfer", message(1)));
+        assertTrue(queueManager.deleteQueue("cap.group.v1"));
+        assertTrue(queue.send("case.transfer", message(2)));
+
+        verify(rabbitAdmin, times(2)).declareQueue(any(Queue.class));
+    }
+
+    @Test
+    void batchedConfirmsBeatPerMessageConfirms() throws Exception {
+        long sync = timeSync(queue(100));
+        assertEquals(MESSAGE_COUNT, published.getAndSet(0));
+
+        long perMessage = timeAsync(queue(1));
+        int perMessageConfirms = confirms.getAndSet(0);
+        assertEquals(MESSAGE_COUNT, published.getAndSet(0));
+
+        long batched = timeAsync(queue(100));
+        int batchedConfirms = confirms.get();
+        assertEquals(MESSAGE_COUNT, published.get());
+
+        assertEquals(MESSAGE_COUNT, perMessageConfirms);
+        assertTrue(batchedConfirms <= MESSAGE_COUNT / 10, "batched confirms " + batchedConfirms);
+        assertTrue(batched < perMessage, "batched " + batched + "ms vs per message " + perMessage
+                + "ms, sync without confirms " + sync + "ms");
+        verify(rabbitAdmin, times(1)).declareQueue(any(Queue.class));
+    }
+
+    @Test
+    void nackedBatchFailsEveryMessage() throws Exception {
+        doThrow(new IOException("nack")).when(channel).waitForConfirmsOrDie(anyLong());
+        RabbitMQMessageQueue queue = queue(100);
+
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(queue.sendAsync("case.transfer", message(i)));
+        }
+        for (CompletableFuture<Boolean> future : futures) {
+            assertFalse(future.get(10, TimeUnit.SECONDS));
+        }
+        // 失败后关闭通道，下一批重新建立
+        verify(channel, atLeastOnce()).close();
+    }
+
+    private long timeSync(RabbitMQMessageQueue queue) {
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            assertTrue(queue.send("case.transfer", message(i)));
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private long timeAsync(RabbitMQMessageQueue queue) throws Exception {
+        long start = System.nanoTime();
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(MESSAGE_COUNT);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            futures.add(queue.sendAsync("case.transfer", message(i)));
+        }
+        for (CompletableFuture<Boolean> future : futures) {
+            assertTrue(future.get(60, TimeUnit.SECONDS));
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private RabbitMQMessageQueue queue(int confirmBatchSize) {
+        RabbitMQMessageQueue queue = new RabbitMQMessageQueue(null, rabbitTemplate, connectionFactory, queueManager,
+                "cap.exchange", "", 10, 1, confirmBatchSize, 5000);
+        queues.add(queue);
+        return queue;
+    }
+
+    private CapMessage message(int i) {
+        CapMessage message = new CapMessage("case.transfer", "payload-" + i);
+        message.setGroup("cap.group");
+        message.setDbId((long) i);
+        return message;
+    }
+}
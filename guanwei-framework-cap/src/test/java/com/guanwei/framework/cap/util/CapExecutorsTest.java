@@ -0,0 +1,102 @@
+package com.guanwei.framework.cap.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CapExecutorsTest {
+
+    @Test
+    void blockingTasksRunConcurrentlyUpToLimit() throws Exception {
+        ExecutorService executor = CapExecutors.newVirtualTaskExecutor("cap-test", 1000);
+        CountDownLatch done = new CountDownLatch(1000);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < 1000; i++) {
+                executor.execute(() -> {
+                    sleep(50);
+                    done.countDown();
+                });
+            }
+            // 串行执行需要约50秒
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 10_000);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void concurrencyNeverExceedsLimit() throws Exception {
+        ExecutorService executor = CapExecutors.newVirtualTaskExecutor("cap-test", 8);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(100);
+        try {
+            for (int i = 0; i < 100; i++) {
+                executor.execute(() -> {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    sleep(5);
+                    active.decrementAndGet();
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertTrue(maxActive.get() <= 8, "max active: " + maxActive.get());
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void tasksRunOnUnpooledVirtualThreadsWhenSupported() throws Exception {
+        assumeTrue(CapExecutors.isVirtualThreadSupported(), "virtual threads require Java 21+");
+        ExecutorService executor = CapExecutors.newVirtualTaskExecutor("cap-test", 8);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        Set<Boolean> virtual = ConcurrentHashMap.newKeySet();
+        CountDownLatch done = new CountDownLatch(20);
+        try {
+            for (int i = 0; i < 20; i++) {
+                executor.execute(() -> {
+                    threads.add(Thread.currentThread());
+                    try {
+                        virtual.add((Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+                    } catch (ReflectiveOperationException e) {
+                        virtual.add(Boolean.FALSE);
+                    }
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        // 每个任务一个新的虚拟线程，不复用
+        assertEquals(Set.of(Boolean.TRUE), virtual);
+        assertEquals(20, threads.size());
+    }
+
+    @Test
+    void executorModeIsCaseInsensitive() {
+        assertTrue(CapExecutors.isVirtual("VIRTUAL"));
+        assertFalse(CapExecutors.isVirtual("platform"));
+        assertFalse(CapExecutors.isVirtual(null));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.guanwei.framework.cap.util;
+
+import com.guanwei.framework.cap.storage.MemoryMessageStorage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageIdGeneratorTest {
+
+    private static final int THREADS = 32;
+    private static final int IDS_PER_THREAD = 50_000;
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void idsAreUniqueAcrossThirtyTwoThreads() throws Exception {
+        MessageIdGenerator generator = new MessageIdGenerator(3, 7);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            Future<?>[] futures = new Future<?>[THREADS];
+            long[][] ids = new long[THREADS][IDS_PER_THREAD];
+            for (int t = 0; t < THREADS; t++) {
+                long[] local = ids[t];
+                futures[t] = executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        local[i] = generator.nextId();
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+
+            long[] all = Arrays.stream(ids).flatMapToLong(Arrays::stream).sorted().toArray();
+            for (int i = 1; i < all.length; i++) {
+                assertNotEquals(all[i - 1], all[i], "duplicate id " + all[i]);
+            }
+            // 每个线程内ID严格递增
+            for (long[] local : ids) {
+                for (int i = 1; i < local.length; i++) {
+                    assertTrue(local[i] > local[i - 1]);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void exhaustedSequenceBorrowsNextMillisecondWithoutWaiting() {
+        MessageIdGenerator generator = new MessageIdGenerator(0, 0, () -> NOW);
+        long first = generator.nextId();
+        long previous = first;
+        // 时钟停在同一毫秒，超过 4096 个序列后应借用后续毫秒而不是自旋等待
+        for (int i = 0; i < 10_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            previous = id;
+        }
+        assertEquals(2, timestampOf(previous) - timestampOf(first));
+    }
+
+    @Test
+    void smallClockRegressionContinuesOnLastTimestamp() {
+        AtomicLong clock = new AtomicLong(NOW);
+        MessageIdGenerator generator = new MessageIdGenerator(1, 1, clock::get);
+        long before = generator.nextId();
+
+        clock.addAndGet(-50);
+        long during = generator.nextId();
+        assertTrue(during > before);
+        assertEquals(timestampOf(before), timestampOf(during));
+
+        clock.addAndGet(100);
+        assertTrue(generator.nextId() > during);
+    }
+
+    @Test
+    void largeClockRegressionIsRejected() {
+        AtomicLong clock = new AtomicLong(NOW);
+        MessageIdGenerator generator = new MessageIdGenerator(1, 1, clock::get);
+        generator.nextId();
+
+        clock.addAndGet(-TimeUnit.MINUTES.toMillis(1));
+        assertThrows(IllegalStateException.class, generator::nextId);
+    }
+
+    @Test
+    void workerAndDatacenterAreEncodedFromConfiguration() {
+        MessageIdGenerator generator = new MessageIdGenerator(21, 9, () -> NOW);
+        long id = generator.nextId();
+        assertEquals(21, (id >> 12) & 31);
+        assertEquals(9, (id >> 17) & 31);
+        assertThrows(IllegalArgumentException.class, () -> new MessageIdGenerator(32, 0));
+    }
+
+    @Test
+    void leasedSlotsAreDistinctPerInstance() {
+        MemoryMessageStorage storage = new MemoryMessageStorage();
+        try (WorkerIdLease first = WorkerIdLease.acquire(storage, Duration.ofSeconds(30));
+             WorkerIdLease second = WorkerIdLease.acquire(storage, Duration.ofSeconds(30))) {
+            long firstSlot = first.getDatacenterId() * 32 + first.getWorkerId();
+            long secondSlot = second.getDatacenterId() * 32 + second.getWorkerId();
+            assertNotEquals(firstSlot, secondSlot);
+        }
+    }
+
+    @Test
+    void lostLeaseFencesGeneratorUntilAnotherSlotIsLeased() throws Exception {
+        OutageStorage storage = new OutageStorage();
+        Duration ttl = Duration.ofMillis(300);
+        try (WorkerIdLease first = WorkerIdLease.acquire(storage, ttl)) {
+            MessageIdGenerator fenced = MessageIdGenerator.configure(first);
+            assertNotNull(fenced.nextId());
+
+            // 存储不可用超过 TTL，无法确认槽位仍归本节点，拒绝生成
+            storage.outage = true;
+            Thread.sleep(ttl.toMillis() + 200);
+            assertThrows(IllegalStateException.class, fenced::nextId);
+
+            // 其他节点接管同一槽位；存储恢复后续期失败，改租其他槽位并替换生成器
+            try (WorkerIdLease second = WorkerIdLease.acquire(storage, Duration.ofSeconds(30))) {
+                assertEquals(slotOf(fenced), second.getDatacenterId() * 32 + second.getWorkerId());
+                storage.outage = false;
+                long giveUpAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (MessageIdGenerator.getInstance() == fenced && System.nanoTime() < giveUpAt) {
+                    Thread.sleep(10);
+                }
+
+                MessageIdGenerator released = MessageIdGenerator.getInstance();
+                assertNotSame(fenced, released);
+                assertNotEquals(slotOf(fenced), slotOf(released));
+                assertNotNull(released.nextId());
+                assertThrows(IllegalStateException.class, fenced::nextId);
+            }
+        } finally {
+            MessageIdGenerator.configure(0, 0);
+        }
+    }
+
+    private static long slotOf(MessageIdGenerator generator) {
+        return generator.getDatacenterId() * 32 + generator.getWorkerId();
+    }
+
+    /**
+     * 续期可模拟存储不可用的内存存储
+     */
+    private static class OutageStorage extends MemoryMessageStorage {
+
+        private volatile boolean outage;
+
+        @Override
+        public CompletableFuture<Boolean> renewLockAsync(String key, Duration ttl, String instance) {
+            if (outage) {
+                return CompletableFuture.failedFuture(new IllegalStateException("storage unavailable"));
+            }
+            return super.renewLockAsync(key, ttl, instance);
+        }
+    }
+
+    private long timestampOf(long id) {
+        return id >>> 22;
+    }
+}
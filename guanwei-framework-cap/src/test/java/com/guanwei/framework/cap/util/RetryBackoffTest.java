@@ -0,0 +1,71 @@
+package com.guanwei.framework.cap.util;
+
+import com.guanwei.framework.cap.CapProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryBackoffTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Clock CLOCK = Clock.fixed(NOW, ZoneOffset.UTC);
+    private static final LocalDateTime START = LocalDateTime.ofInstant(NOW, ZoneOffset.UTC);
+
+    @Test
+    void scheduleDoublesFromSubscriberIntervalUntilCap() {
+        // 随机数固定为 0.5 时抖动为零
+        RetryBackoff backoff = new RetryBackoff(Duration.ofMinutes(10), 0.2, CLOCK, () -> 0.5);
+
+        List<LocalDateTime> schedule = new ArrayList<>();
+        for (int retries = 1; retries <= 8; retries++) {
+            schedule.add(backoff.nextRetryAt(retries, Duration.ofSeconds(5)));
+        }
+
+        assertEquals(List.of(
+                START.plusSeconds(5),
+                START.plusSeconds(10),
+                START.plusSeconds(20),
+                START.plusSeconds(40),
+                START.plusSeconds(80),
+                START.plusSeconds(160),
+                START.plusSeconds(320),
+                START.plusSeconds(600)), schedule);
+    }
+
+    @Test
+    void jitterStaysWithinConfiguredRatio() {
+        RetryBackoff low = new RetryBackoff(Duration.ofHours(1), 0.2, CLOCK, () -> 0.0);
+        RetryBackoff high = new RetryBackoff(Duration.ofHours(1), 0.2, CLOCK, () -> 0.999_999);
+
+        assertEquals(Duration.ofSeconds(96), low.delay(2, Duration.ofMinutes(1)));
+        assertEquals(Duration.ofSeconds(144), high.delay(2, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void largeRetryCountsDoNotOverflow() {
+        RetryBackoff backoff = new RetryBackoff(Duration.ofHours(1), 0, CLOCK, () -> 0.5);
+
+        assertEquals(Duration.ofHours(1), backoff.delay(50, Duration.ofSeconds(60)));
+        assertEquals(Duration.ofHours(1), backoff.delay(Integer.MAX_VALUE, Duration.ofDays(365)));
+        assertEquals(Duration.ofSeconds(60), backoff.delay(0, Duration.ofSeconds(60)));
+    }
+
+    @Test
+    void defaultsComeFromProperties() {
+        CapProperties properties = new CapProperties();
+        properties.setFailedRetryMaxInterval(120);
+        properties.setFailedRetryJitter(0);
+
+        RetryBackoff backoff = new RetryBackoff(properties);
+
+        assertEquals(Duration.ofSeconds(120), backoff.delay(10, Duration.ofSeconds(60)));
+    }
+}